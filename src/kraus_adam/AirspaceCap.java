@@ -0,0 +1,180 @@
+/**
+ * Adam Kraus
+ *
+ * This file counts the fireworks up across a town, to hold the town to a limit on fireworks in the air.
+ */
+package kraus_adam;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts of fireworks up at each time, kept as the fireworks launched less the fireworks landed up to each time
+ * in a sparse Fenwick tree. Counting a firework changes the tree at its launch time and just after it lands, and
+ * reading a time adds up a node for each bit of the time, so both take the same time however long the firework
+ * is up, and the tree only holds the nodes that were changed.
+ * Like a show, the town only checks the limit at a firework's launch time. Checking and counting happen together
+ * under one of a few locks picked by the launch time, so bookings at different times rarely wait on each other.
+ * A count read while a firework at another time is being counted is only ever too high, so the limit holds.
+ */
+final class AirspaceCap {
+    /**
+     * Number of locks that launch times are spread over
+     */
+    private static final int STRIPES = 64;
+    /**
+     * Number of times the tree covers, from 0 to Integer.MAX_VALUE
+     */
+    private static final long SIZE = 1L << 31;
+
+    private final int maxFireworks;
+    private final ReentrantLock[] stripes;
+    /**
+     * Sum of the changes at a range of times for each node that was changed, by its place in the tree from 1
+     */
+    private final ConcurrentHashMap<Long, AtomicInteger> nodes;
+
+    /**
+     * AirspaceCap constructor
+     * @param maxFireworks  max fireworks allowed up across the town at a given time
+     */
+    AirspaceCap(int maxFireworks) {
+        this.maxFireworks = maxFireworks;
+        stripes = new ReentrantLock[STRIPES];
+        for(int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        nodes = new ConcurrentHashMap<Long, AtomicInteger>();
+    }
+
+    /**
+     * Gets the max fireworks allowed up across the town
+     * @return  max fireworks
+     */
+    int getMaxFireworks() {
+        return maxFireworks;
+    }
+
+    /**
+     * Counts a firework if there are fewer than max fireworks up at its launch time
+     * @param from  time that firework launches
+     * @param to    time that firework lands
+     * @return      true if the firework was counted
+     */
+    boolean reserve(long from, long to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, Integer.MAX_VALUE);
+        if(from > to) return true;
+
+        ReentrantLock lock = stripe(from);
+        lock.lock();
+        try {
+            if(countAt(from) >= maxFireworks) return false;
+
+            add(from, to, 1);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves a firework to a new range if there are fewer than max fireworks up at the new launch time, not counting
+     * the firework itself
+     * @param from      time that firework launches
+     * @param to        time that firework lands
+     * @param newFrom   new time that firework launches
+     * @param newTo     new time that firework lands
+     * @return          true if the firework was moved
+     */
+    boolean move(long from, long to, long newFrom, long newTo) {
+        from = Math.max(from, 0);
+        to = Math.min(to, Integer.MAX_VALUE);
+        newFrom = Math.max(newFrom, 0);
+        newTo = Math.min(newTo, Integer.MAX_VALUE);
+
+        // lock both launch times' stripes lowest first, so two moves can't each wait on the other
+        int low = Math.min(stripeIndex(from), stripeIndex(newFrom));
+        int high = Math.max(stripeIndex(from), stripeIndex(newFrom));
+        stripes[low].lock();
+        if(high != low) stripes[high].lock();
+        try {
+            add(from, to, -1);
+            if(newFrom <= newTo && countAt(newFrom) >= maxFireworks) {
+                add(from, to, 1);
+                return false;
+            }
+
+            add(newFrom, newTo, 1);
+            return true;
+        } finally {
+            if(high != low) stripes[high].unlock();
+            stripes[low].unlock();
+        }
+    }
+
+    /**
+     * Stops counting a firework
+     * @param from  time that firework launches
+     * @param to    time that firework lands
+     */
+    void release(long from, long to) {
+        add(from, to, -1);
+    }
+
+    /**
+     * Adds fireworks to every time in a range without checking the limit, such as when counting a town
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @param count number of fireworks to add, negative to remove
+     */
+    void add(long from, long to, int count) {
+        from = Math.max(from, 0);
+        to = Math.min(to, Integer.MAX_VALUE);
+        if(from > to || count == 0) return;
+
+        // the change that raises counts goes first, so a count read in between is only ever too high
+        if(count > 0) {
+            addAt(from, count);
+            addAt(to + 1, -count);
+        } else {
+            addAt(to + 1, -count);
+            addAt(from, count);
+        }
+    }
+
+    /**
+     * Gets the number of fireworks up at a time
+     * @param time  time to check
+     * @return      number of fireworks up
+     */
+    int countAt(long time) {
+        if(time < 0) return 0;
+
+        int count = 0;
+        for(long node = Math.min(time, SIZE - 1) + 1; node > 0; node -= node & -node) {
+            AtomicInteger sum = nodes.get(node);
+            if(sum != null) count += sum.get();
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds to the change in fireworks up at a time, and so to the count at every later time
+     */
+    private void addAt(long time, int count) {
+        for(long node = time + 1; node <= SIZE; node += node & -node) {
+            nodes.computeIfAbsent(node, key -> new AtomicInteger()).addAndGet(count);
+        }
+    }
+
+    private int stripeIndex(long time) {
+        return (int) (time & (STRIPES - 1));
+    }
+
+    private ReentrantLock stripe(long time) {
+        return stripes[stripeIndex(time)];
+    }
+}
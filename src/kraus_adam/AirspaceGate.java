@@ -0,0 +1,55 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a check on fireworks that a show asks before it adds them, such as a town-wide limit.
+ */
+package kraus_adam;
+
+import java.util.List;
+
+/**
+ * Limit outside a show that every firework added to the show must fit in.
+ * A show reserves room after its own checks pass, so a reservation is always followed by the firework being added.
+ */
+interface AirspaceGate {
+    /**
+     * Reserves room for a firework if there is any
+     * @param from  time that firework launches
+     * @param to    time that firework lands
+     * @return      true if the firework fits and the room was reserved
+     */
+    boolean reserve(long from, long to);
+
+    /**
+     * Gives back the room of a firework that was removed from the show
+     * @param from  time that firework launches
+     * @param to    time that firework lands
+     */
+    void release(long from, long to);
+
+    /**
+     * Takes room for a firework without checking the limit, to put back a firework that could not be moved
+     * @param from  time that firework launches
+     * @param to    time that firework lands
+     */
+    void occupy(long from, long to);
+
+    /**
+     * Moves the room of a firework to a new range if the new launch time has room, with the firework itself no
+     * longer counted at its old times
+     * @param from      time that firework launches
+     * @param to        time that firework lands
+     * @param newFrom   new time that firework launches
+     * @param newTo     new time that firework lands
+     * @return          true if the room was moved
+     */
+    boolean move(long from, long to, long newFrom, long newTo);
+
+    /**
+     * Checks if a show can take the changes made to it in a session, without taking any room
+     * @param changes   launch time, landing time and count of each firework added, or removed with a count of -1,
+     *                  in the order they were made
+     * @return          true if every firework added has room at its launch time with all the changes in place
+     */
+    boolean admit(List<long[]> changes);
+}
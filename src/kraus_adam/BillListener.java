@@ -0,0 +1,27 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a listener for changes to the company bills of a company show.
+ */
+package kraus_adam;
+
+/**
+ * Listener told about every change to the bills of a company show, such as a town keeping a leaderboard
+ */
+interface BillListener {
+    /**
+     * Called after the bill of one company changed
+     * @param companyName   name of the company
+     * @param oldFireworks  number of fireworks the company had before the change
+     * @param oldBill       bill before the change, 0 if the company had no fireworks
+     * @param newFireworks  number of fireworks the company has after the change
+     * @param newBill       bill after the change, 0 if the company has no fireworks left
+     */
+    void billChanged(String companyName, int oldFireworks, double oldBill, int newFireworks, double newBill);
+
+    /**
+     * Called after all the bills of a show were replaced at once, such as when a session is committed
+     * @param show  show with the new bills
+     */
+    void billsReplaced(CompanyShow show);
+}
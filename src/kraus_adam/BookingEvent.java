@@ -0,0 +1,74 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a flight recorder event for adding a firework to a show.
+ */
+package kraus_adam;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one call to add a firework to a show, whether or not it was added.
+ * Like every event, it costs next to nothing while no recording has it enabled.
+ */
+@Name("kraus_adam.Booking")
+@Label("Firework Booking")
+@Category("Fireworks")
+@Description("Adding a firework to a show")
+final class BookingEvent extends Event {
+    private static final EventSwitch SWITCH = new EventSwitch(BookingEvent.class);
+
+    @Label("Show")
+    String show;
+
+    @Label("Company")
+    String company;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Launch Time")
+    int launchTime;
+
+    @Label("Firework Duration")
+    int fireworkDuration;
+
+    @Label("Cost")
+    double cost;
+
+    /**
+     * Starts an event if it is being recorded. Nothing is made otherwise, so a booking costs no allocation
+     * while the event is off, even where the compiler can't prove that the event doesn't escape.
+     * @return  started event, or null if the event is not being recorded
+     */
+    static BookingEvent start() {
+        if(!SWITCH.isEnabled()) return null;
+
+        BookingEvent event = new BookingEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it if it is being recorded
+     * @param showName  name of the show
+     * @param firework  firework that was added or rejected
+     * @param result    whether the firework was added, or why not
+     */
+    void commit(String showName, Firework firework, BookingOutcome result) {
+        end();
+        if(!shouldCommit()) return;
+
+        show = showName;
+        company = firework.company;
+        outcome = result.name();
+        launchTime = firework.time;
+        fireworkDuration = firework.duration;
+        cost = firework.cost;
+        commit();
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Adam Kraus
+ *
+ * This file lists the ways adding a firework to a show can turn out.
+ */
+package kraus_adam;
+
+/**
+ * Result of trying to add a firework to a show
+ */
+public enum BookingOutcome {
+    /**
+     * Firework was added
+     */
+    ACCEPTED,
+    /**
+     * Firework was not added because its duration was less than 1
+     */
+    BAD_DURATION,
+    /**
+     * Firework was not added because its cost was negative
+     */
+    NEGATIVE_COST,
+    /**
+     * Firework was not added because it launched before the current time of the show
+     */
+    IN_PAST,
+    /**
+     * Firework was not added because the show already had max fireworks up at its launch time
+     */
+    OVER_CAPACITY,
+    /**
+     * Firework was not added because a town the show is in already had its max fireworks up at its launch time
+     */
+    OVER_AIRSPACE_CAP
+}
@@ -0,0 +1,73 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a flight recorder event for moving the clock of a show or town.
+ */
+package kraus_adam;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one call to {@link Show#Update(int)} or {@link Town#update(int)}.
+ * The number of ticks is how many times were checked for warnings, which is what makes a large jump slow.
+ */
+@Name("kraus_adam.ClockAdvance")
+@Label("Clock Advance")
+@Category("Fireworks")
+@Description("Moving the current time of a show or town forward")
+final class ClockAdvanceEvent extends Event {
+    private static final EventSwitch SWITCH = new EventSwitch(ClockAdvanceEvent.class);
+
+    @Label("Show")
+    @Description("Name of the show, or null when the whole town was updated")
+    String show;
+
+    @Label("Shows")
+    @Description("Number of shows updated")
+    int shows;
+
+    @Label("From Time")
+    int fromTime;
+
+    @Label("To Time")
+    int toTime;
+
+    @Label("Ticks")
+    long ticks;
+
+    /**
+     * Starts an event if it is being recorded. Nothing is made otherwise, so a clock advance costs no allocation
+     * while the event is off, even where the compiler can't prove that the event doesn't escape.
+     * @return  started event, or null if the event is not being recorded
+     */
+    static ClockAdvanceEvent start() {
+        if(!SWITCH.isEnabled()) return null;
+
+        ClockAdvanceEvent event = new ClockAdvanceEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it if it is being recorded
+     * @param showName  name of the show, or null for a town
+     * @param showCount number of shows updated
+     * @param from      current time before the update
+     * @param to        current time after the update
+     */
+    void commit(String showName, int showCount, int from, int to) {
+        end();
+        if(!shouldCommit()) return;
+
+        show = showName;
+        shows = showCount;
+        fromTime = from;
+        toTime = to;
+        ticks = (long) to - from + 1;
+        commit();
+    }
+}
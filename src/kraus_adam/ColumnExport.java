@@ -0,0 +1,441 @@
+/**
+ * Adam Kraus
+ *
+ * This file writes the bookings and fireworks up of a town as columns, for analysis in other tools.
+ */
+package kraus_adam;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Column file of a town, with two tables. The bookings table has a row for each different firework, with the
+ * show, company, launch time, duration, cost and number of copies. The timeline table has a row for each run of
+ * times a show, or the whole town, had the same fireworks up and warning.
+ * Rows are written in chunks of at most {@link #CHUNK_ROWS}, and each chunk holds every value of one column
+ * before the next, little endian, so a column can be read without the others. The names of the shows,
+ * companies, tables and columns and the position of every chunk are written at the end of the file.
+ * Each column has one direct buffer the size of a chunk, so a town of any size is written with the same memory.
+ */
+final class ColumnExport {
+    /**
+     * First and last bytes of every column file
+     */
+    private static final int MAGIC = 0x46574b43;
+    /**
+     * Version of the file form, changed whenever the form changes
+     */
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * Most rows in one chunk of a table
+     */
+    static final int CHUNK_ROWS = 1 << 18;
+    /**
+     * Number of times the town timeline is worked out at once, which bounds the memory it needs
+     */
+    private static final int TOWN_WINDOW = 1 << 16;
+
+    /**
+     * Types of column, numbered as they are in the file
+     */
+    static final byte INT = 1;
+    static final byte DOUBLE = 2;
+    static final byte BYTE = 3;
+
+    /**
+     * Tables of the file, numbered as they are in the file
+     */
+    static final int BOOKINGS = 0;
+    static final int TIMELINE = 1;
+
+    /**
+     * Show number of the rows for the whole town, and company number of fireworks without a company
+     */
+    static final int TOWN = -1;
+    static final int NO_COMPANY = -1;
+
+    /**
+     * Table being written, with one buffer for each of its columns
+     */
+    private final class Table {
+        final String name;
+        final String[] columns;
+        final byte[] types;
+        final ByteBuffer[] values;
+        final ArrayList<Long> chunks;
+        int rows;
+
+        Table(String name, String[] columns, byte[] types) {
+            this.name = name;
+            this.columns = columns;
+            this.types = types;
+            values = new ByteBuffer[columns.length];
+            for(int i = 0; i < columns.length; i++) {
+                values[i] = ByteBuffer.allocateDirect(CHUNK_ROWS * width(types[i])).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            chunks = new ArrayList<Long>();
+        }
+
+        /**
+         * Ends a row, writing the chunk if it is full
+         */
+        void endRow() throws IOException {
+            if(++rows == CHUNK_ROWS) flush();
+        }
+
+        void flush() throws IOException {
+            if(rows == 0) return;
+
+            writeOut();
+            chunks.add(channel.position());
+            out.putInt(tables.indexOf(this));
+            out.putInt(rows);
+            for(ByteBuffer column : values) {
+                out.putInt(column.position());
+            }
+            writeOut();
+            for(ByteBuffer column : values) {
+                column.flip();
+                while(column.hasRemaining()) channel.write(column);
+                column.clear();
+            }
+            rows = 0;
+        }
+    }
+
+    private final FileChannel channel;
+    /**
+     * Buffer for the chunk headers and the names at the end of the file
+     */
+    private final ByteBuffer out;
+    private final ArrayList<Table> tables;
+    private final Table bookings;
+    private final Table timeline;
+    private final ArrayList<String> companyNames;
+    private final HashMap<String, Integer> companies;
+
+    /**
+     * Timeline run waiting to be joined with the next one
+     */
+    private boolean pending;
+    private int pendingShow;
+    private long pendingFrom;
+    private long pendingTo;
+    private int pendingCount;
+    private boolean pendingWarning;
+    /**
+     * First failure to write while going through the fireworks or runs of a show, which can't throw it
+     */
+    private IOException failure;
+
+    private ColumnExport(FileChannel channel) {
+        this.channel = channel;
+        out = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        tables = new ArrayList<Table>();
+        bookings = new Table("bookings", new String[] {"show", "company", "time", "duration", "cost", "copies"},
+                new byte[] {INT, INT, INT, INT, DOUBLE, INT});
+        timeline = new Table("timeline", new String[] {"show", "from", "to", "fireworksUp", "warning"},
+                new byte[] {INT, INT, INT, INT, BYTE});
+        tables.add(bookings);
+        tables.add(timeline);
+        companyNames = new ArrayList<String>();
+        companies = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Gets the number of bytes a value of a column type takes
+     * @param type  type of column
+     * @return      number of bytes
+     */
+    static int width(byte type) {
+        return type == DOUBLE ? 8 : type == INT ? 4 : 1;
+    }
+
+    /**
+     * Writes a town to a column file. The town is written to a temporary file first and then moved into place,
+     * so the file always holds a whole town, and the temporary file is deleted if the town can't be written.
+     * @param town  town to write
+     * @param file  file to write to
+     * @throws IOException  if the file can't be written
+     */
+    static void write(Town town, File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        boolean written = false;
+        try {
+            try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                new ColumnExport(channel).writeTown(town);
+            }
+
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            written = true;
+        } finally {
+            if(!written) Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    private void writeTown(Town town) throws IOException {
+        out.putInt(MAGIC);
+        out.putInt(FORMAT_VERSION);
+
+        // the bookings give the last landing time, which is where the timelines end
+        long last = 0;
+        for(int i = 0; i < town.getShowCount(); i++) {
+            last = Math.max(last, writeBookings(i, town.getShow(i)));
+        }
+        bookings.flush();
+
+        int end = (int) Math.min(last, Integer.MAX_VALUE);
+        for(int i = 0; i < town.getShowCount(); i++) {
+            Show show = town.getShow(i);
+            int warningLevel = show.getWarningLevel();
+            int number = i;
+            show.getOccupancy().forEachRun(0, end, (from, to, count) -> addRun(number, from, to, count,
+                    count >= warningLevel));
+        }
+        // the town runs are worked out a window at a time, and joined again where a run crosses windows
+        long[] time = new long[1];
+        for(long from = 0; from <= end; from += TOWN_WINDOW) {
+            town.forEachTownRun((int) from, (int) Math.min(from + TOWN_WINDOW - 1, end), (ticks, fireworksUp, warning) -> {
+                addRun(TOWN, time[0], time[0] + ticks - 1, fireworksUp, warning);
+                time[0] += ticks;
+            });
+        }
+        if(failure != null) throw failure;
+        writeRun();
+        timeline.flush();
+
+        writeFooter(town);
+    }
+
+    /**
+     * Adds a row for each different firework in a show
+     * @param number    number of the show in the town
+     * @param show      show to write
+     * @return          last landing time of the show's fireworks
+     */
+    private long writeBookings(int number, Show show) throws IOException {
+        long[] last = new long[1];
+        show.forEachFirework((firework, copies) -> {
+            if(failure != null) return;
+
+            bookings.values[0].putInt(number);
+            bookings.values[1].putInt(companyNumber(firework.company));
+            bookings.values[2].putInt(firework.time);
+            bookings.values[3].putInt(firework.duration);
+            bookings.values[4].putDouble(firework.cost);
+            bookings.values[5].putInt(copies);
+            last[0] = Math.max(last[0], firework.getLandingTime());
+            try {
+                bookings.endRow();
+            } catch(IOException e) {
+                failure = e;
+            }
+        });
+        if(failure != null) throw failure;
+
+        return last[0];
+    }
+
+    private int companyNumber(String company) {
+        if(company == null) return NO_COMPANY;
+
+        Integer number = companies.get(company);
+        if(number == null) {
+            number = companyNames.size();
+            companies.put(company, number);
+            companyNames.add(company);
+        }
+
+        return number;
+    }
+
+    /**
+     * Adds a timeline run, joining it with the run before if nothing changed between them
+     */
+    private void addRun(int show, long from, long to, int count, boolean warning) {
+        if(failure != null) return;
+        if(pending && show == pendingShow && from == pendingTo + 1 && count == pendingCount
+                && warning == pendingWarning) {
+            pendingTo = to;
+            return;
+        }
+
+        try {
+            writeRun();
+        } catch(IOException e) {
+            failure = e;
+            return;
+        }
+        pending = true;
+        pendingShow = show;
+        pendingFrom = from;
+        pendingTo = to;
+        pendingCount = count;
+        pendingWarning = warning;
+    }
+
+    private void writeRun() throws IOException {
+        if(!pending) return;
+
+        timeline.values[0].putInt(pendingShow);
+        timeline.values[1].putInt((int) pendingFrom);
+        timeline.values[2].putInt((int) pendingTo);
+        timeline.values[3].putInt(pendingCount);
+        timeline.values[4].put((byte) (pendingWarning ? 1 : 0));
+        pending = false;
+        timeline.endRow();
+    }
+
+    private void writeFooter(Town town) throws IOException {
+        writeOut();
+        long footer = channel.position();
+        // a name can fill the buffer to its last byte, so every value after one makes room for itself
+        out.putInt(town.getShowCount());
+        for(int i = 0; i < town.getShowCount(); i++) {
+            putString(town.getShow(i).getName());
+        }
+        reserve(4);
+        out.putInt(companyNames.size());
+        for(String company : companyNames) {
+            putString(company);
+        }
+
+        reserve(4);
+        out.putInt(tables.size());
+        for(Table table : tables) {
+            putString(table.name);
+            reserve(4);
+            out.putInt(table.columns.length);
+            for(int i = 0; i < table.columns.length; i++) {
+                putString(table.columns[i]);
+                reserve(1);
+                out.put(table.types[i]);
+            }
+            reserve(4);
+            out.putInt(table.chunks.size());
+            for(long chunk : table.chunks) {
+                reserve(8);
+                out.putLong(chunk);
+            }
+        }
+
+        reserve(12);
+        out.putLong(footer);
+        out.putInt(MAGIC);
+        writeOut();
+    }
+
+    private void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        reserve(4);
+        out.putInt(bytes.length);
+        int written = 0;
+        while(written < bytes.length) {
+            reserve(1);
+            int length = Math.min(out.remaining(), bytes.length - written);
+            out.put(bytes, written, length);
+            written += length;
+        }
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if(out.remaining() < bytes) writeOut();
+    }
+
+    private void writeOut() throws IOException {
+        out.flip();
+        while(out.hasRemaining()) channel.write(out);
+        out.clear();
+    }
+
+    /**
+     * Reads every value of one column of a table in a column file
+     * @param file      file written by {@link #write(Town, File)}
+     * @param table     number of the table, such as {@link #BOOKINGS}
+     * @param column    number of the column in the table
+     * @return          the values of the column in row order, little endian
+     * @throws IOException  if the file can't be read or is not a column file
+     */
+    static ByteBuffer readColumn(File file, int table, int column) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer end = read(channel, channel.size() - 12, 12);
+            long footer = end.getLong();
+            if(end.getInt() != MAGIC || footer < 8 || footer > channel.size() - 12) {
+                throw new IOException("Not a column file");
+            }
+
+            ByteBuffer names = read(channel, footer, (int) (channel.size() - 12 - footer));
+            for(int list = 0; list < 2; list++) {
+                int count = names.getInt();
+                for(int i = 0; i < count; i++) skipString(names);
+            }
+
+            int tables = names.getInt();
+            if(table < 0 || table >= tables) throw new IOException("No table " + table);
+            for(int t = 0; ; t++) {
+                skipString(names);
+                int columns = names.getInt();
+                byte[] types = new byte[columns];
+                for(int i = 0; i < columns; i++) {
+                    skipString(names);
+                    types[i] = names.get();
+                }
+                long[] chunks = new long[names.getInt()];
+                for(int i = 0; i < chunks.length; i++) chunks[i] = names.getLong();
+                if(t < table) continue;
+                if(column < 0 || column >= columns) throw new IOException("No column " + column);
+
+                return readColumn(channel, chunks, columns, column);
+            }
+        } catch(BufferUnderflowException e) {
+            throw new IOException("Bad column file", e);
+        }
+    }
+
+    private static ByteBuffer readColumn(FileChannel channel, long[] chunks, int columns, int column)
+            throws IOException {
+        ArrayList<ByteBuffer> parts = new ArrayList<ByteBuffer>();
+        int size = 0;
+        for(long chunk : chunks) {
+            ByteBuffer header = read(channel, chunk, 8 + 4 * columns);
+            header.getInt();
+            header.getInt();
+            long position = chunk + header.capacity();
+            for(int i = 0; i < column; i++) position += header.getInt();
+            int length = header.getInt();
+
+            parts.add(read(channel, position, length));
+            size += length;
+        }
+
+        ByteBuffer values = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        for(ByteBuffer part : parts) values.put(part);
+        return values.flip();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Column file too short");
+        }
+
+        return buffer.flip();
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Adam Kraus
+ *
+ * This file stores the bill and number of fireworks of each company in a company show.
+ */
+package kraus_adam;
+
+import java.util.Arrays;
+
+/**
+ * Bill and number of fireworks of each company. Like {@link CostLedger}, companies are interned to numbers,
+ * and the bills and counts are kept in arrays by company number, so changing a bill doesn't box a new value.
+ * The arrays are split into chunks of {@link #CHUNK_SIZE} companies. Like the nodes of {@link CostLedger}, each
+ * chunk carries the token of the copy that may change it in place, so after a fork a change copies only the
+ * list of chunks and the one chunk it touches.
+ */
+final class CompanyBills {
+    /**
+     * Action for the bill of one company
+     */
+    interface BillAction {
+        /**
+         * Called for the bill of one company
+         * @param companyName   name of the company
+         * @param fireworks     number of fireworks the company has in the show
+         * @param bill          bill for the company with no discount applied
+         */
+        void bill(String companyName, int fireworks, double bill);
+    }
+
+    /**
+     * Number of bits of a company number that pick the company within its chunk
+     */
+    private static final int CHUNK_BITS = 5;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Bills and counts of a run of companies by number
+     */
+    private static final class Chunk {
+        final double[] bills;
+        final int[] fireworks;
+        final Object owner;
+
+        Chunk(double[] bills, int[] fireworks, Object owner) {
+            this.bills = bills;
+            this.fireworks = fireworks;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Number of each company that has had a firework. Numbers are never reused, even once a company has no
+     * fireworks left.
+     */
+    private final PersistentTreeMap<String, Integer> companyIds;
+    private Chunk[] chunks;
+    /**
+     * True while the list of chunks may be shared with a fork
+     */
+    private boolean shared;
+    /**
+     * Token on the chunks these bills may change in place
+     */
+    private Object owner;
+
+    /**
+     * CompanyBills constructor
+     */
+    CompanyBills() {
+        companyIds = new PersistentTreeMap<String, Integer>();
+        chunks = new Chunk[1];
+        owner = new Object();
+    }
+
+    private CompanyBills(CompanyBills other) {
+        companyIds = other.companyIds.fork();
+        chunks = other.chunks;
+        shared = true;
+        owner = new Object();
+        // neither copy may change the shared chunks in place any more
+        other.shared = true;
+        other.owner = new Object();
+    }
+
+    /**
+     * Copies the bills in constant time. Both copies can be changed afterwards without affecting each other.
+     * @return  copy of the bills
+     */
+    CompanyBills fork() {
+        return new CompanyBills(this);
+    }
+
+    /**
+     * Gets the bill for a company with no discount applied
+     * @param companyName   name of the company
+     * @return              bill for the company, 0 if it has no fireworks
+     */
+    double getBill(String companyName) {
+        Integer id = companyName == null ? null : companyIds.get(companyName);
+        return id == null ? 0 : chunks[id >> CHUNK_BITS].bills[id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Gets the number of fireworks a company has in the show
+     * @param companyName   name of the company
+     * @return              number of fireworks, 0 if it has none
+     */
+    int getFireworks(String companyName) {
+        Integer id = companyName == null ? null : companyIds.get(companyName);
+        return id == null ? 0 : chunks[id >> CHUNK_BITS].fireworks[id & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Adds fireworks to the bill of a company, or takes them off
+     * @param companyName   name of the company
+     * @param count         number of fireworks, negative to take them off
+     * @param cost          cost of the fireworks, negative to take them off
+     */
+    void add(String companyName, int count, double cost) {
+        Integer id = companyIds.get(companyName);
+        if(id == null) {
+            id = companyIds.size();
+            companyIds.put(companyName, id);
+        }
+        Chunk chunk = editable(id >> CHUNK_BITS);
+
+        int index = id & (CHUNK_SIZE - 1);
+        chunk.fireworks[index] += count;
+        // a company with no fireworks left starts again from nothing, rather than from the rounding of its costs
+        chunk.bills[index] = chunk.fireworks[index] == 0 ? 0 : chunk.bills[index] + cost;
+    }
+
+    /**
+     * Gets a chunk that these bills may change in place, copying it if it is shared with a fork
+     * @param index index of the chunk
+     * @return      chunk owned by these bills
+     */
+    private Chunk editable(int index) {
+        if(index >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(index + 1, chunks.length * 2));
+            shared = false;
+        } else if(shared) {
+            chunks = chunks.clone();
+            shared = false;
+        }
+
+        Chunk chunk = chunks[index];
+        if(chunk == null) {
+            chunk = new Chunk(new double[CHUNK_SIZE], new int[CHUNK_SIZE], owner);
+        } else if(chunk.owner != owner) {
+            chunk = new Chunk(chunk.bills.clone(), chunk.fireworks.clone(), owner);
+        } else {
+            return chunk;
+        }
+
+        chunks[index] = chunk;
+        return chunk;
+    }
+
+    /**
+     * Goes through the bill of each company with fireworks, in name order
+     * @param action    called with each company name, number of fireworks and bill
+     */
+    void forEach(BillAction action) {
+        companyIds.forEach((company, id) -> {
+            Chunk chunk = chunks[id >> CHUNK_BITS];
+            int index = id & (CHUNK_SIZE - 1);
+            if(chunk.fireworks[index] > 0) action.bill(company, chunk.fireworks[index], chunk.bills[index]);
+        });
+    }
+}
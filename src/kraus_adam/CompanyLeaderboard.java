@@ -0,0 +1,109 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a leaderboard of the companies in a town by their bills.
+ */
+package kraus_adam;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Companies of every company show in a town, sorted by their bill with and without the discount.
+ * Each change to a bill moves one company in logarithmic time, so reading the top companies only costs as many
+ * steps as the number of companies read.
+ */
+final class CompanyLeaderboard {
+    /**
+     * Standing of each company, with no discount applied
+     */
+    private final HashMap<String, CompanyStanding> bills;
+    /**
+     * Standing of each company, with the discount of each show applied
+     */
+    private final HashMap<String, CompanyStanding> discountedBills;
+    /**
+     * Number of shows each company has fireworks in
+     */
+    private final HashMap<String, Integer> showCounts;
+    private final TreeSet<CompanyStanding> byBill;
+    private final TreeSet<CompanyStanding> byDiscountedBill;
+
+    /**
+     * CompanyLeaderboard constructor
+     */
+    CompanyLeaderboard() {
+        bills = new HashMap<String, CompanyStanding>();
+        discountedBills = new HashMap<String, CompanyStanding>();
+        showCounts = new HashMap<String, Integer>();
+        byBill = new TreeSet<CompanyStanding>();
+        byDiscountedBill = new TreeSet<CompanyStanding>();
+    }
+
+    /**
+     * Adds the bills of a show to the leaderboard
+     * @param show  show to add
+     */
+    void addShow(CompanyShow show) {
+        show.forEachBill((company, fireworks, bill) -> billChanged(company, 0, 0, fireworks, bill));
+    }
+
+    /**
+     * Moves a company on the leaderboard after its bill in one show changed
+     * @param companyName   name of the company
+     * @param oldFireworks  number of fireworks the company had in the show before the change
+     * @param oldBill       bill before the change, 0 if the company had no fireworks
+     * @param newFireworks  number of fireworks the company has in the show after the change
+     * @param newBill       bill after the change, 0 if the company has no fireworks left
+     */
+    void billChanged(String companyName, int oldFireworks, double oldBill, int newFireworks, double newBill) {
+        double bill = newBill - oldBill;
+        double discountedBill = CompanyShow.discountedBill(newBill) - CompanyShow.discountedBill(oldBill);
+
+        Integer count = showCounts.get(companyName);
+        count = (count == null ? 0 : count) + (oldFireworks == 0 ? 1 : 0) - (newFireworks == 0 ? 1 : 0);
+
+        move(companyName, bill, bills, byBill, count);
+        move(companyName, discountedBill, discountedBills, byDiscountedBill, count);
+        if(count > 0) {
+            showCounts.put(companyName, count);
+        } else {
+            showCounts.remove(companyName);
+        }
+    }
+
+    /**
+     * Gets the companies with the highest bills, highest first
+     * @param count         most companies to get
+     * @param discounted    true to sort by the bills with the discount applied
+     * @return              standings of the top companies
+     */
+    List<CompanyStanding> top(int count, boolean discounted) {
+        List<CompanyStanding> top = new ArrayList<CompanyStanding>(Math.max(0, Math.min(count, bills.size())));
+
+        Iterator<CompanyStanding> standings = (discounted ? byDiscountedBill : byBill).iterator();
+        while(top.size() < count && standings.hasNext()) {
+            top.add(standings.next());
+        }
+
+        return top;
+    }
+
+    private static void move(String companyName, double change, HashMap<String, CompanyStanding> standings,
+                             TreeSet<CompanyStanding> sorted, int showCount) {
+        CompanyStanding old = standings.remove(companyName);
+        double bill = change;
+        if(old != null) {
+            sorted.remove(old);
+            bill += old.getBill();
+        }
+        if(showCount <= 0) return;
+
+        CompanyStanding standing = new CompanyStanding(companyName, bill);
+        standings.put(companyName, standing);
+        sorted.add(standing);
+    }
+}
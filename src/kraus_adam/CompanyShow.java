@@ -6,7 +6,7 @@
 package kraus_adam;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
+import java.util.ArrayList;
 
 /**
  * Class to store information about a fireworks show with fireworks produced by companies.
@@ -21,7 +21,14 @@ public class CompanyShow extends Show {
      */
     public final static String DEFAULT_COMPANY_NAME = "UNKNOWN";
 
-    private HashMap<String, Double> companyBills;
+    /**
+     * Bill and number of fireworks of each company, kept in name order
+     */
+    private CompanyBills companyBills;
+    /**
+     * Listeners told about every change to the bills, such as the towns the show is in
+     */
+    private ArrayList<BillListener> billListeners;
 
     /**
      * CompanyShow constructor
@@ -29,8 +36,19 @@ public class CompanyShow extends Show {
      * @param maxFireworks  max fireworks allowed up at a given time
      */
     public CompanyShow(String name, int maxFireworks) {
-        super(name, maxFireworks);
-        companyBills = new HashMap<String, Double>();
+        this(name, maxFireworks, null);
+    }
+
+    /**
+     * CompanyShow constructor
+     * @param name          name of the show
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @param site          place the show launches from, or null
+     */
+    public CompanyShow(String name, int maxFireworks, Site site) {
+        super(name, maxFireworks, site);
+        companyBills = new CompanyBills();
+        billListeners = new ArrayList<BillListener>();
     }
 
     /**
@@ -41,6 +59,16 @@ public class CompanyShow extends Show {
         this(DEFAULT_COMPANY_SHOW_NAME, maxFireworks);
     }
 
+    /**
+     * CompanyShow constructor that copies another company show in constant time
+     * @param show  show to copy
+     */
+    protected CompanyShow(CompanyShow show) {
+        super(show);
+        companyBills = show.companyBills.fork();
+        billListeners = new ArrayList<BillListener>();
+    }
+
     /**
      * Adds firework to show
      * @param companyName   name of company that produced firework
@@ -50,19 +78,7 @@ public class CompanyShow extends Show {
      * @return              true if successfully added
      */
     public boolean addFirework(String companyName, int time, int duration, double cost) {
-        if(duration < 1 || cost < 0) return false;
-
-        if(super.addFirework(time, duration, cost)) {
-            if(companyBills.containsKey(companyName)) {
-                companyBills.put(companyName, companyBills.get(companyName) + cost);
-            } else {
-                companyBills.put(companyName, cost);
-            }
-        } else {
-            return false;
-        }
-
-        return true;
+        return addFirework(lookup(companyName, time, duration, cost));
     }
 
     /**
@@ -73,8 +89,6 @@ public class CompanyShow extends Show {
      * @return              true if successfully added
      */
     public boolean addFirework(String companyName, int time, int duration) {
-        if(duration < 1) return false;
-
         return addFirework(companyName, time, duration, Firework.DEFAULT_COST);
     }
 
@@ -97,8 +111,6 @@ public class CompanyShow extends Show {
      */
     @Override
     public boolean addFirework(int time, int duration, double cost) {
-        if(duration < 1 || cost < 0) return false;
-
         return addFirework(DEFAULT_COMPANY_NAME, time, duration, cost);
     }
 
@@ -110,8 +122,6 @@ public class CompanyShow extends Show {
      */
     @Override
     public boolean addFirework(int time, int duration) {
-        if(duration < 1) return false;
-
         return addFirework(DEFAULT_COMPANY_NAME, time, duration, Firework.DEFAULT_COST);
     }
 
@@ -125,6 +135,119 @@ public class CompanyShow extends Show {
         return addFirework(DEFAULT_COMPANY_NAME, time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
     }
 
+    /**
+     * Adds firework to show and to the bill of its company
+     * @param firework  firework to add
+     * @return          true if successfully added
+     */
+    @Override
+    protected boolean addFirework(Firework firework) {
+        firework = withCompany(firework);
+        if(!super.addFirework(firework)) return false;
+
+        billChanged(firework.company, 1, firework.cost);
+
+        return true;
+    }
+
+    /**
+     * Cancels a firework in the show, as if it was never added.
+     * The cost is taken off the company bill, and a company with no fireworks left is removed from the show.
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @return              true if the firework was in the show
+     */
+    public boolean cancelFirework(String companyName, int time, int duration, double cost) {
+        return cancelFirework(lookup(companyName, time, duration, cost));
+    }
+
+    /**
+     * Cancels a firework in the show, as if it was never added
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @return              true if the firework was in the show
+     */
+    public boolean cancelFirework(String companyName, int time, int duration) {
+        return cancelFirework(companyName, time, duration, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Cancels a firework in the show, as if it was never added
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @return              true if the firework was in the show
+     */
+    public boolean cancelFirework(String companyName, int time) {
+        return cancelFirework(companyName, time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Cancels a firework in the show, as if it was never added
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @param cost      cost of firework
+     * @return          true if the firework was in the show
+     */
+    @Override
+    public boolean cancelFirework(int time, int duration, double cost) {
+        return cancelFirework(DEFAULT_COMPANY_NAME, time, duration, cost);
+    }
+
+    /**
+     * Cancels a firework in the show and takes it off the bill of its company
+     * @param firework  firework to cancel
+     * @return          true if the firework was in the show
+     */
+    @Override
+    protected boolean cancelFirework(Firework firework) {
+        firework = withCompany(firework);
+        if(!super.cancelFirework(firework)) return false;
+
+        billChanged(firework.company, -1, -firework.cost);
+
+        return true;
+    }
+
+    /**
+     * Moves a firework in the show to a new launch time
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @param newTime       new time that firework launches
+     * @return              true if the firework was moved
+     */
+    public boolean rescheduleFirework(String companyName, int time, int duration, double cost, int newTime) {
+        return rescheduleFirework(new Firework(companyName, time, duration, cost), newTime);
+    }
+
+    /**
+     * Moves a firework in the show to a new launch time
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @param cost      cost of firework
+     * @param newTime   new time that firework launches
+     * @return          true if the firework was moved
+     */
+    @Override
+    public boolean rescheduleFirework(int time, int duration, double cost, int newTime) {
+        return rescheduleFirework(DEFAULT_COMPANY_NAME, time, duration, cost, newTime);
+    }
+
+    /**
+     * Moves a firework in the show to a new launch time
+     * @param firework  firework to move
+     * @param newTime   new time that firework launches
+     * @return          true if the firework was moved
+     */
+    @Override
+    protected boolean rescheduleFirework(Firework firework, int newTime) {
+        return super.rescheduleFirework(withCompany(firework), newTime);
+    }
+
     /**
      * Gets the cost of all the fireworks in the show.
      * If the bill for a company is $100 or more, a 5% discount is applied.
@@ -132,17 +255,18 @@ public class CompanyShow extends Show {
      */
     @Override
     public double getCost() {
-        double totalCost = 0;
-
-        for(double cost : companyBills.values()) {
-            if(cost >= 100) {
-                totalCost += cost * .95;
-            } else {
-                totalCost += cost;
-            }
-        }
+        return discountedCost(companyBills);
+    }
 
-        return totalCost;
+    /**
+     * Gets the cost of a company's fireworks that launch in a range of times, with no discount applied
+     * @param companyName   name of company that produced the fireworks
+     * @param from          first launch time
+     * @param to            last launch time
+     * @return              cost of those fireworks
+     */
+    public double getCompanySpend(String companyName, int from, int to) {
+        return getCostLedger().sum(companyName, from, to);
     }
 
     /**
@@ -152,13 +276,165 @@ public class CompanyShow extends Show {
      */
     @Override
     public String toString() {
-        String showString = super.toString();
+        return super.toString() + billString(companyBills);
+    }
+
+    /**
+     * Gets a read only copy of the show and its company bills as they are right now
+     * @return  snapshot of the show
+     */
+    @Override
+    public CompanyShowSnapshot snapshot() {
+        return new CompanyShowSnapshot(super.snapshot(), companyBills.fork());
+    }
+
+    /**
+     * Makes the firework for a placed request, billed to the company of the request
+     * @param request   requested firework
+     * @param time      time the firework was placed at
+     * @return          firework to add
+     */
+    @Override
+    protected Firework requestedFirework(FireworkRequest request, int time) {
+        String company = request.company == null ? DEFAULT_COMPANY_NAME : request.company;
+        return new Firework(company, time, request.duration, request.cost);
+    }
 
-        for(String key : companyBills.keySet()) {
-            DecimalFormat format = new DecimalFormat("##.00");
-            showString += "\n--" + key + " $" + format.format(companyBills.get(key));
+    /**
+     * Starts a session for trying out changes to the show and its company bills
+     * @return  new session
+     */
+    @Override
+    public CompanyShowSession begin() {
+        return new CompanyShowSession(this, fork());
+    }
+
+    /**
+     * Makes a separate copy of the show and its company bills in constant time
+     * @return  forked show
+     */
+    @Override
+    public CompanyShow fork() {
+        return new CompanyShow(this);
+    }
+
+    /**
+     * Replaces everything in this show with a copy made by {@link #fork()}
+     * @param show  copy to take the data from
+     */
+    @Override
+    protected void adopt(Show show) {
+        super.adopt(show);
+        companyBills = ((CompanyShow) show).companyBills;
+
+        for(BillListener listener : billListeners) {
+            listener.billsReplaced(this);
         }
+    }
+
+    /**
+     * Puts a firework back into the show and its company bill
+     * @param firework  firework to put back
+     * @param count     number of copies of the firework
+     */
+    @Override
+    void restoreFirework(Firework firework, int count) {
+        firework = withCompany(firework);
+        super.restoreFirework(firework, count);
+
+        companyBills.add(firework.company, count, firework.cost * count);
+    }
+
+    /**
+     * Adds a listener to be told about every change to the bills
+     * @param listener  listener to add
+     */
+    void addBillListener(BillListener listener) {
+        billListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added by {@link #addBillListener(BillListener)}
+     * @param listener  listener to remove
+     */
+    void removeBillListener(BillListener listener) {
+        billListeners.remove(listener);
+    }
+
+    /**
+     * Goes through the bill of each company, in name order
+     * @param action    called with each company name and bill
+     */
+    void forEachBill(CompanyBills.BillAction action) {
+        companyBills.forEach(action);
+    }
+
+    /**
+     * Changes the bill of a company and tells the listeners
+     * @param companyName   name of the company
+     * @param count         number of fireworks added, negative if they were taken off
+     * @param cost          cost of the fireworks added, negative if they were taken off
+     */
+    private void billChanged(String companyName, int count, double cost) {
+        int oldFireworks = companyBills.getFireworks(companyName);
+        double oldBill = companyBills.getBill(companyName);
+        companyBills.add(companyName, count, cost);
+        if(billListeners.isEmpty()) return;
+
+        int newFireworks = companyBills.getFireworks(companyName);
+        double newBill = companyBills.getBill(companyName);
+        for(int i = 0; i < billListeners.size(); i++) {
+            billListeners.get(i).billChanged(companyName, oldFireworks, oldBill, newFireworks, newBill);
+        }
+    }
+
+    /**
+     * Gets the firework with the default company name if it does not have a company
+     * @param firework  firework to check
+     * @return          firework with a company
+     */
+    private static Firework withCompany(Firework firework) {
+        if(firework.company != null) return firework;
+        return new Firework(DEFAULT_COMPANY_NAME, firework.time, firework.duration, firework.cost);
+    }
+
+    /**
+     * Adds up the company bills, applying a 5% discount to bills of $100 or more
+     * @param companyBills  bill for each company
+     * @return              total cost of fireworks
+     */
+    static double discountedCost(CompanyBills companyBills) {
+        double[] totalCost = new double[1];
+
+        companyBills.forEach((company, fireworks, cost) -> totalCost[0] += discountedBill(cost));
+
+        return totalCost[0];
+    }
+
+    /**
+     * Applies the 5% discount to a company bill of $100 or more
+     * @param bill  bill for a company
+     * @return      bill with the discount applied
+     */
+    static double discountedBill(double bill) {
+        if(bill >= 100) {
+            return bill * .95;
+        }
+
+        return bill;
+    }
+
+    /**
+     * Makes the lines of the status string with the bill of each company
+     * @param companyBills  bill for each company
+     * @return              one line for each company
+     */
+    static String billString(CompanyBills companyBills) {
+        StringBuilder bills = new StringBuilder();
+        DecimalFormat format = new DecimalFormat("##.00");
+
+        companyBills.forEach((company, fireworks, cost) -> bills.append("\n--").append(company).append(" $").append(format.format(cost)));
 
-        return showString;
+        return bills.toString();
     }
 }
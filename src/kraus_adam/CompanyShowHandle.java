@@ -0,0 +1,50 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a handle to a company show in a town.
+ */
+package kraus_adam;
+
+/**
+ * Handle to a company show in a town, for booking fireworks by company without looking up the kind of show
+ */
+public class CompanyShowHandle extends ShowHandle {
+    private final CompanyShow show;
+
+    /**
+     * CompanyShowHandle constructor
+     * @param show  company show in the town
+     * @param index index of the show in the town
+     */
+    CompanyShowHandle(CompanyShow show, int index) {
+        super(show, index);
+        this.show = show;
+    }
+
+    /**
+     * Gets the company show of the handle, in the town the handle came from
+     * @return  company show
+     */
+    @Override
+    public CompanyShow getShow() {
+        return show;
+    }
+
+    /**
+     * Gets the show as a company show
+     * @return  company show
+     */
+    @Override
+    CompanyShow getCompanyShow() {
+        return show;
+    }
+
+    /**
+     * Gets the handle as a company show handle
+     * @return  this handle
+     */
+    @Override
+    CompanyShowHandle asCompanyShowHandle() {
+        return this;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a session for trying out changes to a fireworks show with company bills.
+ */
+package kraus_adam;
+
+/**
+ * Class to try out changes to a company show on a copy, then commit them to the show or throw them away.
+ */
+public class CompanyShowSession extends ShowSession {
+    /**
+     * CompanyShowSession constructor
+     * @param show      show the session changes
+     * @param staged    copy of the show to make the changes on
+     */
+    CompanyShowSession(CompanyShow show, CompanyShow staged) {
+        super(show, staged);
+    }
+
+    /**
+     * Gets the copy of the show to try changes on
+     * @return  staged copy of the show
+     */
+    @Override
+    public CompanyShow getShow() {
+        return (CompanyShow) super.getShow();
+    }
+}
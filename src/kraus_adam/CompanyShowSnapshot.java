@@ -0,0 +1,50 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a read only copy of a fireworks show with company bills at one point in time.
+ */
+package kraus_adam;
+
+/**
+ * Class to read a company fireworks show as it was when the snapshot was taken.
+ */
+public class CompanyShowSnapshot extends ShowSnapshot {
+    private final CompanyBills companyBills;
+
+    /**
+     * CompanyShowSnapshot constructor
+     * @param snapshot      snapshot of the show without the companies
+     * @param companyBills  bill for each company, not changed after this
+     */
+    CompanyShowSnapshot(ShowSnapshot snapshot, CompanyBills companyBills) {
+        super(snapshot);
+        this.companyBills = companyBills;
+    }
+
+    /**
+     * Gets the bill for a company with no discount applied
+     * @param companyName   name of the company
+     * @return              bill for the company, 0 if it has no fireworks
+     */
+    public double getCompanyBill(String companyName) {
+        return companyBills.getBill(companyName);
+    }
+
+    /**
+     * Gets the cost of all the fireworks in the show, the same as {@link CompanyShow#getCost()}
+     * @return  total cost of fireworks
+     */
+    @Override
+    public double getCost() {
+        return CompanyShow.discountedCost(companyBills);
+    }
+
+    /**
+     * Prints the show status, the same as {@link CompanyShow#toString()}
+     * @return  status string
+     */
+    @Override
+    public String toString() {
+        return super.toString() + CompanyShow.billString(companyBills);
+    }
+}
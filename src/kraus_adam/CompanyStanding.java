@@ -0,0 +1,79 @@
+/**
+ * Adam Kraus
+ *
+ * This file is the place of one company on a leaderboard of the companies in a town.
+ */
+package kraus_adam;
+
+/**
+ * Company and its bill across a town. Standings sort by highest bill first, then by company name.
+ */
+public final class CompanyStanding implements Comparable<CompanyStanding> {
+    private final String companyName;
+    private final double bill;
+
+    /**
+     * CompanyStanding constructor
+     * @param companyName   name of the company
+     * @param bill          bill of the company across the town
+     */
+    CompanyStanding(String companyName, double bill) {
+        this.companyName = companyName;
+        this.bill = bill;
+    }
+
+    /**
+     * Gets the name of the company
+     * @return  name of the company
+     */
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    /**
+     * Gets the bill of the company across the town
+     * @return  bill of the company
+     */
+    public double getBill() {
+        return bill;
+    }
+
+    /**
+     * Compares standings, highest bill first and then by company name
+     * @param other standing to compare to
+     * @return      negative if this standing is ahead of the other
+     */
+    @Override
+    public int compareTo(CompanyStanding other) {
+        int compare = Double.compare(other.bill, bill);
+        return compare != 0 ? compare : companyName.compareTo(other.companyName);
+    }
+
+    /**
+     * Checks if two standings have the same company and bill
+     * @param other object to compare to
+     * @return      true if they are the same
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CompanyStanding && compareTo((CompanyStanding) other) == 0;
+    }
+
+    /**
+     * Gets the hash code of the standing
+     * @return  hash code
+     */
+    @Override
+    public int hashCode() {
+        return 31 * companyName.hashCode() + Double.hashCode(bill);
+    }
+
+    /**
+     * Prints the company and its bill
+     * @return  standing string
+     */
+    @Override
+    public String toString() {
+        return companyName + " $" + String.format("%.2f", bill);
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a ledger of firework costs by launch time, for the whole show and for each company.
+ */
+package kraus_adam;
+
+/**
+ * Sums of firework costs indexed by launch time, so the spend between two times is one logarithmic query.
+ * Companies are interned to numbers, and the cost of a company at a time is stored under the key
+ * company number * 2^31 + time, so one tree holds every company and each company is a range of it.
+ * Like {@link OccupancyIndex}, the ledger can be forked in constant time and forks share unchanged nodes.
+ */
+final class CostLedger {
+    /**
+     * Number of bits in a launch time
+     */
+    private static final int TIME_BITS = 31;
+    /**
+     * Number of bits in a key of the company tree
+     */
+    private static final int COMPANY_KEY_BITS = 62;
+
+    /**
+     * Node of a tree covering a range of keys
+     */
+    private static final class Node {
+        Node left;
+        Node right;
+        /**
+         * Cost of every firework in the range
+         */
+        double sum;
+        Object owner;
+
+        Node(Object owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Costs of all the fireworks by launch time
+     */
+    private Node total;
+    /**
+     * Costs of each company's fireworks by company number and launch time
+     */
+    private Node companies;
+    /**
+     * Number of each company that has had a firework
+     */
+    private PersistentTreeMap<String, Integer> companyIds;
+    /**
+     * Token on the nodes this ledger may change in place
+     */
+    private Object owner;
+
+    /**
+     * CostLedger constructor
+     */
+    CostLedger() {
+        companyIds = new PersistentTreeMap<String, Integer>();
+        owner = new Object();
+    }
+
+    /**
+     * Copies the ledger in constant time. Both ledgers can be changed afterwards without affecting each other.
+     * @return  copy of the ledger
+     */
+    CostLedger fork() {
+        CostLedger copy = new CostLedger();
+        copy.total = total;
+        copy.companies = companies;
+        copy.companyIds = companyIds.fork();
+        owner = new Object();
+        return copy;
+    }
+
+    /**
+     * Adds the cost of a firework
+     * @param company   name of company that produced firework, or null
+     * @param time      time that firework launches
+     * @param cost      cost of firework, negative to take it off
+     */
+    void add(String company, int time, double cost) {
+        if(time < 0) return;
+
+        total = add(total, TIME_BITS, time, cost);
+        if(company == null) return;
+
+        Integer id = companyIds.get(company);
+        if(id == null) {
+            // numbers are never reused, so the count of companies is the next number
+            id = companyIds.size();
+            companyIds.put(company, id);
+        }
+        companies = add(companies, COMPANY_KEY_BITS, key(id, time), cost);
+    }
+
+    /**
+     * Gets the cost of the fireworks launched in a range of times
+     * @param from  first launch time
+     * @param to    last launch time
+     * @return      total cost
+     */
+    double sum(int from, int to) {
+        from = Math.max(from, 0);
+        if(from > to) return 0;
+
+        return sum(total, 0, (1L << TIME_BITS) - 1, from, to);
+    }
+
+    /**
+     * Gets the cost of a company's fireworks launched in a range of times
+     * @param company   name of company that produced the fireworks
+     * @param from      first launch time
+     * @param to        last launch time
+     * @return          total cost for the company
+     */
+    double sum(String company, int from, int to) {
+        from = Math.max(from, 0);
+        Integer id = company == null ? null : companyIds.get(company);
+        if(id == null || from > to) return 0;
+
+        return sum(companies, 0, (1L << COMPANY_KEY_BITS) - 1, key(id, from), key(id, to));
+    }
+
+    private static long key(int id, int time) {
+        return ((long) id << TIME_BITS) | time;
+    }
+
+    private Node add(Node node, int bits, long key, double cost) {
+        node = editable(node);
+        Node root = node;
+
+        // walk down to the key, adding the cost to every range that holds it
+        for(int bit = bits - 1; ; bit--) {
+            node.sum += cost;
+            if(bit < 0) break;
+
+            if((key >>> bit & 1) == 0) {
+                node.left = editable(node.left);
+                node = node.left;
+            } else {
+                node.right = editable(node.right);
+                node = node.right;
+            }
+        }
+
+        return root;
+    }
+
+    private static double sum(Node node, long low, long high, long from, long to) {
+        if(node == null || to < low || high < from) return 0;
+        if(from <= low && high <= to) return node.sum;
+
+        long middle = low + (high - low) / 2;
+        return sum(node.left, low, middle, from, to) + sum(node.right, middle + 1, high, from, to);
+    }
+
+    private Node editable(Node node) {
+        if(node == null) return new Node(owner);
+        if(node.owner == owner) return node;
+
+        Node copy = new Node(owner);
+        copy.left = node.left;
+        copy.right = node.right;
+        copy.sum = node.sum;
+        return copy;
+    }
+}
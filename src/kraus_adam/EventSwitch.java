@@ -0,0 +1,47 @@
+/**
+ * Adam Kraus
+ *
+ * This file checks if a flight recorder event is being recorded without starting the flight recorder.
+ */
+package kraus_adam;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Check on whether an event is being recorded, for events that only make an object when it is.
+ * No recording can be running before the flight recorder starts, and looking up the type of an event would start
+ * it, so the type is only looked up once something else has started the recorder.
+ */
+final class EventSwitch {
+    private final Class<? extends Event> eventClass;
+    /**
+     * Type of the event, looked up once the flight recorder has started
+     */
+    private volatile EventType type;
+
+    /**
+     * EventSwitch constructor
+     * @param eventClass    class of the event to check
+     */
+    EventSwitch(Class<? extends Event> eventClass) {
+        this.eventClass = eventClass;
+    }
+
+    /**
+     * Checks if the event is being recorded
+     * @return  true if a running recording has the event enabled
+     */
+    boolean isEnabled() {
+        if(!FlightRecorder.isInitialized()) return false;
+
+        EventType eventType = type;
+        if(eventType == null) {
+            eventType = EventType.getEventType(eventClass);
+            type = eventType;
+        }
+
+        return eventType.isEnabled();
+    }
+}
@@ -9,7 +9,7 @@ package kraus_adam;
 /**
   Class to store information about a single firework
  */
-public class Firework {
+public class Firework implements Comparable<Firework> {
     /**
      * Time that firework launches
      */
@@ -22,6 +22,10 @@ public class Firework {
      * Cost of firework
      */
     public double cost;
+    /**
+     * Name of company that produced firework, null if the show does not track companies
+     */
+    public String company;
 
     /**
      * Default duration for a firework
@@ -40,8 +44,60 @@ public class Firework {
      */
     public Firework(int time, int duration, double cost)
     {
+        this(null, time, duration, cost);
+    }
+
+    /**
+     * Firework constructor
+     * @param company   name of company that produced firework
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @param cost      cost of firework
+     */
+    public Firework(String company, int time, int duration, double cost)
+    {
+        this.company = company;
         this.time = time;
         this.duration = duration;
         this.cost = cost;
     }
+
+    /**
+     * Gets the last time that the firework is in the air
+     * @return  landing time
+     */
+    public long getLandingTime() {
+        return (long) time + duration;
+    }
+
+    /**
+     * Orders fireworks by time, then duration, then cost, then company
+     * @param other firework to compare to
+     * @return      negative, zero, or positive if this firework is before, equal to, or after the other
+     */
+    @Override
+    public int compareTo(Firework other) {
+        if(time != other.time) return Integer.compare(time, other.time);
+        if(duration != other.duration) return Integer.compare(duration, other.duration);
+        if(Double.compare(cost, other.cost) != 0) return Double.compare(cost, other.cost);
+        if(company == null || other.company == null) return company == null ? (other.company == null ? 0 : -1) : 1;
+        return company.compareTo(other.company);
+    }
+
+    /**
+     * Checks if two fireworks have the same time, duration, cost, and company
+     * @param other object to compare to
+     * @return      true if they are the same firework
+     */
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof Firework)) return false;
+        return compareTo((Firework) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * (31 * time + duration) + Double.hashCode(cost);
+        return 31 * hash + (company == null ? 0 : company.hashCode());
+    }
 }
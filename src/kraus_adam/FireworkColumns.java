@@ -0,0 +1,172 @@
+/**
+ * Adam Kraus
+ *
+ * This file holds the fireworks of a show as arrays of numbers, for fast scans over all of them.
+ */
+package kraus_adam;
+
+/**
+ * Launch times, landing times, costs and copies of every different firework in a show, each in its own array.
+ * The scans over the arrays have no branches and no objects, so the JIT compiler can run them with vector
+ * instructions a few fireworks at a time, and runs them one at a time on machines without them.
+ * Counting the fireworks up at many times goes through the times in blocks, so each firework is read once
+ * per block and the work on the block is what gets vectorized.
+ * The columns are a copy and never change after they are made.
+ */
+public class FireworkColumns {
+    /**
+     * Number of times counted together for each pass over the fireworks
+     */
+    static final int TIME_BLOCK = 256;
+
+    private int size;
+    private int[] launches;
+    /**
+     * Last time each firework is up, capped at the latest time
+     */
+    private int[] landings;
+    private double[] costs;
+    private int[] copies;
+
+    /**
+     * FireworkColumns constructor
+     * @param capacity  number of different fireworks that will be added
+     */
+    FireworkColumns(int capacity) {
+        launches = new int[capacity];
+        landings = new int[capacity];
+        costs = new double[capacity];
+        copies = new int[capacity];
+    }
+
+    /**
+     * Adds a firework while the columns are made
+     * @param firework  firework to add
+     * @param count     number of copies of the firework
+     */
+    void add(Firework firework, int count) {
+        launches[size] = firework.time;
+        landings[size] = (int) Math.min(firework.getLandingTime(), Integer.MAX_VALUE);
+        costs[size] = firework.cost;
+        copies[size] = count;
+        size++;
+    }
+
+    /**
+     * Gets the number of different fireworks
+     * @return  number of fireworks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of fireworks up at a time
+     * @param time  time to check
+     * @return      number of fireworks up
+     */
+    public int getFireworksUpAt(int time) {
+        // launch times are never negative, so a negative time has nothing up and the sums below can't overflow
+        if(time < 0) return 0;
+
+        int fireworksUp = 0;
+        for(int i = 0; i < size; i++) {
+            // both differences are negative only when the firework is up, and then the mask is all ones
+            int up = (launches[i] - time - 1) & (time - landings[i] - 1);
+            fireworksUp += copies[i] & (up >> 31);
+        }
+
+        return fireworksUp;
+    }
+
+    /**
+     * Gets the number of fireworks up at each of many times
+     * @param times times to check, in any order
+     * @return      number of fireworks up at each time
+     */
+    public int[] getFireworksUpAt(int[] times) {
+        int[] fireworksUp = new int[times.length];
+        int[] block = new int[TIME_BLOCK];
+        int[] counts = new int[TIME_BLOCK];
+
+        for(int start = 0; start < times.length; start += TIME_BLOCK) {
+            int length = Math.min(TIME_BLOCK, times.length - start);
+            for(int j = 0; j < length; j++) {
+                // negative times are counted as 0 so nothing overflows, and given nothing up afterwards
+                block[j] = Math.max(times[start + j], 0);
+                counts[j] = 0;
+            }
+
+            for(int i = 0; i < size; i++) {
+                int launch = launches[i];
+                int landing = landings[i];
+                int copy = copies[i];
+                for(int j = 0; j < length; j++) {
+                    counts[j] += copy & (((launch - block[j] - 1) & (block[j] - landing - 1)) >> 31);
+                }
+            }
+
+            for(int j = 0; j < length; j++) {
+                fireworksUp[start + j] = times[start + j] < 0 ? 0 : counts[j];
+            }
+        }
+
+        return fireworksUp;
+    }
+
+    /**
+     * Gets the cost of all the fireworks, with no discount applied
+     * @return  total cost
+     */
+    public double getCost() {
+        // four separate sums, so each addition doesn't wait for the one before it
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        int i = 0;
+        for(; i + 3 < size; i += 4) {
+            sum0 += costs[i] * copies[i];
+            sum1 += costs[i + 1] * copies[i + 1];
+            sum2 += costs[i + 2] * copies[i + 2];
+            sum3 += costs[i + 3] * copies[i + 3];
+        }
+        for(; i < size; i++) {
+            sum0 += costs[i] * copies[i];
+        }
+
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Gets the cost of the fireworks that launch in a range of times, with no discount applied
+     * @param from  first launch time
+     * @param to    last launch time
+     * @return      total cost
+     */
+    public double getSpend(int from, int to) {
+        from = Math.max(from, 0);
+        if(from > to) return 0;
+
+        double sum0 = 0;
+        double sum1 = 0;
+        int i = 0;
+        for(; i + 1 < size; i += 2) {
+            sum0 += costs[i] * (copies[i] & inRange(launches[i], from, to));
+            sum1 += costs[i + 1] * (copies[i + 1] & inRange(launches[i + 1], from, to));
+        }
+        for(; i < size; i++) {
+            sum0 += costs[i] * (copies[i] & inRange(launches[i], from, to));
+        }
+
+        return sum0 + sum1;
+    }
+
+    /**
+     * Gets a mask of all ones if a time is in a range and all zeros if not, for times and ranges that are not
+     * negative
+     */
+    private static int inRange(int time, int from, int to) {
+        return ((from - time - 1) & (time - to - 1)) >> 31;
+    }
+}
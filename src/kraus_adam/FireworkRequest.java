@@ -0,0 +1,60 @@
+/**
+ * Adam Kraus
+ *
+ * This is used to request a firework that can launch any time in a window.
+ */
+package kraus_adam;
+
+/**
+ * Class to store a requested firework for the scheduler.
+ * The firework asks to launch at time, but can be moved as late as latestTime.
+ */
+public class FireworkRequest {
+    /**
+     * Name of company that produced firework, null for the default company
+     */
+    public String company;
+    /**
+     * Time that firework asks to launch
+     */
+    public int time;
+    /**
+     * Latest time that firework can launch
+     */
+    public int latestTime;
+    /**
+     * Length of time that firework is in the air
+     */
+    public int duration;
+    /**
+     * Cost of firework
+     */
+    public double cost;
+
+    /**
+     * FireworkRequest constructor
+     * @param time          time that firework asks to launch
+     * @param latestTime    latest time that firework can launch
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     */
+    public FireworkRequest(int time, int latestTime, int duration, double cost) {
+        this(null, time, latestTime, duration, cost);
+    }
+
+    /**
+     * FireworkRequest constructor
+     * @param company       name of company that produced firework
+     * @param time          time that firework asks to launch
+     * @param latestTime    latest time that firework can launch
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     */
+    public FireworkRequest(String company, int time, int latestTime, int duration, double cost) {
+        this.company = company;
+        this.time = time;
+        this.latestTime = latestTime;
+        this.duration = duration;
+        this.cost = cost;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Adam Kraus
+ *
+ * This file places a batch of requested fireworks into a show without going over its max fireworks.
+ */
+package kraus_adam;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Scheduler that sweeps through time once, placing requested fireworks as soon as there is room.
+ * Requests join a queue when their window opens. Whenever fireworks are free to launch, the queue hands out the
+ * best requests for the goal: the ones that run out of time first for MOST_FIREWORKS, or the most expensive
+ * ones for MOST_COST. When the show is full, MOST_FIREWORKS also trades the placed firework that stays up the
+ * longest for a request that would land sooner. Requests whose window closes before there is room are dropped.
+ * This takes O(n log n) time for n requests.
+ */
+final class FireworkScheduler {
+    private FireworkScheduler() {
+    }
+
+    /**
+     * Places requested fireworks into a show
+     * @param occupancy     fireworks already up at each time
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @param currentTime   current time of the show, no firework can launch before it
+     * @param requests      requested fireworks
+     * @param goal          what to get the most of
+     * @return              time given to each request
+     */
+    static Schedule plan(OccupancyIndex occupancy, int maxFireworks, int currentTime, List<FireworkRequest> requests,
+                         ScheduleGoal goal) {
+        int count = requests.size();
+        int[] latest = new int[count];
+        int[] duration = new int[count];
+        double[] cost = new double[count];
+        int[] launchTimes = new int[count];
+        Arrays.fill(launchTimes, Schedule.DROPPED);
+
+        // requests sorted by the time their window opens, with the index in the low bits
+        long[] opening = new long[count];
+        int valid = 0;
+        for(int i = 0; i < count; i++) {
+            FireworkRequest request = requests.get(i);
+            latest[i] = request.latestTime;
+            duration[i] = request.duration;
+            cost[i] = request.cost;
+
+            int start = Math.max(request.time, currentTime);
+            if(request.duration < 1 || request.cost < 0 || start > request.latestTime) continue;
+            opening[valid++] = ((long) start << 32) | i;
+        }
+        Arrays.sort(opening, 0, valid);
+
+        Comparator<Integer> order;
+        if(goal == ScheduleGoal.MOST_COST) {
+            order = (a, b) -> cost[a] != cost[b] ? Double.compare(cost[b], cost[a])
+                    : Integer.compare(latest[a], latest[b]);
+        } else {
+            order = (a, b) -> latest[a] != latest[b] ? Integer.compare(latest[a], latest[b])
+                    : Integer.compare(duration[a], duration[b]);
+        }
+        PriorityQueue<Integer> waiting = new PriorityQueue<Integer>(order);
+        // placed fireworks still up, by landing time with the index in the low bits
+        TreeSet<Long> up = new TreeSet<Long>();
+
+        int next = 0;
+        long time = 0;
+        while(next < valid || !waiting.isEmpty()) {
+            if(waiting.isEmpty()) time = Math.max(time, opening[next] >>> 32);
+            while(next < valid && (opening[next] >>> 32) <= time) {
+                waiting.add((int) opening[next++]);
+            }
+            while(!up.isEmpty() && (up.first() >>> 31) < time) {
+                up.pollFirst();
+            }
+
+            // fireworks already in the show never launch after the current time, so they only come down from here
+            int alreadyUp = occupancy.countAt(time);
+            int room = maxFireworks - alreadyUp - up.size();
+            while(!waiting.isEmpty()) {
+                int request = waiting.poll();
+                if(latest[request] < time) continue;
+
+                if(room > 0) {
+                    room--;
+                } else if(goal == ScheduleGoal.MOST_FIREWORKS && !up.isEmpty()
+                        && time + duration[request] < (up.last() >>> 31)) {
+                    // trading the firework that stays up longest for one that lands sooner keeps the same count
+                    // and leaves more room later, and the traded firework can still launch later if it has time
+                    int traded = (int) (up.pollLast() & Integer.MAX_VALUE);
+                    launchTimes[traded] = Schedule.DROPPED;
+                    if(latest[traded] >= time) waiting.add(traded);
+                } else {
+                    waiting.add(request);
+                    break;
+                }
+
+                launchTimes[request] = (int) time;
+                up.add(((time + duration[request]) << 31) | request);
+            }
+            if(goal == ScheduleGoal.MOST_FIREWORKS) {
+                // the queue is in latest time order, so closed windows are at the front
+                while(!waiting.isEmpty() && latest[waiting.peek()] <= time) {
+                    waiting.poll();
+                }
+            }
+            if(waiting.isEmpty()) continue;
+
+            // wait for room to open up or for more requests
+            long wake = Long.MAX_VALUE;
+            if(!up.isEmpty()) wake = (up.first() >>> 31) + 1;
+            long cleared = occupancy.firstBelow(time + 1, Integer.MAX_VALUE, alreadyUp);
+            if(cleared >= 0) wake = Math.min(wake, cleared);
+            if(next < valid) wake = Math.min(wake, opening[next] >>> 32);
+            if(wake > Integer.MAX_VALUE) break;
+
+            time = wake;
+        }
+
+        // placed requests in launch time order, with the index in the low bits
+        long[] placed = new long[count];
+        int placedCount = 0;
+        for(int i = 0; i < count; i++) {
+            if(launchTimes[i] != Schedule.DROPPED) placed[placedCount++] = ((long) launchTimes[i] << 32) | i;
+        }
+        Arrays.sort(placed, 0, placedCount);
+
+        int[] placedOrder = new int[placedCount];
+        for(int i = 0; i < placedCount; i++) {
+            placedOrder[i] = (int) placed[i];
+        }
+
+        return new Schedule(requests, launchTimes, placedOrder);
+    }
+}
@@ -1,5 +1,30 @@
 package kraus_adam;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 public class FireworksTest {
     private static final String ERROR_MARK = ">>>>>>>>>>";
 
@@ -31,6 +56,81 @@ public class FireworksTest {
         testCompanyTown();
         System.out.println();
 
+        testSnapshots();
+        System.out.println();
+
+        testCancelAndReschedule();
+        System.out.println();
+
+        testSessions();
+        System.out.println();
+
+        testForks();
+        System.out.println();
+
+        testScheduler();
+        System.out.println();
+
+        testMetrics();
+        System.out.println();
+
+        testFlightRecorderEvents();
+        System.out.println();
+
+        testWarningTiers();
+        System.out.println();
+
+        testCostLedger();
+        System.out.println();
+
+        testLeaderboard();
+        System.out.println();
+
+        testAnalytics();
+        System.out.println();
+
+        testTownFireworksUpAt();
+        System.out.println();
+
+        testAirspaceCap();
+        System.out.println();
+
+        testShowRegistry();
+        System.out.println();
+
+        testShowSites();
+        System.out.println();
+
+        testTownRegistry();
+        System.out.println();
+
+        testTownServer();
+        System.out.println();
+
+        testShardedTown();
+        System.out.println();
+
+        testLazyWarnings();
+        System.out.println();
+
+        testLaunchWindows();
+        System.out.println();
+
+        testTimeline();
+        System.out.println();
+
+        testColumnExport();
+        System.out.println();
+
+        testFireworkColumns();
+        System.out.println();
+
+        testBookingAllocations();
+        System.out.println();
+
+        testWorkloadReplay();
+        System.out.println();
+
         System.out.println("All tests finished.");
 
     }
@@ -650,6 +750,1694 @@ public class FireworksTest {
     }
 
 
+    public static void testSnapshots() {
+        System.out.println("\nTier 11: Testing snapshots while fireworks are added...........................");
+        Town town = new Town();
+        int plain = town.add(new Show("plain", 2));
+        int company = town.add(new CompanyShow("paid", 2));
+
+        town.addFirework(plain, 1, 5);
+        town.addFirework(company, "ABC", 2, 5, 60);
+        TownSnapshot before = town.snapshot();
+        String beforeString = town.toString();
+
+        town.addFirework(plain, 3, 5);
+        town.addFirework(company, "ABC", 3, 5, 50);
+        town.addFirework(company, "Big Burst", 10);
+
+        if (before.getFireworksUp() != 2)
+            System.out.println(ERROR_MARK + " Snapshot should still have 2 fireworks up. Got " + before.getFireworksUp());
+        if (before.getShow(plain).getFireworksUpAt(3) != 1)
+            System.out.println(ERROR_MARK + " Snapshot should not see fireworks added after it was taken.");
+        if (Math.abs(before.getTotalCost() - 80) > 0.001)
+            System.out.println(ERROR_MARK + " Snapshot should cost $80. Got $" + before.getTotalCost());
+        if (before.getTotalWarnings() != 0 || before.hasWarning())
+            System.out.println(ERROR_MARK + " Snapshot should have no town warnings.");
+        if (!before.toString().equals(beforeString)) {
+            System.out.println(ERROR_MARK + " Snapshot status should match the town when it was taken");
+            showBeforeAfter(before.toString(), beforeString);
+        }
+
+        TownSnapshot after = town.snapshot();
+        if (after.getFireworksUp() != town.getFireworksUp())
+            System.out.println(ERROR_MARK + " New snapshot should match the town's fireworks up.");
+        if (Math.abs(after.getTotalCost() - town.getTotalCost()) > 0.001)
+            System.out.println(ERROR_MARK + " New snapshot should match the town's cost.");
+        if (after.getTotalWarnings() != town.getTotalWarnings())
+            System.out.println(ERROR_MARK + " New snapshot should match the town's warnings.");
+        if (!after.toString().equals(town.toString())) {
+            System.out.println(ERROR_MARK + " New snapshot status should match the town");
+            showBeforeAfter(after.toString(), town.toString());
+        }
+
+        System.out.println(before);
+    }
+
+
+    public static void testCancelAndReschedule() {
+        System.out.println("\nTier 12: Testing cancelled and rescheduled fireworks...........................");
+        Show show = new Show("scrub", 2);
+        show.addFirework(5, 5);
+        show.addFirework(5, 3);
+        show.Update(6);
+        if (show.getTotalWarnings() != 1)
+            System.out.println(ERROR_MARK + " Two fireworks up in a show of 2 should be a warning.");
+        if (show.cancelFirework(5, 4))
+            System.out.println(ERROR_MARK + " Cancelled a firework that was never added.");
+        if (!show.cancelFirework(5, 3))
+            System.out.println(ERROR_MARK + " Failed to cancel a firework in the show.");
+        if (show.getTotalWarnings() != 0 || show.hasWarning())
+            System.out.println(ERROR_MARK + " Cancelling the firework should remove its warning.");
+        if (show.getFireworksUpAt(7) != 1 || Math.abs(show.getCost() - 20) > 0.001)
+            System.out.println(ERROR_MARK + " Cancelled firework should not be up or billed.");
+        if (show.rescheduleFirework(5, 5, 20, 4))
+            System.out.println(ERROR_MARK + " Should not reschedule a firework into the past.");
+        if (!show.rescheduleFirework(5, 5, 20, 8))
+            System.out.println(ERROR_MARK + " Failed to reschedule a firework.");
+        if (show.getFireworksUpAt(6) != 0 || show.getFireworksUpAt(13) != 1 || show.getFireworksUp() != 1)
+            System.out.println(ERROR_MARK + " Rescheduled firework should only be up from time 8 to 13.");
+
+        CompanyShow companyShow = new CompanyShow("paid", 4);
+        companyShow.addFirework("ABC", 1, 2, 60);
+        companyShow.addFirework("ABC", 1, 2, 50);
+        companyShow.addFirework("Underdog", 2, 2, 30);
+        if (Math.abs(companyShow.getCost() - 134.5) > 0.001)
+            System.out.println(ERROR_MARK + " ABC should have a discount before cancelling.");
+        if (companyShow.cancelFirework("Underdog", 1, 2, 60))
+            System.out.println(ERROR_MARK + " Cancelled a firework from the wrong company.");
+        companyShow.cancelFirework("ABC", 1, 2, 50);
+        companyShow.cancelFirework("Underdog", 2, 2, 30);
+        String result = "Status for paid show: 1 fireworks up (25%)\n--ABC $60.00";
+        if (!companyShow.toString().equals(result)) {
+            System.out.println(ERROR_MARK + " Cancelled fireworks should be taken off the company bills");
+            showBeforeAfter(companyShow.toString(), result);
+        }
+        if (Math.abs(companyShow.getCost() - 60) > 0.001)
+            System.out.println(ERROR_MARK + " ABC should lose its discount. Got $" + companyShow.getCost());
+
+        Town town = new Town();
+        int red = town.add(new Show("red", 1));
+        int blue = town.add(new CompanyShow("blue", 1));
+        town.addFirework(red, 3, 4);
+        town.addFirework(blue, "ABC", 3, 4);
+        if (town.getTotalWarnings() != 1 || !town.hasWarning())
+            System.out.println(ERROR_MARK + " Town should have a warning at time 3.");
+        town.cancelFirework(blue, "ABC", 3, 4, Firework.DEFAULT_COST);
+        if (town.getTotalWarnings() != 0)
+            System.out.println(ERROR_MARK + " Town warning should go away when a firework is cancelled.");
+        if (!town.rescheduleFirework(red, 3, 4, Firework.DEFAULT_COST, 5) || town.getShow(red).getFireworksUpAt(3) != 0)
+            System.out.println(ERROR_MARK + " Town should reschedule a firework in a show.");
+
+        System.out.println(town);
+    }
+
+
+    public static void testSessions() {
+        System.out.println("\nTier 13: Testing what-if sessions...........................");
+        CompanyShow show = new CompanyShow("plan", 5);
+        show.addFirework("ABC", 1, 10, 50);
+
+        CompanyShowSession session = show.begin();
+        session.getShow().addFirework("ABC", 2, 10, 60);
+        session.getShow().addFirework("ABC", 2, 10);
+        session.getShow().addFirework("ABC", 3, 10);
+        if (show.getFireworksUp() != 1 || Math.abs(show.getCost() - 50) > 0.001)
+            System.out.println(ERROR_MARK + " Staged fireworks should not change the show.");
+        if (session.getShow().getFireworksUp() != 4 || !session.getShow().hasWarning())
+            System.out.println(ERROR_MARK + " Session should see its 4 staged fireworks and the warning.");
+        if (Math.abs(session.getShow().getCost() - 142.5) > 0.001)
+            System.out.println(ERROR_MARK + " Session should cost $142.50. Got $" + session.getShow().getCost());
+        session.rollback();
+        if (session.commit() || show.getFireworksUp() != 1)
+            System.out.println(ERROR_MARK + " A rolled back session should not commit.");
+
+        session = show.begin();
+        session.getShow().addFirework("Underdog", 4, 2, 10);
+        if (!session.commit())
+            System.out.println(ERROR_MARK + " Session should commit.");
+        if (show.getFireworksUpAt(5) != 2 || Math.abs(show.getCost() - 60) > 0.001)
+            System.out.println(ERROR_MARK + " Committed firework should be in the show.");
+
+        session = show.begin();
+        session.getShow().addFirework(6);
+        show.addFirework(5);
+        if (session.commit() || show.getFireworksUpAt(6) != 3)
+            System.out.println(ERROR_MARK + " Session should not commit over changes made to the show after it started.");
+
+        Town town = new Town();
+        int red = town.add(new Show("red", 1));
+        int blue = town.add(new Show("blue", 1));
+        town.addFirework(red, 1, 5);
+        TownSession townSession = town.begin();
+        townSession.getTown().addFirework(blue, 2, 5);
+        if (town.getTotalWarnings() != 0 || townSession.getTown().getTotalWarnings() != 1)
+            System.out.println(ERROR_MARK + " Only the staged town should have a warning.");
+        if (!townSession.commit() || town.getTotalWarnings() != 1 || town.getShow(blue).getFireworksUp() != 1)
+            System.out.println(ERROR_MARK + " Committed town should have the staged firework and warning.");
+
+        System.out.println(town);
+    }
+
+
+    public static void testForks() {
+        System.out.println("\nTier 14: Testing forked plans...........................");
+        CompanyShow planA = new CompanyShow("plan", 3);
+        planA.addFirework("ABC", 1, 4, 90);
+        CompanyShow planB = planA.fork();
+
+        planA.addFirework("ABC", 2, 4, 20);
+        planB.cancelFirework("ABC", 1, 4, 90);
+        planB.addFirework("Big Burst", 2, 4, 20);
+        planB.addFirework("Big Burst", 3, 4, 20);
+        planB.addFirework("Big Burst", 3, 4, 20);
+
+        String resultA = "Status for plan show: 2 fireworks up (66.7%)\n--ABC $110.00";
+        String resultB = "Status for plan show: 3 fireworks up (WARNING)\n--Big Burst $60.00";
+        if (!planA.toString().equals(resultA)) {
+            System.out.println(ERROR_MARK + " Plan A should not see the changes to plan B");
+            showBeforeAfter(planA.toString(), resultA);
+        }
+        if (!planB.toString().equals(resultB)) {
+            System.out.println(ERROR_MARK + " Plan B should not see the changes to plan A");
+            showBeforeAfter(planB.toString(), resultB);
+        }
+        if (Math.abs(planA.getCost() - 104.5) > 0.001 || Math.abs(planB.getCost() - 60) > 0.001)
+            System.out.println(ERROR_MARK + " Forked plans should have their own costs.");
+        if (planA.getTotalWarnings() != 0 || planB.getTotalWarnings() != 1)
+            System.out.println(ERROR_MARK + " Forked plans should have their own warnings.");
+
+        Town town = new Town();
+        int red = town.add(new Show("red", 1));
+        Town other = town.fork();
+        other.addFirework(red, 3);
+        if (town.getShow(red).getFireworksUpAt(3) != 0 || other.getFireworksUp() != 1)
+            System.out.println(ERROR_MARK + " Forked towns should not share new fireworks.");
+
+        System.out.println(planB);
+    }
+
+
+    public static void testScheduler() {
+        System.out.println("\nTier 15: Testing the batch scheduler...........................");
+        Show show = new Show("batch", 2);
+        List<FireworkRequest> requests = new ArrayList<FireworkRequest>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(new FireworkRequest(1, 3, 1, 20));
+        }
+        Schedule schedule = show.scheduleFireworks(requests, ScheduleGoal.MOST_FIREWORKS);
+        if (schedule.getPlacedCount() != 4 || schedule.getMovedCount() != 2 || schedule.getDroppedCount() != 1)
+            System.out.println(ERROR_MARK + " Expected 4 placed, 2 moved and 1 dropped. Got " + schedule.getPlacedCount()
+                    + " placed, " + schedule.getMovedCount() + " moved and " + schedule.getDroppedCount() + " dropped.");
+        if (show.getFireworksUpAt(1) != 2 || show.getFireworksUpAt(3) != 2 || Math.abs(show.getCost() - 80) > 0.001)
+            System.out.println(ERROR_MARK + " Scheduled fireworks should be in the show.");
+
+        // adding these in order would keep the long firework and lose both short ones
+        Show greedy = new Show("greedy", 1);
+        requests = new ArrayList<FireworkRequest>();
+        requests.add(new FireworkRequest(0, 0, 10, 20));
+        requests.add(new FireworkRequest(0, 5, 2, 20));
+        requests.add(new FireworkRequest(0, 5, 2, 20));
+        schedule = greedy.scheduleFireworks(requests, ScheduleGoal.MOST_FIREWORKS);
+        if (schedule.getPlacedCount() != 2 || !schedule.isDropped(0))
+            System.out.println(ERROR_MARK + " Scheduler should keep the two short fireworks.");
+
+        CompanyShow paid = new CompanyShow("paid", 1);
+        requests = new ArrayList<FireworkRequest>();
+        requests.add(new FireworkRequest("ABC", 0, 0, 3, 20));
+        requests.add(new FireworkRequest("Big Burst", 0, 0, 3, 75));
+        schedule = paid.scheduleFireworks(requests, ScheduleGoal.MOST_COST);
+        if (!schedule.isDropped(0) || schedule.getLaunchTime(1) != 0 || Math.abs(paid.getCost() - 75) > 0.001)
+            System.out.println(ERROR_MARK + " Scheduler should keep the more expensive firework.");
+
+        Town town = new Town();
+        int red = town.add(new Show("red", 1));
+        requests = new ArrayList<FireworkRequest>();
+        requests.add(new FireworkRequest(2, 6, 1, 20));
+        requests.add(new FireworkRequest(2, 6, 1, 20));
+        schedule = town.scheduleFireworks(red, requests, ScheduleGoal.MOST_FIREWORKS);
+        if (schedule.getLaunchTime(1) != 4 || town.getTotalWarnings() != 1)
+            System.out.println(ERROR_MARK + " Town should place the second firework at time 4 and have one warning.");
+
+        // batches placed through the town take turns with bookings into the same show from other threads
+        Town busy = new Town();
+        int blue = busy.add(new Show("blue", 1000));
+        busy.getFireworksUpAt(0);
+        AtomicInteger ticks = new AtomicInteger();
+        AtomicInteger placed = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            int thread = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 500; j++) {
+                    int time = ticks.getAndIncrement() / 4;
+                    if (thread == 0) {
+                        List<FireworkRequest> batch = new ArrayList<FireworkRequest>();
+                        for (int k = 0; k < 4; k++) batch.add(new FireworkRequest(time, time + 3, 2, 20));
+                        placed.addAndGet(busy.scheduleFireworks(blue, batch, ScheduleGoal.MOST_FIREWORKS).getPlacedCount());
+                    } else if (busy.addFirework(blue, time, 2, 20)) {
+                        placed.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) thread.join();
+        } catch (InterruptedException e) {
+            System.out.println(ERROR_MARK + " Interrupted.");
+        }
+        int[] stored = new int[1];
+        busy.getShow(blue).forEachFirework((firework, count) -> stored[0] += count);
+        boolean counted = stored[0] == placed.get();
+        for (int t = 0; t < 300 && counted; t++) counted = busy.getFireworksUpAt(t) == busy.getShow(blue).getFireworksUpAt(t);
+        if (!counted)
+            System.out.println(ERROR_MARK + " Batches placed alongside bookings should all be in the show and town: "
+                    + stored[0] + " " + placed.get());
+
+        System.out.println(paid);
+    }
+
+    public static void testMetrics() {
+        System.out.println("\nTier 16: Testing metrics and JMX...........................");
+        Show show = new Show("metered", 2);
+        show.addFirework(0, 1, 20);
+        if (show.getMetrics() != null)
+            System.out.println(ERROR_MARK + " Metrics should be off until they are enabled.");
+
+        ShowMetrics metrics = show.enableMetrics();
+        show.addFirework(5, 3, 20);
+        show.addFirework(5, 0, 20);
+        show.addFirework(5, 3, -1);
+        show.addFirework(5, 3, 20);
+        show.addFirework(2, 3, 20);
+        show.addFirework(6, 1, 20);
+        if (metrics.getAccepted() != 2 || metrics.getRejectedBadDuration() != 1 || metrics.getRejectedNegativeCost() != 1
+                || metrics.getRejectedInPast() != 1 || metrics.getRejectedOverCapacity() != 1)
+            System.out.println(ERROR_MARK + " Wrong booking counts: " + metrics.getAccepted() + " accepted, "
+                    + metrics.getRejectedBadDuration() + " bad duration, " + metrics.getRejectedNegativeCost()
+                    + " negative cost, " + metrics.getRejectedInPast() + " in past, "
+                    + metrics.getRejectedOverCapacity() + " over capacity.");
+        if (metrics.getWarningsEntered() != 1 || metrics.getUpdates() == 0)
+            System.out.println(ERROR_MARK + " Metrics should have seen one warning and some updates.");
+
+        show.cancelFirework(5, 3, 20);
+        if (metrics.getWarningsCleared() != 1)
+            System.out.println(ERROR_MARK + " Cancelling should clear the warning in the metrics.");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (!server.isRegistered(metrics.getObjectName())
+                    || !Long.valueOf(2).equals(server.getAttribute(metrics.getObjectName(), "Accepted")))
+                System.out.println(ERROR_MARK + " Show metrics should be readable through JMX.");
+            server.invoke(metrics.getObjectName(), "reset", new Object[0], new String[0]);
+        } catch (Exception e) {
+            System.out.println(ERROR_MARK + " JMX failed: " + e);
+        }
+        if (metrics.getAccepted() != 0)
+            System.out.println(ERROR_MARK + " Reset should clear the metrics.");
+
+        show.disableMetrics();
+        if (server.isRegistered(metrics.getObjectName()) || show.getMetrics() != null)
+            System.out.println(ERROR_MARK + " Disabled metrics should be removed from JMX.");
+
+        Town town = new Town();
+        TownMetrics townMetrics = town.enableMetrics();
+        int red = town.add(new Show("red", 1));
+        town.addFirework(red, 1, 2, 20);
+        town.addFirework(red, 1, 0, 20);
+        if (townMetrics.getAccepted() != 1 || townMetrics.getRejected() != 1
+                || town.getShow(red).getMetrics() == null || town.getShow(red).getMetrics().getRejectedBadDuration() != 1)
+            System.out.println(ERROR_MARK + " Town metrics should count its shows' bookings.");
+        town.disableMetrics();
+        if (town.getShow(red).getMetrics() != null || server.isRegistered(townMetrics.getObjectName()))
+            System.out.println(ERROR_MARK + " Disabling town metrics should disable its shows' metrics.");
+
+        System.out.println(metrics.getObjectName());
+    }
+
+    public static void testFlightRecorderEvents() {
+        System.out.println("\nTier 17: Testing flight recorder events...........................");
+        int bookings = 0;
+        int rejected = 0;
+        int showAdvances = 0;
+        int townAdvances = 0;
+        int entered = 0;
+        int cleared = 0;
+        try {
+            File file = File.createTempFile("fireworks", ".jfr");
+            try (Recording recording = new Recording()) {
+                recording.enable("kraus_adam.Booking");
+                recording.enable("kraus_adam.ClockAdvance");
+                recording.enable("kraus_adam.Warning");
+                recording.start();
+
+                Town town = new Town();
+                int red = town.add(new CompanyShow("red", 1));
+                town.addFirework(red, "ABC", 2, 3, 20);
+                town.addFirework(red, "ABC", 3, 3, 20);
+                town.cancelFirework(red, "ABC", 2, 3, 20);
+
+                recording.stop();
+                recording.dump(file.toPath());
+            }
+
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                String name = event.getEventType().getName();
+                if (name.equals("kraus_adam.Booking")) {
+                    bookings++;
+                    if (event.getString("outcome").equals("OVER_CAPACITY")) rejected++;
+                    if (!"ABC".equals(event.getString("company")) || !"red".equals(event.getString("show")))
+                        System.out.println(ERROR_MARK + " Booking event should have the show and company.");
+                } else if (name.equals("kraus_adam.ClockAdvance")) {
+                    if (event.getString("show") == null) townAdvances++;
+                    else showAdvances++;
+                } else if (name.equals("kraus_adam.Warning")) {
+                    if (event.getBoolean("entered")) entered++;
+                    else cleared++;
+                }
+            }
+            file.delete();
+        } catch (Exception e) {
+            System.out.println(ERROR_MARK + " Recording failed: " + e);
+        }
+
+        if (bookings != 2 || rejected != 1)
+            System.out.println(ERROR_MARK + " Expected 2 booking events with 1 rejected. Got " + bookings + " and " + rejected);
+        // the show advances when the firework is added and again when the town updates it
+        if (showAdvances != 2 || townAdvances != 1)
+            System.out.println(ERROR_MARK + " Expected 2 show and 1 town clock advances. Got " + showAdvances + " and " + townAdvances);
+        // the show and the town each enter one warning, and cancelling clears both
+        if (entered != 2 || cleared != 2)
+            System.out.println(ERROR_MARK + " Expected 2 warnings entered and 2 cleared. Got " + entered + " and " + cleared);
+
+        System.out.println("Recorded " + bookings + " bookings.");
+    }
+
+    public static void testWarningTiers() {
+        System.out.println("\nTier 18: Testing warning tiers...........................");
+        Show show = new Show("tiers", 10);
+        if (show.setWarningTiers(0) || show.setWarningTiers(80, 80) || show.setWarningTiers(101))
+            System.out.println(ERROR_MARK + " Thresholds must be above 0, at most 100, and not repeated.");
+        if (!show.setWarningTiers(95, 60, 80) || show.getWarningTierCount() != 3 || show.getWarningTier(0) != 60)
+            System.out.println(ERROR_MARK + " Tiers should be set lowest first.");
+
+        for (int i = 0; i < 6; i++) show.addFirework(1, 5);
+        show.addFirework(2, 5);
+        show.addFirework(2, 5);
+        show.addFirework(3, 5);
+        show.addFirework(3, 5);
+        show.Update(10);
+        if (show.getTierAt(1) != 0 || show.getTierAt(2) != 1 || show.getTierAt(4) != 2 || show.getTierAt(8) != -1)
+            System.out.println(ERROR_MARK + " Wrong tiers: " + show.getTierAt(1) + " " + show.getTierAt(2) + " "
+                    + show.getTierAt(4) + " " + show.getTierAt(8));
+        for (int i = 0; i < 6; i++) show.addFirework(12, 5);
+        if (show.getTierWarnings(0) != 2 || show.getTierWarnings(1) != 1 || show.getTierWarnings(2) != 1)
+            System.out.println(ERROR_MARK + " Expected 2, 1 and 1 tier warnings. Got " + show.getTierWarnings(0) + ", "
+                    + show.getTierWarnings(1) + " and " + show.getTierWarnings(2));
+        if (show.getTotalWarnings() != 1)
+            System.out.println(ERROR_MARK + " Tiers should not change the regular warnings.");
+
+        ShowSnapshot before = show.snapshot();
+        show.cancelFirework(3, 5);
+        if (show.getTierWarnings(2) != 0 || show.getTierWarnings(1) != 1 || before.getTierWarnings(2) != 1)
+            System.out.println(ERROR_MARK + " Cancelling should only clear the top tier, and not in the snapshot.");
+
+        Town town = new Town();
+        int small = town.add(new Show("small", 2));
+        int large = town.add(new Show("large", 4));
+        town.setWarningTiers(50, 100);
+        town.addFirework(small, 1, 2);
+        if (town.getTierAt(1) != -1)
+            System.out.println(ERROR_MARK + " Town should not be at a tier until every show is.");
+        town.addFirework(large, 1, 2);
+        town.addFirework(large, 1, 2);
+        if (town.getTierAt(1) != 0 || town.getTierWarnings(0) != 1 || town.getTierWarnings(1) != 0)
+            System.out.println(ERROR_MARK + " Town should be at the 50 percent tier.");
+        if (town.snapshot().getTierWarnings(0) != 1)
+            System.out.println(ERROR_MARK + " Town snapshot should have the tier warnings.");
+        town.cancelFirework(large, 1, 2, Firework.DEFAULT_COST);
+        if (town.getTierWarnings(0) != 0)
+            System.out.println(ERROR_MARK + " Cancelling should clear the town tier warning.");
+
+        System.out.println("Tier warnings: " + show.getTierWarnings(0) + " " + show.getTierWarnings(1) + " "
+                + show.getTierWarnings(2));
+    }
+
+    public static void testCostLedger() {
+        System.out.println("\nTier 19: Testing spend by launch time...........................");
+        CompanyShow show = new CompanyShow("ledger", 100);
+        show.addFirework("ABC", 5, 3, 20);
+        show.addFirework("ABC", 10, 3, 30);
+        show.addFirework("Big Burst", 10, 3, 75);
+        show.addFirework("Big Burst", 20, 3, 100);
+        if (Math.abs(show.getSpend(0, 10) - 125) > 0.001 || Math.abs(show.getSpend(11, 30) - 100) > 0.001)
+            System.out.println(ERROR_MARK + " Wrong show spend: " + show.getSpend(0, 10) + " " + show.getSpend(11, 30));
+        if (Math.abs(show.getCompanySpend("ABC", 6, 20) - 30) > 0.001 || show.getCompanySpend("Nobody", 0, 30) != 0)
+            System.out.println(ERROR_MARK + " Wrong company spend: " + show.getCompanySpend("ABC", 6, 20));
+
+        CompanyShow fork = show.fork();
+        show.cancelFirework("ABC", 10, 3, 30);
+        if (show.getCompanySpend("ABC", 0, 30) != 20 || fork.getCompanySpend("ABC", 0, 30) != 50)
+            System.out.println(ERROR_MARK + " Cancelling should only change the spend of its own show.");
+
+        Town town = new Town();
+        town.add(show);
+        int blue = town.add(new Show("blue", 10));
+        town.addFirework(blue, 25, 3, 40);
+        double[] buckets = town.getSpendByBucket(0, 10, 3);
+        if (buckets.length != 3 || buckets[0] != 20 || buckets[1] != 75 || buckets[2] != 140)
+            System.out.println(ERROR_MARK + " Wrong town spend by bucket.");
+        if (town.getCompanySpend("Big Burst", 0, 100) != 175 || town.getSpend(21, 100) != 40)
+            System.out.println(ERROR_MARK + " Wrong town spend.");
+
+        // compare against adding up the fireworks one at a time
+        Random random = new Random(34);
+        CompanyShow fuzz = new CompanyShow("fuzz", 1000);
+        List<Firework> added = new ArrayList<Firework>();
+        String[] companies = {"ABC", "Big Burst", "Sky"};
+        for (int i = 0; i < 500; i++) {
+            if (!added.isEmpty() && random.nextInt(4) == 0) {
+                Firework firework = added.remove(random.nextInt(added.size()));
+                fuzz.cancelFirework(firework.company, firework.time, firework.duration, firework.cost);
+                continue;
+            }
+            Firework firework = new Firework(companies[random.nextInt(3)], i / 2 + random.nextInt(50), 1, random.nextInt(100));
+            if (fuzz.addFirework(firework.company, firework.time, firework.duration, firework.cost)) added.add(firework);
+        }
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(300);
+            int to = from + random.nextInt(100);
+            String company = companies[random.nextInt(3)];
+            double spend = 0;
+            double companySpend = 0;
+            for (Firework firework : added) {
+                if (firework.time < from || firework.time > to) continue;
+                spend += firework.cost;
+                if (firework.company.equals(company)) companySpend += firework.cost;
+            }
+            if (Math.abs(fuzz.getSpend(from, to) - spend) > 0.001
+                    || Math.abs(fuzz.getCompanySpend(company, from, to) - companySpend) > 0.001) {
+                System.out.println(ERROR_MARK + " Spend from " + from + " to " + to + " does not match the fireworks.");
+                break;
+            }
+        }
+
+        System.out.println("Town spend by bucket: " + buckets[0] + " " + buckets[1] + " " + buckets[2]);
+    }
+
+    public static void testLeaderboard() {
+        System.out.println("\nTier 20: Testing the company leaderboard...........................");
+        Town town = new Town();
+        int red = town.add(new CompanyShow("red", 100));
+        int blue = town.add(new CompanyShow("blue", 100));
+        town.add(new Show("plain", 100));
+        if (!town.getTopCompanies(3).isEmpty())
+            System.out.println(ERROR_MARK + " Town with no companies should have an empty leaderboard.");
+
+        town.addFirework(red, "ABC", 1, 3, 60);
+        town.addFirework(blue, "ABC", 1, 3, 60);
+        town.addFirework(red, "Big Burst", 1, 3, 110);
+        List<CompanyStanding> top = town.getTopCompanies(5);
+        List<CompanyStanding> discounted = town.getTopCompaniesDiscounted(1);
+        if (top.size() != 2 || !top.get(0).getCompanyName().equals("ABC") || top.get(0).getBill() != 120
+                || top.get(1).getBill() != 110 || discounted.size() != 1 || discounted.get(0).getBill() != 120)
+            System.out.println(ERROR_MARK + " Wrong leaderboard: " + top + " " + discounted);
+
+        // changes made straight to a show still reach the leaderboard
+        ((CompanyShow) town.getShow(red)).addFirework("Sky", 2, 3, 200);
+        town.addFirework(red, "ABC", 2, 3, 50);
+        top = town.getTopCompanies(1);
+        discounted = town.getTopCompaniesDiscounted(3);
+        if (!top.get(0).getCompanyName().equals("Sky") || Math.abs(discounted.get(1).getBill() - 164.5) > 0.001
+                || Math.abs(discounted.get(2).getBill() - 104.5) > 0.001)
+            System.out.println(ERROR_MARK + " Wrong leaderboard after adding: " + top + " " + discounted);
+
+        town.cancelFirework(red, "Sky", 2, 3, 200);
+        top = town.getTopCompanies(5);
+        if (top.size() != 2 || !top.get(0).getCompanyName().equals("ABC") || top.get(0).getBill() != 170)
+            System.out.println(ERROR_MARK + " Cancelled company should leave the leaderboard: " + top);
+
+        TownSession session = town.begin();
+        session.getTown().addFirework(blue, "Sky", 3, 3, 500);
+        if (town.getTopCompanies(1).get(0).getBill() != 170)
+            System.out.println(ERROR_MARK + " Session should not change the town leaderboard.");
+        session.commit();
+        if (!town.getTopCompanies(1).get(0).getCompanyName().equals("Sky"))
+            System.out.println(ERROR_MARK + " Committed session should change the town leaderboard.");
+
+        System.out.println(town.getTopCompanies(3));
+    }
+
+    public static void testAnalytics() {
+        System.out.println("\nTier 21: Testing occupancy analytics...........................");
+        Show show = new Show("analytics", 3);
+        show.addFirework(1, 2);
+        show.addFirework(1, 3);
+        show.addFirework(2, 1);
+        OccupancyAnalytics report = show.getAnalytics(0, 5);
+        if (report.getTicksAt(0) != 2 || report.getTicksAt(1) != 1 || report.getTicksAt(2) != 1
+                || report.getTicksAt(3) != 2 || report.getPeakFireworksUp() != 3)
+            System.out.println(ERROR_MARK + " Wrong histogram: " + report);
+        if (Math.abs(report.getUtilization() - 50) > 0.001 || Math.abs(report.getWarningPercent() - 100.0 / 3) > 0.001)
+            System.out.println(ERROR_MARK + " Wrong utilization or warning percent: " + report);
+        if (show.getAnalytics(0, 5) != report || show.getAnalytics(-10, 5).getTicksAt(0) != 12)
+            System.out.println(ERROR_MARK + " Analytics should be kept for the same range.");
+        show.addFirework(4, 1);
+        if (show.getAnalytics(0, 5) == report || show.getAnalytics(0, 5).getTicksAt(2) != 2)
+            System.out.println(ERROR_MARK + " Adding a firework should make a new report.");
+
+        // compare against checking every time
+        Random random = new Random(36);
+        Town town = new Town();
+        for (int i = 0; i < 3; i++) {
+            int index = town.add(new Show("show" + i, 5 + i));
+            for (int j = 0; j < 200; j++) {
+                town.getShow(index).addFirework(j / 2 + random.nextInt(4), 1 + random.nextInt(6));
+            }
+        }
+        OccupancyAnalytics townReport = town.getAnalytics(-5, 120);
+        long[] ticksAt = new long[30];
+        int warnings = 0;
+        for (int t = -5; t <= 120; t++) {
+            int fireworksUp = 0;
+            boolean warning = true;
+            for (int i = 0; i < 3; i++) {
+                Show each = town.getShow(i);
+                fireworksUp += each.getFireworksUpAt(t);
+                warning &= Show.isWarning(each.getFireworksUpAt(t), each.getMaxFireworks());
+            }
+            ticksAt[fireworksUp]++;
+            if (warning) warnings++;
+        }
+        for (int up = 0; up < ticksAt.length; up++) {
+            if (townReport.getTicksAt(up) != ticksAt[up]) {
+                System.out.println(ERROR_MARK + " Town histogram is wrong at " + up + " fireworks up.");
+                break;
+            }
+        }
+        if (Math.abs(townReport.getWarningPercent() - warnings * 100.0 / 126) > 0.001)
+            System.out.println(ERROR_MARK + " Town warning percent is wrong: " + townReport);
+        if (town.getAnalytics(-5, 120) != townReport)
+            System.out.println(ERROR_MARK + " Town analytics should be kept until the town changes.");
+
+        System.out.println(report);
+    }
+
+    public static void testTownFireworksUpAt() {
+        System.out.println("\nTier 22: Testing town fireworks up at any time...........................");
+        Town town = new Town();
+        int red = town.add(new Show("red", 5));
+        int blue = town.add(new CompanyShow("blue", 5));
+        town.addFirework(red, 2, 4);
+        town.addFirework(blue, "ABC", 3, 1);
+        if (town.getFireworksUpAt(3) != 2 || town.getFireworksUpAt(5) != 1 || town.getFireworksUpAt(100) != 0)
+            System.out.println(ERROR_MARK + " Wrong town fireworks up.");
+
+        // every way a show can change should reach the town count
+        Random random = new Random(37);
+        town.add(new Show("green", 4));
+        ((CompanyShow) town.getShow(blue)).addFirework("Sky", 10, 5);
+        for (int i = 0; i < 300; i++) {
+            int show = random.nextInt(3);
+            int time = i / 3 + random.nextInt(10);
+            int duration = 1 + random.nextInt(5);
+            switch (random.nextInt(4)) {
+                case 0: town.getShow(show).addFirework(time, duration); break;
+                case 1: town.cancelFirework(show, i / 3, 1 + random.nextInt(5), Firework.DEFAULT_COST); break;
+                case 2: town.rescheduleFirework(show, i / 3, duration, Firework.DEFAULT_COST, time); break;
+                default: town.addFirework(show, time, duration);
+            }
+        }
+        for (int t = 0; t < 120; t++) {
+            int fireworksUp = town.getShow(0).getFireworksUpAt(t) + town.getShow(1).getFireworksUpAt(t)
+                    + town.getShow(2).getFireworksUpAt(t);
+            if (town.getFireworksUpAt(t) != fireworksUp) {
+                System.out.println(ERROR_MARK + " Town count should follow the shows at " + t);
+                break;
+            }
+        }
+        TownSession session = town.begin();
+        session.getTown().addFirework(red, 200, 3);
+        session.getTown().add(new Show("late", 3));
+        session.getTown().addFirework(3, 201, 3);
+        session.commit();
+        TownSnapshot snapshot = town.snapshot();
+        for (int t = 0; t < 210; t++) {
+            int fireworksUp = 0;
+            for (int i = 0; i < 4; i++) fireworksUp += town.getShow(i).getFireworksUpAt(t);
+            if (town.getFireworksUpAt(t) != fireworksUp || snapshot.getFireworksUpAt(t) != fireworksUp) {
+                System.out.println(ERROR_MARK + " Town fireworks up at " + t + " should be " + fireworksUp
+                        + ", got " + town.getFireworksUpAt(t));
+                break;
+            }
+        }
+
+        System.out.println("Town fireworks up at 202: " + town.getFireworksUpAt(202));
+    }
+
+    public static void testAirspaceCap() {
+        System.out.println("\nTier 23: Testing the town airspace cap...........................");
+        Town town = new Town();
+        int red = town.add(new Show("red", 5));
+        int blue = town.add(new CompanyShow("blue", 5));
+        town.addFirework(red, 10, 2);
+        town.addFirework(red, 10, 2);
+        if (town.getAirspaceCap() != Town.NO_AIRSPACE_CAP || town.setAirspaceCap(-1) || !town.setAirspaceCap(3))
+            System.out.println(ERROR_MARK + " Airspace cap should only take 0 or more.");
+        ShowMetrics metrics = town.getShow(blue).enableMetrics();
+        if (!town.addFirework(blue, "ABC", 10, 2) || town.addFirework(blue, "ABC", 11, 2))
+            System.out.println(ERROR_MARK + " Third firework should fit under the cap and the fourth should not.");
+        if (town.getShow(blue).addFirework(12, 2) || metrics.getRejectedOverAirspaceCap() != 2)
+            System.out.println(ERROR_MARK + " Adding straight to a show should still be held to the cap.");
+        town.getShow(blue).disableMetrics();
+        if (!town.addFirework(blue, "ABC", 13, 2))
+            System.out.println(ERROR_MARK + " Firework after the others land should fit under the cap.");
+        if (town.rescheduleFirework(blue, "ABC", 13, 2, Firework.DEFAULT_COST, 12) || town.getShow(blue).getFireworksUpAt(13) != 1)
+            System.out.println(ERROR_MARK + " Firework should not move to a full time, and should stay where it was.");
+        if (!town.rescheduleFirework(blue, "ABC", 13, 2, Firework.DEFAULT_COST, 14))
+            System.out.println(ERROR_MARK + " Firework should move to a time with room.");
+
+        town.addFirework(red, 20, 2);
+        town.addFirework(red, 20, 2);
+        town.addFirework(blue, "ABC", 20, 2);
+        town.cancelFirework(red, 20, 2, Firework.DEFAULT_COST);
+        if (!town.addFirework(blue, "ABC", 21, 2))
+            System.out.println(ERROR_MARK + " Cancelling should free room under the cap.");
+
+        TownSession session = town.begin();
+        if (session.getTown().addFirework(red, 21, 2) || session.getTown().getAirspaceCap() != 3)
+            System.out.println(ERROR_MARK + " A session should keep the cap of its town.");
+        session.rollback();
+        town.clearAirspaceCap();
+        if (!town.addFirework(red, 21, 2))
+            System.out.println(ERROR_MARK + " Clearing the cap should allow more fireworks.");
+
+        // a show session commits into the town, so it is held to the cap too
+        Town capped = new Town();
+        int green = capped.add(new Show("green", 10));
+        capped.setAirspaceCap(2);
+        capped.addFirework(green, 0, 5);
+        capped.addFirework(green, 0, 5);
+        ShowSession showSession = capped.getShow(green).begin();
+        for (int i = 0; i < 5; i++) showSession.getShow().addFirework(0, 5);
+        if (capped.addFirework(green, 0, 5) || showSession.commit() || capped.getFireworksUpAt(0) != 2)
+            System.out.println(ERROR_MARK + " A show session should not commit past the town cap: " + capped.getFireworksUpAt(0));
+        showSession = capped.getShow(green).begin();
+        showSession.getShow().addFirework(0, 5);
+        showSession.getShow().cancelFirework(0, 5, Firework.DEFAULT_COST);
+        showSession.getShow().cancelFirework(0, 5, Firework.DEFAULT_COST);
+        showSession.getShow().addFirework(6, 5);
+        if (!showSession.commit() || capped.getFireworksUpAt(0) != 1 || capped.addFirework(green, 6, 5) == capped.addFirework(green, 6, 5))
+            System.out.println(ERROR_MARK + " A show session within the town cap should commit: " + capped.getFireworksUpAt(0));
+
+        // a firework up for most of time should cost no more to count than a short one
+        AirspaceCap longCap = new AirspaceCap(2);
+        long longStart = System.nanoTime();
+        if (!longCap.reserve(5, 1_500_000_005L) || !longCap.reserve(10, 100_000_010) || longCap.reserve(20, 30)
+                || longCap.countAt(200_000_000) != 1 || longCap.countAt(4) != 0 || longCap.countAt(1_500_000_005L) != 1 || longCap.countAt(1_500_000_006L) != 0)
+            System.out.println(ERROR_MARK + " Long fireworks should be counted at every time they are up.");
+        longCap.release(10, 100_000_010);
+        if (!longCap.move(5, 1_500_000_005L, 20, 30) || longCap.countAt(31) != 0 || longCap.countAt(25) != 1)
+            System.out.println(ERROR_MARK + " A long firework should move to a time with room.");
+        if (System.nanoTime() - longStart > 100_000_000L)
+            System.out.println(ERROR_MARK + " Counting long fireworks should not take time for each time they are up.");
+
+        // bookings from many threads at once should never go over the cap at a launch time
+        AirspaceCap cap = new AirspaceCap(50);
+        AtomicInteger reserved = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            int seed = i;
+            threads[i] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int j = 0; j < 2000; j++) {
+                    int time = random.nextInt(200);
+                    // only the launch time is checked, so fireworks that land at once keep every time to the cap
+                    if (cap.reserve(time, time)) reserved.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) thread.join();
+        } catch (InterruptedException e) {
+            System.out.println(ERROR_MARK + " Interrupted.");
+        }
+        int peak = 0;
+        for (int t = 0; t < 300; t++) peak = Math.max(peak, cap.countAt(t));
+        if (peak > 50 || reserved.get() == 0)
+            System.out.println(ERROR_MARK + " Airspace count went over the cap: " + peak);
+
+        System.out.println("Reserved " + reserved.get() + " fireworks from 8 threads, peak " + peak);
+
+        // bookings through the town into different shows from many threads should keep the town's counts right
+        Town busy = new Town();
+        for (int i = 0; i < 8; i++) busy.add(i % 2 == 0 ? new Show("plain" + i, 30) : new CompanyShow("company" + i, 30));
+        busy.setAirspaceCap(150);
+        busy.setLaunchWindows(500);
+        busy.getFireworksUpAt(0);
+        busy.getTopCompanies(1);
+        AtomicInteger booked = new AtomicInteger();
+        // each booking moves the town clock to it, so the threads book at times from one rising count
+        AtomicInteger ticks = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            int show = i;
+            threads[i] = new Thread(() -> {
+                Random random = new Random(show);
+                for (int j = 0; j < 3000; j++) {
+                    int time = ticks.getAndIncrement() / 8;
+                    int duration = 1 + random.nextInt(30);
+                    boolean added = show % 2 == 0 ? busy.addFirework(show, time, duration, 2)
+                            : busy.addFirework(show, "c" + random.nextInt(4), time, duration, 2);
+                    if (added) booked.incrementAndGet();
+                    if (added && random.nextInt(10) == 0 && show % 2 == 0) {
+                        if (busy.cancelFirework(show, time, duration, 2)) booked.decrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) thread.join();
+        } catch (InterruptedException e) {
+            System.out.println(ERROR_MARK + " Interrupted.");
+        }
+        int wrongTimes = 0;
+        int townPeak = 0;
+        for (int t = 0; t < 3100; t++) {
+            int fireworksUp = 0;
+            for (int i = 0; i < busy.getShowCount(); i++) fireworksUp += busy.getShow(i).getFireworksUpAt(t);
+            if (busy.getFireworksUpAt(t) != fireworksUp) wrongTimes++;
+            townPeak = Math.max(townPeak, fireworksUp);
+        }
+        double bills = 0;
+        for (CompanyStanding standing : busy.getTopCompanies(10)) bills += standing.getBill();
+        double spend = 0;
+        long launches = 0;
+        for (int i = 0; i < busy.getShowCount(); i++) {
+            if (i % 2 == 1) spend += busy.getShow(i).getSpend(0, Integer.MAX_VALUE);
+            launches += countLaunches(busy.getShow(i), busy.getCurrentTime(), 500);
+        }
+        if (wrongTimes > 0 || townPeak > 150 || booked.get() == 0)
+            System.out.println(ERROR_MARK + " Town count should follow the shows when booked from many threads: "
+                    + wrongTimes + " wrong times, peak " + townPeak);
+        if (Math.abs(bills - spend) > 0.001 || busy.getLaunches(0) != launches)
+            System.out.println(ERROR_MARK + " Leaderboard and launch windows should follow the shows when booked from many threads: "
+                    + bills + " " + spend + " " + busy.getLaunches(0) + " " + launches);
+        System.out.println("Booked " + booked.get() + " fireworks through the town from 8 threads, peak " + townPeak);
+    }
+
+    public static void testShowRegistry() {
+        System.out.println("\nTier 24: Testing the show registry..............................");
+        Town town = new Town();
+        ShowHandle red = town.addShow(new Show("red", 5));
+        CompanyShowHandle blue = town.addShow(new CompanyShow("blue", 5));
+        ShowHandle green = town.addShow((Show) new CompanyShow("green", 5));
+        town.addShow(new Show("blue", 5));
+
+        if (town.findShow("red") != red || town.findShow("blue") != blue || town.findShow("none") != null)
+            System.out.println(ERROR_MARK + " Shows should be found by name, and the first show with a name should win.");
+        if (town.findCompanyShow("red") != null || town.findCompanyShow("green") == null
+                || town.findCompanyShow("green").getIndex() != green.getIndex())
+            System.out.println(ERROR_MARK + " Only company shows should be found as company shows.");
+        if (town.getShow(red.getIndex()) != red.getShow() || blue.getShow() != town.getShow(1))
+            System.out.println(ERROR_MARK + " Handles should give the show at their index.");
+
+        if (!town.addFirework(red, 10, 2) || !town.addFirework(blue, "ABC", 10, 2, 5)
+                || !town.addFirework(town.findCompanyShow("green"), "XYZ", 11))
+            System.out.println(ERROR_MARK + " Fireworks should be booked through handles.");
+        if (town.addFirework(red.getIndex(), "ABC", 12))
+            System.out.println(ERROR_MARK + " A show without companies should not take a company firework.");
+        if (blue.getShow().getCompanySpend("ABC", 0, 100) != 5 || town.getFireworksUpAt(11) != 3)
+            System.out.println(ERROR_MARK + " Fireworks booked through handles should be in their shows.");
+
+        TownSession session = town.begin();
+        session.getTown().addFirework(blue, "ABC", 20);
+        if (blue.getShow().getFireworksUpAt(20) != 0 || session.getTown().getShow(blue.getIndex()).getFireworksUpAt(20) != 1)
+            System.out.println(ERROR_MARK + " A handle should book in the session's own copy of the show.");
+        session.commit();
+        if (town.findShow("blue").getShow().getFireworksUpAt(20) != 1)
+            System.out.println(ERROR_MARK + " Committed shows should be found by name.");
+
+        System.out.println("Found " + town.findShow("blue").getName() + " at index " + town.findShow("blue").getIndex());
+    }
+
+    public static void testShowSites() {
+        System.out.println("\nTier 25: Testing show sites and neighborhood warnings............");
+        Town town = new Town();
+        ShowHandle a = town.addShow(new Show("a", 2, new Site(0, 0)));
+        ShowHandle b = town.addShow(new Show("b", 2, new Site(30, 0)));
+        CompanyShowHandle c = town.addShow(new CompanyShow("c", 2, new Site(500, 500)));
+        ShowHandle d = town.addShow(new Show("d", 2, new Site(520, 500)));
+        ShowHandle e = town.addShow(new Show("e", 2));
+        for (int i = 0; i < 2; i++) {
+            town.addFirework(a, 10);
+            town.addFirework(c, "ABC", 10);
+            town.addFirework(d, 10);
+            town.addFirework(e, 10);
+        }
+
+        if (!town.findShowsNear(0, 0, 40).equals(List.of(a, b)) || town.findShowsNear(0, 0, 1e9).size() != 4
+                || !town.findShowsNear(1000, 1000, 10).isEmpty())
+            System.out.println(ERROR_MARK + " Shows near a point should be the shows with a site within the radius.");
+        // a radius past every cell number would cover 2^64 cells, so only the filled cells should be visited
+        long nearStart = System.nanoTime();
+        if (town.findShowsNear(0, 0, 1e12).size() != 4 || town.findShowsNear(1e15, -1e15, 1e18).size() != 4
+                || System.nanoTime() - nearStart > 1_000_000_000L)
+            System.out.println(ERROR_MARK + " A huge radius should find every show with a site right away.");
+        if (!town.findShowsInWarningNear(0, 0, 40, 10).equals(List.of(a))
+                || !town.findShowsInWarningNear(510, 500, 10, 10).equals(List.of(c, d)))
+            System.out.println(ERROR_MARK + " Shows in warning near a point are wrong.");
+
+        if (town.hasNeighborhoodWarningAt(10) || town.setNeighborhoodWarning(-1, 2) || town.setNeighborhoodWarning(50, 0))
+            System.out.println(ERROR_MARK + " Neighborhood rule should only be set with a radius and at least one show.");
+        town.setNeighborhoodWarning(50, 2);
+        if (!town.hasNeighborhoodWarningAt(10) || town.hasNeighborhoodWarningAt(20))
+            System.out.println(ERROR_MARK + " Two neighboring shows with warnings should give a neighborhood warning.");
+        town.setNeighborhoodWarning(10, 2);
+        if (town.hasNeighborhoodWarningAt(10))
+            System.out.println(ERROR_MARK + " Shows farther apart than the radius are not neighbors.");
+        town.setNeighborhoodWarning(50, 2);
+        Town fork = town.fork();
+        fork.addShow(new Show("f", 2, new Site(10, 10)));
+        fork.addFirework(5, 12);
+        fork.addFirework(5, 12);
+        fork.addFirework(a, 12);
+        fork.addFirework(a, 12);
+        if (!fork.hasNeighborhoodWarningAt(12) || town.hasNeighborhoodWarningAt(12))
+            System.out.println(ERROR_MARK + " A fork should keep the rule and index its own new shows.");
+        fork.clearNeighborhoodWarning();
+        if (fork.hasNeighborhoodWarningAt(12))
+            System.out.println(ERROR_MARK + " Clearing the rule should stop neighborhood warnings.");
+
+        System.out.println("Neighborhood warning at 10: " + town.hasNeighborhoodWarningAt(10));
+    }
+
+    public static void testTownRegistry() {
+        System.out.println("\nTier 26: Testing the town registry..............................");
+        File directory;
+        try {
+            directory = Files.createTempDirectory("towns").toFile();
+        } catch (IOException e) {
+            System.out.println(ERROR_MARK + " Could not make a directory for the registry.");
+            return;
+        }
+
+        TownRegistry registry = new TownRegistry(directory, 2);
+        Town first = registry.create("first");
+        CompanyShowHandle company = first.addShow(new CompanyShow("company", 4, new Site(3, 4)));
+        ShowHandle plain = first.addShow(new Show("plain", 2));
+        first.setWarningTiers(50, 100);
+        first.setAirspaceCap(5);
+        first.setNeighborhoodWarning(10, 1);
+        first.addFirework(company, "ABC", 5, 3, 60);
+        first.addFirework(company, "ABC", 5, 3, 60);
+        first.addFirework(company, "XYZ", 6, 1);
+        first.addFirework(company, 6);
+        first.addFirework(plain, 6, 2, 15);
+        first.addFirework(plain, 6, 2, 15);
+        first.update(9);
+        String before = first.toString();
+        int warnings = first.getTotalWarnings();
+        List<CompanyStanding> top = first.getTopCompaniesDiscounted(3);
+
+        if (registry.create("first") != null || registry.create("second") == null)
+            System.out.println(ERROR_MARK + " Creating a town should only work for a new id.");
+        registry.get("second");
+        registry.create("third/..");
+        if (registry.getResidentCount() != 2 || registry.getEvictions() != 1 || !registry.contains("first"))
+            System.out.println(ERROR_MARK + " The least recently used town should be written out.");
+
+        Town loaded = registry.get("first");
+        if (loaded == null || loaded == first || registry.getMisses() != 1 || registry.getLoads() != 1) {
+            System.out.println(ERROR_MARK + " An evicted town should be read back on a miss.");
+            return;
+        }
+        if (!loaded.toString().equals(before) || loaded.getTotalWarnings() != warnings
+                || !loaded.getTopCompaniesDiscounted(3).equals(top)
+                || loaded.getTierWarnings(1) != first.getTierWarnings(1)
+                || loaded.getFireworksUpAt(7) != first.getFireworksUpAt(7)
+                || loaded.getCompanySpend("ABC", 0, 10) != 120 || loaded.getAirspaceCap() != 5
+                || !loaded.hasNeighborhoodWarningAt(6) || !loaded.findShow("company").getShow().getSite().equals(new Site(3, 4)))
+            System.out.println(ERROR_MARK + " A town read back should be the same as the town written out:\n"
+                    + loaded + "\n" + before);
+        if (loaded.addFirework(company, "ABC", 8) && loaded.addFirework(plain, 8) && loaded.addFirework(plain, 8))
+            System.out.println(ERROR_MARK + " A town read back should keep its clock and capacity.");
+        if (!loaded.cancelFirework(company.getIndex(), "ABC", 5, 3, 60) || loaded.getCompanySpend("ABC", 0, 10) != 60)
+            System.out.println(ERROR_MARK + " Fireworks read back should be cancellable.");
+
+        TownRegistry small = new TownRegistry(directory, 10, 3);
+        for (int i = 0; i < 4; i++) {
+            Town town = small.create("budget" + i);
+            town.addFirework(town.add(new Show("show", 10)), 1, 1, i);
+            town.addFirework(0, 2);
+            small.trim();
+        }
+        if (small.getResidentFireworks() > 3 || small.getEvictions() != 3 || small.get("budget0") == null)
+            System.out.println(ERROR_MARK + " The firework budget should bound the towns in memory: " + small);
+
+        if (!registry.remove("first") || registry.contains("first") || registry.get("missing") != null)
+            System.out.println(ERROR_MARK + " Removed or missing towns should not be found.");
+        registry.flush();
+        small.flush();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+
+        System.out.println("Registry: " + registry);
+    }
+
+    public static void testTownServer() {
+        System.out.println("\nTier 27: Testing the town HTTP server............................");
+        Town town = new Town();
+        town.add(new CompanyShow("company", 2));
+        town.add(new Show("plain", 2));
+        TownServer server = new TownServer(town);
+        if (!server.start(0) || server.start(0)) {
+            System.out.println(ERROR_MARK + " Server should start once.");
+            return;
+        }
+
+        HttpClient client = HttpClient.newHttpClient();
+        String base = "http://127.0.0.1:" + server.getPort();
+        try {
+            String booked = send(client, "POST", base + "/book?show=0&time=5&duration=2&cost=30&company=A%20B");
+            String plain = send(client, "POST", base + "/book?show=1&time=5&company=ABC");
+            if (!booked.contains("\"booked\":true") || !plain.contains("\"booked\":false"))
+                System.out.println(ERROR_MARK + " Booking through the server is wrong: " + booked + " " + plain);
+            send(client, "POST", base + "/book?show=0&time=6");
+            String status = send(client, "GET", base + "/status");
+            String up = send(client, "GET", base + "/fireworks-up?time=6&show=0");
+            String warnings = send(client, "GET", base + "/warnings?time=6");
+            String cost = send(client, "GET", base + "/cost?show=0");
+            if (!status.contains("\"currentTime\":6") || !status.contains("\"showCount\":2")
+                    || !up.equals("{\"time\":6,\"fireworksUp\":2}") || !warnings.contains("\"warning\":false")
+                    || !cost.contains("\"totalCost\":50.00"))
+                System.out.println(ERROR_MARK + " Reads from the server are wrong: " + status + " " + up + " "
+                        + warnings + " " + cost);
+            if (!send(client, "GET", base + "/book?show=0&time=7").startsWith("405")
+                    || !send(client, "GET", base + "/fireworks-up").startsWith("400")
+                    || !send(client, "GET", base + "/cost?show=9").startsWith("404"))
+                System.out.println(ERROR_MARK + " Bad requests should get error codes.");
+            if (server.getSnapshot().getFireworksUpAt(6) != town.getFireworksUpAt(6))
+                System.out.println(ERROR_MARK + " The snapshot should have the bookings.");
+
+            // a booking far ahead would check every time up to it while bookings wait
+            String far = send(client, "POST", base + "/book?show=1&time=" + (6 + TownServer.DEFAULT_MAX_ADVANCE + 1));
+            String near = send(client, "POST", base + "/book?show=1&time=" + (6 + TownServer.DEFAULT_MAX_ADVANCE));
+            if (!far.startsWith("400") || !near.contains("\"booked\":true") || server.setMaxAdvance(-1)
+                    || !server.setMaxAdvance(10) || !send(client, "POST", base + "/book?show=1&time="
+                    + (town.getCurrentTime() + 11)).startsWith("400"))
+                System.out.println(ERROR_MARK + " Bookings too far ahead should be turned down: " + far + " " + near);
+            TownSnapshot before = server.getSnapshot();
+            for (int i = 0; i < 5; i++) send(client, "POST", base + "/book?show=1&time=" + town.getCurrentTime());
+            TownSnapshot after = server.getSnapshot();
+            if (before == after || after != server.getSnapshot() || after.getFireworksUp() != town.getFireworksUp())
+                System.out.println(ERROR_MARK + " Bookings should be in the next snapshot read, taken once.");
+        } catch (IOException | InterruptedException e) {
+            System.out.println(ERROR_MARK + " Request failed: " + e);
+        }
+
+        TownLoadClient.Report report = new TownLoadClient(URI.create(base + "/status")).run(2000, 200);
+        if (report.getFailures() != 0)
+            System.out.println(ERROR_MARK + " Load test should have no failures: " + report);
+        server.stop();
+        if (server.getPort() != -1)
+            System.out.println(ERROR_MARK + " Stopped server should have no port.");
+
+        System.out.println("Load test: " + report.getRequests() + " requests, " + report.getFailures() + " failed");
+    }
+
+    private static String send(HttpClient client, String method, String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() == 200 ? response.body() : response.statusCode() + " " + response.body();
+    }
+
+    public static void testShardedTown() {
+        System.out.println("\nTier 28: Testing a town sharded across processes.................");
+        ShardedTown sharded = ShardedTown.launch(3);
+        if (sharded == null) {
+            System.out.println(ERROR_MARK + " Shards should start.");
+            return;
+        }
+
+        // the same bookings in one town and across three processes should give the same answers
+        Town town = new Town();
+        for (int i = 0; i < 5; i++) {
+            boolean hasCompanies = i % 2 == 0;
+            int single = town.add(hasCompanies ? new CompanyShow("show" + i, 3) : new Show("show" + i, 3));
+            if (sharded.add("show" + i, 3, hasCompanies, null) != single)
+                System.out.println(ERROR_MARK + " Shows should get the same index as in one town.");
+        }
+
+        Random random = new Random(43);
+        int mismatches = 0;
+        for (int i = 0; i < 300; i++) {
+            int show = random.nextInt(5);
+            int time = random.nextInt(40) + i / 10;
+            int duration = random.nextInt(4) + 1;
+            double cost = random.nextInt(100);
+            String company = "C" + random.nextInt(3);
+            boolean expected = show % 2 == 0 ? town.addFirework(show, company, time, duration, cost)
+                    : town.addFirework(show, time, duration, cost);
+            boolean booked = show % 2 == 0 ? sharded.addFirework(show, company, time, duration, cost)
+                    : sharded.addFirework(show, time, duration, cost);
+            if (expected != booked) mismatches++;
+        }
+        if (mismatches > 0 || sharded.getCurrentTime() != town.getCurrentTime())
+            System.out.println(ERROR_MARK + " Bookings should be accepted the same way as in one town: "
+                    + mismatches + " differed.");
+
+        for (int t = 0; t < 80; t++) {
+            if (sharded.getFireworksUpAt(t) != town.getFireworksUpAt(t) || sharded.hasWarningAt(t) != town.hasWarningAt(t)) {
+                System.out.println(ERROR_MARK + " Sharded town differs from one town at " + t);
+                break;
+            }
+        }
+        if (Math.abs(sharded.getTotalCost() - town.getTotalCost()) > 1e-6 || sharded.getFireworksUp() != town.getFireworksUp())
+            System.out.println(ERROR_MARK + " Sharded cost " + sharded.getTotalCost() + " should be " + town.getTotalCost());
+        if (sharded.addFirework(1, "ABC", 90) || sharded.addFirework(9, 90))
+            System.out.println(ERROR_MARK + " Company bookings need a company show, and shows must exist.");
+
+        System.out.println("Sharded town over " + sharded.getShardCount() + " processes, cost "
+                + sharded.getTotalCost());
+        sharded.close();
+    }
+
+    public static void testLazyWarnings() {
+        System.out.println("\nTier 29: Testing lazy warnings...................................");
+        // the same changes with eager and lazy warnings should give the same warnings
+        Town eager = new Town();
+        Town lazy = new Town();
+        lazy.setLazyWarnings(true);
+        for (Town town : new Town[] {eager, lazy}) {
+            town.add(new Show("a", 3));
+            town.add(new CompanyShow("b", 4));
+            town.setWarningTiers(50, 90);
+            town.getShow(0).setWarningTiers(30, 70);
+        }
+        if (!lazy.getShow(1).hasLazyWarnings() || eager.getShow(0).hasLazyWarnings())
+            System.out.println(ERROR_MARK + " Shows should take the warning mode of their town.");
+
+        Random random = new Random(44);
+        for (int i = 0; i < 400; i++) {
+            int show = random.nextInt(2);
+            int time = random.nextInt(6) + i / 8;
+            int duration = random.nextInt(6) + 1;
+            int action = random.nextInt(10);
+            boolean same;
+            if (action < 6) {
+                same = eager.addFirework(show, time, duration, 10) == lazy.addFirework(show, time, duration, 10);
+            } else if (action < 8) {
+                same = eager.cancelFirework(show, time, duration, 10) == lazy.cancelFirework(show, time, duration, 10);
+            } else if (action < 9) {
+                int now = eager.getCurrentTime() + random.nextInt(3);
+                eager.update(now);
+                lazy.update(now);
+                same = true;
+            } else {
+                same = eager.hasWarningAt(time) == lazy.hasWarningAt(time);
+            }
+            if (!same) {
+                System.out.println(ERROR_MARK + " Eager and lazy towns differ at step " + i);
+                break;
+            }
+        }
+
+        boolean matches = eager.getTotalWarnings() == lazy.getTotalWarnings()
+                && eager.getTierWarnings(0) == lazy.getTierWarnings(0) && eager.getTierWarnings(1) == lazy.getTierWarnings(1);
+        for (int show = 0; show < 2; show++) {
+            matches &= eager.getShow(show).getTotalWarnings() == lazy.getShow(show).getTotalWarnings();
+        }
+        matches &= eager.getShow(0).getTierWarnings(0) == lazy.getShow(0).getTierWarnings(0)
+                && eager.getShow(0).getTierWarnings(1) == lazy.getShow(0).getTierWarnings(1);
+        for (int t = 0; t <= eager.getCurrentTime(); t++) {
+            matches &= eager.getTierAt(t) == lazy.getTierAt(t) && eager.hasWarningAt(t) == lazy.hasWarningAt(t);
+        }
+        if (!matches || eager.getTotalWarnings() == 0)
+            System.out.println(ERROR_MARK + " Lazy warnings should match eager warnings: " + lazy.getTotalWarnings()
+                    + " " + eager.getTotalWarnings());
+
+        // a lazy town written to a file should come back lazy, with the warnings it had not worked out yet
+        int now = eager.getCurrentTime();
+        long start;
+        for (Town town : new Town[] {eager, lazy}) {
+            for (int i = 0; i < 4; i++) {
+                town.addFirework(0, now + 5, 10, 10);
+                town.addFirework(1, "ABC", now + 6, 10, 10);
+            }
+            town.update(now + 30);
+        }
+        File file = null;
+        try {
+            file = File.createTempFile("lazy", ".town");
+            TownStore.write(lazy, file);
+            Town restored = TownStore.read(file);
+            boolean restoredLazy = restored.hasLazyWarnings();
+            for (int show = 0; show < restored.getShowCount(); show++) {
+                restoredLazy &= restored.getShow(show).hasLazyWarnings()
+                        && restored.getShow(show).getTotalWarnings() == eager.getShow(show).getTotalWarnings();
+            }
+            if (!restoredLazy || restored.getTotalWarnings() != eager.getTotalWarnings()
+                    || restored.getTierWarnings(1) != eager.getTierWarnings(1))
+                System.out.println(ERROR_MARK + " A lazy town read from a file should stay lazy and keep its warnings: "
+                        + restored.getTotalWarnings() + " " + eager.getTotalWarnings());
+            start = System.nanoTime();
+            restored.update(1_000_000_000);
+            if (System.nanoTime() - start > 1_000_000_000L)
+                System.out.println(ERROR_MARK + " A lazy town read from a file should jump its clock ahead.");
+        } catch (IOException e) {
+            System.out.println(ERROR_MARK + " Lazy town write failed: " + e);
+        } finally {
+            if (file != null) file.delete();
+        }
+
+        // moving the clock a long way should not check each time
+        int warnings = lazy.getTotalWarnings();
+        start = System.nanoTime();
+        lazy.update(1_000_000_000);
+        if (lazy.getTotalWarnings() != warnings || lazy.getShow(0).getTotalWarnings() != eager.getShow(0).getTotalWarnings()
+                || System.nanoTime() - start > 1_000_000_000L)
+            System.out.println(ERROR_MARK + " Lazy clock should jump ahead without new warnings.");
+
+        System.out.println("Town warnings, eager and lazy: " + eager.getTotalWarnings() + " " + lazy.getTotalWarnings()
+                + ", tier warnings " + lazy.getTierWarnings(0) + " " + lazy.getShow(0).getTierWarnings(0));
+    }
+
+    public static void testLaunchWindows() {
+        System.out.println("\nTier 30: Testing sliding launch windows..........................");
+        Town town = new Town();
+        int a = town.add(new Show("a", 50));
+        int b = town.add(new CompanyShow("b", 50));
+        town.addFirework(a, 0);
+        if (town.getShow(a).setLaunchWindows(0) || !town.getShow(a).setLaunchWindows(10, 3) || !town.setLaunchWindows(3, 10)
+                || town.getShow(a).getLaunchWindow(0) != 3 || town.getShow(b).getLaunchWindowCount() != 0)
+            System.out.println(ERROR_MARK + " Launch windows should take sizes of at least 1, smallest first.");
+        if (town.getShow(a).getLaunches(0) != 1 || town.getLaunches(1) != 1)
+            System.out.println(ERROR_MARK + " Windows should count fireworks already launched.");
+
+        // count launches by hand at every time to check the windows and their peaks
+        int[] launchesAt = new int[5000];
+        launchesAt[0] = 1;
+        long[] peaks = {1, 1};
+        Random random = new Random(45);
+        boolean matches = true;
+        for (int step = 0; step < 300 && matches; step++) {
+            int now = town.getCurrentTime();
+            int time = now + random.nextInt(12);
+            if (random.nextInt(8) == 0) {
+                town.update(now + random.nextInt(15));
+            } else if (town.addFirework(random.nextBoolean() ? a : b, time, 2)) {
+                launchesAt[time]++;
+            }
+            if (random.nextInt(10) == 0 && now > 0 && town.cancelFirework(a, now - 1, 2, Firework.DEFAULT_COST)) {
+                launchesAt[now - 1]--;
+            }
+            now = town.getCurrentTime();
+            for (int w = 0; w < 2; w++) {
+                int size = w == 0 ? 3 : 10;
+                long expected = 0;
+                for (int t = Math.max(0, now - size + 1); t <= now; t++) expected += launchesAt[t];
+                peaks[w] = Math.max(peaks[w], expected);
+                matches &= town.getLaunches(w) == expected && town.getPeakLaunches(w) == peaks[w];
+            }
+        }
+        if (!matches)
+            System.out.println(ERROR_MARK + " Town launch windows should match a count by hand at time " + town.getCurrentTime());
+        long peak = town.getPeakLaunches(1);
+
+        TownSession session = town.begin();
+        session.getTown().addFirework(b, town.getCurrentTime(), 2);
+        session.commit();
+        town.getShow(a).setLazyWarnings(true);
+        if (town.getLaunches(0) != town.getShow(a).getLaunches(0) + countLaunches(town.getShow(b), town.getCurrentTime(), 3)
+                || town.getPeakLaunches(1) < peak)
+            System.out.println(ERROR_MARK + " Town windows should be counted again after a session commits.");
+
+        // windows read back from a file should hold the same launches and peaks
+        File file = null;
+        try {
+            file = File.createTempFile("windows", ".town");
+            TownStore.write(town, file);
+            Town restored = TownStore.read(file);
+            boolean same = restored.getLaunchWindowCount() == 2 && restored.getShow(a).getLaunchWindowCount() == 2
+                    && restored.getShow(b).getLaunchWindowCount() == 0;
+            for (int w = 0; w < 2 && same; w++) {
+                same = restored.getLaunches(w) == town.getLaunches(w)
+                        && restored.getPeakLaunches(w) == town.getPeakLaunches(w)
+                        && restored.getShow(a).getLaunches(w) == town.getShow(a).getLaunches(w)
+                        && restored.getShow(a).getPeakLaunches(w) == town.getShow(a).getPeakLaunches(w);
+            }
+            restored.addFirework(a, restored.getCurrentTime(), 2);
+            same &= restored.getLaunches(0) == town.getLaunches(0) + 1;
+            if (!same)
+                System.out.println(ERROR_MARK + " Launch windows read from a file should keep their launches and peaks.");
+        } catch (IOException e) {
+            System.out.println(ERROR_MARK + " Launch window write failed: " + e);
+        } finally {
+            if (file != null) file.delete();
+        }
+
+        // sessions share the ring of even the largest window, and only copy the chunk they change
+        Show wide = new Show("wide", 50);
+        wide.setLaunchWindows(LaunchWindows.MAX_WINDOW);
+        wide.addFirework(0);
+        boolean separate = true;
+        long wideStart = System.nanoTime();
+        for (int i = 0; i < 2000; i++) {
+            ShowSession wideSession = wide.begin();
+            wideSession.getShow().addFirework(0);
+            separate &= wideSession.getShow().getLaunches(0) == 2 && wide.getLaunches(0) == 1;
+            wideSession.rollback();
+        }
+        if (!separate || System.nanoTime() - wideStart > 1_000_000_000L)
+            System.out.println(ERROR_MARK + " Forking launch windows should not copy their whole ring.");
+
+        town.update(town.getCurrentTime() + 500_000);
+        if (town.getLaunches(1) != 0 || town.getShow(a).getLaunchRate(0) != 0 || town.getPeakLaunches(1) < peak)
+            System.out.println(ERROR_MARK + " Windows should empty out as the clock moves past the launches.");
+
+        System.out.println("Peak launches in 3 and 10 times: " + town.getPeakLaunches(0) + " " + town.getPeakLaunches(1));
+    }
+
+    public static void testTimeline() {
+        System.out.println("\nTier 31: Testing packed occupancy timelines......................");
+        Town town = new Town();
+        int a = town.add(new Show("a", 10));
+        int b = town.add(new Show("b", 10));
+        Random random = new Random(46);
+        // booking moves the clock to the launch, so the fireworks are booked in time order
+        for (int time = 0; time < 1_000_000; time += random.nextInt(1000)) {
+            town.addFirework(random.nextBoolean() ? a : b, time, 1 + random.nextInt(4000));
+        }
+
+        Show show = town.getShow(a);
+        OccupancyTimeline timeline = show.getTimeline(-100, 1_000_500);
+        OccupancyTimeline townTimeline = town.getTimeline(0, 1_000_500);
+        boolean matches = timeline.getRunCount() > OccupancyTimeline.CHECKPOINT_INTERVAL;
+        for (int i = 0; i < 3000 && matches; i++) {
+            int time = random.nextInt(1_000_600) - 100;
+            matches &= timeline.getFireworksUpAt(time) == show.getFireworksUpAt(time)
+                    && timeline.hasWarningAt(time) == (show.getFireworksUpAt(time) >= show.getWarningLevel());
+            if (time >= 0) {
+                matches &= townTimeline.getFireworksUpAt(time) == town.getFireworksUpAt(time);
+            }
+        }
+        if (!matches)
+            System.out.println(ERROR_MARK + " Timeline lookups should match the show and town: " + timeline);
+        if (timeline.getFireworksUpAt(-101) != -1 || timeline.getFireworksUpAt(1_000_501) != -1 || show.getTimeline(5, 4) != null)
+            System.out.println(ERROR_MARK + " Times outside the timeline should have no fireworks up.");
+
+        long[] covered = new long[1];
+        timeline.forEachRun((from, to, count) -> covered[0] += to - from + 1);
+        if (covered[0] != 1_000_601)
+            System.out.println(ERROR_MARK + " Timeline runs should cover every time: " + covered[0]);
+        if (timeline.getEncodedSize() * 100L > covered[0] * 4)
+            System.out.println(ERROR_MARK + " Timeline should be far smaller than a count for every time: " + timeline);
+
+        OccupancyAnalytics report = town.getAnalytics(0, 1_000_500);
+        long[] warningTicks = new long[1];
+        townTimeline.forEachRun((from, to, count) -> {
+            if (townTimeline.hasWarningAt((int) from)) warningTicks[0] += to - from + 1;
+        });
+        if (Math.abs(warningTicks[0] * 100.0 / report.getTicks() - report.getWarningPercent()) > 0.0001)
+            System.out.println(ERROR_MARK + " Town timeline warnings should match the analytics report.");
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                timeline.write(out);
+            }
+            OccupancyTimeline read = OccupancyTimeline.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            if (read.getRunCount() != timeline.getRunCount() || read.getWarningCount() != timeline.getWarningCount()
+                    || read.getFireworksUpAt(500_000) != timeline.getFireworksUpAt(500_000))
+                System.out.println(ERROR_MARK + " Timeline should read back the same: " + read);
+
+            byte[] broken = bytes.toByteArray();
+            broken[broken.length - 1] = (byte) 0x80;
+            try {
+                OccupancyTimeline.read(new DataInputStream(new ByteArrayInputStream(broken)));
+                System.out.println(ERROR_MARK + " A broken timeline should not be read.");
+            } catch (IOException e) {
+                // expected
+            }
+        } catch (IOException e) {
+            System.out.println(ERROR_MARK + " Timeline could not be written: " + e);
+        }
+
+        System.out.println(timeline);
+    }
+
+    public static void testColumnExport() {
+        System.out.println("\nTier 32: Testing the column export...............................");
+        Town town = new Town();
+        int a = town.add(new Show("a", 20));
+        int b = town.add(new CompanyShow("b", 20));
+        Random random = new Random(47);
+        int fireworks = 0;
+        for (int time = 0; time < 300_000; time += random.nextInt(3)) {
+            boolean added = random.nextBoolean() ? town.addFirework(a, time, 1 + random.nextInt(30), 10 + random.nextInt(5))
+                    : town.addFirework(b, "company" + random.nextInt(4), time, 1 + random.nextInt(30));
+            if (added) fireworks++;
+        }
+
+        File file = null;
+        try {
+            file = File.createTempFile("town", ".columns");
+            long start = System.nanoTime();
+            town.exportColumns(file);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            ByteBuffer copies = ColumnExport.readColumn(file, ColumnExport.BOOKINGS, 5);
+            ByteBuffer costs = ColumnExport.readColumn(file, ColumnExport.BOOKINGS, 4);
+            ByteBuffer companies = ColumnExport.readColumn(file, ColumnExport.BOOKINGS, 1);
+            long booked = 0;
+            double cost = 0;
+            int maxCompany = ColumnExport.NO_COMPANY;
+            while (copies.hasRemaining()) {
+                int count = copies.getInt();
+                booked += count;
+                cost += costs.getDouble() * count;
+                maxCompany = Math.max(maxCompany, companies.getInt());
+            }
+            double spend = town.getShow(a).getSpend(0, Integer.MAX_VALUE) + town.getShow(b).getSpend(0, Integer.MAX_VALUE);
+            if (booked != fireworks || Math.abs(cost - spend) > 0.01 || maxCompany != 3)
+                System.out.println(ERROR_MARK + " Exported bookings should match the town: " + booked + " " + cost);
+
+            ByteBuffer shows = ColumnExport.readColumn(file, ColumnExport.TIMELINE, 0);
+            ByteBuffer froms = ColumnExport.readColumn(file, ColumnExport.TIMELINE, 1);
+            ByteBuffer tos = ColumnExport.readColumn(file, ColumnExport.TIMELINE, 2);
+            ByteBuffer ups = ColumnExport.readColumn(file, ColumnExport.TIMELINE, 3);
+            ByteBuffer warnings = ColumnExport.readColumn(file, ColumnExport.TIMELINE, 4);
+            boolean matches = true;
+            int rows = 0;
+            long[] next = new long[3];
+            while (shows.hasRemaining() && matches) {
+                int show = shows.getInt();
+                int from = froms.getInt();
+                int to = tos.getInt();
+                int up = ups.getInt();
+                boolean warning = warnings.get() == 1;
+                int row = show == ColumnExport.TOWN ? 2 : show;
+                matches &= from == next[row] && to >= from;
+                next[row] = (long) to + 1;
+                int time = from + random.nextInt(to - from + 1);
+                if (show == ColumnExport.TOWN) {
+                    matches &= up == town.getFireworksUpAt(time) && warning == town.hasWarningAt(time);
+                } else {
+                    matches &= up == town.getShow(show).getFireworksUpAt(time)
+                            && warning == (up >= town.getShow(show).getWarningLevel());
+                }
+                rows++;
+            }
+            if (!matches || rows < 3)
+                System.out.println(ERROR_MARK + " Exported timeline should cover each show and the town in order, row " + rows);
+
+            System.out.println("Exported " + booked + " fireworks and " + rows + " timeline runs in " + millis + " ms, "
+                    + file.length() + " bytes");
+        } catch (IOException e) {
+            System.out.println(ERROR_MARK + " Column export failed: " + e);
+        } finally {
+            if (file != null) file.delete();
+        }
+
+        // a name that fills the footer buffer to its last byte should not leave the next number without room
+        Town named = new Town();
+        named.add(new Show("x".repeat(65528), 5));
+        named.addFirework(0, 3, 2);
+        File directory = null;
+        try {
+            file = File.createTempFile("named", ".columns");
+            named.exportColumns(file);
+            if (ColumnExport.readColumn(file, ColumnExport.BOOKINGS, 5).getInt() != 1)
+                System.out.println(ERROR_MARK + " A town with a long show name should export.");
+
+            // a file that can't be replaced should fail the export without leaving the temporary file
+            directory = Files.createTempDirectory("columns").toFile();
+            File inside = new File(directory, "keep");
+            inside.createNewFile();
+            boolean failed = false;
+            try {
+                named.exportColumns(directory);
+            } catch (IOException e) {
+                failed = true;
+            }
+            if (!failed || new File(directory.getPath() + ".tmp").exists())
+                System.out.println(ERROR_MARK + " A failed export should delete its temporary file.");
+            inside.delete();
+        } catch (IOException | RuntimeException e) {
+            System.out.println(ERROR_MARK + " Column export of a long name failed: " + e);
+        } finally {
+            if (file != null) file.delete();
+            if (directory != null) directory.delete();
+        }
+    }
+
+    public static void testFireworkColumns() {
+        System.out.println("\nTier 33: Testing firework column scans...........................");
+        Show show = new CompanyShow("columns", 40);
+        Random random = new Random(48);
+        for (int time = 0; time < 50_000; time += random.nextInt(4)) {
+            show.addFirework(time, 1 + random.nextInt(60), 5 + random.nextInt(20));
+            if (random.nextInt(5) == 0) ((CompanyShow) show).addFirework("c" + random.nextInt(3), time, 10);
+        }
+        show.addFirework(Integer.MAX_VALUE - 5, 100);
+
+        FireworkColumns columns = show.getColumns();
+        int[] times = new int[1000];
+        for (int i = 0; i < times.length; i++) times[i] = random.nextInt(50_100) - 50;
+        times[0] = Integer.MAX_VALUE;
+        times[1] = Integer.MIN_VALUE;
+        int[] counts = columns.getFireworksUpAt(times);
+        boolean matches = true;
+        for (int i = 0; i < times.length; i++) {
+            int expected = show.getFireworksUpAt(times[i]);
+            matches &= counts[i] == expected && columns.getFireworksUpAt(times[i]) == expected;
+        }
+        if (!matches)
+            System.out.println(ERROR_MARK + " Column scans should count the same fireworks up as the show.");
+
+        double spend = show.getSpend(0, Integer.MAX_VALUE);
+        if (Math.abs(columns.getCost() - spend) > 0.001 || Math.abs(columns.getSpend(100, 20_000) - show.getSpend(100, 20_000)) > 0.001
+                || columns.getSpend(-50, Integer.MAX_VALUE) != columns.getSpend(0, Integer.MAX_VALUE) || columns.getSpend(5, 4) != 0)
+            System.out.println(ERROR_MARK + " Column sums should match the show's spend: " + columns.getCost() + " " + spend);
+        if (show.getColumns() != columns)
+            System.out.println(ERROR_MARK + " Columns should be kept until the show changes.");
+        show.addFirework(Integer.MAX_VALUE - 1, 1);
+        if (show.getColumns() == columns || show.getColumns().size() != columns.size() + 1)
+            System.out.println(ERROR_MARK + " Adding a firework should make new columns.");
+
+        long start = System.nanoTime();
+        int[] many = new int[50_000];
+        for (int i = 0; i < many.length; i++) many[i] = i;
+        columns.getFireworksUpAt(many);
+        System.out.println("Counted " + columns.size() + " fireworks at " + many.length + " times in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public static void testBookingAllocations() {
+        System.out.println("\nTier 34: Testing bytes allocated per booking.....................");
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("Allocation counting is not available, skipped.");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            System.out.println("Allocation counting is not available, skipped.");
+            return;
+        }
+
+        // copies of fireworks already in a show allocate nothing. New fireworks still allocate the nodes the
+        // show keeps for them, so their budget is what those nodes take, to catch anything extra
+        final long copyBudget = 0;
+        final long newBudget = 200;
+        final int warmUpRounds = 15;
+        String[] companies = {"north", "south", "east", "west"};
+        long[] copyRounds = new long[9];
+        long[] newRounds = new long[9];
+        // the first rounds run before the booking path is compiled, so only the rounds after them are checked
+        for (int round = 0; round < warmUpRounds + copyRounds.length; round++) {
+            Show show = new Show("plain", 10);
+            show.setWarningTiers(50, 90);
+            CompanyShow companyShow = new CompanyShow("company", 10);
+            Town town = new Town();
+            int a = town.add(new Show("a", 10));
+            int b = town.add(new CompanyShow("b", 10));
+            town.setWarningTiers(50, 90);
+
+            long newBytes = 0;
+            long copyBytes = 0;
+            int ticks = 2000;
+            for (int t = 0; t < ticks; t++) {
+                int duration = 6 + t / 50 % 5;
+                String company = companies[t & 3];
+                long start = threads.getThreadAllocatedBytes(thread);
+                show.addFirework(t, duration, 20);
+                companyShow.addFirework(company, t, duration, 20);
+                town.addFirework(a, t, duration, 20);
+                town.addFirework(b, company, t, duration, 20);
+                long middle = threads.getThreadAllocatedBytes(thread);
+                show.addFirework(t, duration, 20);
+                companyShow.addFirework(company, t, duration, 20);
+                town.addFirework(a, t, duration, 20);
+                town.addFirework(b, company, t, duration, 20);
+                long end = threads.getThreadAllocatedBytes(thread);
+                newBytes += middle - start;
+                copyBytes += end - middle;
+            }
+            if (round >= warmUpRounds) {
+                newRounds[round - warmUpRounds] = newBytes / (ticks * 4L);
+                copyRounds[round - warmUpRounds] = copyBytes / (ticks * 4L);
+            }
+        }
+        Arrays.sort(copyRounds);
+        Arrays.sort(newRounds);
+        long copyBytes = copyRounds[copyRounds.length / 2];
+        long newBytes = newRounds[newRounds.length / 2];
+
+        if (copyBytes > copyBudget)
+            System.out.println(ERROR_MARK + " Booking a copy of a stored firework allocated " + copyBytes + " bytes, budget " + copyBudget);
+        if (newBytes > newBudget)
+            System.out.println(ERROR_MARK + " Booking a new firework allocated " + newBytes + " bytes, budget " + newBudget);
+
+        // after a snapshot, a booking should copy the bill of its own company, not the bills of every company
+        final int companyCount = 4096;
+        final long snapshotBudget = 4096;
+        CompanyShow crowded = new CompanyShow("crowded", 10);
+        String[] names = new String[companyCount];
+        for (int i = 0; i < companyCount; i++) {
+            names[i] = "company" + i;
+            crowded.addFirework(names[i], i, 1, 1);
+        }
+        long[] snapshotBytes = new long[301];
+        boolean billsKept = true;
+        for (int k = 0; k < snapshotBytes.length; k++) {
+            String company = names[k * 37 % companyCount];
+            ShowSnapshot snapshot = crowded.snapshot();
+            double bill = ((CompanyShowSnapshot) snapshot).getCompanyBill(company);
+            long start = threads.getThreadAllocatedBytes(thread);
+            crowded.addFirework(company, companyCount + k, 1, 1);
+            snapshotBytes[k] = threads.getThreadAllocatedBytes(thread) - start;
+            billsKept &= ((CompanyShowSnapshot) snapshot).getCompanyBill(company) == bill;
+        }
+        Arrays.sort(snapshotBytes);
+        long afterSnapshot = snapshotBytes[snapshotBytes.length / 2];
+        if (afterSnapshot > snapshotBudget || !billsKept)
+            System.out.println(ERROR_MARK + " Booking after a snapshot of " + companyCount + " companies allocated "
+                    + afterSnapshot + " bytes, budget " + snapshotBudget + ", snapshot bills kept " + billsKept);
+
+        System.out.println("Bytes per booking: " + copyBytes + " for a copy, " + newBytes + " for a new firework, "
+                + afterSnapshot + " after a snapshot of " + companyCount + " companies");
+    }
+
+    public static void testWorkloadReplay() {
+        System.out.println("\nTier 35: Testing workload generation and replay...................");
+        TownWorkload workload = new TownWorkload();
+        if (workload.newTown() != null || new TownReplay(workload).run(0) != null)
+            System.out.println(ERROR_MARK + " A workload with no bookings made should have no town or report.");
+        if (workload.setShows(0, 0.5) || workload.setShows(5, 1.5) || workload.setCompanies(10, -1)
+                || workload.setBookings(10, 0) || workload.setBursts(0.5, 0, 10) || workload.setDurations(5, 4)
+                || workload.setCapacityFactor(0))
+            System.out.println(ERROR_MARK + " Bad workload settings should be turned down.");
+        workload.setShows(12, 0.5);
+        workload.setCompanies(50, 1.2);
+        workload.setBookings(20_000, 10_000);
+        workload.setBursts(0.7, 2, 50);
+        workload.setDurations(1, 60);
+        workload.setSeed(7);
+        workload.generate();
+
+        TownWorkload again = new TownWorkload();
+        again.setShows(12, 0.5);
+        again.setCompanies(50, 1.2);
+        again.setBookings(20_000, 10_000);
+        again.setBursts(0.7, 2, 50);
+        again.setDurations(1, 60);
+        again.setSeed(7);
+        again.generate();
+
+        boolean same = workload.size() == 20_000 && again.size() == workload.size();
+        boolean valid = true;
+        int[] companyCounts = new int[workload.getCompanyCount()];
+        int[] timeCounts = new int[100];
+        for (int i = 0; i < workload.size(); i++) {
+            same &= workload.getShow(i) == again.getShow(i) && workload.getTime(i) == again.getTime(i)
+                    && workload.getDuration(i) == again.getDuration(i) && workload.getCost(i) == again.getCost(i)
+                    && Objects.equals(workload.getCompany(i), again.getCompany(i));
+            String company = workload.getCompany(i);
+            valid &= (i == 0 || workload.getTime(i - 1) <= workload.getTime(i)) && workload.getTime(i) >= 0
+                    && workload.getTime(i) < 10_000 && workload.getDuration(i) >= 1 && workload.getDuration(i) <= 60
+                    && (company != null) == workload.isCompanyShow(workload.getShow(i));
+            if (company != null) companyCounts[Integer.parseInt(company.substring("company".length()))]++;
+            timeCounts[workload.getTime(i) / 100]++;
+        }
+        if (!same)
+            System.out.println(ERROR_MARK + " The same settings and seed should make the same bookings.");
+        if (!valid)
+            System.out.println(ERROR_MARK + " Bookings should be in time order, in range, and have companies only in company shows.");
+        int busiest = 0;
+        for (int count : timeCounts) busiest = Math.max(busiest, count);
+        if (companyCounts[0] < 5 * companyCounts[20] || busiest < 3 * workload.size() / timeCounts.length)
+            System.out.println(ERROR_MARK + " Bookings should lean to the big companies and come in bursts: "
+                    + companyCounts[0] + " " + companyCounts[20] + " " + busiest);
+        again.setSeed(8);
+        again.generate();
+        if (again.getTime(100) == workload.getTime(100) && again.getShow(100) == workload.getShow(100)
+                && again.getDuration(100) == workload.getDuration(100))
+            System.out.println(ERROR_MARK + " A different seed should make different bookings.");
+
+        Town town = workload.newTown();
+        int accepted = 0;
+        for (int i = 0; i < workload.size(); i++) {
+            String company = workload.getCompany(i);
+            if (company == null ? town.addFirework(workload.getShow(i), workload.getTime(i), workload.getDuration(i), workload.getCost(i))
+                    : town.addFirework(workload.getShow(i), company, workload.getTime(i), workload.getDuration(i), workload.getCost(i)))
+                accepted++;
+        }
+        TownReplay.Report report = new TownReplay(workload).run(1);
+        if (report.getBookings() != workload.size() || report.getAccepted() != accepted
+                || report.getAccepted() == workload.size() || report.getShowWarnings() == 0)
+            System.out.println(ERROR_MARK + " The replay should book like the town does, and bursts should fill some shows: "
+                    + report.getAccepted() + " " + accepted + " " + report.getShowWarnings());
+        if (report.getUpdates() == 0 || report.getUpdateLatency(50) > report.getUpdateLatency(99)
+                || report.getUpdateLatency(99) > report.getUpdateLatency(99.9) || report.getUpdateLatency(75) != -1
+                || report.getSustainedThroughput() <= 0 || report.getSustainedThroughput() > report.getThroughput() * 1.0001)
+            System.out.println(ERROR_MARK + " Replay timings should be recorded: " + report);
+        // each firework is a map entry, a run in the occupancy index and a cost, so a few hundred bytes
+        if (report.getBytesPerFirework() < 16 || report.getBytesPerFirework() > 4096)
+            System.out.println(ERROR_MARK + " The town should hold a plausible heap for each firework: " + report);
+
+        File file = null;
+        try {
+            file = File.createTempFile("replay", ".json");
+            report.write(file);
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            if (!json.equals(report.toJson()) || !json.startsWith("{") || !json.endsWith("}")
+                    || !json.contains("\"accepted\":" + accepted) || !json.contains("\"updateNanosP99\":")
+                    || !json.contains("\"bytesPerFirework\":"))
+                System.out.println(ERROR_MARK + " The report file should hold the report as JSON: " + json);
+        } catch (IOException e) {
+            System.out.println(ERROR_MARK + " Report write failed: " + e);
+        } finally {
+            if (file != null) file.delete();
+        }
+        System.out.println(report);
+    }
+
+    private static long countLaunches(Show show, int now, int size) {
+        long[] launches = new long[1];
+        show.forEachFirework((firework, count) -> {
+            if (firework.time > now - size && firework.time <= now) launches[0] += count;
+        });
+        return launches[0];
+    }
+
+
     private static void showBeforeAfter(String companyShow, String result) {
         
         String indent = "    ";
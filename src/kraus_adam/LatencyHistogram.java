@@ -0,0 +1,129 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a histogram for recording how long operations take.
+ */
+package kraus_adam;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with a fixed set of buckets, in the style of HdrHistogram.
+ * Values under 32 get their own bucket, and each power of two above that is split into 16 buckets, so every
+ * value is kept to within about 6%. Recording never allocates and takes constant time.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+    /**
+     * Linear buckets plus 16 buckets for each power of two from 2^5 to 2^62
+     */
+    private static final int BUCKETS = LINEAR_BUCKETS + 58 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    /**
+     * LatencyHistogram constructor
+     */
+    LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new LongAdder();
+        total = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records a value
+     * @param value value to record, negative values are recorded as 0
+     */
+    void record(long value) {
+        if(value < 0) value = 0;
+
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        if(value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gets the number of values recorded
+     * @return  number of values
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the largest value recorded
+     * @return  max value, 0 if nothing was recorded
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the average value recorded
+     * @return  mean value, 0 if nothing was recorded
+     */
+    double getMean() {
+        long values = count.sum();
+        return values == 0 ? 0 : (double) total.sum() / values;
+    }
+
+    /**
+     * Gets the value that a percent of the recorded values are at or below
+     * @param percent   percent of values, from 0 to 100
+     * @return          value at that percentile, 0 if nothing was recorded
+     */
+    long getPercentile(double percent) {
+        long values = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            values += counts.get(i);
+        }
+        if(values == 0) return 0;
+
+        long wanted = Math.max(1, (long) Math.ceil(values * percent / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if(seen >= wanted) return Math.min(highestValue(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values
+     */
+    void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    private static int bucket(long value) {
+        if(value < LINEAR_BUCKETS) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int top = (int) (value >>> (exponent - 4));
+        return LINEAR_BUCKETS + (exponent - 5) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    private static long highestValue(int bucket) {
+        if(bucket < LINEAR_BUCKETS) return bucket;
+
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        int top = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((long) (top + 1) << (exponent - 4)) - 1;
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Adam Kraus
+ *
+ * This file counts the fireworks launched in sliding windows of time, such as the last 10 and 60 times.
+ */
+package kraus_adam;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Launches in several sliding windows that end at the current time, with the most launches each window has held.
+ * The launches at each of the last times are kept in a ring buffer as long as the largest window, and each window
+ * keeps a running sum, so reading a window takes constant time. Fireworks booked for later are kept in an
+ * {@link OccupancyIndex} by launch time, and are moved into the ring as the clock reaches them. Times with no
+ * launches are skipped over, so moving the clock costs time for each launch rather than for each time passed.
+ * Counting a launch or moving the clock only writes to the buffers made with the windows. The ring is split into
+ * chunks that carry the token of the copy that may change them in place, like {@link CompanyBills}, so a fork
+ * shares the ring and a change after it copies only the list of chunks and the one chunk it touches.
+ */
+final class LaunchWindows {
+    /**
+     * Largest window, so a ring buffer stays a reasonable size
+     */
+    static final int MAX_WINDOW = 1 << 20;
+    /**
+     * Number of bits of a slot that pick the slot within its chunk of the ring
+     */
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Launches at a run of slots of the ring
+     */
+    private static final class Chunk {
+        final long[] counts;
+        final Object owner;
+
+        Chunk(long[] counts, Object owner) {
+            this.counts = counts;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Size of each window, smallest first
+     */
+    private final int[] sizes;
+    /**
+     * Launches at each of the last times, by time modulo the largest window, in chunks
+     */
+    private Chunk[] ring;
+    /**
+     * Number of slots in the ring, the size of the largest window
+     */
+    private final int ringLength;
+    /**
+     * True while the list of chunks may be shared with a fork
+     */
+    private boolean shared;
+    /**
+     * Token on the chunks these windows may change in place
+     */
+    private Object owner;
+    /**
+     * Launches in each window
+     */
+    private final long[] sums;
+    /**
+     * Most launches each window has held
+     */
+    private final long[] peaks;
+    /**
+     * Launches at every time, including times the clock has not reached
+     */
+    private OccupancyIndex launches;
+    /**
+     * Last time counted in the ring
+     */
+    private long head;
+
+    /**
+     * LaunchWindows constructor
+     * @param sizes     size of each window, checked by {@link #sorted(int...)}
+     * @param time      current time
+     */
+    LaunchWindows(int[] sizes, int time) {
+        this.sizes = sizes;
+        ringLength = sizes[sizes.length - 1];
+        owner = new Object();
+        ring = new Chunk[(ringLength + CHUNK_SIZE - 1) >> CHUNK_BITS];
+        for(int i = 0; i < ring.length; i++) {
+            ring[i] = new Chunk(new long[Math.min(CHUNK_SIZE, ringLength - (i << CHUNK_BITS))], owner);
+        }
+        sums = new long[sizes.length];
+        peaks = new long[sizes.length];
+        launches = new OccupancyIndex();
+        head = time;
+    }
+
+    private LaunchWindows(LaunchWindows windows) {
+        sizes = windows.sizes;
+        ringLength = windows.ringLength;
+        ring = windows.ring;
+        shared = true;
+        owner = new Object();
+        // neither copy may change the shared chunks in place any more
+        windows.shared = true;
+        windows.owner = new Object();
+        sums = windows.sums.clone();
+        peaks = windows.peaks.clone();
+        launches = windows.launches.fork();
+        head = windows.head;
+    }
+
+    /**
+     * Sorts the window sizes, smallest first
+     * @param sizes number of times in each window
+     * @return      sorted copy, or null if a size is not between 1 and MAX_WINDOW, or is repeated
+     */
+    static int[] sorted(int... sizes) {
+        if(sizes == null || sizes.length == 0) return null;
+
+        int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        for(int i = 0; i < sorted.length; i++) {
+            if(sorted[i] < 1 || sorted[i] > MAX_WINDOW) return null;
+            if(i > 0 && sorted[i] == sorted[i - 1]) return null;
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Copies the windows in constant time. The ring buffer and the launches to come are shared until either copy
+     * changes.
+     * @return  copy of the windows
+     */
+    LaunchWindows fork() {
+        return new LaunchWindows(this);
+    }
+
+    /**
+     * Makes empty windows of the same sizes that start from a time, keeping the peaks of these windows
+     * @param time  current time
+     * @return      empty windows
+     */
+    LaunchWindows restart(int time) {
+        LaunchWindows windows = new LaunchWindows(sizes, time);
+        System.arraycopy(peaks, 0, windows.peaks, 0, peaks.length);
+        return windows;
+    }
+
+    /**
+     * Gets the number of windows
+     * @return  number of windows
+     */
+    int size() {
+        return sizes.length;
+    }
+
+    /**
+     * Gets the size of a window
+     * @param window    index of the window, smallest first
+     * @return          number of times in the window
+     */
+    int getSize(int window) {
+        return sizes[window];
+    }
+
+    /**
+     * Gets the launches in a window ending at the current time
+     * @param window    index of the window, smallest first
+     * @return          number of launches
+     */
+    long getLaunches(int window) {
+        return sums[window];
+    }
+
+    /**
+     * Gets the most launches a window has held
+     * @param window    index of the window, smallest first
+     * @return          peak number of launches
+     */
+    long getPeak(int window) {
+        return peaks[window];
+    }
+
+    /**
+     * Counts fireworks launching at a time
+     * @param time  launch time
+     * @param count number of fireworks, negative when they are cancelled
+     */
+    void add(int time, int count) {
+        launches.add(time, time, count);
+        if(time > head || time <= head - ringLength) return;
+
+        // the time is already in the ring, so it is counted right away
+        int slot = slot(time);
+        editable(slot)[slot & (CHUNK_SIZE - 1)] += count;
+        for(int i = 0; i < sizes.length; i++) {
+            if(time > head - sizes[i]) {
+                sums[i] += count;
+                peaks[i] = Math.max(peaks[i], sums[i]);
+            }
+        }
+    }
+
+    /**
+     * Moves the windows forward to end at a time
+     * @param time  new current time
+     */
+    void advance(int time) {
+        while(head < time) {
+            if(sums[sums.length - 1] == 0) {
+                // every slot of the ring is empty, so the times up to the next launch can be skipped
+                long next = launches.firstAtLeast(head + 1, time, 1);
+                if(next < 0) {
+                    head = time;
+                    return;
+                }
+                head = next - 1;
+            }
+
+            head++;
+            int slot = slot(head);
+            for(int i = 0; i < sizes.length; i++) {
+                // the time leaving each window is still in the ring, even for the largest window
+                sums[i] -= countAt(slot(head - sizes[i]));
+            }
+            long count = launches.countAt(head);
+            if(countAt(slot) != count) editable(slot)[slot & (CHUNK_SIZE - 1)] = count;
+            for(int i = 0; i < sizes.length; i++) {
+                sums[i] += count;
+                peaks[i] = Math.max(peaks[i], sums[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes the window sizes and peaks to a stream. The launches are not written, since they are counted again
+     * from the fireworks when the windows are read.
+     * @param out   stream to write to
+     * @throws IOException  if the stream can't be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(sizes.length);
+        for(int i = 0; i < sizes.length; i++) {
+            out.writeInt(sizes[i]);
+            out.writeLong(peaks[i]);
+        }
+    }
+
+    /**
+     * Reads windows written by {@link #write(DataOutputStream)}. The windows start a largest window before the
+     * current time, so once the launches are counted again, {@link #resume(int)} fills the ring up to it.
+     * @param in    stream to read from
+     * @param time  current time the windows were written at
+     * @return      empty windows with their peaks
+     * @throws IOException  if the stream can't be read or the sizes or peaks are not valid
+     */
+    static LaunchWindows read(DataInputStream in, int time) throws IOException {
+        int size = TownStore.readCount(in);
+        int[] sizes = new int[size];
+        long[] peaks = new long[size];
+        for(int i = 0; i < size; i++) {
+            sizes[i] = in.readInt();
+            peaks[i] = in.readLong();
+            if(peaks[i] < 0) throw new IOException("Bad launch window peak");
+        }
+        int[] sorted = sorted(sizes);
+        if(sorted == null || !Arrays.equals(sorted, sizes)) throw new IOException("Bad launch windows");
+
+        LaunchWindows windows = new LaunchWindows(sizes, time - sizes[size - 1]);
+        System.arraycopy(peaks, 0, windows.peaks, 0, size);
+        return windows;
+    }
+
+    /**
+     * Moves windows made by {@link #read(DataInputStream, int)} forward to the time they were written, once
+     * every launch has been counted, keeping the peaks that were read
+     * @param time  current time the windows were written at
+     * @return      these windows
+     */
+    LaunchWindows resume(int time) {
+        long[] read = peaks.clone();
+        advance(time);
+        System.arraycopy(read, 0, peaks, 0, peaks.length);
+        return this;
+    }
+
+    private int slot(long time) {
+        return (int) Math.floorMod(time, (long) ringLength);
+    }
+
+    private long countAt(int slot) {
+        return ring[slot >> CHUNK_BITS].counts[slot & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Gets the counts of the chunk of a slot that these windows may change in place, copying the chunk if it is
+     * shared with a fork
+     * @param slot  slot of the ring
+     * @return      counts of the chunk owned by these windows
+     */
+    private long[] editable(int slot) {
+        if(shared) {
+            ring = ring.clone();
+            shared = false;
+        }
+
+        int index = slot >> CHUNK_BITS;
+        Chunk chunk = ring[index];
+        if(chunk.owner != owner) {
+            chunk = new Chunk(chunk.counts.clone(), owner);
+            ring[index] = chunk;
+        }
+
+        return chunk.counts;
+    }
+}
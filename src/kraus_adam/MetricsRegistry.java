@@ -0,0 +1,59 @@
+/**
+ * Adam Kraus
+ *
+ * This file registers show and town metrics with the JMX platform server.
+ */
+package kraus_adam;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Helpers to put metrics into JMX and take them out again
+ */
+final class MetricsRegistry {
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Makes a JMX object name
+     * @param name  object name string, with any user text already quoted
+     * @return      object name
+     */
+    static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch(MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Registers metrics with the platform MBean server
+     * @param metrics       metrics to register
+     * @param objectName    name to register them under
+     * @return              true if they were registered
+     */
+    static boolean register(Object metrics, ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            return true;
+        } catch(JMException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes metrics from the platform MBean server
+     * @param objectName    name the metrics were registered under
+     */
+    static void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch(JMException e) {
+            // already gone
+        }
+    }
+}
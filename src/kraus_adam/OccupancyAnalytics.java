@@ -0,0 +1,133 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a report of how full a show or town was over a range of times.
+ */
+package kraus_adam;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of how many times had each number of fireworks up, with the utilization and warning statistics
+ * that come from it. A report never changes after it is made.
+ */
+public class OccupancyAnalytics {
+    private final int from;
+    private final int to;
+    private final long capacity;
+    /**
+     * Number of times with each number of fireworks up
+     */
+    private long[] ticksAt;
+    private long warningTicks;
+    /**
+     * Sum of the fireworks up at every time
+     */
+    private long fireworkTicks;
+
+    /**
+     * OccupancyAnalytics constructor
+     * @param from      first time of the report
+     * @param to        last time of the report
+     * @param capacity  max fireworks allowed up at a given time
+     */
+    OccupancyAnalytics(int from, int to, long capacity) {
+        this.from = from;
+        this.to = to;
+        this.capacity = capacity;
+        ticksAt = new long[1];
+    }
+
+    /**
+     * Adds a run of times with the same number of fireworks up, while the report is made
+     * @param ticks         number of times in the run
+     * @param fireworksUp   number of fireworks up
+     * @param warning       true if the times had a warning
+     */
+    void add(long ticks, int fireworksUp, boolean warning) {
+        if(fireworksUp >= ticksAt.length) {
+            ticksAt = Arrays.copyOf(ticksAt, Math.max(fireworksUp + 1, ticksAt.length * 2));
+        }
+
+        ticksAt[Math.max(fireworksUp, 0)] += ticks;
+        fireworkTicks += ticks * fireworksUp;
+        if(warning) warningTicks += ticks;
+    }
+
+    /**
+     * Gets the first time of the report
+     * @return  first time
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Gets the last time of the report
+     * @return  last time
+     */
+    public int getTo() {
+        return to;
+    }
+
+    /**
+     * Gets the number of times in the report
+     * @return  number of times
+     */
+    public long getTicks() {
+        return (long) to - from + 1;
+    }
+
+    /**
+     * Gets the number of times that had a number of fireworks up
+     * @param fireworksUp   number of fireworks up
+     * @return              number of times
+     */
+    public long getTicksAt(int fireworksUp) {
+        return fireworksUp >= 0 && fireworksUp < ticksAt.length ? ticksAt[fireworksUp] : 0;
+    }
+
+    /**
+     * Gets the most fireworks up at one time
+     * @return  peak number of fireworks up
+     */
+    public int getPeakFireworksUp() {
+        int peak = ticksAt.length - 1;
+        while(peak > 0 && ticksAt[peak] == 0) peak--;
+
+        return peak;
+    }
+
+    /**
+     * Gets the average number of fireworks up
+     * @return  average fireworks up over every time in the report
+     */
+    public double getAverageFireworksUp() {
+        return (double) fireworkTicks / getTicks();
+    }
+
+    /**
+     * Gets the average percent of max fireworks that were up
+     * @return  utilization percent
+     */
+    public double getUtilization() {
+        return getAverageFireworksUp() / capacity * 100;
+    }
+
+    /**
+     * Gets the percent of times that had a warning
+     * @return  warning percent
+     */
+    public double getWarningPercent() {
+        return (double) warningTicks / getTicks() * 100;
+    }
+
+    /**
+     * Prints the report
+     * @return  report string
+     */
+    public String toString() {
+        return String.format("Times %d to %d: peak %d, average %.2f, utilization %.1f%%, warning %.1f%%",
+                from, to, getPeakFireworksUp(), getAverageFireworksUp(), getUtilization(), getWarningPercent());
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * Adam Kraus
+ *
+ * This file is an index of how many fireworks are up at each time of a show.
+ */
+package kraus_adam;
+
+/**
+ * Segment tree over time that counts the fireworks up at every time.
+ * Nodes are only created for the parts of the timeline that have fireworks, and the tree grows as later times
+ * are used. Like {@link PersistentTreeMap}, the index can be forked in constant time and forks share every node
+ * that neither of them has changed since.
+ */
+final class OccupancyIndex {
+    /**
+     * Largest time the index can cover
+     */
+    private static final long MAX_SPAN = (long) Integer.MAX_VALUE + 1;
+
+    /**
+     * Action called for each run of times with the same number of fireworks up
+     */
+    interface RunAction {
+        /**
+         * Called for one run of times
+         * @param from  first time of the run
+         * @param to    last time of the run
+         * @param count number of fireworks up during the run
+         */
+        void run(long from, long to, int count);
+    }
+
+    /**
+     * Node of the tree covering a range of times
+     */
+    private static final class Node {
+        Node left;
+        Node right;
+        /**
+         * Fireworks up over the whole range of the node
+         */
+        int add;
+        /**
+         * Most fireworks up at one time in the range, including add
+         */
+        int max;
+        /**
+         * Fewest fireworks up at one time in the range, including add
+         */
+        int min;
+        Object owner;
+
+        Node(Object owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Root of the tree, covering times 0 to span - 1
+     */
+    private Node root;
+    private long span;
+    /**
+     * Token on the nodes this index may change in place
+     */
+    private Object owner;
+
+    /**
+     * OccupancyIndex constructor
+     */
+    OccupancyIndex() {
+        span = 1;
+        owner = new Object();
+    }
+
+    /**
+     * Copies the index in constant time. Both indexes can be changed afterwards without affecting each other.
+     * @return  copy of the index
+     */
+    OccupancyIndex fork() {
+        OccupancyIndex copy = new OccupancyIndex();
+        copy.root = root;
+        copy.span = span;
+        owner = new Object();
+        return copy;
+    }
+
+    /**
+     * Adds fireworks to every time in a range
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @param count number of fireworks to add, negative to remove
+     */
+    void add(long from, long to, int count) {
+        from = Math.max(from, 0);
+        to = Math.min(to, MAX_SPAN - 1);
+        if(from > to || count == 0) return;
+
+        while(to >= span) {
+            if(root != null) {
+                Node parent = new Node(owner);
+                parent.left = root;
+                parent.max = Math.max(root.max, 0);
+                parent.min = Math.min(root.min, 0);
+                root = parent;
+            }
+            span *= 2;
+        }
+
+        root = add(root, 0, span - 1, from, to, count);
+    }
+
+    /**
+     * Gets the number of fireworks up at a time
+     * @param time  time to check
+     * @return      number of fireworks up
+     */
+    int countAt(long time) {
+        if(time < 0 || time >= span) return 0;
+
+        int count = 0;
+        Node node = root;
+        long low = 0;
+        long high = span - 1;
+        while(node != null) {
+            count += node.add;
+            long middle = (low + high) >>> 1;
+            if(time <= middle) {
+                node = node.left;
+                high = middle;
+            } else {
+                node = node.right;
+                low = middle + 1;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the most fireworks up at one time in a range
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @return      most fireworks up
+     */
+    int max(long from, long to) {
+        from = Math.max(from, 0);
+        if(from > to) return 0;
+        if(from >= span) return 0;
+
+        int max = max(root, 0, span - 1, from, Math.min(to, span - 1));
+        return to >= span ? Math.max(max, 0) : max;
+    }
+
+    /**
+     * Finds the first time in a range with at least a number of fireworks up
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @param count number of fireworks
+     * @return      first matching time, or -1 if there is none
+     */
+    long firstAtLeast(long from, long to, int count) {
+        from = Math.max(from, 0);
+        to = Math.min(to, MAX_SPAN - 1);
+        if(from > to) return -1;
+
+        if(from < span) {
+            long found = firstAtLeast(root, 0, span - 1, from, Math.min(to, span - 1), count, 0);
+            if(found >= 0) return found;
+        }
+        return to >= span && count <= 0 ? Math.max(from, span) : -1;
+    }
+
+    /**
+     * Finds the first time in a range with fewer than a number of fireworks up
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @param count number of fireworks
+     * @return      first matching time, or -1 if there is none
+     */
+    long firstBelow(long from, long to, int count) {
+        from = Math.max(from, 0);
+        to = Math.min(to, MAX_SPAN - 1);
+        if(from > to) return -1;
+
+        if(from < span) {
+            long found = firstBelow(root, 0, span - 1, from, Math.min(to, span - 1), count, 0);
+            if(found >= 0) return found;
+        }
+        return to >= span && count > 0 ? Math.max(from, span) : -1;
+    }
+
+    /**
+     * Goes through a range of times in order, one run of times with the same number of fireworks up at a time.
+     * This only visits the nodes of the tree, so it takes as long as the number of times the count changes and not
+     * the number of times in the range. Runs next to each other can have the same count.
+     * @param from      first time in the range
+     * @param to        last time in the range
+     * @param action    called for each run
+     */
+    void forEachRun(long from, long to, RunAction action) {
+        if(from > to) return;
+        if(from < 0) {
+            action.run(from, Math.min(to, -1), 0);
+            from = 0;
+            if(from > to) return;
+        }
+
+        if(from < span) forEachRun(root, 0, span - 1, from, Math.min(to, span - 1), 0, action);
+        if(to >= span) action.run(Math.max(from, span), to, 0);
+    }
+
+    private void forEachRun(Node node, long low, long high, long from, long to, int above, RunAction action) {
+        if(to < low || high < from) return;
+        if(node == null || (node.left == null && node.right == null)) {
+            action.run(Math.max(low, from), Math.min(high, to), above + (node == null ? 0 : node.add));
+            return;
+        }
+
+        long middle = (low + high) >>> 1;
+        forEachRun(node.left, low, middle, from, to, above + node.add, action);
+        forEachRun(node.right, middle + 1, high, from, to, above + node.add, action);
+    }
+
+    private Node add(Node node, long low, long high, long from, long to, int count) {
+        node = editable(node);
+        if(from <= low && high <= to) {
+            node.add += count;
+            node.max += count;
+            node.min += count;
+            return node;
+        }
+
+        long middle = (low + high) >>> 1;
+        if(from <= middle) node.left = add(node.left, low, middle, from, to, count);
+        if(to > middle) node.right = add(node.right, middle + 1, high, from, to, count);
+        node.max = node.add + Math.max(max(node.left), max(node.right));
+        node.min = node.add + Math.min(min(node.left), min(node.right));
+        return node;
+    }
+
+    private int max(Node node, long low, long high, long from, long to) {
+        if(node == null) return 0;
+        if(from <= low && high <= to) return node.max;
+
+        long middle = (low + high) >>> 1;
+        int max = Integer.MIN_VALUE;
+        if(from <= middle) max = Math.max(max, max(node.left, low, middle, from, to));
+        if(to > middle) max = Math.max(max, max(node.right, middle + 1, high, from, to));
+        return node.add + max;
+    }
+
+    private long firstAtLeast(Node node, long low, long high, long from, long to, int count, int above) {
+        if(to < low || high < from) return -1;
+        if(node == null) return above >= count ? Math.max(low, from) : -1;
+        if(above + node.max < count) return -1;
+        if(low == high) return low;
+
+        long middle = (low + high) >>> 1;
+        long found = firstAtLeast(node.left, low, middle, from, to, count, above + node.add);
+        if(found >= 0) return found;
+        return firstAtLeast(node.right, middle + 1, high, from, to, count, above + node.add);
+    }
+
+    private long firstBelow(Node node, long low, long high, long from, long to, int count, int above) {
+        if(to < low || high < from) return -1;
+        if(node == null) return above < count ? Math.max(low, from) : -1;
+        if(above + node.min >= count) return -1;
+        if(low == high) return low;
+
+        long middle = (low + high) >>> 1;
+        long found = firstBelow(node.left, low, middle, from, to, count, above + node.add);
+        if(found >= 0) return found;
+        return firstBelow(node.right, middle + 1, high, from, to, count, above + node.add);
+    }
+
+    private Node editable(Node node) {
+        if(node == null) return new Node(owner);
+        if(node.owner == owner) return node;
+
+        Node copy = new Node(owner);
+        copy.left = node.left;
+        copy.right = node.right;
+        copy.add = node.add;
+        copy.max = node.max;
+        copy.min = node.min;
+        return copy;
+    }
+
+    private static int max(Node node) {
+        return node == null ? 0 : node.max;
+    }
+
+    private static int min(Node node) {
+        return node == null ? 0 : node.min;
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a listener for changes to the fireworks up in a show.
+ */
+package kraus_adam;
+
+/**
+ * Listener told about every firework added to or removed from a show, such as a town keeping its total
+ */
+interface OccupancyListener {
+    /**
+     * Called after fireworks were added to or removed from a range of times
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @param count number of fireworks added, negative if removed
+     */
+    void occupancyChanged(long from, long to, int count);
+
+    /**
+     * Called after all the fireworks of a show were replaced at once, such as when a session is committed
+     * @param show  show with the new fireworks
+     */
+    void occupancyReplaced(Show show);
+}
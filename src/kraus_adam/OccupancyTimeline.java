@@ -0,0 +1,352 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a compact record of how many fireworks a show or town had up at every time in a range.
+ */
+package kraus_adam;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fireworks up and warnings over a range of times, packed for audits. Times with the same number of fireworks
+ * up and the same warning are joined into one run, and each run is stored as the change in fireworks up from
+ * the run before, with the warning in its lowest bit, followed by the length of the run, both as variable
+ * length numbers. Most runs take two or three bytes however many times they cover.
+ * Every {@link #CHECKPOINT_INTERVAL} runs the start time, fireworks up and position of the run are kept, so the
+ * fireworks up at one time are found by a binary search of the checkpoints and then reading at most that many
+ * runs. A timeline never changes after it is made.
+ */
+public class OccupancyTimeline {
+    /**
+     * Number of runs between checkpoints
+     */
+    static final int CHECKPOINT_INTERVAL = 64;
+
+    private final int from;
+    private final int to;
+    /**
+     * Packed runs, of which the first size bytes are used
+     */
+    private byte[] data;
+    private int size;
+    private int runs;
+    /**
+     * Start time, fireworks up of the run before, and position in the data of every checkpointed run
+     */
+    private long[] checkpointTimes;
+    private int[] checkpointCounts;
+    private int[] checkpointOffsets;
+
+    /**
+     * Run being joined while the timeline is made
+     */
+    private long pendingTicks;
+    private int pendingCount;
+    private boolean pendingWarning;
+    /**
+     * Start time of the pending run, and fireworks up of the last run packed
+     */
+    private long time;
+    private int lastCount;
+
+    /**
+     * OccupancyTimeline constructor
+     * @param from  first time of the timeline
+     * @param to    last time of the timeline
+     */
+    OccupancyTimeline(int from, int to) {
+        this.from = from;
+        this.to = to;
+        data = new byte[16];
+        checkpointTimes = new long[1];
+        checkpointCounts = new int[1];
+        checkpointOffsets = new int[1];
+        time = from;
+    }
+
+    /**
+     * Adds a run of times with the same number of fireworks up, while the timeline is made
+     * @param ticks         number of times in the run
+     * @param fireworksUp   number of fireworks up
+     * @param warning       true if the times had a warning
+     */
+    void add(long ticks, int fireworksUp, boolean warning) {
+        if(ticks <= 0) return;
+        if(pendingTicks > 0 && fireworksUp == pendingCount && warning == pendingWarning) {
+            pendingTicks += ticks;
+            return;
+        }
+
+        pack();
+        pendingTicks = ticks;
+        pendingCount = fireworksUp;
+        pendingWarning = warning;
+    }
+
+    /**
+     * Packs the last run and trims the data, once every run has been added
+     * @return  this timeline
+     */
+    OccupancyTimeline finish() {
+        pack();
+        data = Arrays.copyOf(data, size);
+        int checkpoints = (runs + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+        checkpointTimes = Arrays.copyOf(checkpointTimes, checkpoints);
+        checkpointCounts = Arrays.copyOf(checkpointCounts, checkpoints);
+        checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoints);
+
+        return this;
+    }
+
+    private void pack() {
+        if(pendingTicks <= 0) return;
+
+        if(runs % CHECKPOINT_INTERVAL == 0) {
+            int checkpoint = runs / CHECKPOINT_INTERVAL;
+            if(checkpoint == checkpointTimes.length) {
+                checkpointTimes = Arrays.copyOf(checkpointTimes, checkpoint * 2);
+                checkpointCounts = Arrays.copyOf(checkpointCounts, checkpoint * 2);
+                checkpointOffsets = Arrays.copyOf(checkpointOffsets, checkpoint * 2);
+            }
+            checkpointTimes[checkpoint] = time;
+            checkpointCounts[checkpoint] = lastCount;
+            checkpointOffsets[checkpoint] = size;
+        }
+
+        writeNumber(zigzag(pendingCount - lastCount) << 1 | (pendingWarning ? 1 : 0));
+        writeNumber(pendingTicks - 1);
+        runs++;
+        time += pendingTicks;
+        lastCount = pendingCount;
+        pendingTicks = 0;
+    }
+
+    private void writeNumber(long value) {
+        if(size + 10 > data.length) data = Arrays.copyOf(data, data.length * 2);
+
+        // seven bits at a time, lowest first, with the high bit set on every byte but the last
+        while((value & ~0x7fL) != 0) {
+            data[size++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Reads the packed runs from a position, calling an action for each one until it returns false
+     */
+    private interface RunReader {
+        boolean run(long start, long end, int count, boolean warning);
+    }
+
+    private void read(int checkpoint, RunReader reader) {
+        long start = checkpointTimes[checkpoint];
+        int count = checkpointCounts[checkpoint];
+        int position = checkpointOffsets[checkpoint];
+        while(position < data.length) {
+            // each number ends at the first byte without its high bit set
+            long change = 0;
+            for(int shift = 0; ; shift += 7) {
+                byte next = data[position++];
+                change |= (long) (next & 0x7f) << shift;
+                if(next >= 0) break;
+            }
+            long ticks = 0;
+            for(int shift = 0; ; shift += 7) {
+                byte next = data[position++];
+                ticks |= (long) (next & 0x7f) << shift;
+                if(next >= 0) break;
+            }
+
+            count += (int) unzigzag(change >>> 1);
+            long end = start + ticks;
+            if(!reader.run(start, end, count, (change & 1) != 0)) return;
+
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Finds the last checkpoint at or before a time
+     * @param time  time in the timeline
+     * @return      index of the checkpoint
+     */
+    private int checkpointAt(long time) {
+        int low = 0;
+        int high = checkpointTimes.length - 1;
+        while(low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if(checkpointTimes[middle] <= time) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the first time of the timeline
+     * @return  first time
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * Gets the last time of the timeline
+     * @return  last time
+     */
+    public int getTo() {
+        return to;
+    }
+
+    /**
+     * Gets the number of runs of times with the same fireworks up and warning
+     * @return  number of runs
+     */
+    public int getRunCount() {
+        return runs;
+    }
+
+    /**
+     * Gets the number of bytes the packed runs take
+     * @return  packed size in bytes
+     */
+    public int getEncodedSize() {
+        return data.length;
+    }
+
+    /**
+     * Gets the number of fireworks up at a time
+     * @param time  time to check
+     * @return      number of fireworks up, or -1 if the time is not in the timeline
+     */
+    public int getFireworksUpAt(int time) {
+        int[] found = {-1};
+        if(time >= from && time <= to && runs > 0) read(checkpointAt(time), (start, end, count, warning) -> {
+            if(end < time) return true;
+
+            found[0] = count;
+            return false;
+        });
+
+        return found[0];
+    }
+
+    /**
+     * Checks if there was a warning at a time
+     * @param time  time to check
+     * @return      true if the time is in the timeline and had a warning
+     */
+    public boolean hasWarningAt(int time) {
+        boolean[] found = {false};
+        if(time >= from && time <= to && runs > 0) read(checkpointAt(time), (start, end, count, warning) -> {
+            if(end < time) return true;
+
+            found[0] = warning;
+            return false;
+        });
+
+        return found[0];
+    }
+
+    /**
+     * Calls an action for every run of the timeline in order, without unpacking the whole timeline at once
+     * @param action    called with the first and last time and the fireworks up of each run
+     */
+    void forEachRun(OccupancyIndex.RunAction action) {
+        if(runs > 0) read(0, (start, end, count, warning) -> {
+            action.run(start, end, count);
+            return true;
+        });
+    }
+
+    /**
+     * Gets the number of warnings, which is the number of runs of consecutive warning times
+     * @return  number of warnings
+     */
+    public int getWarningCount() {
+        int[] warnings = new int[1];
+        boolean[] last = new boolean[1];
+        if(runs > 0) read(0, (start, end, count, warning) -> {
+            if(warning && !last[0]) warnings[0]++;
+            last[0] = warning;
+            return true;
+        });
+
+        return warnings[0];
+    }
+
+    /**
+     * Writes the timeline to a stream. Only the packed runs are written, since the checkpoints are found again
+     * when the timeline is read.
+     * @param out   stream to write to
+     * @throws IOException  if the stream can't be written
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(from);
+        out.writeInt(to);
+        out.writeInt(runs);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    /**
+     * Reads a timeline written by {@link #write(DataOutputStream)}
+     * @param in    stream to read from
+     * @return      timeline
+     * @throws IOException  if the stream can't be read or the runs don't cover the timeline
+     */
+    public static OccupancyTimeline read(DataInputStream in) throws IOException {
+        int from = in.readInt();
+        int to = in.readInt();
+        int runs = TownStore.readCount(in);
+        byte[] data = new byte[TownStore.readCount(in)];
+        in.readFully(data);
+        if(from > to) throw new IOException("Bad timeline " + from + " to " + to);
+
+        // the runs are unpacked and packed again, which checks them and finds the checkpoints
+        OccupancyTimeline packed = new OccupancyTimeline(from, to);
+        packed.data = data;
+        packed.checkpointTimes = new long[] {from};
+        packed.checkpointCounts = new int[] {0};
+        packed.checkpointOffsets = new int[] {0};
+        OccupancyTimeline timeline = new OccupancyTimeline(from, to);
+        long[] next = {from};
+        try {
+            if(data.length > 0) packed.read(0, (start, end, count, warning) -> {
+                timeline.add(end - start + 1, count, warning);
+                next[0] = end + 1;
+                return true;
+            });
+        } catch(ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Bad timeline runs", e);
+        }
+        timeline.finish();
+        if(next[0] != (long) to + 1 || timeline.runs != runs) throw new IOException("Bad timeline runs");
+
+        return timeline;
+    }
+
+    /**
+     * Prints the timeline
+     * @return  timeline string
+     */
+    public String toString() {
+        return String.format("Times %d to %d: %d runs, %d warnings, %d bytes", from, to, runs, getWarningCount(),
+                getEncodedSize());
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a sorted map that can be copied in constant time. Copies share their nodes and a node is only
+ * copied when one of the maps changes it.
+ */
+package kraus_adam;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Sorted map (AVL tree) with constant time forks.
+ * Every node remembers which map is allowed to change it in place. After a fork neither map owns the shared
+ * nodes anymore, so the path to a changed node is copied and everything else stays shared.
+ * @param <K>   key type
+ * @param <V>   value type
+ */
+final class PersistentTreeMap<K extends Comparable<K>, V> {
+    /**
+     * Node of the tree
+     */
+    private static final class Node<K, V> {
+        K key;
+        V value;
+        Node<K, V> left;
+        Node<K, V> right;
+        int height;
+        Object owner;
+
+        Node(K key, V value, Object owner) {
+            this.key = key;
+            this.value = value;
+            this.height = 1;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Root of the tree
+     */
+    private Node<K, V> root;
+    /**
+     * Number of keys in the map
+     */
+    private int size;
+    /**
+     * Token on the nodes this map may change in place
+     */
+    private Object owner;
+
+    /**
+     * PersistentTreeMap constructor
+     */
+    PersistentTreeMap() {
+        owner = new Object();
+    }
+
+    /**
+     * Copies the map in constant time. Both maps can be changed afterwards without affecting each other.
+     * @return  copy of the map
+     */
+    PersistentTreeMap<K, V> fork() {
+        PersistentTreeMap<K, V> copy = new PersistentTreeMap<K, V>();
+        copy.root = root;
+        copy.size = size;
+        owner = new Object();
+        return copy;
+    }
+
+    /**
+     * Gets the number of keys in the map
+     * @return  number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the value for a key
+     * @param key   key to look up
+     * @return      value of the key, or null if it is not in the map
+     */
+    V get(K key) {
+        Node<K, V> node = root;
+        while(node != null) {
+            int compare = key.compareTo(node.key);
+            if(compare == 0) return node.value;
+            node = compare < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a key is in the map
+     * @param key   key to look up
+     * @return      true if the key is in the map
+     */
+    boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Gets the greatest key less than or equal to the given key
+     * @param key   key to look up
+     * @return      floor key, or null if there is none
+     */
+    K floorKey(K key) {
+        K floor = null;
+        Node<K, V> node = root;
+        while(node != null) {
+            int compare = key.compareTo(node.key);
+            if(compare == 0) return node.key;
+            if(compare < 0) {
+                node = node.left;
+            } else {
+                floor = node.key;
+                node = node.right;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Gets the smallest key greater than the given key
+     * @param key   key to look up
+     * @return      higher key, or null if there is none
+     */
+    K higherKey(K key) {
+        K higher = null;
+        Node<K, V> node = root;
+        while(node != null) {
+            if(key.compareTo(node.key) < 0) {
+                higher = node.key;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return higher;
+    }
+
+    /**
+     * Gets the smallest key in the map
+     * @return  first key, or null if the map is empty
+     */
+    K firstKey() {
+        Node<K, V> node = root;
+        if(node == null) return null;
+        while(node.left != null) node = node.left;
+        return node.key;
+    }
+
+    /**
+     * Gets the greatest key in the map
+     * @return  last key, or null if the map is empty
+     */
+    K lastKey() {
+        Node<K, V> node = root;
+        if(node == null) return null;
+        while(node.right != null) node = node.right;
+        return node.key;
+    }
+
+    /**
+     * Sets the value for a key
+     * @param key   key to set
+     * @param value new value, not null
+     */
+    void put(K key, V value) {
+        root = put(root, key, value);
+    }
+
+    /**
+     * Removes a key from the map
+     * @param key   key to remove
+     */
+    void remove(K key) {
+        root = remove(root, key);
+    }
+
+    /**
+     * Visits every entry in key order
+     * @param action    action to run for each entry
+     */
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(root, action);
+    }
+
+    private void forEach(Node<K, V> node, BiConsumer<? super K, ? super V> action) {
+        while(node != null) {
+            forEach(node.left, action);
+            action.accept(node.key, node.value);
+            node = node.right;
+        }
+    }
+
+    private Node<K, V> put(Node<K, V> node, K key, V value) {
+        if(node == null) {
+            size++;
+            return new Node<K, V>(key, value, owner);
+        }
+
+        node = editable(node);
+        int compare = key.compareTo(node.key);
+        if(compare == 0) {
+            node.value = value;
+            return node;
+        }
+
+        if(compare < 0) {
+            node.left = put(node.left, key, value);
+        } else {
+            node.right = put(node.right, key, value);
+        }
+        return balance(node);
+    }
+
+    private Node<K, V> remove(Node<K, V> node, K key) {
+        if(node == null) return null;
+
+        int compare = key.compareTo(node.key);
+        if(compare < 0) {
+            Node<K, V> left = remove(node.left, key);
+            if(left == node.left) return node;
+            node = editable(node);
+            node.left = left;
+            return balance(node);
+        }
+        if(compare > 0) {
+            Node<K, V> right = remove(node.right, key);
+            if(right == node.right) return node;
+            node = editable(node);
+            node.right = right;
+            return balance(node);
+        }
+
+        size--;
+        if(node.left == null) return node.right;
+        if(node.right == null) return node.left;
+
+        Node<K, V> successor = node.right;
+        while(successor.left != null) successor = successor.left;
+
+        node = editable(node);
+        node.key = successor.key;
+        node.value = successor.value;
+        node.right = removeFirst(node.right);
+        return balance(node);
+    }
+
+    private Node<K, V> removeFirst(Node<K, V> node) {
+        if(node.left == null) return node.right;
+
+        node = editable(node);
+        node.left = removeFirst(node.left);
+        return balance(node);
+    }
+
+    private Node<K, V> balance(Node<K, V> node) {
+        updateHeight(node);
+        int difference = height(node.left) - height(node.right);
+
+        if(difference > 1) {
+            if(height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(editable(node.left));
+            }
+            return rotateRight(node);
+        }
+        if(difference < -1) {
+            if(height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(editable(node.right));
+            }
+            return rotateLeft(node);
+        }
+
+        return node;
+    }
+
+    private Node<K, V> rotateLeft(Node<K, V> node) {
+        Node<K, V> right = editable(node.right);
+        node.right = right.left;
+        right.left = node;
+        updateHeight(node);
+        updateHeight(right);
+        return right;
+    }
+
+    private Node<K, V> rotateRight(Node<K, V> node) {
+        Node<K, V> left = editable(node.left);
+        node.left = left.right;
+        left.right = node;
+        updateHeight(node);
+        updateHeight(left);
+        return left;
+    }
+
+    private Node<K, V> editable(Node<K, V> node) {
+        if(node.owner == owner) return node;
+
+        Node<K, V> copy = new Node<K, V>(node.key, node.value, owner);
+        copy.left = node.left;
+        copy.right = node.right;
+        copy.height = node.height;
+        return copy;
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void updateHeight(Node<?, ?> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Adam Kraus
+ *
+ * This file is the result of scheduling a batch of requested fireworks.
+ */
+package kraus_adam;
+
+import java.util.List;
+
+/**
+ * Class to report where each requested firework was placed, or if it was dropped
+ */
+public class Schedule {
+    /**
+     * Launch time for a dropped request
+     */
+    public final static int DROPPED = -1;
+
+    private final List<FireworkRequest> requests;
+    /**
+     * Launch time given to each request, or DROPPED
+     */
+    private final int[] launchTimes;
+    /**
+     * Indexes of the placed requests in launch time order
+     */
+    private final int[] placedOrder;
+    private int placedCount;
+
+    /**
+     * Schedule constructor
+     * @param requests      requested fireworks
+     * @param launchTimes   launch time given to each request, or DROPPED
+     * @param placedOrder   indexes of the placed requests in launch time order
+     */
+    Schedule(List<FireworkRequest> requests, int[] launchTimes, int[] placedOrder) {
+        this.requests = requests;
+        this.launchTimes = launchTimes;
+        this.placedOrder = placedOrder;
+        this.placedCount = placedOrder.length;
+    }
+
+    /**
+     * Gets the indexes of the placed requests in launch time order
+     * @return  placed request indexes
+     */
+    int[] getPlacedOrder() {
+        return placedOrder;
+    }
+
+    /**
+     * Drops a request that could not be added to the show after all
+     * @param request   index of the request
+     */
+    void drop(int request) {
+        if(launchTimes[request] == DROPPED) return;
+
+        launchTimes[request] = DROPPED;
+        placedCount--;
+    }
+
+    /**
+     * Gets the number of requested fireworks
+     * @return  number of requests
+     */
+    public int getRequestCount() {
+        return launchTimes.length;
+    }
+
+    /**
+     * Gets the time a request was placed at
+     * @param request   index of the request in the list given to the scheduler
+     * @return          launch time, or DROPPED if it did not fit
+     */
+    public int getLaunchTime(int request) {
+        return launchTimes[request];
+    }
+
+    /**
+     * Checks if a request did not fit anywhere in its window
+     * @param request   index of the request
+     * @return          true if the request was dropped
+     */
+    public boolean isDropped(int request) {
+        return launchTimes[request] == DROPPED;
+    }
+
+    /**
+     * Checks if a request was placed later than the time it asked for
+     * @param request   index of the request
+     * @return          true if the request was moved
+     */
+    public boolean isMoved(int request) {
+        return launchTimes[request] != DROPPED && launchTimes[request] != requests.get(request).time;
+    }
+
+    /**
+     * Gets the number of requests that were placed
+     * @return  number of placed fireworks
+     */
+    public int getPlacedCount() {
+        return placedCount;
+    }
+
+    /**
+     * Gets the number of requests that were dropped
+     * @return  number of dropped fireworks
+     */
+    public int getDroppedCount() {
+        return launchTimes.length - placedCount;
+    }
+
+    /**
+     * Gets the number of requests that were placed later than they asked for
+     * @return  number of moved fireworks
+     */
+    public int getMovedCount() {
+        int moved = 0;
+
+        for(int i = 0; i < launchTimes.length; i++) {
+            if(isMoved(i)) moved++;
+        }
+
+        return moved;
+    }
+
+    /**
+     * Gets the cost of all the placed fireworks
+     * @return  total cost of placed fireworks
+     */
+    public double getPlacedCost() {
+        double cost = 0;
+
+        for(int i = 0; i < launchTimes.length; i++) {
+            if(!isDropped(i)) cost += requests.get(i).cost;
+        }
+
+        return cost;
+    }
+}
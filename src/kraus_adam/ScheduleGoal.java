@@ -0,0 +1,20 @@
+/**
+ * Adam Kraus
+ *
+ * This file lists what the firework scheduler can try to get the most of.
+ */
+package kraus_adam;
+
+/**
+ * What the scheduler should get the most of when not every requested firework fits
+ */
+public enum ScheduleGoal {
+    /**
+     * Place as many fireworks as possible
+     */
+    MOST_FIREWORKS,
+    /**
+     * Place the fireworks with the highest total cost
+     */
+    MOST_COST
+}
@@ -0,0 +1,410 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a town whose shows are spread across worker processes.
+ */
+package kraus_adam;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coordinator of a town whose shows are split across {@link TownShard} workers. Each show lives on one shard,
+ * picked when it is added, and bookings are sent to that shard. Town-wide answers are put together from every shard:
+ * fireworks up and cost are added up, and the town has a warning when every shard says all of its shows do.
+ * Requests to every shard are all sent before any answer is read, so the shards work on them at the same time.
+ * The coordinator keeps the town clock and sends it with every request.
+ * If a shard can't be reached, methods throw {@link UncheckedIOException}.
+ */
+public class ShardedTown implements AutoCloseable {
+    private final Connection[] shards;
+    /**
+     * Shard of each show, by town show index
+     */
+    private final ArrayList<Integer> showShards;
+    /**
+     * Index of each show in its shard, by town show index
+     */
+    private final ArrayList<Integer> showIndexes;
+    private final int[] showCounts;
+    private int currentTime;
+
+    private ShardedTown(Connection[] shards) {
+        this.shards = shards;
+        showShards = new ArrayList<Integer>();
+        showIndexes = new ArrayList<Integer>();
+        showCounts = new int[shards.length];
+        currentTime = 0;
+    }
+
+    /**
+     * Starts worker processes on this machine and connects to them.
+     * The workers run with the same Java and class path as this process, and exit when it does.
+     * @param shardCount    number of workers, at least 1
+     * @return              sharded town, or null if a worker could not be started
+     */
+    public static ShardedTown launch(int shardCount) {
+        if(shardCount < 1) return null;
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process[] processes = new Process[shardCount];
+        Connection[] shards = new Connection[shardCount];
+        try {
+            // start every worker before waiting on any, so they start up together
+            for(int i = 0; i < shardCount; i++) {
+                processes[i] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        TownShard.class.getName()).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            }
+            for(int i = 0; i < shardCount; i++) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(processes[i].getInputStream(), StandardCharsets.UTF_8));
+                String line = reader.readLine();
+                if(line == null || !line.startsWith(TownShard.READY)) throw new IOException("Shard did not start");
+
+                int port = Integer.parseInt(line.substring(TownShard.READY.length()).trim());
+                shards[i] = new Connection(new Socket(InetAddress.getLoopbackAddress(), port), processes[i]);
+            }
+        } catch(IOException | NumberFormatException e) {
+            for(int i = 0; i < shardCount; i++) {
+                if(shards[i] != null) shards[i].close();
+                if(processes[i] != null) processes[i].destroy();
+            }
+            return null;
+        }
+
+        return new ShardedTown(shards);
+    }
+
+    /**
+     * Connects to workers that are already running, each started with {@link TownShard#main(String[])}
+     * @param ports loopback port of each worker
+     * @return      sharded town, or null if a worker could not be reached
+     */
+    public static ShardedTown connect(int... ports) {
+        if(ports.length == 0) return null;
+
+        Connection[] shards = new Connection[ports.length];
+        try {
+            for(int i = 0; i < ports.length; i++) {
+                shards[i] = new Connection(new Socket(InetAddress.getLoopbackAddress(), ports[i]), null);
+            }
+        } catch(IOException e) {
+            for(Connection shard : shards) {
+                if(shard != null) shard.close();
+            }
+            return null;
+        }
+
+        return new ShardedTown(shards);
+    }
+
+    /**
+     * Adds a show to the shard with the fewest shows
+     * @param showName      name of the show
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @param hasCompanies  true to make a company show
+     * @param site          place the show launches from, or null
+     * @return              index of show in the town
+     */
+    public synchronized int add(String showName, int maxFireworks, boolean hasCompanies, Site site) {
+        int shard = 0;
+        for(int i = 1; i < shards.length; i++) {
+            if(showCounts[i] < showCounts[shard]) shard = i;
+        }
+
+        try {
+            DataOutputStream out = shards[shard].begin(TownShard.ADD_SHOW, currentTime);
+            TownStore.writeString(out, showName);
+            out.writeInt(maxFireworks);
+            out.writeBoolean(hasCompanies);
+            out.writeBoolean(site != null);
+            if(site != null) {
+                out.writeDouble(site.getX());
+                out.writeDouble(site.getY());
+            }
+            out.flush();
+            showIndexes.add(shards[shard].in.readInt());
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        showShards.add(shard);
+        showCounts[shard]++;
+        return showShards.size() - 1;
+    }
+
+    /**
+     * Adds firework to show
+     * @param showIndex     index of show in the town
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @return              true if successfully added
+     */
+    public synchronized boolean addFirework(int showIndex, int time, int duration, double cost) {
+        if(showIndex < 0 || showIndex >= showShards.size()) return false;
+
+        Connection shard = shards[showShards.get(showIndex)];
+        boolean added;
+        try {
+            DataOutputStream out = shard.begin(TownShard.ADD_FIREWORK, currentTime);
+            out.writeInt(showIndexes.get(showIndex));
+            out.writeInt(time);
+            out.writeInt(duration);
+            out.writeDouble(cost);
+            out.flush();
+            added = shard.in.readBoolean();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // like a single town, a booking moves the whole town to its launch time
+        if(added) update(time);
+        return added;
+    }
+
+    /**
+     * Adds firework to show
+     * @param showIndex     index of show in the town
+     * @param time          time that firework launches
+     * @return              true if successfully added
+     */
+    public boolean addFirework(int showIndex, int time) {
+        return addFirework(showIndex, time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Adds firework to a company show
+     * @param showIndex     index of show in the town
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @return              true if successfully added, false if it did not fit or the show has no companies
+     */
+    public synchronized boolean addFirework(int showIndex, String companyName, int time, int duration, double cost) {
+        if(showIndex < 0 || showIndex >= showShards.size()) return false;
+
+        Connection shard = shards[showShards.get(showIndex)];
+        boolean added;
+        try {
+            DataOutputStream out = shard.begin(TownShard.ADD_COMPANY_FIREWORK, currentTime);
+            out.writeInt(showIndexes.get(showIndex));
+            TownStore.writeString(out, companyName);
+            out.writeInt(time);
+            out.writeInt(duration);
+            out.writeDouble(cost);
+            out.flush();
+            added = shard.in.readBoolean();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if(added) update(time);
+        return added;
+    }
+
+    /**
+     * Adds firework to a company show
+     * @param showIndex     index of show in the town
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @return              true if successfully added
+     */
+    public boolean addFirework(int showIndex, String companyName, int time) {
+        return addFirework(showIndex, companyName, time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Updates the town clock. The shards catch up the next time they are sent a request.
+     * @param time  new current time
+     */
+    public synchronized void update(int time) {
+        if(time > currentTime) currentTime = time;
+    }
+
+    /**
+     * Gets the time the town has been updated to
+     * @return  current time of the town
+     */
+    public synchronized int getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Gets the number of shows in the town
+     * @return  number of shows
+     */
+    public synchronized int getShowCount() {
+        return showShards.size();
+    }
+
+    /**
+     * Gets the number of worker processes
+     * @return  number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky
+     * @return  number of fireworks currently up
+     */
+    public synchronized int getFireworksUp() {
+        return getFireworksUpAt(currentTime);
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky across every shard
+     * @param time  time to check the sky
+     * @return      number of fireworks up
+     */
+    public synchronized int getFireworksUpAt(int time) {
+        try {
+            for(Connection shard : shards) {
+                shard.begin(TownShard.FIREWORKS_UP_AT, currentTime).writeInt(time);
+                shard.out.flush();
+            }
+
+            int fireworksUp = 0;
+            for(Connection shard : shards) {
+                fireworksUp += shard.in.readInt();
+            }
+            return fireworksUp;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the cost of all shows across every shard
+     * @return  total cost of all shows
+     */
+    public synchronized double getTotalCost() {
+        try {
+            for(Connection shard : shards) {
+                shard.begin(TownShard.TOTAL_COST, currentTime).flush();
+            }
+
+            double totalCost = 0;
+            for(Connection shard : shards) {
+                totalCost += shard.in.readDouble();
+            }
+            return totalCost;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks if the town has a warning at the given time, which is when all shows have a warning
+     * @param time  time to check for a warning
+     * @return      true if there is a warning
+     */
+    public synchronized boolean hasWarningAt(int time) {
+        if(showShards.isEmpty()) return true;
+
+        try {
+            for(Connection shard : shards) {
+                shard.begin(TownShard.WARNING_AT, currentTime).writeInt(time);
+                shard.out.flush();
+            }
+
+            // every answer is read, even after a no, so the connections stay in step
+            boolean warning = true;
+            for(Connection shard : shards) {
+                warning &= shard.in.readBoolean();
+            }
+            return warning;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks if the town has a warning at the current time
+     * @return  true if there is a warning
+     */
+    public synchronized boolean hasWarning() {
+        return hasWarningAt(currentTime);
+    }
+
+    /**
+     * Shuts down the workers and closes the connections. Workers started by {@link #launch(int)} are waited for.
+     */
+    @Override
+    public synchronized void close() {
+        for(Connection shard : shards) {
+            try {
+                shard.begin(TownShard.SHUTDOWN, currentTime).flush();
+                shard.in.readBoolean();
+            } catch(IOException e) {
+                // the worker is already gone
+            }
+            shard.close();
+        }
+    }
+
+    /**
+     * Connection to one worker
+     */
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        /**
+         * Worker process, or null if it was started elsewhere
+         */
+        final Process process;
+
+        Connection(Socket socket, Process process) throws IOException {
+            this.socket = socket;
+            this.process = process;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Starts a request
+         * @param request   kind of request
+         * @param clock     current time of the town
+         * @return          stream to write the rest of the request to
+         * @throws IOException  if the connection fails
+         */
+        DataOutputStream begin(byte request, int clock) throws IOException {
+            out.writeByte(request);
+            out.writeInt(clock);
+            return out;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch(IOException e) {
+                // nothing more can be done with a socket that won't close
+            }
+            if(process != null) {
+                try {
+                    process.getOutputStream().close();
+                    process.waitFor();
+                } catch(IOException | InterruptedException e) {
+                    process.destroy();
+                }
+            }
+        }
+    }
+}
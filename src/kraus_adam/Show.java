@@ -6,9 +6,14 @@
  */
 package kraus_adam;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * Class to store information about a fireworks show
@@ -22,6 +27,10 @@ public class Show {
      * Percent of max fireworks when there should be a warning
      */
     public final static int WARNING_THRESHOLD = 80;
+    /**
+     * Pending time of lazy warnings when every time the clock has passed is worked out
+     */
+    final static long NOTHING_PENDING = Long.MAX_VALUE;
 
     /**
      * Name of the fireworks show
@@ -32,9 +41,25 @@ public class Show {
      */
     private int maxFireworks;
     /**
-     * List of fireworks in the show
+     * Place the show launches from, or null if it has none
+     */
+    private Site site;
+    /**
+     * Fireworks in the show, mapped to how many of each were added
      */
-    private ArrayList<Firework> fireworks;
+    private PersistentTreeMap<Firework, Integer> fireworks;
+    /**
+     * Number of fireworks up at each time
+     */
+    private OccupancyIndex occupancy;
+    /**
+     * Cost of all the fireworks in the show
+     */
+    private double totalCost;
+    /**
+     * Cost of the fireworks by launch time, for the show and for each company
+     */
+    private CostLedger costs;
     /**
      * Current time of the show
      */
@@ -42,7 +67,61 @@ public class Show {
     /**
      * Times that the show has a warning
      */
-    private ArrayList<Integer> warningTimes;
+    private WarningRuns warningTimes;
+    /**
+     * Fewest fireworks up that gives a warning
+     */
+    private int warningLevel;
+    /**
+     * True if warnings are worked out when they are read instead of as the clock moves
+     */
+    private boolean lazyWarnings;
+    /**
+     * First time the clock has passed whose warnings are not worked out yet, or NOTHING_PENDING
+     */
+    private long warningsPendingFrom;
+    /**
+     * Times that the show reached each extra warning tier, null when there are no tiers
+     */
+    private WarningTiers warningTiers;
+    /**
+     * Counts changes to the show, so a session can tell if the show changed under it
+     */
+    private int version;
+    /**
+     * Metrics of the show, null when they are turned off
+     */
+    private ShowMetrics metrics;
+    /**
+     * Launches in sliding windows of time, null when they are turned off
+     */
+    private LaunchWindows launchWindows;
+    /**
+     * Last analytics report made, null once a firework is added or removed
+     */
+    private OccupancyAnalytics analytics;
+    /**
+     * Firework filled in by each add or cancel and used only to look up the stored one, so adding a copy of a
+     * firework the show already has doesn't make a new one
+     */
+    private final Firework lookup = new Firework(0, 0, 0);
+    /**
+     * Fireworks as arrays, and the version they were made at, null until they are first needed
+     */
+    private FireworkColumns columns;
+    private int columnsVersion;
+    /**
+     * Listeners told about every firework added or removed, such as the towns the show is in
+     */
+    private ArrayList<OccupancyListener> occupancyListeners;
+    /**
+     * Limits outside the show that every firework must fit in, such as the towns the show is in
+     */
+    private ArrayList<AirspaceGate> airspaceGates;
+    /**
+     * True while a firework is being moved, which has already moved its room in the gates
+     */
+    private boolean movingAirspace;
 
     /**
      * Show constructor
@@ -50,11 +129,29 @@ public class Show {
      * @param maxFireworks  max fireworks allowed up at a given time
      */
     public Show(String showName, int maxFireworks) {
+        this(showName, maxFireworks, null);
+    }
+
+    /**
+     * Show constructor
+     * @param showName      name of the show
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @param site          place the show launches from, or null
+     */
+    public Show(String showName, int maxFireworks, Site site) {
         this.showName = showName;
         this.maxFireworks = maxFireworks;
-        fireworks = new ArrayList<Firework>();
+        this.site = site;
+        fireworks = new PersistentTreeMap<Firework, Integer>();
+        occupancy = new OccupancyIndex();
+        totalCost = 0;
+        costs = new CostLedger();
         currentTime = 0;
-        warningTimes = new ArrayList<Integer>();
+        warningTimes = new WarningRuns();
+        warningLevel = warningLevel(maxFireworks);
+        warningsPendingFrom = NOTHING_PENDING;
+        occupancyListeners = new ArrayList<OccupancyListener>();
+        airspaceGates = new ArrayList<AirspaceGate>();
     }
 
     /**
@@ -66,6 +163,30 @@ public class Show {
         this(DEFAULT_NAME, maxFireworks);
     }
 
+    /**
+     * Show constructor that copies another show in constant time.
+     * The copy shares its data with the other show until one of them changes it.
+     * @param show  show to copy
+     */
+    protected Show(Show show) {
+        showName = show.showName;
+        maxFireworks = show.maxFireworks;
+        site = show.site;
+        fireworks = show.fireworks.fork();
+        occupancy = show.occupancy.fork();
+        totalCost = show.totalCost;
+        costs = show.costs.fork();
+        currentTime = show.currentTime;
+        warningTimes = show.warningTimes.fork();
+        warningLevel = show.warningLevel;
+        lazyWarnings = show.lazyWarnings;
+        warningsPendingFrom = show.warningsPendingFrom;
+        warningTiers = show.warningTiers == null ? null : show.warningTiers.fork();
+        launchWindows = show.launchWindows == null ? null : show.launchWindows.fork();
+        occupancyListeners = new ArrayList<OccupancyListener>();
+        airspaceGates = new ArrayList<AirspaceGate>();
+    }
+
     /**
      * Adds firework to show
      * @param time      time that firework launches
@@ -74,15 +195,78 @@ public class Show {
      * @return          true if successfully added
      */
     public boolean addFirework(int time, int duration, double cost) {
-        if(duration < 1 || cost < 0) return false;
-        if(time < currentTime) return false;
-        if(getFireworksUpAt(time) >= maxFireworks) return false;
+        return addFirework(lookup(null, time, duration, cost));
+    }
 
-        fireworks.add(new Firework(time, duration, cost));
+    /**
+     * Adds firework to show.
+     * Every other addFirework ends up here, so this is the one place fireworks are checked.
+     * @param firework  firework to add
+     * @return          true if successfully added
+     */
+    protected boolean addFirework(Firework firework) {
+        BookingEvent event = BookingEvent.start();
+        long start = metrics == null ? 0 : System.nanoTime();
 
-        Update(time);
+        BookingOutcome outcome = book(firework);
 
-        return true;
+        if(metrics != null) metrics.recordAdd(outcome, System.nanoTime() - start);
+        if(event != null) event.commit(showName, firework, outcome);
+
+        return outcome == BookingOutcome.ACCEPTED;
+    }
+
+    /**
+     * Fills in the firework used to look up stored fireworks. It is only good until the next add or cancel.
+     * @param company   name of company that produced firework, or null
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @param cost      cost of firework
+     * @return          lookup firework
+     */
+    Firework lookup(String company, int time, int duration, double cost) {
+        lookup.company = company;
+        lookup.time = time;
+        lookup.duration = duration;
+        lookup.cost = cost;
+        return lookup;
+    }
+
+    /**
+     * Gets a firework that can be kept in the show, copying the lookup firework since it is reused
+     * @param firework  firework being added
+     * @return          firework to store
+     */
+    private Firework stored(Firework firework) {
+        if(firework != lookup) return firework;
+        return new Firework(firework.company, firework.time, firework.duration, firework.cost);
+    }
+
+    /**
+     * Checks a firework and adds it to the show if it fits
+     * @param firework  firework to add
+     * @return          whether the firework was added, or why not
+     */
+    private BookingOutcome book(Firework firework) {
+        if(firework.duration < 1) return BookingOutcome.BAD_DURATION;
+        if(firework.cost < 0) return BookingOutcome.NEGATIVE_COST;
+        if(firework.time < currentTime) return BookingOutcome.IN_PAST;
+        if(occupancy.countAt(firework.time) >= maxFireworks) return BookingOutcome.OVER_CAPACITY;
+        if(!movingAirspace && !reserveAirspace(firework)) return BookingOutcome.OVER_AIRSPACE_CAP;
+
+        Integer count = fireworks.get(firework);
+        fireworks.put(count == null ? stored(firework) : firework, count == null ? 1 : count + 1);
+        occupancy.add(firework.time, firework.getLandingTime(), 1);
+        if(launchWindows != null) launchWindows.add(firework.time, 1);
+        occupancyChanged(firework, 1);
+        totalCost += firework.cost;
+        costs.add(firework.company, firework.time, firework.cost);
+        analytics = null;
+        version++;
+
+        Update(firework.time);
+
+        return BookingOutcome.ACCEPTED;
     }
 
     /**
@@ -92,7 +276,6 @@ public class Show {
      * @return          true if successfully added
      */
     public boolean addFirework(int time, int duration) {
-        if(duration < 1) return false;
         return addFirework(time, duration, Firework.DEFAULT_COST);
     }
 
@@ -105,18 +288,245 @@ public class Show {
         return addFirework(time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
     }
 
+    /**
+     * Cancels a firework in the show, as if it was never added.
+     * Warnings the firework caused are removed, but the show stays at its current time.
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @param cost      cost of firework
+     * @return          true if the firework was in the show
+     */
+    public boolean cancelFirework(int time, int duration, double cost) {
+        return cancelFirework(lookup(null, time, duration, cost));
+    }
+
+    /**
+     * Cancels a firework in the show, as if it was never added
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @return          true if the firework was in the show
+     */
+    public boolean cancelFirework(int time, int duration) {
+        return cancelFirework(time, duration, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Cancels a firework in the show, as if it was never added
+     * @param time      time that firework launches
+     * @return          true if the firework was in the show
+     */
+    public boolean cancelFirework(int time) {
+        return cancelFirework(time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Cancels a firework in the show, as if it was never added
+     * @param firework  firework to cancel
+     * @return          true if the firework was in the show
+     */
+    protected boolean cancelFirework(Firework firework) {
+        Integer count = fireworks.get(firework);
+        if(count == null) return false;
+
+        if(!movingAirspace) {
+            for(AirspaceGate gate : airspaceGates) {
+                gate.release(firework.time, firework.getLandingTime());
+            }
+        }
+        if(count == 1) {
+            fireworks.remove(firework);
+        } else {
+            fireworks.put(firework, count - 1);
+        }
+        occupancy.add(firework.time, firework.getLandingTime(), -1);
+        if(launchWindows != null) launchWindows.add(firework.time, -1);
+        occupancyChanged(firework, -1);
+        totalCost -= firework.cost;
+        costs.add(firework.company, firework.time, -firework.cost);
+        analytics = null;
+        version++;
+
+        // only the times the firework was up can lose their warning
+        boolean cleared = warningTimes.removeBelow(firework.time, firework.getLandingTime(), occupancy, warningLevel);
+        if(cleared) {
+            if(metrics != null) metrics.recordWarningCleared();
+            WarningEvent.record(showName, false, firework.time, firework.getLandingTime());
+        }
+        if(warningTiers != null) {
+            warningTiers.removeBelow(firework.time, firework.getLandingTime(), occupancy, maxFireworks);
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves a firework in the show to a new launch time.
+     * The new time follows the same rules as adding a firework. If it can't be added, the firework stays where it was.
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @param cost      cost of firework
+     * @param newTime   new time that firework launches
+     * @return          true if the firework was moved
+     */
+    public boolean rescheduleFirework(int time, int duration, double cost, int newTime) {
+        return rescheduleFirework(new Firework(time, duration, cost), newTime);
+    }
+
+    /**
+     * Moves a firework in the show to a new launch time
+     * @param firework  firework to move
+     * @param newTime   new time that firework launches
+     * @return          true if the firework was moved
+     */
+    protected boolean rescheduleFirework(Firework firework, int newTime) {
+        if(newTime < currentTime) return false;
+        if(!fireworks.containsKey(firework)) return false;
+
+        // the firework being moved does not count against its new time
+        int fireworksUp = occupancy.countAt(newTime);
+        if(firework.time <= newTime && newTime <= firework.getLandingTime()) fireworksUp--;
+        if(fireworksUp >= maxFireworks) return false;
+
+        Firework moved = new Firework(firework.company, newTime, firework.duration, firework.cost);
+        if(!moveAirspace(firework, moved)) return false;
+
+        movingAirspace = true;
+        try {
+            cancelFirework(firework);
+            return addFirework(moved);
+        } finally {
+            movingAirspace = false;
+        }
+    }
+
+    /**
+     * Reserves room for a firework in every gate, or in none of them
+     * @param firework  firework to add
+     * @return          true if every gate had room
+     */
+    private boolean reserveAirspace(Firework firework) {
+        for(int i = 0; i < airspaceGates.size(); i++) {
+            if(!airspaceGates.get(i).reserve(firework.time, firework.getLandingTime())) {
+                for(int j = 0; j < i; j++) {
+                    airspaceGates.get(j).release(firework.time, firework.getLandingTime());
+                }
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the room of a firework in every gate, or in none of them
+     * @param firework  firework to move
+     * @param moved     firework at its new time
+     * @return          true if every gate had room at the new time
+     */
+    private boolean moveAirspace(Firework firework, Firework moved) {
+        for(int i = 0; i < airspaceGates.size(); i++) {
+            if(!airspaceGates.get(i).move(firework.time, firework.getLandingTime(), moved.time,
+                    moved.getLandingTime())) {
+                for(int j = 0; j < i; j++) {
+                    airspaceGates.get(j).release(moved.time, moved.getLandingTime());
+                    airspaceGates.get(j).occupy(firework.time, firework.getLandingTime());
+                }
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds a limit that every firework added to the show must fit in
+     * @param gate  gate to add
+     */
+    void addAirspaceGate(AirspaceGate gate) {
+        airspaceGates.add(gate);
+    }
+
+    /**
+     * Checks if every gate can take the changes made to a copy of the show in a session
+     * @param changes   fireworks added and removed in the session, as in {@link AirspaceGate#admit(List)}
+     * @return          true if every gate has room for them
+     */
+    boolean admitAirspace(List<long[]> changes) {
+        for(AirspaceGate gate : airspaceGates) {
+            if(!gate.admit(changes)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes a gate added by {@link #addAirspaceGate(AirspaceGate)}
+     * @param gate  gate to remove
+     */
+    void removeAirspaceGate(AirspaceGate gate) {
+        airspaceGates.remove(gate);
+    }
+
+    /**
+     * Places a batch of requested fireworks into the show, each somewhere in its launch window.
+     * Unlike adding the fireworks one at a time, which keeps whichever come first, the scheduler decides which
+     * fireworks to keep and when to launch them to get the most of the goal without going over max fireworks.
+     * The placed fireworks are added to the show in launch order, so the show ends at the last launch time.
+     * To look at a schedule without keeping it, schedule on a {@link #begin()} session.
+     * @param requests  requested fireworks
+     * @param goal      what to get the most of
+     * @return          where each request was placed, or if it was dropped
+     */
+    public Schedule scheduleFireworks(List<FireworkRequest> requests, ScheduleGoal goal) {
+        Schedule schedule = FireworkScheduler.plan(occupancy, maxFireworks, currentTime, requests, goal);
+
+        for(int request : schedule.getPlacedOrder()) {
+            if(!addFirework(requestedFirework(requests.get(request), schedule.getLaunchTime(request)))) {
+                schedule.drop(request);
+            }
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Makes the firework for a placed request
+     * @param request   requested firework
+     * @param time      time the firework was placed at
+     * @return          firework to add
+     */
+    protected Firework requestedFirework(FireworkRequest request, int time) {
+        return new Firework(time, request.duration, request.cost);
+    }
+
     /**
      * Updates the show to a certain time
      * @param time  time the show is at
      */
     public void Update(int time) {
         if(time < currentTime) return;
+        ClockAdvanceEvent event = ClockAdvanceEvent.start();
+        long start = metrics == null ? 0 : System.nanoTime();
 
-        for(int t = currentTime; t <= time; t++) {
-            hasWarningAt(t);
+        if(lazyWarnings) {
+            // the current time is checked again, since a firework launched at it may have just been added
+            warningsPendingFrom = Math.min(warningsPendingFrom, currentTime);
         }
+        if(launchWindows != null) launchWindows.advance(time);
 
+        // one lookup per time serves the warning and every tier
+        for(int t = currentTime; !lazyWarnings && t <= time; t++) {
+            int fireworksUp = occupancy.countAt(t);
+            recordWarning(t, fireworksUp);
+            if(warningTiers != null) {
+                warningTiers.record(t, warningTiers.tierOf(fireworksUp, maxFireworks));
+            }
+        }
+
+        if(metrics != null) metrics.recordUpdate((long) time - currentTime + 1, System.nanoTime() - start);
+        if(event != null) event.commit(showName, 1, currentTime, time);
         currentTime = time;
+        version++;
     }
 
     /**
@@ -133,13 +543,11 @@ public class Show {
      * @return      number of fireworks up
      */
     public int getFireworksUpAt(int time) {
-        int fireworksUp = 0;
+        if(metrics == null) return occupancy.countAt(time);
 
-        for(Firework firework : fireworks) {
-            if(firework.time <= time && time <= firework.time + firework.duration) {
-                fireworksUp++;
-            }
-        }
+        long start = System.nanoTime();
+        int fireworksUp = occupancy.countAt(time);
+        metrics.recordQuery(System.nanoTime() - start);
 
         return fireworksUp;
     }
@@ -158,16 +566,135 @@ public class Show {
      * @return      true if there is a warning at that time
      */
     public boolean hasWarningAt(int time) {
+        evaluateWarnings();
         if(warningTimes.contains(time)) return true;
 
-        if((double)getFireworksUpAt(time) / (double)maxFireworks * 100 >= WARNING_THRESHOLD) {
-            if(!warningTimes.contains(time)) {
-                warningTimes.add(time);
+        return recordWarning(time, occupancy.countAt(time));
+    }
+
+    /**
+     * Turns lazy warnings on or off. With lazy warnings, updating the clock takes constant time, and the warnings
+     * for the times it passed are worked out the next time warnings are read. Rather than checking each time, the
+     * occupancy index is searched for the runs of times with enough fireworks up, so the work depends on the
+     * number of warnings rather than the number of times. Warnings come out the same either way.
+     * @param lazy  true to work out warnings when they are read
+     */
+    public void setLazyWarnings(boolean lazy) {
+        evaluateWarnings();
+        lazyWarnings = lazy;
+    }
+
+    /**
+     * Checks if warnings are worked out when they are read
+     * @return  true if warnings are lazy
+     */
+    public boolean hasLazyWarnings() {
+        return lazyWarnings;
+    }
+
+    /**
+     * Works out the warnings for the times the clock passed since they were last read, when warnings are lazy
+     */
+    private void evaluateWarnings() {
+        if(warningsPendingFrom == NOTHING_PENDING) return;
+
+        long from = warningsPendingFrom;
+        warningsPendingFrom = NOTHING_PENDING;
+
+        long time = occupancy.firstAtLeast(from, currentTime, warningLevel);
+        while(time >= 0) {
+            long next = occupancy.firstBelow(time, currentTime, warningLevel);
+            long end = next < 0 ? currentTime : next - 1;
+            if(warningTimes.addRange((int) time, (int) end)) {
+                if(metrics != null) metrics.recordWarningEntered();
+                WarningEvent.record(showName, true, (int) time, (int) end);
             }
-            return true;
+            if(next < 0) break;
+
+            time = occupancy.firstAtLeast(next, currentTime, warningLevel);
+        }
+
+        if(warningTiers != null) {
+            warningTiers.recordAtLeast(from, currentTime, occupancy, maxFireworks);
         }
+    }
+
+    /**
+     * Records a warning at a time if there are enough fireworks up
+     * @param time          time to check the show
+     * @param fireworksUp   number of fireworks up at that time
+     * @return              true if there is a warning at that time
+     */
+    private boolean recordWarning(int time, int fireworksUp) {
+        if(!isWarning(fireworksUp, maxFireworks)) return false;
+
+        int warnings = warningTimes.count();
+        warningTimes.add(time);
+        if(warningTimes.count() > warnings) {
+            if(metrics != null) metrics.recordWarningEntered();
+            WarningEvent.record(showName, true, time, time);
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets extra warning tiers for the show, such as 60, 80 and 95 percent of max fireworks.
+     * Every tier is checked in the same pass over time as the regular warning, and is counted the same way.
+     * Tiers only track times from the current time on, and replace any tiers set before.
+     * @param thresholds    percent of max fireworks for each tier, each above 0 and at most 100
+     * @return              true if the tiers were set
+     */
+    public boolean setWarningTiers(double... thresholds) {
+        double[] sorted = WarningTiers.sorted(thresholds);
+        if(sorted == null) return false;
+
+        evaluateWarnings();
+        warningTiers = new WarningTiers(sorted);
+        warningTiers.record(currentTime, warningTiers.tierOf(occupancy.countAt(currentTime), maxFireworks));
+        version++;
+
+        return true;
+    }
+
+    /**
+     * Gets the number of extra warning tiers
+     * @return  number of tiers, 0 if none are set
+     */
+    public int getWarningTierCount() {
+        return warningTiers == null ? 0 : warningTiers.size();
+    }
+
+    /**
+     * Gets the threshold of a warning tier
+     * @param tier  index of the tier, lowest threshold first
+     * @return      percent of max fireworks for the tier
+     */
+    public double getWarningTier(int tier) {
+        return warningTiers.getThreshold(tier);
+    }
 
-        return false;
+    /**
+     * Gets the number of warnings at or above a tier throughout the show
+     * @param tier  index of the tier, lowest threshold first
+     * @return      number of warnings
+     */
+    public int getTierWarnings(int tier) {
+        evaluateWarnings();
+        return warningTiers.count(tier);
+    }
+
+    /**
+     * Gets the highest warning tier the show is at, or was at, at the given time
+     * @param time  time to check the show
+     * @return      index of the tier, or -1 if it is below every tier
+     */
+    public int getTierAt(int time) {
+        if(warningTiers == null) return -1;
+
+        evaluateWarnings();
+        int fireworksUp = occupancy.countAt(time);
+        return Math.max(warningTiers.recordedTier(time), warningTiers.tierOf(fireworksUp, maxFireworks));
     }
 
     /**
@@ -175,20 +702,85 @@ public class Show {
      * @return  number of warnings
      */
     public int getTotalWarnings() {
-        if(warningTimes.size() <= 1) return warningTimes.size();
+        // each run of consecutive warning times is one warning
+        evaluateWarnings();
+        return warningTimes.count();
+    }
+
+    /**
+     * Turns on launch counts for sliding windows that end at the current time, such as the last 10 and 60 times.
+     * Reading a window takes constant time. Replaces any windows set before, and peaks start over.
+     * @param windowSizes   number of times in each window, each from 1 to 2^20
+     * @return              true if the windows were set
+     */
+    public boolean setLaunchWindows(int... windowSizes) {
+        int[] sorted = LaunchWindows.sorted(windowSizes);
+        if(sorted == null) return false;
 
-        // counts groups of consecutive numbers in the array
-        int warnings = 1;
-        // needs to be sorted before checking
-        warningTimes.sort(Comparator.naturalOrder());
+        LaunchWindows windows = new LaunchWindows(sorted, currentTime);
+        fireworks.forEach((firework, count) -> windows.add(firework.time, count));
+        launchWindows = windows;
 
-        for(int i = 1; i < warningTimes.size(); i++) {
-            if(warningTimes.get(i-1) != warningTimes.get(i) - 1) {
-                warnings++;
-            }
-        }
+        return true;
+    }
+
+    /**
+     * Turns off launch counts
+     */
+    public void clearLaunchWindows() {
+        launchWindows = null;
+    }
+
+    /**
+     * Gets the number of launch windows
+     * @return  number of windows, 0 if none are set
+     */
+    public int getLaunchWindowCount() {
+        return launchWindows == null ? 0 : launchWindows.size();
+    }
 
-        return warnings;
+    /**
+     * Gets the size of a launch window
+     * @param window    index of the window, smallest first
+     * @return          number of times in the window
+     */
+    public int getLaunchWindow(int window) {
+        return launchWindows.getSize(window);
+    }
+
+    /**
+     * Gets the number of fireworks launched in a window ending at the current time
+     * @param window    index of the window, smallest first
+     * @return          number of launches
+     */
+    public long getLaunches(int window) {
+        return launchWindows.getLaunches(window);
+    }
+
+    /**
+     * Gets the most fireworks launched in a window since the windows were set
+     * @param window    index of the window, smallest first
+     * @return          peak number of launches
+     */
+    public long getPeakLaunches(int window) {
+        return launchWindows.getPeak(window);
+    }
+
+    /**
+     * Gets the launches per time in a window ending at the current time
+     * @param window    index of the window, smallest first
+     * @return          launch rate
+     */
+    public double getLaunchRate(int window) {
+        return (double) launchWindows.getLaunches(window) / launchWindows.getSize(window);
+    }
+
+    /**
+     * Goes through each different firework in the show, in order
+     * @param action    called with each firework and how many copies of it there are
+     */
+    void forEachFirework(BiConsumer<Firework, Integer> action) {
+        fireworks.forEach(action);
     }
 
     /**
@@ -196,13 +788,98 @@ public class Show {
      * @return  total cost of fireworks
      */
     public double getCost() {
-        double totalCost = 0;
+        return totalCost;
+    }
 
-        for(Firework firework : fireworks) {
-            totalCost += firework.cost;
+    /**
+     * Gets the cost of the fireworks that launch in a range of times, with no discount applied
+     * @param from  first launch time
+     * @param to    last launch time
+     * @return      cost of those fireworks
+     */
+    public double getSpend(int from, int to) {
+        return costs.sum(from, to);
+    }
+
+    /**
+     * Gets the cost of the fireworks that launch in each of a row of time buckets, with no discount applied
+     * @param from          first launch time of the first bucket
+     * @param bucketSize    number of times in each bucket
+     * @param buckets       number of buckets
+     * @return              cost of each bucket, empty if the bucket size or number of buckets is less than 1
+     */
+    public double[] getSpendByBucket(int from, int bucketSize, int buckets) {
+        if(bucketSize < 1 || buckets < 1) return new double[0];
+
+        double[] spend = new double[buckets];
+        for(int i = 0; i < buckets; i++) {
+            long start = from + (long) i * bucketSize;
+            if(start > Integer.MAX_VALUE) break;
+
+            spend[i] = costs.sum((int) start, (int) Math.min(start + bucketSize - 1, Integer.MAX_VALUE));
         }
 
-        return totalCost;
+        return spend;
+    }
+
+    /**
+     * Gets a report of how full the show was over a range of times, such as how many times had each number of
+     * fireworks up, the average utilization and the percent of time with a warning.
+     * The report is made in one pass over the times the number of fireworks up changes, and is kept until a
+     * firework is added or removed.
+     * @param from  first time of the report
+     * @param to    last time of the report
+     * @return      analytics report, or null if from is after to
+     */
+    public OccupancyAnalytics getAnalytics(int from, int to) {
+        if(from > to) return null;
+        if(analytics != null && analytics.getFrom() == from && analytics.getTo() == to) return analytics;
+
+        OccupancyAnalytics report = new OccupancyAnalytics(from, to, maxFireworks);
+        occupancy.forEachRun(from, to, (start, end, count) -> report.add(end - start + 1, count, count >= warningLevel));
+        analytics = report;
+
+        return report;
+    }
+
+    /**
+     * Gets a packed record of the fireworks up and warnings at every time in a range, for keeping the history of
+     * the show. Each run of times with the same fireworks up takes a few bytes, and the fireworks up at one time
+     * can still be read from it quickly.
+     * @param from  first time of the timeline
+     * @param to    last time of the timeline
+     * @return      occupancy timeline, or null if from is after to
+     */
+    public OccupancyTimeline getTimeline(int from, int to) {
+        if(from > to) return null;
+
+        OccupancyTimeline timeline = new OccupancyTimeline(from, to);
+        occupancy.forEachRun(from, to, (start, end, count) -> timeline.add(end - start + 1, count, count >= warningLevel));
+        return timeline.finish();
+    }
+
+    /**
+     * Gets the fireworks of the show as arrays of launch times, landing times, costs and copies, for scans over
+     * every firework at once. The arrays are kept until a firework is added or removed.
+     * @return  firework columns
+     */
+    public FireworkColumns getColumns() {
+        if(columns != null && columnsVersion == version) return columns;
+
+        FireworkColumns made = new FireworkColumns(fireworks.size());
+        fireworks.forEach(made::add);
+        columns = made;
+        columnsVersion = version;
+
+        return made;
+    }
+
+    /**
+     * Gets the ledger of firework costs by launch time
+     * @return  cost ledger of the show
+     */
+    CostLedger getCostLedger() {
+        return costs;
     }
 
     /**
@@ -213,15 +890,365 @@ public class Show {
         return showName;
     }
 
+    /**
+     * Gets the max fireworks allowed up at a given time
+     * @return  max fireworks
+     */
+    public int getMaxFireworks() {
+        return maxFireworks;
+    }
+
+    /**
+     * Gets the place the show launches from
+     * @return  site, or null if the show has none
+     */
+    public Site getSite() {
+        return site;
+    }
+
     /**
      * Prints the show status, which includes the show name, fireworks up, and percent of max fireworks.
      * If the percent of max fireworks is above the warning threshold, WARNING is printed instead of the percent.
      * @return  status string
      */
     public String toString() {
-        String string = "Status for " + showName + " show: " + getFireworksUp() + " fireworks up (";
+        return statusString(showName, getFireworksUp(), maxFireworks);
+    }
+
+    /**
+     * Gets a read only copy of the show as it is right now.
+     * Taking a snapshot takes constant time, and the snapshot shares its data with the show. The snapshot never
+     * changes, so it can be read from any number of threads while the show keeps adding fireworks.
+     * Snapshots should be taken by the thread that adds fireworks to the show.
+     * With lazy warnings, the warnings not worked out yet are worked out first.
+     * @return  snapshot of the show
+     */
+    public ShowSnapshot snapshot() {
+        evaluateWarnings();
+        return new ShowSnapshot(showName, maxFireworks, currentTime, occupancy.fork(), warningTimes.fork(),
+                warningTiers == null ? null : warningTiers.fork(), totalCost);
+    }
+
+    /**
+     * Turns on metrics for the show and registers them with JMX.
+     * Until this is called, the show does not time or count anything.
+     * @return  metrics of the show
+     */
+    public ShowMetrics enableMetrics() {
+        return enableMetrics(null);
+    }
+
+    /**
+     * Turns on metrics for the show as part of a town
+     * @param town  JMX id of the town, or null
+     * @return      metrics of the show
+     */
+    ShowMetrics enableMetrics(String town) {
+        if(metrics == null) {
+            metrics = new ShowMetrics(showName, town);
+            MetricsRegistry.register(metrics, metrics.getObjectName());
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Turns off metrics for the show and removes them from JMX
+     */
+    public void disableMetrics() {
+        if(metrics == null) return;
+
+        MetricsRegistry.unregister(metrics.getObjectName());
+        metrics = null;
+    }
+
+    /**
+     * Gets the metrics of the show
+     * @return  metrics, or null if they are turned off
+     */
+    public ShowMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts a session for trying out changes to the show.
+     * The session has its own copy of the show, made in constant time, and changes to the copy only cost as much
+     * as the parts of the show they touch. The changes can then be committed to this show or thrown away.
+     * @return  new session
+     */
+    public ShowSession begin() {
+        return new ShowSession(this, fork());
+    }
+
+    /**
+     * Makes a separate copy of the show in constant time, such as to keep a plan A and a plan B.
+     * Both shows can keep changing without affecting each other. They share all their data at first, and each
+     * change only copies the small part of the data it touches.
+     * @return  forked show
+     */
+    public Show fork() {
+        return new Show(this);
+    }
+
+    /**
+     * Replaces everything in this show with a copy made by {@link #fork()}.
+     * The copy must not be used after this.
+     * @param show  copy to take the data from
+     */
+    protected void adopt(Show show) {
+        fireworks = show.fireworks;
+        occupancy = show.occupancy;
+        totalCost = show.totalCost;
+        costs = show.costs;
+        currentTime = show.currentTime;
+        warningTimes = show.warningTimes;
+        warningTiers = show.warningTiers;
+        lazyWarnings = show.lazyWarnings;
+        warningsPendingFrom = show.warningsPendingFrom;
+        launchWindows = show.launchWindows;
+        analytics = null;
+        columns = null;
+        version++;
+
+        for(OccupancyListener listener : occupancyListeners) {
+            listener.occupancyReplaced(this);
+        }
+    }
+
+    /**
+     * Adds a listener to be told about every firework added or removed
+     * @param listener  listener to add
+     */
+    void addOccupancyListener(OccupancyListener listener) {
+        occupancyListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added by {@link #addOccupancyListener(OccupancyListener)}
+     * @param listener  listener to remove
+     */
+    void removeOccupancyListener(OccupancyListener listener) {
+        occupancyListeners.remove(listener);
+    }
+
+    /**
+     * Tells the listeners that a firework was added or removed
+     * @param firework  firework added or removed
+     * @param count     1 if it was added, -1 if it was removed
+     */
+    private void occupancyChanged(Firework firework, int count) {
+        for(int i = 0; i < occupancyListeners.size(); i++) {
+            occupancyListeners.get(i).occupancyChanged(firework.time, firework.getLandingTime(), count);
+        }
+    }
+
+    /**
+     * Gets the number of different fireworks stored in the show
+     * @return  number of stored fireworks
+     */
+    int getStoredFireworks() {
+        return fireworks.size();
+    }
+
+    /**
+     * Writes the show to a stream, in the form read by {@link #read(DataInputStream)}.
+     * Only the fireworks, clock and warnings are written, since everything else is worked out from them.
+     * Lazy warnings not worked out yet are left for when they are read, after the show is read back.
+     * @param out   stream to write to
+     * @throws IOException  if the stream can't be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        ArrayList<Firework> stored = new ArrayList<Firework>(fireworks.size());
+        ArrayList<Integer> counts = new ArrayList<Integer>(fireworks.size());
+        fireworks.forEach((firework, count) -> {
+            stored.add(firework);
+            counts.add(count);
+        });
+
+        out.writeBoolean(this instanceof CompanyShow);
+        TownStore.writeString(out, showName);
+        out.writeInt(maxFireworks);
+        out.writeBoolean(site != null);
+        if(site != null) {
+            out.writeDouble(site.getX());
+            out.writeDouble(site.getY());
+        }
+        out.writeInt(currentTime);
+        warningTimes.write(out);
+        out.writeBoolean(warningTiers != null);
+        if(warningTiers != null) warningTiers.write(out);
+        out.writeBoolean(lazyWarnings);
+        out.writeLong(warningsPendingFrom);
+        out.writeBoolean(launchWindows != null);
+        if(launchWindows != null) launchWindows.write(out);
+
+        // each company name is written once, and fireworks refer to it by number
+        HashMap<String, Integer> companyIds = new HashMap<String, Integer>();
+        out.writeInt(stored.size());
+        for(int i = 0; i < stored.size(); i++) {
+            Firework firework = stored.get(i);
+            out.writeInt(firework.time);
+            out.writeInt(firework.duration);
+            out.writeDouble(firework.cost);
+            out.writeInt(counts.get(i));
+            Integer id = firework.company == null ? Integer.valueOf(-1) : companyIds.get(firework.company);
+            if(id == null) {
+                out.writeInt(companyIds.size());
+                TownStore.writeString(out, firework.company);
+                companyIds.put(firework.company, companyIds.size());
+            } else {
+                out.writeInt(id);
+            }
+        }
+    }
+
+    /**
+     * Reads a show written by {@link #write(DataOutputStream)}
+     * @param in    stream to read from
+     * @return      show, with no listeners or metrics
+     * @throws IOException  if the stream can't be read or does not hold a show
+     */
+    static Show read(DataInputStream in) throws IOException {
+        boolean hasCompanies = in.readBoolean();
+        String name = TownStore.readString(in);
+        int maxFireworks = in.readInt();
+        Site site = in.readBoolean() ? new Site(in.readDouble(), in.readDouble()) : null;
+        Show show = hasCompanies ? new CompanyShow(name, maxFireworks, site) : new Show(name, maxFireworks, site);
+        show.currentTime = in.readInt();
+        show.warningTimes = WarningRuns.read(in);
+        show.warningTiers = in.readBoolean() ? WarningTiers.read(in) : null;
+        show.lazyWarnings = in.readBoolean();
+        show.warningsPendingFrom = in.readLong();
+        if(!isPending(show.warningsPendingFrom, show.currentTime, show.lazyWarnings)) {
+            throw new IOException("Bad pending warnings in show " + name);
+        }
+        LaunchWindows windows = in.readBoolean() ? LaunchWindows.read(in, show.currentTime) : null;
+
+        ArrayList<String> companies = new ArrayList<String>();
+        int size = TownStore.readCount(in);
+        for(int i = 0; i < size; i++) {
+            int time = in.readInt();
+            int duration = in.readInt();
+            double cost = in.readDouble();
+            int count = in.readInt();
+            int id = in.readInt();
+            if(id == companies.size()) companies.add(TownStore.readString(in));
+            if(duration < 1 || count < 1 || id < -1 || id >= companies.size()) {
+                throw new IOException("Bad firework in show " + name);
+            }
+
+            show.restoreFirework(new Firework(id < 0 ? null : companies.get(id), time, duration, cost), count);
+            if(windows != null) windows.add(time, count);
+        }
+        if(windows != null) show.launchWindows = windows.resume(show.currentTime);
+
+        return show;
+    }
+
+    /**
+     * Checks if a time that warnings are pending from could have been written
+     * @param pendingFrom   first time whose warnings are not worked out yet, or NOTHING_PENDING
+     * @param currentTime   current time of the show or town
+     * @param lazy          true if warnings are lazy
+     * @return              true if nothing is pending, or warnings are lazy and pending from a time already passed
+     */
+    static boolean isPending(long pendingFrom, int currentTime, boolean lazy) {
+        return pendingFrom == NOTHING_PENDING || (lazy && pendingFrom >= 0 && pendingFrom <= currentTime);
+    }
+
+    /**
+     * Puts a firework back into the show as it was before being written, without checking it or moving the clock
+     * @param firework  firework to put back
+     * @param count     number of copies of the firework
+     */
+    void restoreFirework(Firework firework, int count) {
+        fireworks.put(firework, count);
+        occupancy.add(firework.time, firework.getLandingTime(), count);
+        totalCost += firework.cost * count;
+        costs.add(firework.company, firework.time, firework.cost * count);
+    }
+
+    /**
+     * Gets the number of changes made to the show
+     * @return  version of the show
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the number of fireworks up at each time
+     * @return  occupancy index of the show
+     */
+    OccupancyIndex getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Gets the fewest fireworks up that gives the show a warning
+     * @return  warning level
+     */
+    int getWarningLevel() {
+        return warningLevel;
+    }
+
+    /**
+     * Finds the fewest fireworks up that is a warning for a show
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @return              warning level, or Integer.MAX_VALUE if there can't be a warning
+     */
+    static int warningLevel(int maxFireworks) {
+        return warningLevel(maxFireworks, WARNING_THRESHOLD);
+    }
+
+    /**
+     * Finds the fewest fireworks up that reaches a threshold for a show
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @param threshold     percent of max fireworks, above 0 and at most 100
+     * @return              warning level, or Integer.MAX_VALUE if the threshold can't be reached
+     */
+    static int warningLevel(int maxFireworks, double threshold) {
+        if(maxFireworks < 0) return Integer.MAX_VALUE;
+
+        int level = (int) Math.ceil(maxFireworks * threshold / 100.0);
+        while(level > 0 && isWarning(level - 1, maxFireworks, threshold)) level--;
+        while(!isWarning(level, maxFireworks, threshold)) level++;
+
+        return level;
+    }
+
+    /**
+     * Checks if a number of fireworks up is a warning for a show
+     * @param fireworksUp   number of fireworks up
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @return              true if the percent of max fireworks is above the warning threshold
+     */
+    static boolean isWarning(int fireworksUp, int maxFireworks) {
+        return isWarning(fireworksUp, maxFireworks, WARNING_THRESHOLD);
+    }
+
+    /**
+     * Checks if a number of fireworks up reaches a threshold for a show
+     * @param fireworksUp   number of fireworks up
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @param threshold     percent of max fireworks
+     * @return              true if the percent of max fireworks is at or above the threshold
+     */
+    static boolean isWarning(int fireworksUp, int maxFireworks, double threshold) {
+        return (double)fireworksUp / (double)maxFireworks * 100 >= threshold;
+    }
+
+    /**
+     * Makes the status string of a show
+     * @param showName      name of the show
+     * @param fireworksUp   number of fireworks up
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @return              status string
+     */
+    static String statusString(String showName, int fireworksUp, int maxFireworks) {
+        String string = "Status for " + showName + " show: " + fireworksUp + " fireworks up (";
 
-        double percent = (double)getFireworksUp() / (double)maxFireworks * 100;
+        double percent = (double)fireworksUp / (double)maxFireworks * 100;
         if(percent >= WARNING_THRESHOLD) {
             string += "WARNING";
         } else {
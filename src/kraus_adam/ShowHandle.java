@@ -0,0 +1,66 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a handle to a show in a town.
+ */
+package kraus_adam;
+
+/**
+ * Handle to a show in a town, from {@link Town#addShow(Show)} or {@link Town#findShow(String)}.
+ * Shows keep their place in a town, so a handle stays good for as long as the town, and also works on forks and
+ * sessions of the town.
+ */
+public class ShowHandle {
+    private final Show show;
+    private final int index;
+
+    /**
+     * ShowHandle constructor
+     * @param show  show in the town
+     * @param index index of the show in the town
+     */
+    ShowHandle(Show show, int index) {
+        this.show = show;
+        this.index = index;
+    }
+
+    /**
+     * Gets the show of the handle, in the town the handle came from
+     * @return  show
+     */
+    public Show getShow() {
+        return show;
+    }
+
+    /**
+     * Gets the index of the show in the town
+     * @return  index of the show
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the name of the show
+     * @return  name of the show
+     */
+    public String getName() {
+        return show.getName();
+    }
+
+    /**
+     * Gets the show as a company show
+     * @return  company show, or null if the show does not have companies
+     */
+    CompanyShow getCompanyShow() {
+        return null;
+    }
+
+    /**
+     * Gets the handle as a company show handle
+     * @return  company show handle, or null if the show does not have companies
+     */
+    CompanyShowHandle asCompanyShowHandle() {
+        return null;
+    }
+}
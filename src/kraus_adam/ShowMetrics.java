@@ -0,0 +1,212 @@
+/**
+ * Adam Kraus
+ *
+ * This file counts what a fireworks show does and how long it takes, for monitoring through JMX.
+ */
+package kraus_adam;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Class to count added and rejected fireworks, updates, queries and warnings for one show.
+ * A show only records metrics after {@link Show#enableMetrics()}, so a show without metrics only pays for a null
+ * check. Metrics can be read from any thread while the show is running.
+ */
+public class ShowMetrics implements ShowMetricsMBean {
+    /**
+     * Numbers the shows so that shows with the same name get different JMX names
+     */
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final ObjectName objectName;
+    private final LongAdder[] outcomes;
+    private final LatencyHistogram addNanos;
+    private final LatencyHistogram updateTicks;
+    private final LatencyHistogram updateNanos;
+    private final LatencyHistogram queryNanos;
+    private final LongAdder warningsEntered;
+    private final LongAdder warningsCleared;
+
+    /**
+     * ShowMetrics constructor
+     * @param showName  name of the show
+     * @param town      JMX id of the town the show is in, or null
+     */
+    ShowMetrics(String showName, String town) {
+        String name = "kraus_adam:type=Show,name=" + ObjectName.quote(showName);
+        if(town != null) name += ",town=" + town;
+        objectName = MetricsRegistry.objectName(name + ",id=" + nextId.incrementAndGet());
+
+        outcomes = new LongAdder[BookingOutcome.values().length];
+        for(int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+        addNanos = new LatencyHistogram();
+        updateTicks = new LatencyHistogram();
+        updateNanos = new LatencyHistogram();
+        queryNanos = new LatencyHistogram();
+        warningsEntered = new LongAdder();
+        warningsCleared = new LongAdder();
+    }
+
+    /**
+     * Gets the name the metrics are registered under in JMX
+     * @return  JMX object name
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Records an attempt to add a firework
+     * @param outcome   whether the firework was added, or why not
+     * @param nanos     time it took
+     */
+    void recordAdd(BookingOutcome outcome, long nanos) {
+        outcomes[outcome.ordinal()].increment();
+        addNanos.record(nanos);
+    }
+
+    /**
+     * Records an update of the show
+     * @param ticks number of times the update went through
+     * @param nanos time it took
+     */
+    void recordUpdate(long ticks, long nanos) {
+        updateTicks.record(ticks);
+        updateNanos.record(nanos);
+    }
+
+    /**
+     * Records a query of the fireworks up at a time
+     * @param nanos time it took
+     */
+    void recordQuery(long nanos) {
+        queryNanos.record(nanos);
+    }
+
+    /**
+     * Records the show going into a new warning
+     */
+    void recordWarningEntered() {
+        warningsEntered.increment();
+    }
+
+    /**
+     * Records warning times being removed because fireworks were cancelled
+     */
+    void recordWarningCleared() {
+        warningsCleared.increment();
+    }
+
+    /**
+     * Gets the number of fireworks added or rejected for a reason
+     * @param outcome   outcome to count
+     * @return          number of attempts with that outcome
+     */
+    public long getCount(BookingOutcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    public long getAccepted() {
+        return getCount(BookingOutcome.ACCEPTED);
+    }
+
+    public long getRejectedBadDuration() {
+        return getCount(BookingOutcome.BAD_DURATION);
+    }
+
+    public long getRejectedNegativeCost() {
+        return getCount(BookingOutcome.NEGATIVE_COST);
+    }
+
+    public long getRejectedInPast() {
+        return getCount(BookingOutcome.IN_PAST);
+    }
+
+    public long getRejectedOverCapacity() {
+        return getCount(BookingOutcome.OVER_CAPACITY);
+    }
+
+    public long getRejectedOverAirspaceCap() {
+        return getCount(BookingOutcome.OVER_AIRSPACE_CAP);
+    }
+
+    public long getAddNanosP50() {
+        return addNanos.getPercentile(50);
+    }
+
+    public long getAddNanosP99() {
+        return addNanos.getPercentile(99);
+    }
+
+    public long getAddNanosMax() {
+        return addNanos.getMax();
+    }
+
+    public long getUpdates() {
+        return updateNanos.getCount();
+    }
+
+    public long getUpdateTicksP50() {
+        return updateTicks.getPercentile(50);
+    }
+
+    public long getUpdateTicksP99() {
+        return updateTicks.getPercentile(99);
+    }
+
+    public long getUpdateTicksMax() {
+        return updateTicks.getMax();
+    }
+
+    public long getUpdateNanosP50() {
+        return updateNanos.getPercentile(50);
+    }
+
+    public long getUpdateNanosP99() {
+        return updateNanos.getPercentile(99);
+    }
+
+    public long getUpdateNanosMax() {
+        return updateNanos.getMax();
+    }
+
+    public long getQueries() {
+        return queryNanos.getCount();
+    }
+
+    public long getQueryNanosP50() {
+        return queryNanos.getPercentile(50);
+    }
+
+    public long getQueryNanosP99() {
+        return queryNanos.getPercentile(99);
+    }
+
+    public long getQueryNanosMax() {
+        return queryNanos.getMax();
+    }
+
+    public long getWarningsEntered() {
+        return warningsEntered.sum();
+    }
+
+    public long getWarningsCleared() {
+        return warningsCleared.sum();
+    }
+
+    public void reset() {
+        for(LongAdder outcome : outcomes) {
+            outcome.reset();
+        }
+        addNanos.reset();
+        updateTicks.reset();
+        updateNanos.reset();
+        queryNanos.reset();
+        warningsEntered.reset();
+        warningsCleared.reset();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Adam Kraus
+ *
+ * This file is the JMX view of the metrics for a fireworks show.
+ */
+package kraus_adam;
+
+/**
+ * JMX attributes and operations for {@link ShowMetrics}.
+ * Times are in nanoseconds.
+ */
+public interface ShowMetricsMBean {
+    /**
+     * Gets the number of fireworks added
+     */
+    long getAccepted();
+
+    /**
+     * Gets the number of fireworks rejected for a duration less than 1
+     */
+    long getRejectedBadDuration();
+
+    /**
+     * Gets the number of fireworks rejected for a negative cost
+     */
+    long getRejectedNegativeCost();
+
+    /**
+     * Gets the number of fireworks rejected for launching before the current time
+     */
+    long getRejectedInPast();
+
+    /**
+     * Gets the number of fireworks rejected because max fireworks were up
+     */
+    long getRejectedOverCapacity();
+
+    /**
+     * Gets the number of fireworks rejected because a town had its max fireworks up
+     */
+    long getRejectedOverAirspaceCap();
+
+    /**
+     * Gets the median time to add or reject a firework
+     */
+    long getAddNanosP50();
+
+    /**
+     * Gets the 99th percentile time to add or reject a firework
+     */
+    long getAddNanosP99();
+
+    /**
+     * Gets the longest time to add or reject a firework
+     */
+    long getAddNanosMax();
+
+    /**
+     * Gets the number of updates
+     */
+    long getUpdates();
+
+    /**
+     * Gets the median number of times an update went through
+     */
+    long getUpdateTicksP50();
+
+    /**
+     * Gets the 99th percentile number of times an update went through
+     */
+    long getUpdateTicksP99();
+
+    /**
+     * Gets the most times an update went through
+     */
+    long getUpdateTicksMax();
+
+    /**
+     * Gets the median time of an update
+     */
+    long getUpdateNanosP50();
+
+    /**
+     * Gets the 99th percentile time of an update
+     */
+    long getUpdateNanosP99();
+
+    /**
+     * Gets the longest time of an update
+     */
+    long getUpdateNanosMax();
+
+    /**
+     * Gets the number of queries of fireworks up
+     */
+    long getQueries();
+
+    /**
+     * Gets the median time of a query of fireworks up
+     */
+    long getQueryNanosP50();
+
+    /**
+     * Gets the 99th percentile time of a query of fireworks up
+     */
+    long getQueryNanosP99();
+
+    /**
+     * Gets the longest time of a query of fireworks up
+     */
+    long getQueryNanosMax();
+
+    /**
+     * Gets the number of times the show went into a new warning
+     */
+    long getWarningsEntered();
+
+    /**
+     * Gets the number of times cancelled fireworks removed warning times
+     */
+    long getWarningsCleared();
+
+    /**
+     * Clears all the metrics
+     */
+    void reset();
+}
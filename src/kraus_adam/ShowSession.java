@@ -0,0 +1,121 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a session for trying out changes to a fireworks show before keeping them.
+ */
+package kraus_adam;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class to try out changes to a show on a copy, then commit them to the show or throw them away.
+ * Starting and rolling back a session take constant time. Committing takes constant time when the show has no
+ * limits outside it, such as a town airspace cap, and otherwise time for the fireworks changed in the session.
+ */
+public class ShowSession {
+    private final Show show;
+    private final Show staged;
+    /**
+     * Version of the show when the session started
+     */
+    private final int version;
+    /**
+     * Fireworks added and removed on the copy, to be checked against the show's limits when committing
+     */
+    private final StagedAirspace airspace;
+    private boolean open;
+
+    /**
+     * ShowSession constructor
+     * @param show      show the session changes
+     * @param staged    copy of the show to make the changes on
+     */
+    ShowSession(Show show, Show staged) {
+        this.show = show;
+        this.staged = staged;
+        this.version = show.getVersion();
+        this.open = true;
+        airspace = new StagedAirspace();
+        staged.addAirspaceGate(airspace);
+    }
+
+    /**
+     * Gets the copy of the show to try changes on.
+     * Fireworks can be added, cancelled, or rescheduled on it, and it reports fireworks up, warnings and cost
+     * with those changes in place.
+     * @return  staged copy of the show
+     */
+    public Show getShow() {
+        return staged;
+    }
+
+    /**
+     * Checks if the session can still be committed or rolled back
+     * @return  true if the session is open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Keeps the changes made in the session.
+     * The show takes all the changes at once. If the show was changed after the session started, nothing is
+     * kept so the other changes are not lost. Nothing is kept either if a firework added in the session would go
+     * over a limit outside the show, such as the airspace cap of its town.
+     * @return  true if the changes were committed
+     */
+    public boolean commit() {
+        if(!open) return false;
+        open = false;
+
+        if(show.getVersion() != version) return false;
+        if(!show.admitAirspace(airspace.changes)) return false;
+
+        show.adopt(staged);
+        return true;
+    }
+
+    /**
+     * Throws away the changes made in the session
+     */
+    public void rollback() {
+        open = false;
+    }
+
+    /**
+     * Gate on the copy that lets every firework in and writes down the changes, since the show's own gates are
+     * not asked until the session commits
+     */
+    private static final class StagedAirspace implements AirspaceGate {
+        final ArrayList<long[]> changes = new ArrayList<long[]>();
+
+        @Override
+        public boolean reserve(long from, long to) {
+            changes.add(new long[] {from, to, 1});
+            return true;
+        }
+
+        @Override
+        public void release(long from, long to) {
+            changes.add(new long[] {from, to, -1});
+        }
+
+        @Override
+        public void occupy(long from, long to) {
+            changes.add(new long[] {from, to, 1});
+        }
+
+        @Override
+        public boolean move(long from, long to, long newFrom, long newTo) {
+            changes.add(new long[] {from, to, -1});
+            changes.add(new long[] {newFrom, newTo, 1});
+            return true;
+        }
+
+        @Override
+        public boolean admit(List<long[]> changes) {
+            return true;
+        }
+    }
+}
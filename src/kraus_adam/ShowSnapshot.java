@@ -0,0 +1,150 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a read only copy of a fireworks show at one point in time.
+ */
+package kraus_adam;
+
+/**
+ * Class to read a fireworks show as it was when the snapshot was taken.
+ * A snapshot never changes, so it is safe to read from many threads without locks.
+ */
+public class ShowSnapshot {
+    private final String showName;
+    private final int maxFireworks;
+    private final int currentTime;
+    private final OccupancyIndex occupancy;
+    private final WarningRuns warningTimes;
+    private final WarningTiers warningTiers;
+    private final double totalCost;
+
+    /**
+     * ShowSnapshot constructor
+     * @param showName      name of the show
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @param currentTime   time of the show when the snapshot was taken
+     * @param occupancy     fireworks up at each time, not changed after this
+     * @param warningTimes  times the show had a warning, not changed after this
+     * @param warningTiers  times the show reached each warning tier, or null, not changed after this
+     * @param totalCost     cost of all the fireworks in the show
+     */
+    ShowSnapshot(String showName, int maxFireworks, int currentTime, OccupancyIndex occupancy,
+                 WarningRuns warningTimes, WarningTiers warningTiers, double totalCost) {
+        this.showName = showName;
+        this.maxFireworks = maxFireworks;
+        this.currentTime = currentTime;
+        this.occupancy = occupancy;
+        this.warningTimes = warningTimes;
+        this.warningTiers = warningTiers;
+        this.totalCost = totalCost;
+    }
+
+    /**
+     * ShowSnapshot constructor that copies another snapshot
+     * @param snapshot  snapshot to copy
+     */
+    protected ShowSnapshot(ShowSnapshot snapshot) {
+        this(snapshot.showName, snapshot.maxFireworks, snapshot.currentTime, snapshot.occupancy,
+                snapshot.warningTimes, snapshot.warningTiers, snapshot.totalCost);
+    }
+
+    /**
+     * Gets the name of the show
+     * @return  name of the show
+     */
+    public String getName() {
+        return showName;
+    }
+
+    /**
+     * Gets the max fireworks allowed up at a given time
+     * @return  max fireworks
+     */
+    public int getMaxFireworks() {
+        return maxFireworks;
+    }
+
+    /**
+     * Gets the time of the show when the snapshot was taken
+     * @return  current time of the snapshot
+     */
+    public int getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky
+     * @return  number of fireworks up at the snapshot time
+     */
+    public int getFireworksUp() {
+        return getFireworksUpAt(currentTime);
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky
+     * @param time  time to check the sky
+     * @return      number of fireworks up
+     */
+    public int getFireworksUpAt(int time) {
+        return occupancy.countAt(time);
+    }
+
+    /**
+     * Checks if the show had a warning at the snapshot time
+     * @return  true if there was a warning
+     */
+    public boolean hasWarning() {
+        return hasWarningAt(currentTime);
+    }
+
+    /**
+     * Checks if the show has a warning at the given time.
+     * Unlike {@link Show#hasWarningAt(int)}, this does not record the warning.
+     * @param time  time to check the show
+     * @return      true if there is a warning at that time
+     */
+    public boolean hasWarningAt(int time) {
+        return warningTimes.contains(time) || Show.isWarning(getFireworksUpAt(time), maxFireworks);
+    }
+
+    /**
+     * Gets the number of warnings throughout the show
+     * @return  number of warnings
+     */
+    public int getTotalWarnings() {
+        return warningTimes.count();
+    }
+
+    /**
+     * Gets the number of extra warning tiers
+     * @return  number of tiers, 0 if none were set
+     */
+    public int getWarningTierCount() {
+        return warningTiers == null ? 0 : warningTiers.size();
+    }
+
+    /**
+     * Gets the number of warnings at or above a tier throughout the show
+     * @param tier  index of the tier, lowest threshold first
+     * @return      number of warnings
+     */
+    public int getTierWarnings(int tier) {
+        return warningTiers.count(tier);
+    }
+
+    /**
+     * Gets the cost of all the fireworks in the show
+     * @return  total cost of fireworks
+     */
+    public double getCost() {
+        return totalCost;
+    }
+
+    /**
+     * Prints the show status, the same as {@link Show#toString()}
+     * @return  status string
+     */
+    public String toString() {
+        return Show.statusString(showName, getFireworksUp(), maxFireworks);
+    }
+}
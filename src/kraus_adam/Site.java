@@ -0,0 +1,85 @@
+/**
+ * Adam Kraus
+ *
+ * This file is the launch site of a show.
+ */
+package kraus_adam;
+
+/**
+ * Place that a show launches its fireworks from, as x and y coordinates in the same units as a town's radii.
+ * A site never changes after it is made.
+ */
+public final class Site {
+    private final double x;
+    private final double y;
+
+    /**
+     * Site constructor
+     * @param x x coordinate of the site
+     * @param y y coordinate of the site
+     */
+    public Site(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Gets the x coordinate of the site
+     * @return  x coordinate
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the y coordinate of the site
+     * @return  y coordinate
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Checks if a point is within a radius of the site
+     * @param x         x coordinate of the point
+     * @param y         y coordinate of the point
+     * @param radius    distance from the point
+     * @return          true if the site is at most radius from the point
+     */
+    public boolean isWithin(double x, double y, double radius) {
+        double dx = this.x - x;
+        double dy = this.y - y;
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+    /**
+     * Checks if two sites are at the same place
+     * @param other object to compare to
+     * @return      true if they are the same
+     */
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof Site)) return false;
+
+        Site site = (Site) other;
+        return Double.compare(x, site.x) == 0 && Double.compare(y, site.y) == 0;
+    }
+
+    /**
+     * Gets the hash code of the site
+     * @return  hash code
+     */
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(x) + Double.hashCode(y);
+    }
+
+    /**
+     * Prints the site
+     * @return  site string
+     */
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ")";
+    }
+}
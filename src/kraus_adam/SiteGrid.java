@@ -0,0 +1,106 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a spatial index of the shows in a town by their launch sites.
+ */
+package kraus_adam;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * Grid of square cells, each holding the shows whose sites are in it. Finding the shows near a point only looks at
+ * the cells that overlap the circle around it, so with cells about as wide as the radius a query touches nine cells
+ * no matter how many shows the town has. Shows without a site are not in the grid.
+ */
+final class SiteGrid {
+    private final double cellSize;
+    /**
+     * Shows in each cell that has any, by cell key
+     */
+    private final HashMap<Long, ArrayList<ShowHandle>> cells;
+
+    /**
+     * SiteGrid constructor
+     * @param cellSize  width of each cell, above 0
+     */
+    SiteGrid(double cellSize) {
+        this.cellSize = cellSize;
+        cells = new HashMap<Long, ArrayList<ShowHandle>>();
+    }
+
+    /**
+     * Gets the width of each cell
+     * @return  cell width
+     */
+    double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Adds a show to the cell of its site
+     * @param handle    handle of the show
+     */
+    void add(ShowHandle handle) {
+        Site site = handle.getShow().getSite();
+        if(site == null) return;
+
+        cells.computeIfAbsent(key(cell(site.getX()), cell(site.getY())), k -> new ArrayList<ShowHandle>(2))
+                .add(handle);
+    }
+
+    /**
+     * Calls an action on every show with a site within a radius of a point
+     * @param x         x coordinate of the point
+     * @param y         y coordinate of the point
+     * @param radius    distance from the point
+     * @param action    action to call on each show
+     */
+    void forEachNear(double x, double y, double radius, Consumer<ShowHandle> action) {
+        if(!(radius >= 0)) return;
+
+        long fromX = cell(x - radius);
+        long toX = cell(x + radius);
+        long fromY = cell(y - radius);
+        long toY = cell(y + radius);
+
+        // a circle wider than the filled cells is cheaper to answer by visiting every filled cell. Each side is
+        // checked first, so the product of two sides of up to 2^32 cells can't overflow
+        long width = toX - fromX + 1;
+        long height = toY - fromY + 1;
+        if(width > cells.size() || height > cells.size() || width * height > cells.size()) {
+            for(ArrayList<ShowHandle> cell : cells.values()) {
+                forEachWithin(cell, x, y, radius, action);
+            }
+            return;
+        }
+
+        for(long cellX = fromX; cellX <= toX; cellX++) {
+            for(long cellY = fromY; cellY <= toY; cellY++) {
+                ArrayList<ShowHandle> cell = cells.get(key(cellX, cellY));
+                if(cell != null) forEachWithin(cell, x, y, radius, action);
+            }
+        }
+    }
+
+    private static void forEachWithin(ArrayList<ShowHandle> cell, double x, double y, double radius,
+            Consumer<ShowHandle> action) {
+        for(ShowHandle handle : cell) {
+            if(handle.getShow().getSite().isWithin(x, y, radius)) action.accept(handle);
+        }
+    }
+
+    /**
+     * Gets the cell that a coordinate is in, clamped so the cell fits in 32 bits
+     * @param coordinate    x or y coordinate
+     * @return              cell number
+     */
+    private long cell(double coordinate) {
+        return (long) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.floor(coordinate / cellSize)));
+    }
+
+    private static long key(long cellX, long cellY) {
+        return cellX << 32 | (cellY & 0xffffffffL);
+    }
+}
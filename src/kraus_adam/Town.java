@@ -16,24 +16,157 @@
  */
 package kraus_adam;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Class to store information about a town with multiple fireworks shows
+ * Class to store information about a town with multiple fireworks shows.
+ * Fireworks can be added, cancelled and moved through the town from many threads at once. Bookings into
+ * different shows run side by side, and only take turns for the short updates to the town's own counts and to
+ * move the clock. Everything else, such as adding shows, changing settings and reading the town while it is
+ * being booked into, is for one thread at a time.
  */
 public class Town {
+    /**
+     * Airspace cap of a town that has no cap
+     */
+    public final static int NO_AIRSPACE_CAP = -1;
+    /**
+     * Width of the cells the sites of shows are grouped by, when there is no neighborhood rule
+     */
+    public final static double DEFAULT_SITE_CELL_SIZE = 100;
+
     private ArrayList<Show> shows;
-    private ArrayList<Integer> warningTimes;
-    private int currentTime;
+    /**
+     * Handle of each show, at the same index as the show
+     */
+    private ArrayList<ShowHandle> handles;
+    /**
+     * Handle of the first show added with each name
+     */
+    private HashMap<String, ShowHandle> showsByName;
+    /**
+     * Handle of the first company show added with each name
+     */
+    private HashMap<String, CompanyShowHandle> companyShowsByName;
+    private WarningRuns warningTimes;
+    /**
+     * Times that every show reached each extra warning tier, null when there are no tiers
+     */
+    private WarningTiers warningTiers;
+    /**
+     * True if warnings are worked out when they are read instead of as the clock moves
+     */
+    private boolean lazyWarnings;
+    /**
+     * First time the clock has passed whose town warnings are not worked out yet, or Show.NOTHING_PENDING
+     */
+    private long warningsPendingFrom;
+    private volatile int currentTime;
+    /**
+     * Held by bookings together while they change their own show, and by one thread alone for anything that reads
+     * or changes every show, such as moving the clock or counting the shows for a town index
+     */
+    private final ReentrantReadWriteLock bookings = new ReentrantReadWriteLock();
+    /**
+     * Counts changes to the town, so a session can tell if the town changed under it
+     */
+    private int version;
+    /**
+     * Metrics of the town, null when they are turned off
+     */
+    private TownMetrics metrics;
+    /**
+     * Companies of the town by their bills, null until it is first read
+     */
+    private CompanyLeaderboard leaderboard;
+    /**
+     * Last analytics report made, and the version of the town it was made at
+     */
+    private OccupancyAnalytics analytics;
+    private long analyticsVersion;
+    /**
+     * Fireworks up at each time across every show, null until it is first read
+     */
+    private OccupancyIndex occupancy;
+    /**
+     * Max fireworks allowed up across the town at a given time, or NO_AIRSPACE_CAP
+     */
+    private int airspaceCap;
+    /**
+     * Fireworks up across the town for the airspace cap, null until it is first needed
+     */
+    private volatile AirspaceCap airspace;
+    /**
+     * Launches across every show in sliding windows of time, null when they are turned off
+     */
+    private LaunchWindows launchWindows;
+    /**
+     * True if a show was replaced, so the launch windows have to be counted again before they are read
+     */
+    private boolean launchWindowsStale;
+    /**
+     * Shows by the cell of their site, null until it is first read
+     */
+    private SiteGrid sites;
+    /**
+     * Distance within which shows are neighbors for the neighborhood warning rule
+     */
+    private double neighborhoodRadius;
+    /**
+     * Number of neighboring shows that must warn together for a neighborhood warning, or 0 for no rule
+     */
+    private int neighborhoodShows;
+    /**
+     * Keeps the leaderboard and the total fireworks up to date as the shows change
+     */
+    private final ShowWatcher watcher = new ShowWatcher();
 
     /**
      * Town constructor
      */
     public Town() {
         shows = new ArrayList<Show>();
-        warningTimes = new ArrayList<Integer>();
+        handles = new ArrayList<ShowHandle>();
+        showsByName = new HashMap<String, ShowHandle>();
+        companyShowsByName = new HashMap<String, CompanyShowHandle>();
+        warningTimes = new WarningRuns();
+        warningsPendingFrom = Show.NOTHING_PENDING;
         currentTime = 0;
+        airspaceCap = NO_AIRSPACE_CAP;
+    }
+
+    /**
+     * Town constructor that copies another town and each of its shows
+     * @param town  town to copy
+     */
+    private Town(Town town) {
+        shows = new ArrayList<Show>(town.shows.size());
+        handles = new ArrayList<ShowHandle>(town.shows.size());
+        showsByName = new HashMap<String, ShowHandle>();
+        companyShowsByName = new HashMap<String, CompanyShowHandle>();
+        for(Show show : town.shows) {
+            register(handleFor(show.fork(), shows.size()));
+        }
+        warningTimes = town.warningTimes.fork();
+        warningTiers = town.warningTiers == null ? null : town.warningTiers.fork();
+        lazyWarnings = town.lazyWarnings;
+        warningsPendingFrom = town.warningsPendingFrom;
+        launchWindows = town.launchWindows == null ? null : town.launchWindows.fork();
+        launchWindowsStale = town.launchWindowsStale;
+        currentTime = town.currentTime;
+        airspaceCap = town.airspaceCap;
+        neighborhoodRadius = town.neighborhoodRadius;
+        neighborhoodShows = town.neighborhoodShows;
     }
 
     /**
@@ -46,14 +179,25 @@ public class Town {
      * @return              true if successfully added
      */
     public boolean addFirework(int showIndex, String companyName, int time, int duration, double cost) {
-        if(duration < 1 || cost < 0) return false;
+        long start = metrics == null ? 0 : System.nanoTime();
 
-        CompanyShow companyShow = (CompanyShow) shows.get(showIndex);
-        boolean added = companyShow.addFirework(companyName, time, duration, cost);
+        boolean added = false;
+        lockBooking();
+        try {
+            CompanyShow companyShow = handles.get(showIndex).getCompanyShow();
+            if(companyShow != null) {
+                synchronized(companyShow) {
+                    added = companyShow.addFirework(companyName, time, duration, cost);
+                }
+            }
+        } finally {
+            bookings.readLock().unlock();
+        }
         if(added) {
             update(time);
         }
 
+        if(metrics != null) metrics.recordAdd(added, System.nanoTime() - start);
         return added;
     }
 
@@ -66,8 +210,6 @@ public class Town {
      * @return              true if successfully added
      */
     public boolean addFirework(int showIndex, String companyName, int time, int duration) {
-        if(duration < 1) return false;
-
         return addFirework(showIndex, companyName, time, duration, Firework.DEFAULT_COST);
     }
 
@@ -91,13 +233,23 @@ public class Town {
      * @return              true if successfully added
      */
     public boolean addFirework(int showIndex, int time, int duration, double cost) {
-        if(duration < 1 || cost < 0) return false;
+        long start = metrics == null ? 0 : System.nanoTime();
 
-        boolean added = shows.get(showIndex).addFirework(time, duration, cost);
+        boolean added;
+        lockBooking();
+        try {
+            Show show = shows.get(showIndex);
+            synchronized(show) {
+                added = show.addFirework(time, duration, cost);
+            }
+        } finally {
+            bookings.readLock().unlock();
+        }
         if(added) {
             update(time);
         }
 
+        if(metrics != null) metrics.recordAdd(added, System.nanoTime() - start);
         return added;
     }
 
@@ -109,8 +261,6 @@ public class Town {
      * @return              true if successfully added
      */
     public boolean addFirework(int showIndex, int time, int duration) {
-        if(duration < 1) return false;
-
         return addFirework(showIndex, time, duration, Firework.DEFAULT_COST);
     }
 
@@ -125,131 +275,1533 @@ public class Town {
     }
 
     /**
-     * Adds show to list in town
-     * @param show  show to be added
-     * @return      index of show in array
+     * Adds firework to a company show
+     * @param show          handle of show in the town
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @return              true if successfully added
      */
-    public int add(Show show) {
-        shows.add(show);
-        return shows.size() - 1;
+    public boolean addFirework(CompanyShowHandle show, String companyName, int time, int duration, double cost) {
+        return addFirework(show.getIndex(), companyName, time, duration, cost);
     }
 
     /**
-     * Gets the show at the given index
-     * @param showIndex index of the show
-     * @return          show at given index
+     * Adds firework to a company show
+     * @param show          handle of show in the town
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @return              true if successfully added
      */
-    public Show getShow(int showIndex) {
-        return shows.get(showIndex);
+    public boolean addFirework(CompanyShowHandle show, String companyName, int time, int duration) {
+        return addFirework(show.getIndex(), companyName, time, duration, Firework.DEFAULT_COST);
     }
 
     /**
-     * Updates all shows in town to given time
-     * @param time  time to set to current
+     * Adds firework to a company show
+     * @param show          handle of show in the town
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @return              true if successfully added
      */
-    public void update(int time) {
-        if(time < currentTime) return;
+    public boolean addFirework(CompanyShowHandle show, String companyName, int time) {
+        return addFirework(show.getIndex(), companyName, time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
+    }
 
-        for(Show show : shows) {
-            show.Update(time);
+    /**
+     * Adds firework to show
+     * @param show      handle of show in the town
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @param cost      cost of firework
+     * @return          true if successfully added
+     */
+    public boolean addFirework(ShowHandle show, int time, int duration, double cost) {
+        return addFirework(show.getIndex(), time, duration, cost);
+    }
+
+    /**
+     * Adds firework to show
+     * @param show      handle of show in the town
+     * @param time      time that firework launches
+     * @param duration  length of time that firework is in the air
+     * @return          true if successfully added
+     */
+    public boolean addFirework(ShowHandle show, int time, int duration) {
+        return addFirework(show.getIndex(), time, duration, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Adds firework to show
+     * @param show  handle of show in the town
+     * @param time  time that firework launches
+     * @return      true if successfully added
+     */
+    public boolean addFirework(ShowHandle show, int time) {
+        return addFirework(show.getIndex(), time, Firework.DEFAULT_DURATION, Firework.DEFAULT_COST);
+    }
+
+    /**
+     * Cancels a firework in a company show, as if it was never added
+     * @param showIndex     index of show in array
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @return              true if the firework was in the show
+     */
+    public boolean cancelFirework(int showIndex, String companyName, int time, int duration, double cost) {
+        CompanyShow companyShow;
+        boolean cancelled = false;
+        lockBooking();
+        try {
+            companyShow = handles.get(showIndex).getCompanyShow();
+            if(companyShow != null) {
+                synchronized(companyShow) {
+                    cancelled = companyShow.cancelFirework(companyName, time, duration, cost);
+                }
+            }
+        } finally {
+            bookings.readLock().unlock();
         }
+        if(cancelled) {
+            removeWarnings(companyShow, time, (long) time + duration);
+        }
+
+        return cancelled;
+    }
 
-        for(int t = currentTime; t <= time; t++) {
-            hasWarningAt(t);
+    /**
+     * Cancels a firework in a show, as if it was never added
+     * @param showIndex     index of show in array
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @return              true if the firework was in the show
+     */
+    public boolean cancelFirework(int showIndex, int time, int duration, double cost) {
+        Show show;
+        boolean cancelled;
+        lockBooking();
+        try {
+            show = shows.get(showIndex);
+            synchronized(show) {
+                cancelled = show.cancelFirework(time, duration, cost);
+            }
+        } finally {
+            bookings.readLock().unlock();
+        }
+        if(cancelled) {
+            removeWarnings(show, time, (long) time + duration);
         }
 
-        currentTime = time;
+        return cancelled;
     }
 
     /**
-     * Checks if the town has a warning at the current time.
-     * The town has a warning if all shows have a warning.
-     * @return  true if there is a warning
+     * Moves a firework in a company show to a new launch time
+     * @param showIndex     index of show in array
+     * @param companyName   name of company that produced firework
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @param newTime       new time that firework launches
+     * @return              true if the firework was moved
      */
-    public boolean hasWarning() {
-        return hasWarningAt(currentTime);
+    public boolean rescheduleFirework(int showIndex, String companyName, int time, int duration, double cost,
+                                      int newTime) {
+        CompanyShow companyShow;
+        boolean moved = false;
+        lockBooking();
+        try {
+            companyShow = handles.get(showIndex).getCompanyShow();
+            if(companyShow != null) {
+                synchronized(companyShow) {
+                    moved = companyShow.rescheduleFirework(companyName, time, duration, cost, newTime);
+                }
+            }
+        } finally {
+            bookings.readLock().unlock();
+        }
+        if(moved) {
+            removeWarnings(companyShow, time, (long) time + duration);
+            update(newTime);
+        }
+
+        return moved;
     }
 
     /**
-     * Checks if the town has a warning at the given time.
-     * The town has a warning if all shows have a warning.
-     * @param time  time to check for a warning
-     * @return      true if there is a warning
+     * Moves a firework in a show to a new launch time
+     * @param showIndex     index of show in array
+     * @param time          time that firework launches
+     * @param duration      length of time that firework is in the air
+     * @param cost          cost of firework
+     * @param newTime       new time that firework launches
+     * @return              true if the firework was moved
      */
-    public boolean hasWarningAt(int time) {
-        if(warningTimes.contains(time)) return true;
+    public boolean rescheduleFirework(int showIndex, int time, int duration, double cost, int newTime) {
+        Show show;
+        boolean moved;
+        lockBooking();
+        try {
+            show = shows.get(showIndex);
+            synchronized(show) {
+                moved = show.rescheduleFirework(time, duration, cost, newTime);
+            }
+        } finally {
+            bookings.readLock().unlock();
+        }
+        if(moved) {
+            removeWarnings(show, time, (long) time + duration);
+            update(newTime);
+        }
+
+        return moved;
+    }
+
+    /**
+     * Turns on metrics for the town and each of its shows, and registers them with JMX.
+     * Shows added later get metrics too, until {@link #disableMetrics()} is called.
+     * @return  metrics of the town
+     */
+    public TownMetrics enableMetrics() {
+        if(metrics == null) {
+            metrics = new TownMetrics();
+            MetricsRegistry.register(metrics, metrics.getObjectName());
+        }
 
         for(Show show : shows) {
-            if(!show.hasWarningAt(time)) {
-                return false;
-            }
+            show.enableMetrics(metrics.getId());
         }
 
-        if(!warningTimes.contains(time)) {
-            warningTimes.add(time);
+        return metrics;
+    }
+
+    /**
+     * Turns off metrics for the town and each of its shows, and removes them from JMX
+     */
+    public void disableMetrics() {
+        if(metrics == null) return;
+
+        for(Show show : shows) {
+            show.disableMetrics();
         }
 
-        return true;
+        MetricsRegistry.unregister(metrics.getObjectName());
+        metrics = null;
     }
 
     /**
-     * Gets the number of warnings the town has had
-     * @return  number of town warnings
+     * Gets the metrics of the town
+     * @return  metrics, or null if they are turned off
      */
-    public int getTotalWarnings() {
-        if(warningTimes.size() <= 1) return warningTimes.size();
+    public TownMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Makes a separate copy of the town and all its shows.
+     * Each show is forked in constant time, so the town takes constant time for each show, and the copies only
+     * use memory for what changes after the fork.
+     * @return  forked town
+     */
+    public Town fork() {
+        return new Town(this);
+    }
 
-        int warnings = 1;
-        warningTimes.sort(Comparator.naturalOrder());
+    /**
+     * Starts a session for trying out changes to the town.
+     * The session has its own copy of the town. Copying takes constant time for each show, and changes to the copy
+     * only cost as much as the parts of the shows they touch.
+     * @return  new session
+     */
+    public TownSession begin() {
+        return new TownSession(this, fork());
+    }
 
-        for(int i = 1; i < warningTimes.size(); i++) {
-            if(warningTimes.get(i-1) != warningTimes.get(i) - 1) {
-                warnings++;
+    /**
+     * Replaces everything in this town with a copy made for a session.
+     * Shows that were in the town keep their identity and take the data of their copies, and shows added to the
+     * copy are added to the town.
+     * @param town  copy to take the data from
+     */
+    void adopt(Town town) {
+        for(int i = 0; i < town.shows.size(); i++) {
+            if(i < shows.size()) {
+                shows.get(i).adopt(town.shows.get(i));
+            } else {
+                ShowHandle handle = town.handles.get(i);
+                town.stopListening(handle);
+                register(handleFor(handle.getShow(), i));
             }
         }
+        leaderboard = null;
+        occupancy = null;
+        airspaceCap = town.airspaceCap;
+        airspace = null;
+        sites = null;
+        neighborhoodRadius = town.neighborhoodRadius;
+        neighborhoodShows = town.neighborhoodShows;
+        warningTimes = town.warningTimes;
+        warningTiers = town.warningTiers;
+        lazyWarnings = town.lazyWarnings;
+        warningsPendingFrom = town.warningsPendingFrom;
+        launchWindows = town.launchWindows;
+        launchWindowsStale = town.launchWindowsStale;
+        currentTime = town.currentTime;
+        version++;
+    }
+
+    /**
+     * Gets the number of different fireworks stored across the shows, which is roughly how much memory the town uses
+     * @return  number of stored fireworks
+     */
+    long getStoredFireworks() {
+        long stored = 0;
+        for(Show show : shows) {
+            stored += show.getStoredFireworks();
+        }
 
-        return warnings;
+        return stored;
     }
 
     /**
-     * Gets the number of fireworks up in the sky
-     * @return  number of fireworks currently up
+     * Writes the town and its shows to a stream, in the form read by {@link #read(DataInputStream)}
+     * @param out   stream to write to
+     * @throws IOException  if the stream can't be written
      */
-    public int getFireworksUp() {
-        int fireworksUp = 0;
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(currentTime);
+        warningTimes.write(out);
+        out.writeBoolean(warningTiers != null);
+        if(warningTiers != null) warningTiers.write(out);
+        out.writeBoolean(lazyWarnings);
+        out.writeLong(warningsPendingFrom);
+        out.writeInt(airspaceCap);
+        out.writeDouble(neighborhoodRadius);
+        out.writeInt(neighborhoodShows);
+        out.writeBoolean(launchWindows != null);
+        if(launchWindows != null) launchWindows.write(out);
 
+        out.writeInt(shows.size());
         for(Show show : shows) {
-            fireworksUp += show.getFireworksUp();
+            show.write(out);
         }
+    }
 
-        return fireworksUp;
+    /**
+     * Writes the bookings of every show, and the fireworks up and warnings of every show and the whole town over
+     * time, to a column file for analysis in other tools. The file is written in chunks, so it takes the same
+     * memory however many fireworks the town has.
+     * @param file  file to write to
+     * @throws IOException  if the file can't be written
+     */
+    public void exportColumns(File file) throws IOException {
+        ColumnExport.write(this, file);
     }
 
     /**
-     * Gets the cost of all shows in the town
-     * @return  total cost of all shows
+     * Reads a town written by {@link #write(DataOutputStream)}
+     * @param in    stream to read from
+     * @return      town, without metrics
+     * @throws IOException  if the stream can't be read or does not hold a town
      */
-    public double getTotalCost() {
-        double totalCost = 0;
+    static Town read(DataInputStream in) throws IOException {
+        Town town = new Town();
+        town.currentTime = in.readInt();
+        town.warningTimes = WarningRuns.read(in);
+        town.warningTiers = in.readBoolean() ? WarningTiers.read(in) : null;
+        boolean lazy = in.readBoolean();
+        long pendingFrom = in.readLong();
+        if(!Show.isPending(pendingFrom, town.currentTime, lazy)) throw new IOException("Bad pending town warnings");
+        town.airspaceCap = in.readInt();
+        town.neighborhoodRadius = in.readDouble();
+        town.neighborhoodShows = in.readInt();
+        if(town.airspaceCap < NO_AIRSPACE_CAP || town.neighborhoodShows < 0) throw new IOException("Bad town settings");
+        LaunchWindows windows = in.readBoolean() ? LaunchWindows.read(in, town.currentTime) : null;
+
+        int size = TownStore.readCount(in);
+        for(int i = 0; i < size; i++) {
+            town.add(Show.read(in));
+        }
+        // adding a show works out pending town warnings, so they are only owed again once the shows are back
+        town.lazyWarnings = lazy;
+        town.warningsPendingFrom = pendingFrom;
+        if(windows != null) town.launchWindows = town.countLaunches(windows).resume(town.currentTime);
+
+        return town;
+    }
 
+    /**
+     * Gets the number of changes made to the town and its shows
+     * @return  version of the town
+     */
+    long getVersion() {
+        // every version only goes up, so the sum changes whenever any of them does
+        long townVersion = version;
         for(Show show : shows) {
-            totalCost += show.getCost();
+            townVersion += show.getVersion();
         }
 
-        return totalCost;
+        return townVersion;
     }
 
     /**
-     * Prints the status of all shows in town
-     * @return  status string
+     * Removes town warnings in a range where a show no longer has a warning.
+     * Only the show that changed can end a town warning, so the other shows don't need to be checked.
+     * @param show  show that had a firework removed
+     * @param from  first time in the range
+     * @param to    last time in the range
      */
-    public String toString() {
-        String townString = "Town status:\n";
+    private void removeWarnings(Show show, long from, long to) {
+        bookings.writeLock().lock();
+        try {
+            boolean cleared = warningTimes.removeBelow(from, to, show.getOccupancy(), show.getWarningLevel());
+            if(cleared) {
+                if(metrics != null) metrics.recordWarningCleared();
+                WarningEvent.record(null, false, from, to);
+            }
+            if(warningTiers != null) {
+                warningTiers.removeBelow(from, to, show.getOccupancy(), show.getMaxFireworks());
+            }
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
 
-        for(Show show : shows) {
-            townString += show + "\n";
+    /**
+     * Takes the lock for a booking into one show, shared with bookings into other shows. The booking also has to
+     * lock its show, so two bookings into the same show take turns. The airspace count is made first if it is
+     * needed, since making it reads every show.
+     */
+    private void lockBooking() {
+        if(airspaceCap != NO_AIRSPACE_CAP && airspace == null) {
+            bookings.writeLock().lock();
+            try {
+                getAirspace();
+            } finally {
+                bookings.writeLock().unlock();
+            }
         }
+        bookings.readLock().lock();
+    }
 
-        return townString;
+    /**
+     * Places a batch of requested fireworks into a show, each somewhere in its launch window.
+     * See {@link Show#scheduleFireworks(List, ScheduleGoal)}. The batch is placed under the same locks as a
+     * booking, so it may run alongside bookings into the show from other threads.
+     * @param showIndex index of show in array
+     * @param requests  requested fireworks
+     * @param goal      what to get the most of
+     * @return          where each request was placed, or if it was dropped
+     */
+    public Schedule scheduleFireworks(int showIndex, List<FireworkRequest> requests, ScheduleGoal goal) {
+        Schedule schedule;
+        lockBooking();
+        try {
+            Show show = shows.get(showIndex);
+            synchronized(show) {
+                schedule = show.scheduleFireworks(requests, goal);
+            }
+        } finally {
+            bookings.readLock().unlock();
+        }
+
+        int lastTime = -1;
+        for(int i = 0; i < schedule.getRequestCount(); i++) {
+            lastTime = Math.max(lastTime, schedule.getLaunchTime(i));
+        }
+        if(lastTime >= 0) {
+            update(lastTime);
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Adds show to list in town
+     * @param show  show to be added
+     * @return      index of show in array
+     */
+    public int add(Show show) {
+        return add(handleFor(show, shows.size()));
+    }
+
+    /**
+     * Adds show to the town
+     * @param show  show to be added
+     * @return      handle of the show
+     */
+    public ShowHandle addShow(Show show) {
+        return handles.get(add(show));
+    }
+
+    /**
+     * Adds company show to the town
+     * @param show  show to be added
+     * @return      handle of the show, for booking fireworks by company
+     */
+    public CompanyShowHandle addShow(CompanyShow show) {
+        CompanyShowHandle handle = new CompanyShowHandle(show, shows.size());
+        add(handle);
+        return handle;
+    }
+
+    /**
+     * Finds the first show added to the town with a name
+     * @param showName  name of the show
+     * @return          handle of the show, or null if there is none
+     */
+    public ShowHandle findShow(String showName) {
+        return showsByName.get(showName);
+    }
+
+    /**
+     * Finds the first company show added to the town with a name
+     * @param showName  name of the show
+     * @return          handle of the show, or null if there is none
+     */
+    public CompanyShowHandle findCompanyShow(String showName) {
+        return companyShowsByName.get(showName);
+    }
+
+    /**
+     * Adds the show of a handle to the town
+     * @param handle    handle of the show, with the next index
+     * @return          index of show in array
+     */
+    private int add(ShowHandle handle) {
+        bookings.writeLock().lock();
+        try {
+            // warnings already passed are worked out with the shows that were there at the time
+            evaluateWarnings();
+            Show show = handle.getShow();
+            if(lazyWarnings) show.setLazyWarnings(true);
+            if(metrics != null) show.enableMetrics(metrics.getId());
+            CompanyShow companyShow = handle.getCompanyShow();
+            if(leaderboard != null && companyShow != null) leaderboard.addShow(companyShow);
+            if(occupancy != null) addOccupancy(show, occupancy);
+            if(launchWindows != null) {
+                show.forEachFirework((firework, count) -> launchWindows.add(firework.time, count));
+            }
+            if(sites != null) sites.add(handle);
+            AirspaceCap cap = airspace;
+            if(cap != null) {
+                show.getOccupancy().forEachRun(0, Integer.MAX_VALUE, (from, to, count) -> cap.add(from, to, count));
+            }
+            register(handle);
+            version++;
+            return handle.getIndex();
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the handle for a show, a company show handle if it has companies
+     * @param show  show in the town
+     * @param index index of the show
+     * @return      handle of the show
+     */
+    private static ShowHandle handleFor(Show show, int index) {
+        if(show instanceof CompanyShow) {
+            return new CompanyShowHandle((CompanyShow) show, index);
+        }
+
+        return new ShowHandle(show, index);
+    }
+
+    /**
+     * Puts a show in the lists and name indexes of the town and listens to it
+     * @param handle    handle of the show, with the next index
+     */
+    private void register(ShowHandle handle) {
+        shows.add(handle.getShow());
+        handles.add(handle);
+        showsByName.putIfAbsent(handle.getName(), handle);
+        CompanyShowHandle companyHandle = handle.asCompanyShowHandle();
+        if(companyHandle != null) companyShowsByName.putIfAbsent(handle.getName(), companyHandle);
+        listenTo(handle);
+    }
+
+    /**
+     * Sets a limit on the fireworks up across every show in the town, on top of the max fireworks of each show.
+     * A firework is only added to a show if both the show and the town have room at its launch time, however it
+     * is added. The town keeps its count in a tree that takes the same time to book into however long a
+     * firework is up, with locks picked by launch time, so bookings at different times rarely wait on each other.
+     * Fireworks already in the town stay, even if they are over the new cap.
+     * @param maxFireworks  max fireworks allowed up across the town at a given time
+     * @return              true if the cap was set
+     */
+    public boolean setAirspaceCap(int maxFireworks) {
+        if(maxFireworks < 0) return false;
+
+        bookings.writeLock().lock();
+        try {
+            airspaceCap = maxFireworks;
+            airspace = null;
+            version++;
+        } finally {
+            bookings.writeLock().unlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes the limit set by {@link #setAirspaceCap(int)}
+     */
+    public void clearAirspaceCap() {
+        bookings.writeLock().lock();
+        try {
+            airspaceCap = NO_AIRSPACE_CAP;
+            airspace = null;
+            version++;
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the max fireworks allowed up across the town at a given time
+     * @return  airspace cap, or NO_AIRSPACE_CAP if there is none
+     */
+    public int getAirspaceCap() {
+        return airspaceCap;
+    }
+
+    /**
+     * Gets the count of fireworks up for the airspace cap, counting every show the first time it is needed
+     * @return  airspace count, or null if the town has no cap
+     */
+    private AirspaceCap getAirspace() {
+        AirspaceCap cap = airspace;
+        if(cap != null) return cap;
+
+        synchronized(watcher) {
+            if(airspace == null && airspaceCap != NO_AIRSPACE_CAP) {
+                AirspaceCap counted = new AirspaceCap(airspaceCap);
+                for(Show show : shows) {
+                    show.getOccupancy().forEachRun(0, Integer.MAX_VALUE,
+                            (from, to, count) -> counted.add(from, to, count));
+                }
+                airspace = counted;
+            }
+
+            return airspace;
+        }
+    }
+
+    /**
+     * Listens to the fireworks of a show, and to its bills if it is a company show
+     * @param handle    handle of a show in the town
+     */
+    private void listenTo(ShowHandle handle) {
+        handle.getShow().addOccupancyListener(watcher);
+        handle.getShow().addAirspaceGate(watcher);
+        if(handle.getCompanyShow() != null) {
+            handle.getCompanyShow().addBillListener(watcher);
+        }
+    }
+
+    /**
+     * Stops listening to a show, such as one that was moved to another town
+     * @param handle    handle of a show in the town
+     */
+    private void stopListening(ShowHandle handle) {
+        handle.getShow().removeOccupancyListener(watcher);
+        handle.getShow().removeAirspaceGate(watcher);
+        if(handle.getCompanyShow() != null) {
+            handle.getCompanyShow().removeBillListener(watcher);
+        }
+    }
+
+    /**
+     * Gets the companies with the highest bills across every company show in the town, highest first.
+     * The leaderboard is built the first time it is read and then kept up to date as fireworks are added, so
+     * reading it only takes as long as the number of companies read.
+     * @param count most companies to get
+     * @return      standings of the top companies, with no discount applied
+     */
+    public List<CompanyStanding> getTopCompanies(int count) {
+        CompanyLeaderboard board = getLeaderboard();
+        synchronized(watcher) {
+            return board.top(count, false);
+        }
+    }
+
+    /**
+     * Gets the companies with the highest bills across every company show in the town, after the discount each
+     * show gives
+     * @param count most companies to get
+     * @return      standings of the top companies, with the discount applied
+     */
+    public List<CompanyStanding> getTopCompaniesDiscounted(int count) {
+        CompanyLeaderboard board = getLeaderboard();
+        synchronized(watcher) {
+            return board.top(count, true);
+        }
+    }
+
+    /**
+     * Gets the leaderboard of the town, building it from the shows if needed
+     * @return  company leaderboard
+     */
+    private CompanyLeaderboard getLeaderboard() {
+        bookings.writeLock().lock();
+        try {
+            if(leaderboard == null) {
+                CompanyLeaderboard board = new CompanyLeaderboard();
+                for(ShowHandle handle : handles) {
+                    if(handle.getCompanyShow() != null) board.addShow(handle.getCompanyShow());
+                }
+                synchronized(watcher) {
+                    leaderboard = board;
+                }
+            }
+
+            return leaderboard;
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the show at the given index
+     * @param showIndex index of the show
+     * @return          show at given index
+     */
+    public Show getShow(int showIndex) {
+        return shows.get(showIndex);
+    }
+
+    /**
+     * Gets the number of shows in the town
+     * @return  number of shows
+     */
+    public int getShowCount() {
+        return shows.size();
+    }
+
+    /**
+     * Updates all shows in town to given time
+     * @param time  time to set to current
+     */
+    public void update(int time) {
+        if(time < currentTime) return;
+
+        bookings.writeLock().lock();
+        try {
+            advance(time);
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the clock of the town and its shows, with no bookings running
+     * @param time  time to set to current
+     */
+    private void advance(int time) {
+        // another thread may have moved the clock past the time while this one waited for the lock
+        if(time < currentTime) return;
+        ClockAdvanceEvent event = ClockAdvanceEvent.start();
+        long start = metrics == null ? 0 : System.nanoTime();
+
+        for(int i = 0; i < shows.size(); i++) {
+            shows.get(i).Update(time);
+        }
+
+        if(lazyWarnings) {
+            warningsPendingFrom = Math.min(warningsPendingFrom, currentTime);
+        }
+        if(launchWindows != null) launchWindows.advance(time);
+
+        for(int t = currentTime; !lazyWarnings && t <= time; t++) {
+            checkWarningAt(t);
+            if(warningTiers != null) {
+                warningTiers.record(t, tierOf(t));
+            }
+        }
+
+        if(metrics != null) metrics.recordUpdate((long) time - currentTime + 1, System.nanoTime() - start);
+        if(event != null) event.commit(null, shows.size(), currentTime, time);
+        currentTime = time;
+        version++;
+    }
+
+    /**
+     * Checks if the town has a warning at the current time.
+     * The town has a warning if all shows have a warning.
+     * @return  true if there is a warning
+     */
+    public boolean hasWarning() {
+        return hasWarningAt(currentTime);
+    }
+
+    /**
+     * Checks if the town has a warning at the given time.
+     * The town has a warning if all shows have a warning.
+     * @param time  time to check for a warning
+     * @return      true if there is a warning
+     */
+    public boolean hasWarningAt(int time) {
+        bookings.writeLock().lock();
+        try {
+            return checkWarningAt(time);
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if the town has a warning at a time, with no bookings running, and records it if it does
+     * @param time  time to check for a warning
+     * @return      true if there is a warning
+     */
+    private boolean checkWarningAt(int time) {
+        evaluateWarnings();
+        if(warningTimes.contains(time)) return true;
+
+        for(int i = 0; i < shows.size(); i++) {
+            if(!shows.get(i).hasWarningAt(time)) {
+                return false;
+            }
+        }
+
+        int warnings = warningTimes.count();
+        warningTimes.add(time);
+        if(warningTimes.count() > warnings) {
+            if(metrics != null) metrics.recordWarningEntered();
+            WarningEvent.record(null, true, time, time);
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the shows with a site within a radius of a point
+     * @param x         x coordinate of the point
+     * @param y         y coordinate of the point
+     * @param radius    distance from the point
+     * @return          handles of the shows, in the order they were added
+     */
+    public List<ShowHandle> findShowsNear(double x, double y, double radius) {
+        ArrayList<ShowHandle> near = new ArrayList<ShowHandle>();
+        getSites().forEachNear(x, y, radius, near::add);
+        near.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        return near;
+    }
+
+    /**
+     * Finds the shows with a site within a radius of a point that have a warning at a time
+     * @param x         x coordinate of the point
+     * @param y         y coordinate of the point
+     * @param radius    distance from the point
+     * @param time      time to check
+     * @return          handles of the shows, in the order they were added
+     */
+    public List<ShowHandle> findShowsInWarningNear(double x, double y, double radius, int time) {
+        List<ShowHandle> near = findShowsNear(x, y, radius);
+        near.removeIf(handle -> !handle.getShow().hasWarningAt(time));
+        return near;
+    }
+
+    /**
+     * Sets the neighborhood warning rule, which gives a warning when enough shows near each other
+     * have a warning at the same time
+     * @param radius    distance within which shows are neighbors
+     * @param showCount number of shows within radius of one of them, counting itself, that must all have a warning
+     * @return          true if the rule was set, false if radius is negative or showCount is below 1
+     */
+    public boolean setNeighborhoodWarning(double radius, int showCount) {
+        if(!(radius >= 0) || Double.isInfinite(radius) || showCount < 1) return false;
+
+        neighborhoodRadius = radius;
+        neighborhoodShows = showCount;
+        // cells as wide as the radius keep each neighborhood to nine cells
+        sites = null;
+        return true;
+    }
+
+    /**
+     * Removes the neighborhood warning rule
+     */
+    public void clearNeighborhoodWarning() {
+        neighborhoodRadius = 0;
+        neighborhoodShows = 0;
+        sites = null;
+    }
+
+    /**
+     * Checks the neighborhood warning rule at a time. Only the shows with a warning are looked at,
+     * and each of them only looks at the shows in the cells around its site.
+     * @param time  time to check
+     * @return      true if enough neighboring shows have a warning, false if they do not or there is no rule
+     */
+    public boolean hasNeighborhoodWarningAt(int time) {
+        if(neighborhoodShows == 0) return false;
+
+        HashSet<ShowHandle> warning = new HashSet<ShowHandle>();
+        for(ShowHandle handle : handles) {
+            if(handle.getShow().getSite() != null && handle.getShow().hasWarningAt(time)) warning.add(handle);
+        }
+        if(warning.size() < neighborhoodShows) return false;
+
+        SiteGrid grid = getSites();
+        int[] neighbors = new int[1];
+        for(ShowHandle handle : warning) {
+            Site site = handle.getShow().getSite();
+            neighbors[0] = 0;
+            grid.forEachNear(site.getX(), site.getY(), neighborhoodRadius, neighbor -> {
+                if(warning.contains(neighbor)) neighbors[0]++;
+            });
+            if(neighbors[0] >= neighborhoodShows) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the grid of show sites, building it the first time it is read
+     * @return  grid of show sites
+     */
+    private SiteGrid getSites() {
+        if(sites == null) {
+            sites = new SiteGrid(neighborhoodShows > 0 && neighborhoodRadius > 0
+                    ? neighborhoodRadius : DEFAULT_SITE_CELL_SIZE);
+            for(ShowHandle handle : handles) {
+                sites.add(handle);
+            }
+        }
+
+        return sites;
+    }
+
+    /**
+     * Turns lazy warnings on or off for the town and each of its shows. With lazy warnings, updating the clock
+     * does not check each time it passes, and the town and show warnings for those times are worked out the next
+     * time warnings are read, by searching the occupancy of each show for the runs of times where every show
+     * has a warning. Warnings come out the same either way.
+     * @param lazy  true to work out warnings when they are read
+     */
+    public void setLazyWarnings(boolean lazy) {
+        evaluateWarnings();
+        lazyWarnings = lazy;
+        for(Show show : shows) {
+            show.setLazyWarnings(lazy);
+        }
+    }
+
+    /**
+     * Checks if warnings are worked out when they are read
+     * @return  true if warnings are lazy
+     */
+    public boolean hasLazyWarnings() {
+        return lazyWarnings;
+    }
+
+    /**
+     * Works out the town warnings for the times the clock passed since they were last read, when warnings are lazy
+     */
+    private void evaluateWarnings() {
+        bookings.writeLock().lock();
+        try {
+            evaluatePendingWarnings();
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
+
+    private void evaluatePendingWarnings() {
+        if(warningsPendingFrom == Show.NOTHING_PENDING) return;
+
+        long from = warningsPendingFrom;
+        warningsPendingFrom = Show.NOTHING_PENDING;
+
+        int[] levels = new int[shows.size()];
+        for(int i = 0; i < levels.length; i++) {
+            levels[i] = shows.get(i).getWarningLevel();
+        }
+        long time = firstAllAtLeast(from, currentTime, levels);
+        while(time >= 0) {
+            long end = lastAllAtLeast(time, currentTime, levels);
+            if(warningTimes.addRange((int) time, (int) end)) {
+                if(metrics != null) metrics.recordWarningEntered();
+                WarningEvent.record(null, true, (int) time, (int) end);
+            }
+            time = firstAllAtLeast(end + 1, currentTime, levels);
+        }
+
+        for(int tier = 0; warningTiers != null && tier < warningTiers.size(); tier++) {
+            for(int i = 0; i < levels.length; i++) {
+                levels[i] = Show.warningLevel(shows.get(i).getMaxFireworks(), warningTiers.getThreshold(tier));
+            }
+            time = firstAllAtLeast(from, currentTime, levels);
+            while(time >= 0) {
+                long end = lastAllAtLeast(time, currentTime, levels);
+                warningTiers.recordRange(tier, (int) time, (int) end);
+                time = firstAllAtLeast(end + 1, currentTime, levels);
+            }
+        }
+    }
+
+    /**
+     * Finds the first time in a range where every show has at least its level of fireworks up
+     * @param from      first time in the range
+     * @param to        last time in the range
+     * @param levels    fewest fireworks up for each show
+     * @return          first time, or -1 if there is none
+     */
+    private long firstAllAtLeast(long from, long to, int[] levels) {
+        long time = from;
+        while(time <= to) {
+            // jump to the latest of the first times each show reaches its level, until they all agree
+            long latest = time;
+            for(int i = 0; i < levels.length; i++) {
+                long first = shows.get(i).getOccupancy().firstAtLeast(time, to, levels[i]);
+                if(first < 0) return -1;
+
+                latest = Math.max(latest, first);
+            }
+            if(latest == time) return time;
+
+            time = latest;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the last time of the run where every show has at least its level of fireworks up
+     * @param from      first time of the run, where every show is at its level
+     * @param to        last time in the range
+     * @param levels    fewest fireworks up for each show
+     * @return          last time of the run
+     */
+    private long lastAllAtLeast(long from, long to, int[] levels) {
+        long end = to;
+        for(int i = 0; i < levels.length; i++) {
+            long below = shows.get(i).getOccupancy().firstBelow(from, end, levels[i]);
+            if(below >= 0) end = below - 1;
+        }
+
+        return end;
+    }
+
+    /**
+     * Gets the number of warnings the town has had
+     * @return  number of town warnings
+     */
+    public int getTotalWarnings() {
+        evaluateWarnings();
+        return warningTimes.count();
+    }
+
+    /**
+     * Sets extra warning tiers for the town, such as 60, 80 and 95 percent of max fireworks.
+     * The town is at a tier when every show has at least that percent of its max fireworks up. Tiers are checked
+     * in the same pass over time as the regular warning, only track times from the current time on, and replace
+     * any tiers set before.
+     * @param thresholds    percent of max fireworks for each tier, each above 0 and at most 100
+     * @return              true if the tiers were set
+     */
+    public boolean setWarningTiers(double... thresholds) {
+        double[] sorted = WarningTiers.sorted(thresholds);
+        if(sorted == null) return false;
+
+        evaluateWarnings();
+        warningTiers = new WarningTiers(sorted);
+        warningTiers.record(currentTime, tierOf(currentTime));
+        version++;
+
+        return true;
+    }
+
+    /**
+     * Gets the number of extra warning tiers
+     * @return  number of tiers, 0 if none are set
+     */
+    public int getWarningTierCount() {
+        return warningTiers == null ? 0 : warningTiers.size();
+    }
+
+    /**
+     * Gets the number of warnings at or above a tier the town has had
+     * @param tier  index of the tier, lowest threshold first
+     * @return      number of town warnings
+     */
+    public int getTierWarnings(int tier) {
+        evaluateWarnings();
+        return warningTiers.count(tier);
+    }
+
+    /**
+     * Gets the highest warning tier the town is at, or was at, at the given time
+     * @param time  time to check the town
+     * @return      index of the tier, or -1 if it is below every tier
+     */
+    public int getTierAt(int time) {
+        if(warningTiers == null) return -1;
+
+        evaluateWarnings();
+        return Math.max(warningTiers.recordedTier(time), tierOf(time));
+    }
+
+    /**
+     * Finds the highest tier that every show is at
+     * @param time  time to check the shows
+     * @return      index of the tier, or -1 if a show is below every tier
+     */
+    private int tierOf(int time) {
+        int tier = warningTiers.size() - 1;
+
+        for(int i = 0; i < shows.size(); i++) {
+            if(tier < 0) break;
+            Show show = shows.get(i);
+            int fireworksUp = show.getOccupancy().countAt(time);
+            tier = Math.min(tier, warningTiers.tierOf(fireworksUp, show.getMaxFireworks()));
+        }
+
+        return tier;
+    }
+
+    /**
+     * Gets the time the town has been updated to
+     * @return  current time of the town
+     */
+    public int getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky
+     * @return  number of fireworks currently up
+     */
+    public int getFireworksUp() {
+        return getFireworksUpAt(currentTime);
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky across every show, at any time in the past or future.
+     * The town keeps its own count of fireworks up at each time, built the first time it is read and then kept up
+     * to date as the shows change, so this takes logarithmic time no matter how many shows there are.
+     * @param time  time to check the sky
+     * @return      number of fireworks up
+     */
+    public int getFireworksUpAt(int time) {
+        if(occupancy == null) {
+            bookings.writeLock().lock();
+            try {
+                if(occupancy == null) {
+                    OccupancyIndex counted = new OccupancyIndex();
+                    for(Show show : shows) {
+                        addOccupancy(show, counted);
+                    }
+                    synchronized(watcher) {
+                        occupancy = counted;
+                    }
+                }
+            } finally {
+                bookings.writeLock().unlock();
+            }
+        }
+
+        synchronized(watcher) {
+            return occupancy.countAt(time);
+        }
+    }
+
+    /**
+     * Turns on launch counts across every show for sliding windows that end at the current time.
+     * Reading a window takes constant time. Replaces any windows set before, and peaks start over.
+     * @param windowSizes   number of times in each window, each from 1 to 2^20
+     * @return              true if the windows were set
+     */
+    public boolean setLaunchWindows(int... windowSizes) {
+        int[] sorted = LaunchWindows.sorted(windowSizes);
+        if(sorted == null) return false;
+
+        launchWindows = countLaunches(new LaunchWindows(sorted, currentTime));
+        launchWindowsStale = false;
+
+        return true;
+    }
+
+    /**
+     * Counts the launches of every show in new windows
+     * @param windows   empty windows
+     * @return          windows with every launch counted
+     */
+    private LaunchWindows countLaunches(LaunchWindows windows) {
+        for(Show show : shows) {
+            show.forEachFirework((firework, count) -> windows.add(firework.time, count));
+        }
+
+        return windows;
+    }
+
+    /**
+     * Gets the launch windows, counting them again if a show was replaced since they were last read
+     * @return  launch windows
+     */
+    private LaunchWindows getLaunchWindows() {
+        bookings.writeLock().lock();
+        try {
+            if(launchWindowsStale) {
+                launchWindows = countLaunches(launchWindows.restart(currentTime));
+                launchWindowsStale = false;
+            }
+
+            return launchWindows;
+        } finally {
+            bookings.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Turns off launch counts
+     */
+    public void clearLaunchWindows() {
+        launchWindows = null;
+        launchWindowsStale = false;
+    }
+
+    /**
+     * Gets the number of launch windows
+     * @return  number of windows, 0 if none are set
+     */
+    public int getLaunchWindowCount() {
+        return launchWindows == null ? 0 : launchWindows.size();
+    }
+
+    /**
+     * Gets the number of fireworks launched across every show in a window ending at the current time
+     * @param window    index of the window, smallest first
+     * @return          number of launches
+     */
+    public long getLaunches(int window) {
+        LaunchWindows windows = getLaunchWindows();
+        synchronized(watcher) {
+            return windows.getLaunches(window);
+        }
+    }
+
+    /**
+     * Gets the most fireworks launched across every show in a window since the windows were set
+     * @param window    index of the window, smallest first
+     * @return          peak number of launches
+     */
+    public long getPeakLaunches(int window) {
+        LaunchWindows windows = getLaunchWindows();
+        synchronized(watcher) {
+            return windows.getPeak(window);
+        }
+    }
+
+    /**
+     * Gets the launches per time across every show in a window ending at the current time
+     * @param window    index of the window, smallest first
+     * @return          launch rate
+     */
+    public double getLaunchRate(int window) {
+        LaunchWindows windows = getLaunchWindows();
+        synchronized(watcher) {
+            return (double) windows.getLaunches(window) / windows.getSize(window);
+        }
+    }
+
+    /**
+     * Adds the fireworks up in a show to a count of the town
+     * @param show      show to add
+     * @param counted   count of the town
+     */
+    private static void addOccupancy(Show show, OccupancyIndex counted) {
+        show.getOccupancy().forEachRun(0, Integer.MAX_VALUE, (from, to, count) -> counted.add(from, to, count));
+    }
+
+    /**
+     * Gets the cost of all shows in the town
+     * @return  total cost of all shows
+     */
+    public double getTotalCost() {
+        double totalCost = 0;
+
+        for(Show show : shows) {
+            totalCost += show.getCost();
+        }
+
+        return totalCost;
+    }
+
+    /**
+     * Gets the cost of the fireworks in every show that launch in a range of times, with no discount applied
+     * @param from  first launch time
+     * @param to    last launch time
+     * @return      cost of those fireworks
+     */
+    public double getSpend(int from, int to) {
+        double spend = 0;
+
+        for(Show show : shows) {
+            spend += show.getSpend(from, to);
+        }
+
+        return spend;
+    }
+
+    /**
+     * Gets the cost of a company's fireworks in every company show that launch in a range of times, with no
+     * discount applied
+     * @param companyName   name of company that produced the fireworks
+     * @param from          first launch time
+     * @param to            last launch time
+     * @return              cost of those fireworks
+     */
+    public double getCompanySpend(String companyName, int from, int to) {
+        double spend = 0;
+
+        for(ShowHandle handle : handles) {
+            if(handle.getCompanyShow() != null) {
+                spend += handle.getCompanyShow().getCompanySpend(companyName, from, to);
+            }
+        }
+
+        return spend;
+    }
+
+    /**
+     * Gets the cost of the fireworks in every show that launch in each of a row of time buckets
+     * @param from          first launch time of the first bucket
+     * @param bucketSize    number of times in each bucket
+     * @param buckets       number of buckets
+     * @return              cost of each bucket, empty if the bucket size or number of buckets is less than 1
+     */
+    public double[] getSpendByBucket(int from, int bucketSize, int buckets) {
+        if(bucketSize < 1 || buckets < 1) return new double[0];
+
+        double[] spend = new double[buckets];
+        for(Show show : shows) {
+            double[] showSpend = show.getSpendByBucket(from, bucketSize, buckets);
+            for(int i = 0; i < buckets; i++) {
+                spend[i] += showSpend[i];
+            }
+        }
+
+        return spend;
+    }
+
+    /**
+     * Gets a report of how full the town was over a range of times, counting the fireworks of every show.
+     * Times have a warning when the town does, which is when every show does. The report is made in one sorted
+     * pass over the times the number of fireworks up changes in any show, and is kept until the town changes.
+     * @param from  first time of the report
+     * @param to    last time of the report
+     * @return      analytics report, or null if from is after to
+     */
+    public OccupancyAnalytics getAnalytics(int from, int to) {
+        if(from > to) return null;
+        if(analytics != null && analyticsVersion == getVersion() && analytics.getFrom() == from
+                && analytics.getTo() == to) return analytics;
+
+        long capacity = 0;
+        for(Show show : shows) {
+            capacity += show.getMaxFireworks();
+        }
+
+        OccupancyAnalytics report = new OccupancyAnalytics(from, to, capacity);
+        forEachTownRun(from, to, report::add);
+        analytics = report;
+        analyticsVersion = getVersion();
+
+        return report;
+    }
+
+    /**
+     * Gets a packed record of the fireworks up in every show and the town warnings at every time in a range,
+     * for keeping the history of the town. Times have a warning when every show does.
+     * @param from  first time of the timeline
+     * @param to    last time of the timeline
+     * @return      occupancy timeline, or null if from is after to
+     */
+    public OccupancyTimeline getTimeline(int from, int to) {
+        if(from > to) return null;
+
+        OccupancyTimeline timeline = new OccupancyTimeline(from, to);
+        forEachTownRun(from, to, timeline::add);
+        return timeline.finish();
+    }
+
+    /**
+     * Action for a run of times with the same fireworks up in the whole town
+     */
+    interface TownRunAction {
+        void run(long ticks, int fireworksUp, boolean warning);
+    }
+
+    /**
+     * Calls an action for each run of times in a range, in one sorted pass over the times the number of
+     * fireworks up changes in any show
+     * @param from      first time in the range
+     * @param to        last time in the range
+     * @param action    called for each run, in order
+     */
+    void forEachTownRun(int from, int to, TownRunAction action) {
+        // change in fireworks up and in shows with a warning at each time one of them changes
+        TreeMap<Long, long[]> changes = new TreeMap<Long, long[]>();
+        for(Show show : shows) {
+            int warningLevel = show.getWarningLevel();
+            int[] last = new int[2];
+            show.getOccupancy().forEachRun(from, to, (start, end, count) -> {
+                int warning = count >= warningLevel ? 1 : 0;
+                if(count == last[0] && warning == last[1]) return;
+
+                long[] change = changes.computeIfAbsent(start, time -> new long[2]);
+                change[0] += count - last[0];
+                change[1] += warning - last[1];
+                last[0] = count;
+                last[1] = warning;
+            });
+        }
+
+        long time = from;
+        long fireworksUp = 0;
+        long warnings = 0;
+        for(Map.Entry<Long, long[]> change : changes.entrySet()) {
+            if(change.getKey() > time) {
+                action.run(change.getKey() - time, (int) fireworksUp, warnings == shows.size());
+                time = change.getKey();
+            }
+            fireworksUp += change.getValue()[0];
+            warnings += change.getValue()[1];
+        }
+        action.run(to - time + 1, (int) fireworksUp, warnings == shows.size());
+    }
+
+    /**
+     * Prints the status of all shows in town
+     * @return  status string
+     */
+    public String toString() {
+        String townString = "Town status:\n";
+
+        for(Show show : shows) {
+            townString += show + "\n";
+        }
+
+        return townString;
+    }
+
+    /**
+     * Gets a read only copy of the town and all its shows as they are right now.
+     * Like {@link Show#snapshot()}, it should be taken by the thread that adds fireworks, and can then be read
+     * from any number of threads.
+     * @return  snapshot of the town
+     */
+    public TownSnapshot snapshot() {
+        evaluateWarnings();
+        ShowSnapshot[] showSnapshots = new ShowSnapshot[shows.size()];
+
+        for(int i = 0; i < showSnapshots.length; i++) {
+            showSnapshots[i] = shows.get(i).snapshot();
+        }
+
+        return new TownSnapshot(currentTime, warningTimes.fork(), warningTiers == null ? null : warningTiers.fork(),
+                showSnapshots);
+    }
+
+    /**
+     * Listener on the shows of the town. Bookings into different shows call it from their own threads, so it
+     * changes the town's counts under its own lock.
+     */
+    private final class ShowWatcher implements OccupancyListener, BillListener, AirspaceGate {
+        @Override
+        public synchronized void occupancyChanged(long from, long to, int count) {
+            if(occupancy != null) occupancy.add(from, to, count);
+            // a firework is up from its launch time
+            if(launchWindows != null) launchWindows.add((int) from, count);
+        }
+
+        @Override
+        public synchronized void occupancyReplaced(Show show) {
+            occupancy = null;
+            airspace = null;
+            launchWindowsStale = true;
+        }
+
+        @Override
+        public boolean reserve(long from, long to) {
+            if(airspaceCap == NO_AIRSPACE_CAP) return true;
+
+            AirspaceCap cap = getAirspace();
+            return cap == null || cap.reserve(from, to);
+        }
+
+        @Override
+        public void release(long from, long to) {
+            AirspaceCap cap = airspace;
+            if(cap != null) cap.release(from, to);
+        }
+
+        @Override
+        public void occupy(long from, long to) {
+            AirspaceCap cap = airspace;
+            if(cap != null) cap.add(from, to, 1);
+        }
+
+        @Override
+        public boolean move(long from, long to, long newFrom, long newTo) {
+            if(airspaceCap == NO_AIRSPACE_CAP) return true;
+
+            AirspaceCap cap = getAirspace();
+            return cap == null || cap.move(from, to, newFrom, newTo);
+        }
+
+        @Override
+        public boolean admit(List<long[]> changes) {
+            if(airspaceCap == NO_AIRSPACE_CAP || changes.isEmpty()) return true;
+
+            // a firework added and cancelled again in the session is not checked
+            HashMap<List<Long>, Integer> net = new HashMap<List<Long>, Integer>();
+            for(long[] change : changes) {
+                net.merge(List.of(change[0], change[1]), (int) change[2], Integer::sum);
+            }
+
+            // no booking can change the count while the session's changes are tried on it and taken off again
+            bookings.writeLock().lock();
+            try {
+                AirspaceCap cap = getAirspace();
+                net.forEach((range, count) -> cap.add(range.get(0), range.get(1), count));
+                boolean fits = true;
+                for(Map.Entry<List<Long>, Integer> entry : net.entrySet()) {
+                    long from = entry.getKey().get(0);
+                    if(entry.getValue() > 0 && from <= entry.getKey().get(1)
+                            && cap.countAt(Math.max(from, 0)) > airspaceCap) {
+                        fits = false;
+                    }
+                }
+                net.forEach((range, count) -> cap.add(range.get(0), range.get(1), -count));
+
+                return fits;
+            } finally {
+                bookings.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public synchronized void billChanged(String companyName, int oldFireworks, double oldBill, int newFireworks,
+                                double newBill) {
+            if(leaderboard != null) {
+                leaderboard.billChanged(companyName, oldFireworks, oldBill, newFireworks, newBill);
+            }
+        }
+
+        @Override
+        public synchronized void billsReplaced(CompanyShow show) {
+            leaderboard = null;
+        }
     }
 }
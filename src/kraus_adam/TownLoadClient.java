@@ -0,0 +1,170 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a load test client for a town server.
+ */
+package kraus_adam;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends many status requests to a {@link TownServer} at once and reports how fast they were answered.
+ * Requests are sent without waiting for each other, up to a number in flight, so a few threads can keep
+ * thousands of requests open.
+ */
+public class TownLoadClient {
+    private final URI uri;
+    private final HttpClient client;
+    private final LatencyHistogram latencies;
+    private final LongAdder failures;
+
+    /**
+     * TownLoadClient constructor
+     * @param uri   address to request, such as http://127.0.0.1:8080/status
+     */
+    public TownLoadClient(URI uri) {
+        this.uri = uri;
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10)).build();
+        latencies = new LatencyHistogram();
+        failures = new LongAdder();
+    }
+
+    /**
+     * Sends requests and waits for every answer
+     * @param requests      number of requests to send
+     * @param concurrency   most requests in flight at once, at least 1
+     * @return              report of the run
+     */
+    public Report run(int requests, int concurrency) {
+        Semaphore inFlight = new Semaphore(Math.max(1, concurrency));
+        CompletableFuture<?>[] answers = new CompletableFuture<?>[Math.max(0, requests)];
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+
+        long start = System.nanoTime();
+        for(int i = 0; i < answers.length; i++) {
+            inFlight.acquireUninterruptibly();
+            long sent = System.nanoTime();
+            answers[i] = client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .handle((response, error) -> {
+                        latencies.record(System.nanoTime() - sent);
+                        if(error != null || response.statusCode() != 200) failures.increment();
+                        inFlight.release();
+                        return null;
+                    });
+        }
+        CompletableFuture.allOf(answers).join();
+
+        return new Report(answers.length, failures.sum(), System.nanoTime() - start, latencies);
+    }
+
+    /**
+     * Runs a load test against a server, or against a small town served on a free port if no address is given
+     * @param args  address, number of requests and concurrency, all optional
+     */
+    public static void main(String[] args) {
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        TownServer server = null;
+        URI uri;
+        if(args.length > 0) {
+            uri = URI.create(args[0]);
+        } else {
+            TownServer.useNoDelay();
+            Town town = new Town();
+            int show = town.add(new Show("load", 100));
+            for(int time = 0; time < 100; time++) {
+                town.addFirework(show, time, 5);
+            }
+
+            server = new TownServer(town);
+            if(!server.start(0)) {
+                System.out.println("Could not start a server");
+                return;
+            }
+            uri = URI.create("http://127.0.0.1:" + server.getPort() + "/status");
+        }
+
+        System.out.println(new TownLoadClient(uri).run(requests, concurrency));
+        if(server != null) server.stop();
+    }
+
+    /**
+     * Results of a load test
+     */
+    public static final class Report {
+        private final long requests;
+        private final long failures;
+        private final long elapsedNanos;
+        private final long p50;
+        private final long p99;
+        private final long max;
+
+        Report(long requests, long failures, long elapsedNanos, LatencyHistogram latencies) {
+            this.requests = requests;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            p50 = latencies.getPercentile(50);
+            p99 = latencies.getPercentile(99);
+            max = latencies.getMax();
+        }
+
+        /**
+         * Gets the number of requests sent
+         * @return  number of requests
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Gets the number of requests that failed or were not answered with status 200
+         * @return  number of failures
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Gets the number of requests answered each second
+         * @return  requests per second
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : requests * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Gets the median time to answer a request
+         * @return  median latency in nanoseconds
+         */
+        public long getMedianLatency() {
+            return p50;
+        }
+
+        /**
+         * Gets the time that 99% of requests were answered within
+         * @return  99th percentile latency in nanoseconds
+         */
+        public long getP99Latency() {
+            return p99;
+        }
+
+        /**
+         * Prints the report
+         * @return  report string
+         */
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d failed, %.0f requests/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    requests, failures, getThroughput(), p50 / 1e6, p99 / 1e6, max / 1e6);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Adam Kraus
+ *
+ * This file counts what a town does and how long it takes, for monitoring through JMX.
+ */
+package kraus_adam;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Class to count added and rejected fireworks, updates and warnings for a town.
+ * A town only records metrics after {@link Town#enableMetrics()}.
+ */
+public class TownMetrics implements TownMetricsMBean {
+    /**
+     * Numbers the towns so each gets its own JMX name
+     */
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final String id;
+    private final ObjectName objectName;
+    private final LongAdder accepted;
+    private final LongAdder rejected;
+    private final LatencyHistogram addNanos;
+    private final LatencyHistogram updateTicks;
+    private final LatencyHistogram updateNanos;
+    private final LongAdder warningsEntered;
+    private final LongAdder warningsCleared;
+
+    /**
+     * TownMetrics constructor
+     */
+    TownMetrics() {
+        id = Integer.toString(nextId.incrementAndGet());
+        objectName = MetricsRegistry.objectName("kraus_adam:type=Town,id=" + id);
+        accepted = new LongAdder();
+        rejected = new LongAdder();
+        addNanos = new LatencyHistogram();
+        updateTicks = new LatencyHistogram();
+        updateNanos = new LatencyHistogram();
+        warningsEntered = new LongAdder();
+        warningsCleared = new LongAdder();
+    }
+
+    /**
+     * Gets the id of the town in JMX names
+     * @return  town id
+     */
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the name the metrics are registered under in JMX
+     * @return  JMX object name
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Records an attempt to add a firework
+     * @param added true if the firework was added
+     * @param nanos time it took
+     */
+    void recordAdd(boolean added, long nanos) {
+        if(added) {
+            accepted.increment();
+        } else {
+            rejected.increment();
+        }
+        addNanos.record(nanos);
+    }
+
+    /**
+     * Records an update of the town
+     * @param ticks number of times the update went through
+     * @param nanos time it took
+     */
+    void recordUpdate(long ticks, long nanos) {
+        updateTicks.record(ticks);
+        updateNanos.record(nanos);
+    }
+
+    /**
+     * Records the town going into a new warning
+     */
+    void recordWarningEntered() {
+        warningsEntered.increment();
+    }
+
+    /**
+     * Records town warning times being removed because fireworks were cancelled
+     */
+    void recordWarningCleared() {
+        warningsCleared.increment();
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getAddNanosP50() {
+        return addNanos.getPercentile(50);
+    }
+
+    public long getAddNanosP99() {
+        return addNanos.getPercentile(99);
+    }
+
+    public long getAddNanosMax() {
+        return addNanos.getMax();
+    }
+
+    public long getUpdates() {
+        return updateNanos.getCount();
+    }
+
+    public long getUpdateTicksP50() {
+        return updateTicks.getPercentile(50);
+    }
+
+    public long getUpdateTicksP99() {
+        return updateTicks.getPercentile(99);
+    }
+
+    public long getUpdateTicksMax() {
+        return updateTicks.getMax();
+    }
+
+    public long getUpdateNanosP50() {
+        return updateNanos.getPercentile(50);
+    }
+
+    public long getUpdateNanosP99() {
+        return updateNanos.getPercentile(99);
+    }
+
+    public long getUpdateNanosMax() {
+        return updateNanos.getMax();
+    }
+
+    public long getWarningsEntered() {
+        return warningsEntered.sum();
+    }
+
+    public long getWarningsCleared() {
+        return warningsCleared.sum();
+    }
+
+    public void reset() {
+        accepted.reset();
+        rejected.reset();
+        addNanos.reset();
+        updateTicks.reset();
+        updateNanos.reset();
+        warningsEntered.reset();
+        warningsCleared.reset();
+    }
+}
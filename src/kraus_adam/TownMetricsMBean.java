@@ -0,0 +1,87 @@
+/**
+ * Adam Kraus
+ *
+ * This file is the JMX view of the metrics for a town.
+ */
+package kraus_adam;
+
+/**
+ * JMX attributes and operations for {@link TownMetrics}.
+ * Times are in nanoseconds. The shows in the town have their own metrics with the reasons fireworks were rejected.
+ */
+public interface TownMetricsMBean {
+    /**
+     * Gets the number of fireworks added through the town
+     */
+    long getAccepted();
+
+    /**
+     * Gets the number of fireworks rejected through the town
+     */
+    long getRejected();
+
+    /**
+     * Gets the median time to add or reject a firework, including updating the town
+     */
+    long getAddNanosP50();
+
+    /**
+     * Gets the 99th percentile time to add or reject a firework, including updating the town
+     */
+    long getAddNanosP99();
+
+    /**
+     * Gets the longest time to add or reject a firework, including updating the town
+     */
+    long getAddNanosMax();
+
+    /**
+     * Gets the number of updates
+     */
+    long getUpdates();
+
+    /**
+     * Gets the median number of times an update went through
+     */
+    long getUpdateTicksP50();
+
+    /**
+     * Gets the 99th percentile number of times an update went through
+     */
+    long getUpdateTicksP99();
+
+    /**
+     * Gets the most times an update went through
+     */
+    long getUpdateTicksMax();
+
+    /**
+     * Gets the median time of an update, including updating every show
+     */
+    long getUpdateNanosP50();
+
+    /**
+     * Gets the 99th percentile time of an update, including updating every show
+     */
+    long getUpdateNanosP99();
+
+    /**
+     * Gets the longest time of an update, including updating every show
+     */
+    long getUpdateNanosMax();
+
+    /**
+     * Gets the number of times the town went into a new warning
+     */
+    long getWarningsEntered();
+
+    /**
+     * Gets the number of times cancelled fireworks removed town warning times
+     */
+    long getWarningsCleared();
+
+    /**
+     * Clears all the metrics
+     */
+    void reset();
+}
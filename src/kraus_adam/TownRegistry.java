@@ -0,0 +1,288 @@
+/**
+ * Adam Kraus
+ *
+ * This file keeps many towns by id, with only the recently used ones in memory.
+ */
+package kraus_adam;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Towns by id, kept in memory up to a number of towns and optionally a number of stored fireworks.
+ * When there are too many, the least recently used towns are written to files in a directory and dropped
+ * from memory, and they are read back the next time they are asked for.
+ * A town from {@link #get(String)} should not be kept after other towns are used, since it may have been
+ * written out, and changes to a town that was written out are lost when it is read back.
+ */
+public class TownRegistry {
+    /**
+     * Firework budget of a registry that only limits the number of towns
+     */
+    public final static long NO_FIREWORK_BUDGET = -1;
+    /**
+     * Ending of each town file
+     */
+    private final static String FILE_SUFFIX = ".town";
+
+    private final File directory;
+    private final int maxTowns;
+    private final long maxFireworks;
+    /**
+     * Towns in memory, least recently used first
+     */
+    private final LinkedHashMap<String, Town> resident;
+    private long hits;
+    private long misses;
+    private long loads;
+    private long evictions;
+    private long writeFailures;
+
+    /**
+     * TownRegistry constructor
+     * @param directory where towns are written when they leave memory
+     * @param maxTowns  most towns kept in memory, at least 1
+     */
+    public TownRegistry(File directory, int maxTowns) {
+        this(directory, maxTowns, NO_FIREWORK_BUDGET);
+    }
+
+    /**
+     * TownRegistry constructor
+     * @param directory     where towns are written when they leave memory
+     * @param maxTowns      most towns kept in memory, at least 1
+     * @param maxFireworks  most stored fireworks across the towns in memory, or NO_FIREWORK_BUDGET.
+     *                      The most recently used town is kept even if it is over the budget by itself.
+     */
+    public TownRegistry(File directory, int maxTowns, long maxFireworks) {
+        this.directory = directory;
+        this.maxTowns = Math.max(1, maxTowns);
+        this.maxFireworks = maxFireworks < 0 ? NO_FIREWORK_BUDGET : maxFireworks;
+        resident = new LinkedHashMap<String, Town>(16, 0.75f, true);
+        directory.mkdirs();
+    }
+
+    /**
+     * Makes a new town
+     * @param townId    id of the town
+     * @return          new town, or null if a town with the id already exists
+     */
+    public synchronized Town create(String townId) {
+        if(townId == null || contains(townId)) return null;
+
+        Town town = new Town();
+        resident.put(townId, town);
+        trim();
+        return town;
+    }
+
+    /**
+     * Adds a town, replacing any town with the same id
+     * @param townId    id of the town
+     * @param town      town to add
+     * @return          true if added, false if the id or town is null
+     */
+    public synchronized boolean put(String townId, Town town) {
+        if(townId == null || town == null) return false;
+
+        fileOf(townId).delete();
+        resident.put(townId, town);
+        trim();
+        return true;
+    }
+
+    /**
+     * Gets a town, reading it back from its file if it is not in memory
+     * @param townId    id of the town
+     * @return          town, or null if there is no town with the id or its file can't be read
+     */
+    public synchronized Town get(String townId) {
+        if(townId == null) return null;
+
+        Town town = resident.get(townId);
+        if(town != null) {
+            hits++;
+            return town;
+        }
+
+        misses++;
+        File file = fileOf(townId);
+        if(!file.exists()) return null;
+
+        try {
+            town = TownStore.read(file);
+        } catch(IOException e) {
+            return null;
+        }
+        loads++;
+        resident.put(townId, town);
+        trim();
+        return town;
+    }
+
+    /**
+     * Checks if there is a town with an id, in memory or in a file
+     * @param townId    id of the town
+     * @return          true if the town exists
+     */
+    public synchronized boolean contains(String townId) {
+        return townId != null && (resident.containsKey(townId) || fileOf(townId).exists());
+    }
+
+    /**
+     * Removes a town from memory and deletes its file
+     * @param townId    id of the town
+     * @return          true if there was a town with the id
+     */
+    public synchronized boolean remove(String townId) {
+        if(townId == null) return false;
+
+        Town town = resident.remove(townId);
+        if(town != null) town.disableMetrics();
+        boolean deleted = fileOf(townId).delete();
+        return town != null || deleted;
+    }
+
+    /**
+     * Writes every town in memory to its file, keeping them in memory
+     * @return  true if every town was written
+     */
+    public synchronized boolean flush() {
+        boolean written = true;
+        for(Map.Entry<String, Town> entry : resident.entrySet()) {
+            try {
+                TownStore.write(entry.getValue(), fileOf(entry.getKey()));
+            } catch(IOException e) {
+                writeFailures++;
+                written = false;
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Writes out least recently used towns until the towns in memory fit the limits.
+     * Towns are checked when they are added or read back, so this only needs to be called after
+     * fireworks are added to towns that are already in memory.
+     */
+    public synchronized void trim() {
+        long fireworks = maxFireworks == NO_FIREWORK_BUDGET ? 0 : getResidentFireworks();
+
+        Iterator<Map.Entry<String, Town>> iterator = resident.entrySet().iterator();
+        while(resident.size() > 1 && (resident.size() > maxTowns
+                || (maxFireworks != NO_FIREWORK_BUDGET && fireworks > maxFireworks))) {
+            Map.Entry<String, Town> eldest = iterator.next();
+            try {
+                TownStore.write(eldest.getValue(), fileOf(eldest.getKey()));
+            } catch(IOException e) {
+                // keep the town rather than lose it, and try again next time
+                writeFailures++;
+                return;
+            }
+
+            if(maxFireworks != NO_FIREWORK_BUDGET) fireworks -= eldest.getValue().getStoredFireworks();
+            eldest.getValue().disableMetrics();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Gets the number of towns in memory
+     * @return  number of resident towns
+     */
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * Gets the number of stored fireworks across the towns in memory
+     * @return  number of stored fireworks
+     */
+    public synchronized long getResidentFireworks() {
+        long fireworks = 0;
+        for(Town town : resident.values()) {
+            fireworks += town.getStoredFireworks();
+        }
+
+        return fireworks;
+    }
+
+    /**
+     * Gets the number of times a town asked for was in memory
+     * @return  number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of times a town asked for was not in memory
+     * @return  number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of towns read back from their files
+     * @return  number of loads
+     */
+    public synchronized long getLoads() {
+        return loads;
+    }
+
+    /**
+     * Gets the number of towns written out and dropped from memory
+     * @return  number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of times a town could not be written to its file
+     * @return  number of write failures
+     */
+    public synchronized long getWriteFailures() {
+        return writeFailures;
+    }
+
+    /**
+     * Gets the percent of towns asked for that were in memory
+     * @return  hit rate percent, or 0 if no towns have been asked for
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests * 100;
+    }
+
+    /**
+     * Prints the registry statistics
+     * @return  statistics string
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%d towns in memory, %d hits, %d misses (%.1f%% hit rate), %d loads, %d evictions",
+                resident.size(), hits, misses, getHitRate(), loads, evictions);
+    }
+
+    /**
+     * Gets the file of a town. Ids are written in hex so any id makes a safe file name.
+     * @param townId    id of the town
+     * @return          file of the town
+     */
+    private File fileOf(String townId) {
+        StringBuilder name = new StringBuilder();
+        for(byte b : townId.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return new File(directory, name.append(FILE_SUFFIX).toString());
+    }
+}
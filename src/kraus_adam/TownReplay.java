@@ -0,0 +1,377 @@
+/**
+ * Adam Kraus
+ *
+ * This file replays a made up workload against a town and reports how fast and how big the town was.
+ */
+package kraus_adam;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Books every firework of a {@link TownWorkload} into a new town in launch time order, moving the town's clock
+ * forward before each new launch time, and measures the bookings per second, how long each clock update takes
+ * and how much heap the town holds for each firework booked.
+ * The bookings are split into {@link #WINDOWS} windows, and the slowest window is the sustained throughput, so
+ * a town that slows down as it fills up shows it. Replays before the measured one warm up the JIT compiler.
+ * The heap the town holds is the median used heap with the town held, less the median once it is released,
+ * so garbage from before the replay and one-off collections don't count.
+ */
+public class TownReplay {
+    /**
+     * Number of windows the bookings are split into for the sustained throughput
+     */
+    static final int WINDOWS = 20;
+    /**
+     * Number of times used heap is measured with the town held, and again once it is released
+     */
+    static final int HEAP_SAMPLES = 5;
+
+    private final TownWorkload workload;
+
+    /**
+     * TownReplay constructor
+     * @param workload  workload to replay, with its bookings made
+     */
+    public TownReplay(TownWorkload workload) {
+        this.workload = workload;
+    }
+
+    /**
+     * Replays the workload into a new town
+     * @param warmups   number of replays to run first and not measure
+     * @return          report of the measured replay, or null if the workload has no bookings made
+     */
+    public Report run(int warmups) {
+        if(workload.newTown() == null) return null;
+
+        for(int i = 0; i < warmups; i++) {
+            replay(workload.newTown(), new LatencyHistogram(), new LatencyHistogram(), new long[WINDOWS + 1]);
+        }
+
+        LatencyHistogram bookings = new LatencyHistogram();
+        LatencyHistogram updates = new LatencyHistogram();
+        long[] windowStarts = new long[WINDOWS + 1];
+        Town town = workload.newTown();
+        long accepted = replay(town, bookings, updates, windowStarts);
+        Report report = new Report(workload, town, accepted, bookings, updates, windowStarts);
+
+        long[] held = sampleHeap();
+        // the town has to stay reachable until the heap it holds has been measured
+        Reference.reachabilityFence(town);
+        town = null;
+        long[] released = sampleHeap();
+        report.heapBytes = median(held) - median(released);
+
+        return report;
+    }
+
+    /**
+     * Books every firework of the workload into a town
+     * @param town          town with the shows of the workload
+     * @param bookings      records the time of each booking
+     * @param updates       records the time of each clock update
+     * @param windowStarts  filled with the time each window of bookings started, and the end time last
+     * @return              number of bookings accepted
+     */
+    private long replay(Town town, LatencyHistogram bookings, LatencyHistogram updates, long[] windowStarts) {
+        int size = workload.size();
+        long accepted = 0;
+        int window = 0;
+        for(int i = 0; i < size; i++) {
+            // the first booking of each window starts it, so every window has size / WINDOWS bookings or one more
+            while(window < WINDOWS && i >= (long) size * window / WINDOWS) {
+                windowStarts[window++] = System.nanoTime();
+            }
+
+            int time = workload.getTime(i);
+            if(time > town.getCurrentTime()) {
+                long start = System.nanoTime();
+                town.update(time);
+                updates.record(System.nanoTime() - start);
+            }
+
+            long start = System.nanoTime();
+            String company = workload.getCompany(i);
+            boolean added = company == null
+                    ? town.addFirework(workload.getShow(i), time, workload.getDuration(i), workload.getCost(i))
+                    : town.addFirework(workload.getShow(i), company, time, workload.getDuration(i),
+                            workload.getCost(i));
+            bookings.record(System.nanoTime() - start);
+            if(added) accepted++;
+        }
+        long end = System.nanoTime();
+        while(window <= WINDOWS) {
+            windowStarts[window++] = end;
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Measures the used heap several times, after a first collection that is not counted
+     * @return  used heap in bytes for each sample
+     */
+    private static long[] sampleHeap() {
+        usedHeap();
+        long[] samples = new long[HEAP_SAMPLES];
+        for(int i = 0; i < samples.length; i++) {
+            samples[i] = usedHeap();
+        }
+
+        return samples;
+    }
+
+    /**
+     * Gets the median of some samples
+     * @param samples   samples, sorted in place
+     * @return          middle sample
+     */
+    private static long median(long[] samples) {
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    /**
+     * Gets the heap in use once the garbage has been collected
+     * @return  used heap in bytes
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        // a second collection picks up what finalizing and clearing references freed in the first
+        memory.gc();
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Replays a workload and writes the report, with defaults sized for a large town
+     * @param args  report file, number of shows, number of bookings, seed and warm up replays, all optional
+     */
+    public static void main(String[] args) {
+        TownWorkload workload = new TownWorkload();
+        int shows = args.length > 1 ? Integer.parseInt(args[1]) : workload.getShowCount();
+        int bookings = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        if(!workload.setShows(shows, 0.5) || !workload.setBookings(bookings, Math.max(1, bookings / 2))) {
+            System.out.println("Bad workload settings");
+            return;
+        }
+        if(args.length > 3) workload.setSeed(Long.parseLong(args[3]));
+        int warmups = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+
+        System.out.println(workload);
+        Report report = new TownReplay(workload.generate()).run(warmups);
+        System.out.println(report);
+        if(args.length > 0) {
+            try {
+                report.write(new File(args[0]));
+            } catch(IOException e) {
+                System.out.println("Could not write the report: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Results of a replay
+     */
+    public static final class Report {
+        private final String workload;
+        private final long seed;
+        private final int shows;
+        private final int companies;
+        private final long bookings;
+        private final long accepted;
+        private final long elapsedNanos;
+        private final double sustainedThroughput;
+        private final long bookingP50;
+        private final long bookingP99;
+        private final long bookingMax;
+        private final long updates;
+        private final long updateP50;
+        private final long updateP90;
+        private final long updateP99;
+        private final long updateP999;
+        private final long updateMax;
+        private long heapBytes;
+        private final int totalWarnings;
+        private final long showWarnings;
+
+        Report(TownWorkload workload, Town town, long accepted, LatencyHistogram bookings,
+                LatencyHistogram updates, long[] windowStarts) {
+            this.workload = workload.toString();
+            seed = workload.getSeed();
+            shows = workload.getShowCount();
+            companies = workload.getCompanyCount();
+            this.bookings = workload.size();
+            this.accepted = accepted;
+            elapsedNanos = windowStarts[WINDOWS] - windowStarts[0];
+
+            double slowest = Double.POSITIVE_INFINITY;
+            for(int window = 0; window < WINDOWS; window++) {
+                long windowBookings = this.bookings * (window + 1) / WINDOWS - this.bookings * window / WINDOWS;
+                long windowNanos = windowStarts[window + 1] - windowStarts[window];
+                if(windowBookings > 0 && windowNanos > 0) {
+                    slowest = Math.min(slowest, windowBookings * 1e9 / windowNanos);
+                }
+            }
+            sustainedThroughput = Double.isInfinite(slowest) ? 0 : slowest;
+
+            bookingP50 = bookings.getPercentile(50);
+            bookingP99 = bookings.getPercentile(99);
+            bookingMax = bookings.getMax();
+            this.updates = updates.getCount();
+            updateP50 = updates.getPercentile(50);
+            updateP90 = updates.getPercentile(90);
+            updateP99 = updates.getPercentile(99);
+            updateP999 = updates.getPercentile(99.9);
+            updateMax = updates.getMax();
+            totalWarnings = town.getTotalWarnings();
+            long warnings = 0;
+            for(int show = 0; show < town.getShowCount(); show++) {
+                warnings += town.getShow(show).getTotalWarnings();
+            }
+            showWarnings = warnings;
+        }
+
+        /**
+         * Gets the number of bookings replayed
+         * @return  number of bookings
+         */
+        public long getBookings() {
+            return bookings;
+        }
+
+        /**
+         * Gets the number of bookings the town accepted
+         * @return  number of fireworks booked
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * Gets the number of bookings replayed each second, over the whole replay
+         * @return  bookings per second
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : bookings * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Gets the number of bookings replayed each second in the slowest window of the replay
+         * @return  bookings per second
+         */
+        public double getSustainedThroughput() {
+            return sustainedThroughput;
+        }
+
+        /**
+         * Gets the number of clock updates
+         * @return  number of updates
+         */
+        public long getUpdates() {
+            return updates;
+        }
+
+        /**
+         * Gets the time that a percent of clock updates took at most, for the percents in the report
+         * @param percent   50, 90, 99 or 99.9
+         * @return          latency in nanoseconds, or -1 for other percents
+         */
+        public long getUpdateLatency(double percent) {
+            if(percent == 50) return updateP50;
+            if(percent == 90) return updateP90;
+            if(percent == 99) return updateP99;
+            if(percent == 99.9) return updateP999;
+
+            return -1;
+        }
+
+        /**
+         * Gets the number of warnings in all the shows together
+         * @return  number of show warnings
+         */
+        public long getShowWarnings() {
+            return showWarnings;
+        }
+
+        /**
+         * Gets the heap held by the town after the replay
+         * @return  heap in bytes
+         */
+        public long getHeapBytes() {
+            return heapBytes;
+        }
+
+        /**
+         * Gets the heap held by the town for each firework booked
+         * @return  heap in bytes for each firework, 0 if none were booked
+         */
+        public double getBytesPerFirework() {
+            return accepted == 0 ? 0 : (double) heapBytes / accepted;
+        }
+
+        /**
+         * Gets the report as a flat JSON object, with times in nanoseconds and memory in bytes
+         * @return  report JSON
+         */
+        public String toJson() {
+            Runtime runtime = Runtime.getRuntime();
+            return new TownServer.Json()
+                    .put("workload", workload)
+                    .put("seed", seed)
+                    .put("shows", shows)
+                    .put("companies", companies)
+                    .put("bookings", bookings)
+                    .put("accepted", accepted)
+                    .put("rejected", bookings - accepted)
+                    .put("elapsedNanos", elapsedNanos)
+                    .put("bookingsPerSecond", getThroughput())
+                    .put("sustainedBookingsPerSecond", sustainedThroughput)
+                    .put("bookingNanosP50", bookingP50)
+                    .put("bookingNanosP99", bookingP99)
+                    .put("bookingNanosMax", bookingMax)
+                    .put("updates", updates)
+                    .put("updateNanosP50", updateP50)
+                    .put("updateNanosP90", updateP90)
+                    .put("updateNanosP99", updateP99)
+                    .put("updateNanosP999", updateP999)
+                    .put("updateNanosMax", updateMax)
+                    .put("heapBytes", heapBytes)
+                    .put("bytesPerFirework", getBytesPerFirework())
+                    .put("totalWarnings", totalWarnings)
+                    .put("showWarnings", showWarnings)
+                    .put("javaVersion", System.getProperty("java.version"))
+                    .put("processors", runtime.availableProcessors())
+                    .put("maxHeapBytes", runtime.maxMemory())
+                    .toString();
+        }
+
+        /**
+         * Writes the report to a file as JSON, replacing the file
+         * @param file  file to write
+         * @throws IOException  if the file can't be written
+         */
+        public void write(File file) throws IOException {
+            Files.write(file.toPath(), (toJson() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Prints the report
+         * @return  report string
+         */
+        @Override
+        public String toString() {
+            return String.format("%d bookings, %d accepted, %.0f bookings/s, %.0f sustained, update p50 %.2f us, "
+                    + "p99 %.2f us, p99.9 %.2f us, max %.2f us, %.0f bytes per firework", bookings, accepted,
+                    getThroughput(), sustainedThroughput, updateP50 / 1e3, updateP99 / 1e3, updateP999 / 1e3,
+                    updateMax / 1e3, getBytesPerFirework());
+        }
+    }
+}
@@ -0,0 +1,488 @@
+/**
+ * Adam Kraus
+ *
+ * This file serves the status of a town and takes bookings over HTTP.
+ */
+package kraus_adam;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP server for a town, on the loopback address. Every response is JSON.
+ * <ul>
+ *     <li>GET /status, with an optional show index: time, fireworks up, warning and cost</li>
+ *     <li>GET /fireworks-up?time=t, with an optional show index</li>
+ *     <li>GET /warnings, with an optional time and show index</li>
+ *     <li>GET /cost, with an optional show index</li>
+ *     <li>POST /book?show=i&amp;time=t, with optional duration, cost and company</li>
+ * </ul>
+ * Reads are answered from a {@link TownSnapshot}. Bookings only mark the snapshot as old, and the first read
+ * after them takes a new one, so a burst of bookings costs one snapshot and reads between bookings never wait
+ * for a lock. Bookings are made one at a time, and a booking may move the clock at most
+ * {@link #setMaxAdvance(int) max advance} times ahead, since moving the clock checks each time it passes.
+ * While the server is running the town should only be changed through it, or {@link #refresh()} should be
+ * called after changing it.
+ * <p>
+ * The JDK server waits on delayed acks unless it is started with {@code -Dsun.net.httpserver.nodelay=true},
+ * adding about 40ms to every small answer. {@link #main(String[])} sets it when it is not given.
+ */
+public class TownServer {
+    /**
+     * Connections the operating system may queue before the server accepts them
+     */
+    private static final int BACKLOG = 4096;
+    /**
+     * Default for the most times a booking may move the clock ahead
+     */
+    public static final int DEFAULT_MAX_ADVANCE = 100000;
+
+    private final Town town;
+    /**
+     * Held while booking or taking a snapshot, so snapshots have every booking made before them
+     */
+    private final Object bookingLock = new Object();
+    private volatile TownSnapshot snapshot;
+    /**
+     * True if a booking was made since the snapshot was taken
+     */
+    private volatile boolean stale;
+    private volatile int maxAdvance = DEFAULT_MAX_ADVANCE;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * TownServer constructor
+     * @param town  town to serve
+     */
+    public TownServer(Town town) {
+        this.town = town;
+        snapshot = town.snapshot();
+    }
+
+    /**
+     * Starts the server
+     * @param port  port to listen on, or 0 for any free port
+     * @return      true if the server started, false if it was already running or the port can't be used
+     */
+    public synchronized boolean start(int port) {
+        if(server != null) return false;
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        } catch(IOException e) {
+            return false;
+        }
+
+        server.createContext("/status", new Route("GET", this::status));
+        server.createContext("/fireworks-up", new Route("GET", this::fireworksUp));
+        server.createContext("/warnings", new Route("GET", this::warnings));
+        server.createContext("/cost", new Route("GET", this::cost));
+        server.createContext("/book", new Route("POST", this::book));
+        executor = newExecutor();
+        server.setExecutor(executor);
+        server.start();
+        return true;
+    }
+
+    /**
+     * Stops the server, waiting up to a second for requests being answered
+     */
+    public synchronized void stop() {
+        if(server == null) return;
+
+        server.stop(1);
+        executor.shutdown();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * Gets the port the server is listening on
+     * @return  port, or -1 if the server is not running
+     */
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Sets the most times a booking may move the clock ahead. Later bookings are turned down with status 400.
+     * @param maxAdvance    number of times, at least 0
+     * @return              true if it was set
+     */
+    public boolean setMaxAdvance(int maxAdvance) {
+        if(maxAdvance < 0) return false;
+
+        this.maxAdvance = maxAdvance;
+        return true;
+    }
+
+    /**
+     * Gets the most times a booking may move the clock ahead
+     * @return  number of times
+     */
+    public int getMaxAdvance() {
+        return maxAdvance;
+    }
+
+    /**
+     * Gets the snapshot that reads are answered from, taking a new one if bookings were made since the last
+     * @return  latest snapshot of the town
+     */
+    public TownSnapshot getSnapshot() {
+        if(!stale) return snapshot;
+
+        synchronized(bookingLock) {
+            if(stale) refresh();
+            return snapshot;
+        }
+    }
+
+    /**
+     * Takes a new snapshot of the town, for after the town was changed without the server
+     */
+    public void refresh() {
+        synchronized(bookingLock) {
+            snapshot = town.snapshot();
+            stale = false;
+        }
+    }
+
+    /**
+     * Makes the executor that answers requests. Virtual threads are used where the JDK has them (Java 21 and up),
+     * and otherwise a pool with a few threads for each processor. Answers never block on the town, so a
+     * small pool keeps up with many connections.
+     * @return  executor for requests
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        }
+    }
+
+    /**
+     * Serves a town until the process is stopped
+     * @param args  port and town file, both optional, for any free port and an empty town
+     */
+    public static void main(String[] args) {
+        useNoDelay();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        Town town = new Town();
+        if(args.length > 1) {
+            try {
+                town = TownStore.read(new File(args[1]));
+            } catch(IOException e) {
+                System.out.println("Could not read the town: " + e.getMessage());
+                return;
+            }
+        }
+
+        TownServer server = new TownServer(town);
+        if(!server.start(port)) {
+            System.out.println("Could not start a server");
+            return;
+        }
+        System.out.println("Serving " + town.getShowCount() + " shows on http://127.0.0.1:" + server.getPort());
+    }
+
+    /**
+     * Turns off delayed acks in the JDK server, unless the flag was given. It only takes effect before the
+     * first server of the process is made.
+     */
+    static void useNoDelay() {
+        if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private Response status(Map<String, String> query, TownSnapshot snapshot) {
+        ShowSnapshot show = showOf(query, snapshot);
+        if(show != null) {
+            return Response.ok(new Json().put("name", show.getName()).put("currentTime", show.getCurrentTime())
+                    .put("maxFireworks", show.getMaxFireworks()).put("fireworksUp", show.getFireworksUp())
+                    .put("warning", show.hasWarning()).put("totalWarnings", show.getTotalWarnings())
+                    .put("cost", show.getCost()));
+        }
+        if(query.containsKey("show")) return Response.NO_SHOW;
+
+        return Response.ok(new Json().put("currentTime", snapshot.getCurrentTime())
+                .put("showCount", snapshot.getShowCount()).put("fireworksUp", snapshot.getFireworksUp())
+                .put("warning", snapshot.hasWarning()).put("totalWarnings", snapshot.getTotalWarnings())
+                .put("totalCost", snapshot.getTotalCost()));
+    }
+
+    private Response fireworksUp(Map<String, String> query, TownSnapshot snapshot) {
+        Integer time = intOf(query, "time", null);
+        if(time == null) return Response.BAD_REQUEST;
+
+        ShowSnapshot show = showOf(query, snapshot);
+        if(show == null && query.containsKey("show")) return Response.NO_SHOW;
+
+        int fireworksUp = show != null ? show.getFireworksUpAt(time) : snapshot.getFireworksUpAt(time);
+        return Response.ok(new Json().put("time", time).put("fireworksUp", fireworksUp));
+    }
+
+    private Response warnings(Map<String, String> query, TownSnapshot snapshot) {
+        Integer time = intOf(query, "time", snapshot.getCurrentTime());
+        if(time == null) return Response.BAD_REQUEST;
+
+        ShowSnapshot show = showOf(query, snapshot);
+        if(show == null && query.containsKey("show")) return Response.NO_SHOW;
+
+        Json json = new Json().put("time", time);
+        if(show != null) {
+            json.put("warning", show.hasWarningAt(time)).put("totalWarnings", show.getTotalWarnings());
+        } else {
+            json.put("warning", snapshot.hasWarningAt(time)).put("totalWarnings", snapshot.getTotalWarnings());
+        }
+        return Response.ok(json);
+    }
+
+    private Response cost(Map<String, String> query, TownSnapshot snapshot) {
+        ShowSnapshot show = showOf(query, snapshot);
+        if(show == null && query.containsKey("show")) return Response.NO_SHOW;
+
+        return Response.ok(new Json().put("totalCost", show != null ? show.getCost() : snapshot.getTotalCost()));
+    }
+
+    private Response book(Map<String, String> query, TownSnapshot snapshot) {
+        Integer showIndex = intOf(query, "show", null);
+        Integer time = intOf(query, "time", null);
+        Integer duration = intOf(query, "duration", Firework.DEFAULT_DURATION);
+        Double cost = doubleOf(query, "cost", Firework.DEFAULT_COST);
+        if(showIndex == null || time == null || duration == null || cost == null) return Response.BAD_REQUEST;
+        if(showIndex < 0 || showIndex >= snapshot.getShowCount()) return Response.NO_SHOW;
+
+        String company = query.get("company");
+        boolean booked;
+        int currentTime;
+        synchronized(bookingLock) {
+            if((long) time - town.getCurrentTime() > maxAdvance) return Response.TOO_FAR_AHEAD;
+
+            booked = company == null ? town.addFirework(showIndex, time, duration, cost)
+                    : town.addFirework(showIndex, company, time, duration, cost);
+            if(booked) stale = true;
+            currentTime = town.getCurrentTime();
+        }
+
+        return Response.ok(new Json().put("booked", booked).put("currentTime", currentTime));
+    }
+
+    /**
+     * Gets the show picked by the show parameter
+     * @param query     query parameters
+     * @param snapshot  snapshot of the town
+     * @return          snapshot of the show, or null if there is no show parameter or no such show
+     */
+    private static ShowSnapshot showOf(Map<String, String> query, TownSnapshot snapshot) {
+        Integer showIndex = intOf(query, "show", null);
+        if(showIndex == null || showIndex < 0 || showIndex >= snapshot.getShowCount()) return null;
+
+        return snapshot.getShow(showIndex);
+    }
+
+    /**
+     * Gets a whole number parameter
+     * @param query         query parameters
+     * @param name          name of the parameter
+     * @param defaultValue  value if the parameter is missing
+     * @return              value of the parameter, or null if it is not a whole number
+     */
+    private static Integer intOf(Map<String, String> query, String name, Integer defaultValue) {
+        String value = query.get(name);
+        if(value == null) return defaultValue;
+
+        try {
+            return Integer.valueOf(value);
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets a number parameter
+     * @param query         query parameters
+     * @param name          name of the parameter
+     * @param defaultValue  value if the parameter is missing
+     * @return              value of the parameter, or null if it is not a number
+     */
+    private static Double doubleOf(Map<String, String> query, String name, Double defaultValue) {
+        String value = query.get(name);
+        if(value == null) return defaultValue;
+
+        try {
+            return Double.valueOf(value);
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Splits a query string into its parameters
+     * @param rawQuery  query string, still encoded, or null
+     * @return          value of each parameter
+     */
+    static Map<String, String> parseQuery(String rawQuery) {
+        HashMap<String, String> query = new HashMap<String, String>();
+        if(rawQuery == null || rawQuery.isEmpty()) return query;
+
+        for(String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+
+        return query;
+    }
+
+    /**
+     * Answer to a request
+     */
+    private interface Endpoint {
+        Response answer(Map<String, String> query, TownSnapshot snapshot);
+    }
+
+    /**
+     * Handler that checks the method, reads the latest snapshot once and writes the answer
+     */
+    private final class Route implements HttpHandler {
+        private final String method;
+        private final Endpoint endpoint;
+
+        Route(String method, Endpoint endpoint) {
+            this.method = method;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Response response;
+            if(!exchange.getRequestMethod().equals(method)) {
+                response = Response.BAD_METHOD;
+            } else {
+                try {
+                    response = endpoint.answer(parseQuery(exchange.getRequestURI().getRawQuery()), getSnapshot());
+                } catch(IllegalArgumentException e) {
+                    response = Response.BAD_REQUEST;
+                }
+            }
+
+            exchange.getRequestBody().close();
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Status code and JSON body of an answer
+     */
+    private static final class Response {
+        static final Response BAD_REQUEST = error(400, "bad or missing parameter");
+        static final Response TOO_FAR_AHEAD = error(400, "time too far ahead");
+        static final Response NO_SHOW = error(404, "no such show");
+        static final Response BAD_METHOD = error(405, "wrong method");
+
+        final int status;
+        final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(Json json) {
+            return new Response(200, json.toString());
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, new Json().put("error", message).toString());
+        }
+    }
+
+    /**
+     * Builder for a flat JSON object
+     */
+    static final class Json {
+        private final StringBuilder json = new StringBuilder("{");
+
+        Json put(String name, String value) {
+            key(name);
+            quote(value);
+            return this;
+        }
+
+        Json put(String name, long value) {
+            key(name);
+            json.append(value);
+            return this;
+        }
+
+        Json put(String name, double value) {
+            key(name);
+            // JSON has no infinity or NaN
+            if(Double.isFinite(value)) {
+                json.append(String.format(Locale.ROOT, "%.2f", value));
+            } else {
+                json.append("null");
+            }
+            return this;
+        }
+
+        Json put(String name, boolean value) {
+            key(name);
+            json.append(value);
+            return this;
+        }
+
+        private void key(String name) {
+            if(json.length() > 1) json.append(',');
+            quote(name);
+            json.append(':');
+        }
+
+        private void quote(String value) {
+            if(value == null) {
+                json.append("null");
+                return;
+            }
+
+            json.append('"');
+            for(int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if(c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if(c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        }
+
+        @Override
+        public String toString() {
+            return json + "}";
+        }
+    }
+}
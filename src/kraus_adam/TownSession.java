@@ -0,0 +1,70 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a session for trying out changes to a town before keeping them.
+ */
+package kraus_adam;
+
+/**
+ * Class to try out changes to a town on a copy, then commit them to the town or throw them away.
+ */
+public class TownSession {
+    private final Town town;
+    private final Town staged;
+    /**
+     * Version of the town when the session started
+     */
+    private final long version;
+    private boolean open;
+
+    /**
+     * TownSession constructor
+     * @param town      town the session changes
+     * @param staged    copy of the town to make the changes on
+     */
+    TownSession(Town town, Town staged) {
+        this.town = town;
+        this.staged = staged;
+        this.version = town.getVersion();
+        this.open = true;
+    }
+
+    /**
+     * Gets the copy of the town to try changes on
+     * @return  staged copy of the town
+     */
+    public Town getTown() {
+        return staged;
+    }
+
+    /**
+     * Checks if the session can still be committed or rolled back
+     * @return  true if the session is open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Keeps the changes made in the session.
+     * The town takes all the changes at once. If the town or any of its shows was changed after the session
+     * started, nothing is kept so the other changes are not lost.
+     * @return  true if the changes were committed
+     */
+    public boolean commit() {
+        if(!open) return false;
+        open = false;
+
+        if(town.getVersion() != version) return false;
+
+        town.adopt(staged);
+        return true;
+    }
+
+    /**
+     * Throws away the changes made in the session
+     */
+    public void rollback() {
+        open = false;
+    }
+}
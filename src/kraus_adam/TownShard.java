@@ -0,0 +1,145 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a worker process that holds some of the shows of a sharded town.
+ */
+package kraus_adam;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Worker of a {@link ShardedTown}. The worker keeps its shows in a town of its own and answers requests from the
+ * coordinator over a loopback socket, one at a time and in the order they were sent.
+ * Every request carries the coordinator's clock, and the worker moves its town up to that time before answering,
+ * so bookings in the past are turned down the same way they are in a single town.
+ */
+public class TownShard {
+    static final byte ADD_SHOW = 1;
+    static final byte ADD_FIREWORK = 2;
+    static final byte ADD_COMPANY_FIREWORK = 3;
+    static final byte FIREWORKS_UP_AT = 4;
+    static final byte TOTAL_COST = 5;
+    static final byte WARNING_AT = 6;
+    static final byte SHUTDOWN = 7;
+    /**
+     * Start of the line a worker prints when it is ready, followed by its port
+     */
+    static final String READY = "TownShard listening on ";
+
+    private final Town town;
+
+    /**
+     * TownShard constructor
+     */
+    TownShard() {
+        town = new Town();
+    }
+
+    /**
+     * Starts a worker on a free loopback port, or the port given, and prints the port it is listening on.
+     * The worker stops when it is sent a shutdown or when its standard input closes, which happens when the
+     * coordinator that started it exits.
+     * @param args  port to listen on, optional
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while(System.in.read() >= 0) {
+                    // keep reading until the coordinator goes away
+                }
+            } catch(IOException e) {
+                // treat a broken input like a closed one
+            }
+            System.exit(0);
+        });
+        watcher.setDaemon(true);
+        watcher.start();
+
+        try(ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println(READY + server.getLocalPort());
+            System.out.flush();
+
+            TownShard shard = new TownShard();
+            while(true) {
+                try(Socket socket = server.accept()) {
+                    socket.setTcpNoDelay(true);
+                    if(!shard.serve(socket)) return;
+                } catch(IOException e) {
+                    // the coordinator dropped the connection, so wait for it to come back
+                }
+            }
+        } catch(IOException e) {
+            System.out.println("TownShard could not listen: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answers requests on a connection until it closes or the worker is shut down
+     * @param socket    connection from the coordinator
+     * @return          false if the worker was shut down
+     * @throws IOException  if the connection fails
+     */
+    boolean serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        while(true) {
+            byte request;
+            try {
+                request = in.readByte();
+            } catch(EOFException e) {
+                return true;
+            }
+
+            int clock = in.readInt();
+            if(clock > town.getCurrentTime()) town.update(clock);
+
+            switch(request) {
+                case ADD_SHOW:
+                    String name = TownStore.readString(in);
+                    int maxFireworks = in.readInt();
+                    boolean hasCompanies = in.readBoolean();
+                    Site site = in.readBoolean() ? new Site(in.readDouble(), in.readDouble()) : null;
+                    out.writeInt(town.add(hasCompanies ? new CompanyShow(name, maxFireworks, site)
+                            : new Show(name, maxFireworks, site)));
+                    break;
+                case ADD_FIREWORK:
+                    out.writeBoolean(town.addFirework(in.readInt(), in.readInt(), in.readInt(), in.readDouble()));
+                    break;
+                case ADD_COMPANY_FIREWORK:
+                    int showIndex = in.readInt();
+                    String company = TownStore.readString(in);
+                    out.writeBoolean(town.addFirework(showIndex, company, in.readInt(), in.readInt(), in.readDouble()));
+                    break;
+                case FIREWORKS_UP_AT:
+                    out.writeInt(town.getFireworksUpAt(in.readInt()));
+                    break;
+                case TOTAL_COST:
+                    out.writeDouble(town.getTotalCost());
+                    break;
+                case WARNING_AT:
+                    out.writeBoolean(town.hasWarningAt(in.readInt()));
+                    break;
+                case SHUTDOWN:
+                    out.writeBoolean(true);
+                    out.flush();
+                    return false;
+                default:
+                    throw new IOException("Unknown request " + request);
+            }
+
+            // answers to requests sent together go back together
+            if(in.available() == 0) out.flush();
+        }
+    }
+}
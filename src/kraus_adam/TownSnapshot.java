@@ -0,0 +1,159 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a read only copy of a town and its fireworks shows at one point in time.
+ */
+package kraus_adam;
+
+/**
+ * Class to read a town as it was when the snapshot was taken.
+ * A snapshot never changes, so it is safe to read from many threads without locks.
+ */
+public class TownSnapshot {
+    private final int currentTime;
+    private final WarningRuns warningTimes;
+    private final WarningTiers warningTiers;
+    private final ShowSnapshot[] shows;
+
+    /**
+     * TownSnapshot constructor
+     * @param currentTime   time of the town when the snapshot was taken
+     * @param warningTimes  times the town had a warning, not changed after this
+     * @param warningTiers  times the town reached each warning tier, or null, not changed after this
+     * @param shows         snapshot of each show in the town
+     */
+    TownSnapshot(int currentTime, WarningRuns warningTimes, WarningTiers warningTiers, ShowSnapshot[] shows) {
+        this.currentTime = currentTime;
+        this.warningTimes = warningTimes;
+        this.warningTiers = warningTiers;
+        this.shows = shows;
+    }
+
+    /**
+     * Gets the time of the town when the snapshot was taken
+     * @return  current time of the snapshot
+     */
+    public int getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Gets the number of shows in the town
+     * @return  number of shows
+     */
+    public int getShowCount() {
+        return shows.length;
+    }
+
+    /**
+     * Gets the snapshot of the show at the given index
+     * @param showIndex index of the show
+     * @return          snapshot of the show
+     */
+    public ShowSnapshot getShow(int showIndex) {
+        return shows[showIndex];
+    }
+
+    /**
+     * Checks if the town had a warning at the snapshot time
+     * @return  true if there was a warning
+     */
+    public boolean hasWarning() {
+        return hasWarningAt(currentTime);
+    }
+
+    /**
+     * Checks if the town has a warning at the given time.
+     * The town has a warning if all shows have a warning. Unlike {@link Town#hasWarningAt(int)}, this does not
+     * record the warning.
+     * @param time  time to check for a warning
+     * @return      true if there is a warning
+     */
+    public boolean hasWarningAt(int time) {
+        if(warningTimes.contains(time)) return true;
+
+        for(ShowSnapshot show : shows) {
+            if(!show.hasWarningAt(time)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of warnings the town has had
+     * @return  number of town warnings
+     */
+    public int getTotalWarnings() {
+        return warningTimes.count();
+    }
+
+    /**
+     * Gets the number of extra warning tiers
+     * @return  number of tiers, 0 if none were set
+     */
+    public int getWarningTierCount() {
+        return warningTiers == null ? 0 : warningTiers.size();
+    }
+
+    /**
+     * Gets the number of warnings at or above a tier the town has had
+     * @param tier  index of the tier, lowest threshold first
+     * @return      number of town warnings
+     */
+    public int getTierWarnings(int tier) {
+        return warningTiers.count(tier);
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky
+     * @return  number of fireworks up at the snapshot time
+     */
+    public int getFireworksUp() {
+        return getFireworksUpAt(currentTime);
+    }
+
+    /**
+     * Gets the number of fireworks up in the sky across every show
+     * @param time  time to check the sky
+     * @return      number of fireworks up
+     */
+    public int getFireworksUpAt(int time) {
+        int fireworksUp = 0;
+
+        for(ShowSnapshot show : shows) {
+            fireworksUp += show.getFireworksUpAt(time);
+        }
+
+        return fireworksUp;
+    }
+
+    /**
+     * Gets the cost of all shows in the town
+     * @return  total cost of all shows
+     */
+    public double getTotalCost() {
+        double totalCost = 0;
+
+        for(ShowSnapshot show : shows) {
+            totalCost += show.getCost();
+        }
+
+        return totalCost;
+    }
+
+    /**
+     * Prints the status of all shows in town, the same as {@link Town#toString()}
+     * @return  status string
+     */
+    public String toString() {
+        StringBuilder townString = new StringBuilder("Town status:\n");
+
+        for(ShowSnapshot show : shows) {
+            townString.append(show).append("\n");
+        }
+
+        return townString.toString();
+    }
+}
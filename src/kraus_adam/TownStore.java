@@ -0,0 +1,108 @@
+/**
+ * Adam Kraus
+ *
+ * This file reads and writes towns as files.
+ */
+package kraus_adam;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File form of a town. Only the fireworks, clocks, warnings and settings are stored, since the indexes
+ * are worked out from them when the town is read, and the file is compressed.
+ */
+final class TownStore {
+    /**
+     * First bytes of every town file
+     */
+    private static final int MAGIC = 0x46574b54;
+    /**
+     * Version of the file form, changed whenever the form changes
+     */
+    private static final int FORMAT_VERSION = 3;
+
+    private TownStore() {
+    }
+
+    /**
+     * Writes a town to a file. The town is written to a temporary file first and then moved into place,
+     * so the file always holds a whole town.
+     * @param town  town to write
+     * @param file  file to write to
+     * @throws IOException  if the file can't be written
+     */
+    static void write(Town town, File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temporary))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            town.write(out);
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a town from a file written by {@link #write(Town, File)}
+     * @param file  file to read
+     * @return      town
+     * @throws IOException  if the file can't be read or does not hold a town
+     */
+    static Town read(File file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a town file: " + file);
+            }
+
+            return Town.read(in);
+        }
+    }
+
+    /**
+     * Writes a string that may be null
+     * @param out   stream to write to
+     * @param value string to write, or null
+     * @throws IOException  if the stream can't be written
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null) out.writeUTF(value);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}
+     * @param in    stream to read from
+     * @return      string, or null
+     * @throws IOException  if the stream can't be read
+     */
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Reads the number of items that follow
+     * @param in    stream to read from
+     * @return      number of items
+     * @throws IOException  if the stream can't be read or the number is negative
+     */
+    static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if(count < 0) throw new IOException("Bad count " + count);
+
+        return count;
+    }
+}
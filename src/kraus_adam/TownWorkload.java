@@ -0,0 +1,393 @@
+/**
+ * Adam Kraus
+ *
+ * This file makes large made up towns and bookings for capacity tests.
+ */
+package kraus_adam;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generator for a large town and the bookings made against it, shaped like a real festival season.
+ * Companies are picked with a Zipf distribution, so a few big companies book most of the fireworks.
+ * Part of the launches fall in bursts around a few peak times of each show, like openings and finales, and the
+ * rest are spread over the whole season. Durations are spread evenly on a log scale, so most fireworks are
+ * short but some stay up much longer.
+ * The same settings and seed always make the same bookings. Bookings are kept in launch time order, since a
+ * town only takes bookings at or after its current time.
+ */
+public class TownWorkload {
+    private int showCount = 100;
+    private double companyShowFraction = 0.5;
+    private int companyCount = 200;
+    private double companySkew = 1.0;
+    private int bookingCount = 200000;
+    private int horizon = 100000;
+    private double burstFraction = 0.6;
+    private int burstsPerShow = 3;
+    private int burstWidth = 200;
+    private int minDuration = 1;
+    private int maxDuration = 120;
+    private double capacityFactor = 1.2;
+    private long seed = 1;
+
+    /**
+     * Bookings made by {@link #generate()}, in launch time order
+     */
+    private int size;
+    private int[] shows;
+    private int[] companies;
+    private int[] times;
+    private int[] durations;
+    private double[] costs;
+    /**
+     * Name of each company by rank, made once so bookings don't build strings
+     */
+    private String[] companyNames;
+    /**
+     * Max fireworks of each show
+     */
+    private int[] maxFireworks;
+
+    /**
+     * Sets the number of shows and how many of them bill by company
+     * @param showCount             number of shows, at least 1
+     * @param companyShowFraction   part of the shows that are company shows, from 0 to 1
+     * @return                      true if the settings are valid and were set
+     */
+    public boolean setShows(int showCount, double companyShowFraction) {
+        if(showCount < 1 || !(companyShowFraction >= 0 && companyShowFraction <= 1)) return false;
+
+        this.showCount = showCount;
+        this.companyShowFraction = companyShowFraction;
+        return true;
+    }
+
+    /**
+     * Sets the number of companies and how much the bookings lean towards the biggest ones
+     * @param companyCount  number of companies, at least 1
+     * @param companySkew   Zipf exponent, 0 for every company equally likely
+     * @return              true if the settings are valid and were set
+     */
+    public boolean setCompanies(int companyCount, double companySkew) {
+        if(companyCount < 1 || !(companySkew >= 0)) return false;
+
+        this.companyCount = companyCount;
+        this.companySkew = companySkew;
+        return true;
+    }
+
+    /**
+     * Sets the number of bookings and the length of the season they launch in
+     * @param bookingCount  number of bookings, at least 0
+     * @param horizon       launch times are from 0 to one before this, at least 1
+     * @return              true if the settings are valid and were set
+     */
+    public boolean setBookings(int bookingCount, int horizon) {
+        if(bookingCount < 0 || horizon < 1) return false;
+
+        this.bookingCount = bookingCount;
+        this.horizon = horizon;
+        return true;
+    }
+
+    /**
+     * Sets how bursty launch times are
+     * @param burstFraction     part of the launches that fall in bursts, from 0 to 1
+     * @param burstsPerShow     number of peak times in each show, at least 1
+     * @param burstWidth        standard deviation of launch times around a peak, at least 1
+     * @return                  true if the settings are valid and were set
+     */
+    public boolean setBursts(double burstFraction, int burstsPerShow, int burstWidth) {
+        if(!(burstFraction >= 0 && burstFraction <= 1) || burstsPerShow < 1 || burstWidth < 1) return false;
+
+        this.burstFraction = burstFraction;
+        this.burstsPerShow = burstsPerShow;
+        this.burstWidth = burstWidth;
+        return true;
+    }
+
+    /**
+     * Sets the range of durations
+     * @param minDuration   shortest duration, at least 1
+     * @param maxDuration   longest duration, at least minDuration
+     * @return              true if the settings are valid and were set
+     */
+    public boolean setDurations(int minDuration, int maxDuration) {
+        if(minDuration < 1 || maxDuration < minDuration) return false;
+
+        this.minDuration = minDuration;
+        this.maxDuration = maxDuration;
+        return true;
+    }
+
+    /**
+     * Sets how much room the shows have, compared to the number of fireworks expected up at the peak of a burst.
+     * Near 1 the busiest bursts go over max fireworks, so some bookings are turned down and warnings are raised.
+     * @param capacityFactor    max fireworks over the fireworks up at a peak, above 0
+     * @return                  true if the setting is valid and was set
+     */
+    public boolean setCapacityFactor(double capacityFactor) {
+        if(!(capacityFactor > 0) || Double.isInfinite(capacityFactor)) return false;
+
+        this.capacityFactor = capacityFactor;
+        return true;
+    }
+
+    /**
+     * Sets the seed of the random bookings
+     * @param seed  seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the seed of the random bookings
+     * @return  seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Makes the bookings for the current settings, replacing any made before
+     * @return  this workload
+     */
+    public TownWorkload generate() {
+        Random random = new Random(seed);
+        double[] companyWeights = zipf(companyCount, companySkew);
+        companyNames = new String[companyCount];
+        for(int i = 0; i < companyCount; i++) {
+            companyNames[i] = "company" + i;
+        }
+        int[][] peaks = new int[showCount][burstsPerShow];
+        for(int[] showPeaks : peaks) {
+            for(int i = 0; i < showPeaks.length; i++) {
+                showPeaks[i] = random.nextInt(horizon);
+            }
+        }
+
+        size = bookingCount;
+        shows = new int[size];
+        companies = new int[size];
+        times = new int[size];
+        durations = new int[size];
+        costs = new double[size];
+        // log-uniform, so there are as many durations from 1 to 10 as from 10 to 100
+        double logMin = Math.log(minDuration);
+        double logRange = Math.log((double) maxDuration + 1) - logMin;
+        long totalDuration = 0;
+        for(int i = 0; i < size; i++) {
+            int show = random.nextInt(showCount);
+            shows[i] = show;
+            companies[i] = isCompanyShow(show) ? pick(companyWeights, random.nextDouble()) : -1;
+
+            int time;
+            if(random.nextDouble() < burstFraction) {
+                int peak = peaks[show][random.nextInt(burstsPerShow)];
+                time = (int) Math.round(peak + random.nextGaussian() * burstWidth);
+            } else {
+                time = random.nextInt(horizon);
+            }
+            times[i] = Math.max(0, Math.min(horizon - 1, time));
+
+            double duration = Math.exp(logMin + random.nextDouble() * logRange);
+            durations[i] = (int) Math.min(maxDuration, duration);
+            totalDuration += durations[i];
+            costs[i] = Math.round(durations[i] * (5 + random.nextDouble() * 10)) / 100.0;
+        }
+        sortByTime();
+
+        // launches at the middle of a burst come as often as the peak of its normal curve, plus the launches
+        // spread over the season, and each stays up for the average duration
+        double averageDuration = size == 0 ? 0 : (double) totalDuration / size;
+        double showBookings = (double) size / showCount;
+        double peakRate = showBookings * burstFraction / burstsPerShow / (Math.sqrt(2 * Math.PI) * burstWidth)
+                + showBookings * (1 - burstFraction) / horizon;
+        maxFireworks = new int[showCount];
+        for(int show = 0; show < showCount; show++) {
+            maxFireworks[show] = (int) Math.max(1, Math.ceil(peakRate * averageDuration * capacityFactor));
+        }
+
+        return this;
+    }
+
+    /**
+     * Gets the weight of each of a number of ranks, falling off as one over the rank to an exponent
+     */
+    private static double[] zipf(int count, double skew) {
+        double[] cumulative = new double[count];
+        double total = 0;
+        for(int i = 0; i < count; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+        for(int i = 0; i < count; i++) {
+            cumulative[i] /= total;
+        }
+
+        return cumulative;
+    }
+
+    /**
+     * Finds the rank that a random number from 0 to 1 falls in
+     */
+    private static int pick(double[] cumulative, double random) {
+        int rank = Arrays.binarySearch(cumulative, random);
+        return Math.min(cumulative.length - 1, rank >= 0 ? rank : -rank - 1);
+    }
+
+    private void sortByTime() {
+        // each key is the time above the booking number, so sorting the keys sorts the bookings with no objects
+        long[] keys = new long[size];
+        for(int i = 0; i < size; i++) {
+            keys[i] = (long) times[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sortedShows = new int[size];
+        int[] sortedCompanies = new int[size];
+        int[] sortedTimes = new int[size];
+        int[] sortedDurations = new int[size];
+        double[] sortedCosts = new double[size];
+        for(int i = 0; i < size; i++) {
+            int booking = (int) keys[i];
+            sortedShows[i] = shows[booking];
+            sortedCompanies[i] = companies[booking];
+            sortedTimes[i] = times[booking];
+            sortedDurations[i] = durations[booking];
+            sortedCosts[i] = costs[booking];
+        }
+        shows = sortedShows;
+        companies = sortedCompanies;
+        times = sortedTimes;
+        durations = sortedDurations;
+        costs = sortedCosts;
+    }
+
+    /**
+     * Makes an empty town with the shows of the workload, in order
+     * @return  town, or null if the bookings have not been made
+     */
+    public Town newTown() {
+        if(maxFireworks == null) return null;
+
+        Town town = new Town();
+        for(int show = 0; show < showCount; show++) {
+            String name = "show" + show;
+            town.add(isCompanyShow(show) ? new CompanyShow(name, maxFireworks[show])
+                    : new Show(name, maxFireworks[show]));
+        }
+
+        return town;
+    }
+
+    /**
+     * Checks if a show bills by company. The company shows are spread evenly through the shows.
+     * @param show  index of the show
+     * @return      true if the show is a company show
+     */
+    public boolean isCompanyShow(int show) {
+        return Math.floor((show + 1) * companyShowFraction) > Math.floor(show * companyShowFraction);
+    }
+
+    /**
+     * Gets the number of shows
+     * @return  number of shows
+     */
+    public int getShowCount() {
+        return showCount;
+    }
+
+    /**
+     * Gets the number of companies
+     * @return  number of companies
+     */
+    public int getCompanyCount() {
+        return companyCount;
+    }
+
+    /**
+     * Gets the name of a company
+     * @param company   rank of the company, 0 for the biggest
+     * @return          name of the company
+     */
+    public String getCompanyName(int company) {
+        return companyNames[company];
+    }
+
+    /**
+     * Gets the max fireworks of a show
+     * @param show  index of the show
+     * @return      max fireworks
+     */
+    public int getMaxFireworks(int show) {
+        return maxFireworks[show];
+    }
+
+    /**
+     * Gets the number of bookings made
+     * @return  number of bookings, 0 before they are made
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the show of a booking
+     * @param booking   index of the booking
+     * @return          index of the show
+     */
+    public int getShow(int booking) {
+        return shows[booking];
+    }
+
+    /**
+     * Gets the company of a booking
+     * @param booking   index of the booking
+     * @return          name of the company, or null if the show is not a company show
+     */
+    public String getCompany(int booking) {
+        return companies[booking] < 0 ? null : companyNames[companies[booking]];
+    }
+
+    /**
+     * Gets the launch time of a booking
+     * @param booking   index of the booking
+     * @return          launch time
+     */
+    public int getTime(int booking) {
+        return times[booking];
+    }
+
+    /**
+     * Gets the duration of a booking
+     * @param booking   index of the booking
+     * @return          duration
+     */
+    public int getDuration(int booking) {
+        return durations[booking];
+    }
+
+    /**
+     * Gets the cost of a booking
+     * @param booking   index of the booking
+     * @return          cost
+     */
+    public double getCost(int booking) {
+        return costs[booking];
+    }
+
+    /**
+     * Prints the settings of the workload
+     * @return  workload string
+     */
+    public String toString() {
+        return String.format("%d bookings over %d times in %d shows (%.0f%% company shows), %d companies with skew "
+                + "%.2f, %.0f%% in %d bursts of width %d per show, durations %d to %d, seed %d", bookingCount,
+                horizon, showCount, companyShowFraction * 100, companyCount, companySkew, burstFraction * 100,
+                burstsPerShow, burstWidth, minDuration, maxDuration, seed);
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Adam Kraus
+ *
+ * This file is a flight recorder event for a show or town starting or losing a warning.
+ */
+package kraus_adam;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a new warning, or for warnings removed when a firework was cancelled or moved.
+ * Warnings are instant, so the event has no duration.
+ */
+@Name("kraus_adam.Warning")
+@Label("Warning")
+@Category("Fireworks")
+@Description("A show or town entering a new warning, or losing warnings")
+final class WarningEvent extends Event {
+    @Label("Show")
+    @Description("Name of the show, or null for a town warning")
+    String show;
+
+    @Label("Entered")
+    @Description("True for a new warning, false for warnings that were cleared")
+    boolean entered;
+
+    @Label("From Time")
+    int fromTime;
+
+    @Label("To Time")
+    int toTime;
+
+    /**
+     * Commits a warning event if it is being recorded
+     * @param showName  name of the show, or null for a town
+     * @param entered   true for a new warning, false for cleared warnings
+     * @param from      first time of the change
+     * @param to        last time of the change
+     */
+    static void record(String showName, boolean entered, long from, long to) {
+        WarningEvent event = new WarningEvent();
+        if(!event.shouldCommit()) return;
+
+        event.show = showName;
+        event.entered = entered;
+        event.fromTime = (int) Math.min(from, Integer.MAX_VALUE);
+        event.toTime = (int) Math.min(to, Integer.MAX_VALUE);
+        event.commit();
+    }
+}
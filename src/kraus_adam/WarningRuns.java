@@ -0,0 +1,288 @@
+/**
+ * Adam Kraus
+ *
+ * This file stores the times that a show or town has had a warning.
+ */
+package kraus_adam;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Set of warning times stored as runs of consecutive times.
+ * Each run is one warning, so the number of warnings is the number of runs.
+ * The last run is kept out of the tree while the clock adds to it one time at a time, so a warning that goes on
+ * for many times doesn't box a new end time into the tree at each one.
+ */
+final class WarningRuns {
+    /**
+     * First time of each run mapped to the last time of the run
+     */
+    private final PersistentTreeMap<Integer, Integer> runs;
+    /**
+     * Last run, when it is kept out of the tree. It is always after every run in the tree and not next to one.
+     */
+    private boolean tail;
+    private int tailStart;
+    private int tailEnd;
+
+    /**
+     * WarningRuns constructor
+     */
+    WarningRuns() {
+        this(new PersistentTreeMap<Integer, Integer>());
+    }
+
+    private WarningRuns(PersistentTreeMap<Integer, Integer> runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * Copies the warning times in constant time
+     * @return  copy of the warning times
+     */
+    WarningRuns fork() {
+        WarningRuns copy = new WarningRuns(runs.fork());
+        copy.tail = tail;
+        copy.tailStart = tailStart;
+        copy.tailEnd = tailEnd;
+        return copy;
+    }
+
+    /**
+     * Puts the last run back into the tree, before the tree is searched or changed
+     */
+    private void flushTail() {
+        if(!tail) return;
+
+        runs.put(tailStart, tailEnd);
+        tail = false;
+    }
+
+    /**
+     * Checks if a time has a warning
+     * @param time  time to check
+     * @return      true if the time has a warning
+     */
+    boolean contains(int time) {
+        if(tail && time >= tailStart) return time <= tailEnd;
+
+        // the clock checks times after every run, which the last run answers without boxing the time
+        Integer last = runs.lastKey();
+        if(last == null) return false;
+        if(time >= last) return time <= runs.get(last);
+
+        Integer start = runs.floorKey(time);
+        return start != null && runs.get(start) >= time;
+    }
+
+    /**
+     * Adds a warning time, joining it with the runs before and after it
+     * @param time  time with a warning
+     */
+    void add(int time) {
+        if(tail) {
+            if(time >= tailStart && time <= tailEnd) return;
+            if(time > tailEnd) {
+                if(time - 1 == tailEnd) {
+                    tailEnd = time;
+                } else {
+                    flushTail();
+                    startTail(time, time);
+                }
+                return;
+            }
+            flushTail();
+        } else {
+            Integer last = runs.lastKey();
+            int lastEnd = last == null ? 0 : runs.get(last);
+            if(last == null || (long) lastEnd + 1 < time) {
+                startTail(time, time);
+                return;
+            }
+            if((long) lastEnd + 1 == time) {
+                runs.remove(last);
+                startTail(last, time);
+                return;
+            }
+        }
+        if(contains(time)) return;
+
+        int start = time;
+        int end = time;
+
+        Integer before = time > Integer.MIN_VALUE ? runs.floorKey(time - 1) : null;
+        if(before != null && runs.get(before) == time - 1) {
+            start = before;
+        }
+
+        if(time < Integer.MAX_VALUE) {
+            Integer after = runs.get(time + 1);
+            if(after != null) {
+                end = after;
+                runs.remove(time + 1);
+            }
+        }
+
+        runs.put(start, end);
+    }
+
+    private void startTail(int start, int end) {
+        tail = true;
+        tailStart = start;
+        tailEnd = end;
+    }
+
+    /**
+     * Adds a range of warning times, joining it with the runs it touches
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @return      true if the range started a new warning, rather than adding to one already there
+     */
+    boolean addRange(int from, int to) {
+        if(from > to) return false;
+        flushTail();
+
+        boolean started = !contains(from) && (from == Integer.MIN_VALUE || !contains(from - 1));
+        int start = from;
+        int end = to;
+
+        // every run that overlaps the range or is next to it joins it
+        Integer key = runs.floorKey(to < Integer.MAX_VALUE ? to + 1 : to);
+        while(key != null) {
+            int keyEnd = runs.get(key);
+            if((long) keyEnd < (long) from - 1) break;
+
+            start = Math.min(start, key);
+            end = Math.max(end, keyEnd);
+            runs.remove(key);
+            key = key > Integer.MIN_VALUE ? runs.floorKey(key - 1) : null;
+        }
+
+        runs.put(start, end);
+        return started;
+    }
+
+    /**
+     * Adds the times in a range that have at least the warning level of fireworks up
+     * @param from          first time in the range
+     * @param to            last time in the range
+     * @param occupancy     fireworks up at each time
+     * @param warningLevel  fewest fireworks up that gives a warning
+     */
+    void addAtLeast(long from, long to, OccupancyIndex occupancy, int warningLevel) {
+        to = Math.min(to, Integer.MAX_VALUE);
+
+        long time = occupancy.firstAtLeast(from, to, warningLevel);
+        while(time >= 0) {
+            long next = occupancy.firstBelow(time, to, warningLevel);
+            addRange((int) time, (int) (next < 0 ? to : next - 1));
+            if(next < 0) break;
+
+            time = occupancy.firstAtLeast(next, to, warningLevel);
+        }
+    }
+
+    /**
+     * Removes every warning time in a range, splitting runs that go past the range
+     * @param from  first time in the range
+     * @param to    last time in the range
+     * @return      true if any warning times were removed
+     */
+    boolean removeRange(int from, int to) {
+        if(from > to) return false;
+        flushTail();
+
+        boolean removed = false;
+        Integer start = runs.floorKey(to);
+        while(start != null) {
+            int end = runs.get(start);
+            if(end < from) break;
+
+            removed = true;
+            runs.remove(start);
+            if(start < from) runs.put(start, from - 1);
+            if(end > to) runs.put(to + 1, end);
+
+            start = start > Integer.MIN_VALUE ? runs.floorKey(start - 1) : null;
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes the warning times in a range that have fewer fireworks up than the warning level
+     * @param from          first time in the range
+     * @param to            last time in the range
+     * @param occupancy     fireworks up at each time
+     * @param warningLevel  fewest fireworks up that gives a warning
+     * @return              true if any warning times were removed
+     */
+    boolean removeBelow(long from, long to, OccupancyIndex occupancy, int warningLevel) {
+        to = Math.min(to, Integer.MAX_VALUE);
+
+        boolean removed = false;
+        long time = occupancy.firstBelow(from, to, warningLevel);
+        while(time >= 0) {
+            long next = occupancy.firstAtLeast(time, to, warningLevel);
+            removed |= removeRange((int) time, (int) (next < 0 ? to : next - 1));
+            if(next < 0) break;
+
+            time = occupancy.firstBelow(next, to, warningLevel);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Gets the number of warnings, which is the number of runs of consecutive warning times
+     * @return  number of warnings
+     */
+    int count() {
+        return runs.size() + (tail ? 1 : 0);
+    }
+
+    /**
+     * Writes the warning times to a stream, as the first and last time of each run
+     * @param out   stream to write to
+     * @throws IOException  if the stream can't be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        flushTail();
+        int[] times = new int[runs.size() * 2];
+        int[] next = new int[1];
+        runs.forEach((start, end) -> {
+            times[next[0]++] = start;
+            times[next[0]++] = end;
+        });
+
+        out.writeInt(runs.size());
+        for(int time : times) {
+            out.writeInt(time);
+        }
+    }
+
+    /**
+     * Reads warning times written by {@link #write(DataOutputStream)}
+     * @param in    stream to read from
+     * @return      warning times
+     * @throws IOException  if the stream can't be read or the runs are out of order
+     */
+    static WarningRuns read(DataInputStream in) throws IOException {
+        WarningRuns warnings = new WarningRuns();
+        int size = TownStore.readCount(in);
+        long last = Long.MIN_VALUE;
+        for(int i = 0; i < size; i++) {
+            int start = in.readInt();
+            int end = in.readInt();
+            // runs never touch, or they would have been joined into one
+            if(start <= last + 1 || end < start) throw new IOException("Bad warning run " + start + " to " + end);
+
+            warnings.runs.put(start, end);
+            last = end;
+        }
+
+        return warnings;
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Adam Kraus
+ *
+ * This file stores the times that a show or town has been at each of several warning tiers.
+ */
+package kraus_adam;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Warning times for a list of thresholds, such as 60, 80 and 95 percent of max fireworks.
+ * Every time at a tier is also at all the tiers below it, so each tier is counted the same way
+ * {@link Show#getTotalWarnings()} counts warnings, as runs of consecutive times.
+ */
+final class WarningTiers {
+    /**
+     * Percent of max fireworks for each tier, lowest first
+     */
+    private final double[] thresholds;
+    /**
+     * Times at or above each tier
+     */
+    private final WarningRuns[] runs;
+
+    /**
+     * WarningTiers constructor
+     * @param thresholds    percent of max fireworks for each tier, checked by {@link #sorted(double...)}
+     */
+    WarningTiers(double[] thresholds) {
+        this.thresholds = thresholds;
+        runs = new WarningRuns[thresholds.length];
+        for(int i = 0; i < runs.length; i++) {
+            runs[i] = new WarningRuns();
+        }
+    }
+
+    private WarningTiers(WarningTiers tiers) {
+        thresholds = tiers.thresholds;
+        runs = new WarningRuns[tiers.runs.length];
+        for(int i = 0; i < runs.length; i++) {
+            runs[i] = tiers.runs[i].fork();
+        }
+    }
+
+    /**
+     * Sorts the thresholds of the tiers, lowest first
+     * @param thresholds    percent of max fireworks for each tier
+     * @return              sorted copy, or null if a threshold is not above 0 and at most 100, or is repeated
+     */
+    static double[] sorted(double... thresholds) {
+        if(thresholds == null || thresholds.length == 0) return null;
+
+        double[] sorted = thresholds.clone();
+        Arrays.sort(sorted);
+        for(int i = 0; i < sorted.length; i++) {
+            if(!(sorted[i] > 0 && sorted[i] <= 100)) return null;
+            if(i > 0 && sorted[i] == sorted[i - 1]) return null;
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Copies the tiers in constant time for each tier
+     * @return  copy of the tiers
+     */
+    WarningTiers fork() {
+        return new WarningTiers(this);
+    }
+
+    /**
+     * Gets the number of tiers
+     * @return  number of tiers
+     */
+    int size() {
+        return thresholds.length;
+    }
+
+    /**
+     * Gets the threshold of a tier
+     * @param tier  index of the tier, lowest first
+     * @return      percent of max fireworks for the tier
+     */
+    double getThreshold(int tier) {
+        return thresholds[tier];
+    }
+
+    /**
+     * Finds the highest tier that a number of fireworks up reaches
+     * @param fireworksUp   number of fireworks up
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @return              index of the tier, or -1 if it is below every tier
+     */
+    int tierOf(int fireworksUp, int maxFireworks) {
+        // a higher threshold is only reached if every lower one is, so the tiers can be searched
+        int low = 0;
+        int high = thresholds.length - 1;
+        while(low <= high) {
+            int middle = (low + high) >>> 1;
+            if(Show.isWarning(fireworksUp, maxFireworks, thresholds[middle])) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return high;
+    }
+
+    /**
+     * Gets the highest tier recorded at a time
+     * @param time  time to check
+     * @return      index of the tier, or -1 if no tier was recorded
+     */
+    int recordedTier(int time) {
+        int tier = runs.length - 1;
+        while(tier >= 0 && !runs[tier].contains(time)) tier--;
+
+        return tier;
+    }
+
+    /**
+     * Records a time at a tier and every tier below it
+     * @param time  time to record
+     * @param tier  index of the tier, or -1 to record nothing
+     */
+    void record(int time, int tier) {
+        for(int i = tier; i >= 0 && !runs[i].contains(time); i--) {
+            runs[i].add(time);
+        }
+    }
+
+    /**
+     * Records a range of times at one tier, for a tier already worked out for every time in the range
+     * @param tier  index of the tier
+     * @param from  first time in the range
+     * @param to    last time in the range
+     */
+    void recordRange(int tier, int from, int to) {
+        runs[tier].addRange(from, to);
+    }
+
+    /**
+     * Records the times in a range at each tier that their fireworks up reach
+     * @param from          first time in the range
+     * @param to            last time in the range
+     * @param occupancy     fireworks up at each time
+     * @param maxFireworks  max fireworks allowed up at a given time
+     */
+    void recordAtLeast(long from, long to, OccupancyIndex occupancy, int maxFireworks) {
+        for(int i = 0; i < runs.length; i++) {
+            runs[i].addAtLeast(from, to, occupancy, Show.warningLevel(maxFireworks, thresholds[i]));
+        }
+    }
+
+    /**
+     * Gets the number of warnings at or above a tier
+     * @param tier  index of the tier
+     * @return      number of warnings
+     */
+    int count(int tier) {
+        return runs[tier].count();
+    }
+
+    /**
+     * Writes the thresholds and the times at each tier to a stream
+     * @param out   stream to write to
+     * @throws IOException  if the stream can't be written
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(thresholds.length);
+        for(int i = 0; i < thresholds.length; i++) {
+            out.writeDouble(thresholds[i]);
+            runs[i].write(out);
+        }
+    }
+
+    /**
+     * Reads tiers written by {@link #write(DataOutputStream)}
+     * @param in    stream to read from
+     * @return      warning tiers
+     * @throws IOException  if the stream can't be read or the thresholds are not valid
+     */
+    static WarningTiers read(DataInputStream in) throws IOException {
+        int size = TownStore.readCount(in);
+        double[] thresholds = new double[size];
+        WarningRuns[] runs = new WarningRuns[size];
+        for(int i = 0; i < size; i++) {
+            thresholds[i] = in.readDouble();
+            runs[i] = WarningRuns.read(in);
+        }
+        double[] sorted = sorted(thresholds);
+        if(sorted == null || !Arrays.equals(sorted, thresholds)) throw new IOException("Bad warning tiers");
+
+        WarningTiers tiers = new WarningTiers(thresholds);
+        System.arraycopy(runs, 0, tiers.runs, 0, size);
+        return tiers;
+    }
+
+    /**
+     * Removes the times in a range that are now below their tier
+     * @param from          first time in the range
+     * @param to            last time in the range
+     * @param occupancy     fireworks up at each time
+     * @param maxFireworks  max fireworks allowed up at a given time
+     * @return              true if any times were removed
+     */
+    boolean removeBelow(long from, long to, OccupancyIndex occupancy, int maxFireworks) {
+        boolean removed = false;
+        for(int i = 0; i < runs.length; i++) {
+            removed |= runs[i].removeBelow(from, to, occupancy, Show.warningLevel(maxFireworks, thresholds[i]));
+        }
+
+        return removed;
+    }
+}